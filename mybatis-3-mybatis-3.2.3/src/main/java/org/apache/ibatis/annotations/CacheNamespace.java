@@ -23,4 +23,6 @@ public @interface CacheNamespace {
     int size() default 1000;
 
     boolean readWrite() default true;
+
+    boolean blocking() default false;
 }
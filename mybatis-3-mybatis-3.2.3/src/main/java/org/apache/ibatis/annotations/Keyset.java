@@ -0,0 +1,45 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Keyset {
+  /**
+   * The key columns, in sort order. Each one names an item of the select list, by its column (qualified or not,
+   * e.g. {@code p.id}) or by its alias (e.g. {@code product_id} for {@code p.id as product_id}), or a column of the
+   * tables when the select list is {@code *}. The key is resolved against the select list, so the same column works
+   * whether the select is filtered in its own WHERE clause or wrapped as a derived table because it has GROUP BY,
+   * HAVING, a set operator or a row limiting clause. A wrapped select can only be paged by the items of its select list.
+   */
+  String[] columns();
+
+  /**
+   * The properties of the result objects holding the key values, one per column. Defaults to the columns, so it must
+   * be set when a column is qualified or is not the name of a property.
+   */
+  String[] properties() default {};
+
+  /**
+   * The direction of each column, or a single direction for all of them. Ascending by default.
+   */
+  boolean[] descending() default {};
+}
@@ -20,6 +20,7 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+import org.apache.ibatis.mapping.PrefetchMode;
 import org.apache.ibatis.mapping.StatementType;
 
 @Retention(RetentionPolicy.RUNTIME)
@@ -34,4 +35,16 @@ public @interface SelectKey {
   Class<?> resultType();
 
   StatementType statementType() default StatementType.PREPARED;
+
+  /**
+   * Number of keys to fetch at once, 0 to run the statement for each insert.
+   * Requires {@code before} to be true.
+   */
+  int prefetch() default 0;
+
+  /**
+   * Whether the statement returns one row per prefetched key or a single value of a sequence incremented by
+   * {@code prefetch}.
+   */
+  PrefetchMode prefetchMode() default PrefetchMode.ROWS;
 }
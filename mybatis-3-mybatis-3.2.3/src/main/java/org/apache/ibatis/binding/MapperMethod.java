@@ -1,11 +1,15 @@
 package org.apache.ibatis.binding;
 
+import org.apache.ibatis.annotations.Keyset;
 import org.apache.ibatis.annotations.MapKey;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.mapping.SqlCommandType;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.KeysetBounds;
+import org.apache.ibatis.session.KeysetPage;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.session.SqlSession;
@@ -49,6 +53,10 @@ public class MapperMethod {
                 result = executeForMany(sqlSession, args);
             } else if (method.returnsMap()) {
                 result = executeForMap(sqlSession, args);
+            } else if (method.returnsCursor()) {
+                result = executeForCursor(sqlSession, args);
+            } else if (method.returnsKeysetPage()) {
+                result = executeForKeysetPage(sqlSession, args);
             } else {
                 Object param = method.convertArgsToSqlCommandParam(args);
                 result = sqlSession.selectOne(command.getName(), param);
@@ -116,6 +124,45 @@ public class MapperMethod {
         return result;
     }
 
+    private <T> Cursor<T> executeForCursor(SqlSession sqlSession, Object[] args) {
+        Cursor<T> result;
+        Object param = method.convertArgsToSqlCommandParam(args);
+        if (method.hasRowBounds()) {
+            RowBounds rowBounds = method.extractRowBounds(args);
+            result = sqlSession.<T>selectCursor(command.getName(), param, rowBounds);
+        } else {
+            result = sqlSession.<T>selectCursor(command.getName(), param);
+        }
+        return result;
+    }
+
+    private <E> KeysetPage<E> executeForKeysetPage(SqlSession sqlSession, Object[] args) {
+        RowBounds rowBounds = method.extractRowBounds(args);
+        if (!(rowBounds instanceof KeysetBounds)) {
+            throw new BindingException("Mapper method '" + command.getName() + "' requires a KeysetBounds argument to return a KeysetPage.");
+        }
+        KeysetBounds keysetBounds = (KeysetBounds) rowBounds;
+        Keyset keyset = method.getKeyset();
+        Object param = method.convertArgsToSqlCommandParam(args);
+        // 多查询一行以判断是否存在下一页
+        int pageSize = keysetBounds.getPageSize();
+        int limit = pageSize < RowBounds.NO_ROW_LIMIT ? pageSize + 1 : pageSize;
+        List<E> result = sqlSession.<E>selectList(command.getName(), param,
+                new KeysetBounds(keyset.columns(), method.getKeysetDescending(), limit, keysetBounds.getAfterKey()));
+        boolean hasNext = result.size() > pageSize;
+        List<E> items = hasNext ? new ArrayList<E>(result.subList(0, pageSize)) : result;
+        Object[] nextKey = null;
+        if (!items.isEmpty()) {
+            MetaObject metaObject = sqlSession.getConfiguration().newMetaObject(items.get(items.size() - 1));
+            String[] properties = method.getKeysetProperties();
+            nextKey = new Object[properties.length];
+            for (int i = 0; i < properties.length; i++) {
+                nextKey[i] = metaObject.getValue(properties[i]);
+            }
+        }
+        return new KeysetPage<E>(items, hasNext, nextKey, pageSize);
+    }
+
     private <E> Object convertToDeclaredCollection(Configuration config, List<E> list) {
         Object collection = config.getObjectFactory().create(method.getReturnType());
         MetaObject metaObject = config.newMetaObject(collection);
@@ -196,6 +243,9 @@ public class MapperMethod {
         private final boolean returnsMany;
         private final boolean returnsMap;
         private final boolean returnsVoid;
+        private final boolean returnsCursor;
+        private final boolean returnsKeysetPage;
+        private final Keyset keyset;
         private final Class<?> returnType;
         private final String mapKey;
         private final Integer resultHandlerIndex;
@@ -207,6 +257,9 @@ public class MapperMethod {
             this.returnType = method.getReturnType();
             this.returnsVoid = void.class.equals(this.returnType);
             this.returnsMany = (configuration.getObjectFactory().isCollection(this.returnType) || this.returnType.isArray());
+            this.returnsCursor = Cursor.class.equals(this.returnType);
+            this.returnsKeysetPage = KeysetPage.class.equals(this.returnType);
+            this.keyset = getKeyset(method, this.returnsKeysetPage);
             this.mapKey = getMapKey(method);
             this.returnsMap = (this.mapKey != null);
             this.hasNamedParameters = hasNamedParams(method);
@@ -273,6 +326,36 @@ public class MapperMethod {
             return returnsVoid;
         }
 
+        public boolean returnsCursor() {
+            return returnsCursor;
+        }
+
+        public boolean returnsKeysetPage() {
+            return returnsKeysetPage;
+        }
+
+        public Keyset getKeyset() {
+            return keyset;
+        }
+
+        /**
+         * @return the properties holding the key columns, the column names when not declared
+         */
+        public String[] getKeysetProperties() {
+            return keyset.properties().length > 0 ? keyset.properties() : keyset.columns();
+        }
+
+        /**
+         * @return the direction of each key column, a single declared direction applying to all of them
+         */
+        public boolean[] getKeysetDescending() {
+            final boolean[] descending = new boolean[keyset.columns().length];
+            for (int i = 0; i < descending.length; i++) {
+                descending[i] = keyset.descending().length > 1 ? keyset.descending()[i] : keyset.descending().length == 1 && keyset.descending()[0];
+            }
+            return descending;
+        }
+
         private Integer getUniqueParamIndex(Method method, Class<?> paramType) {
             Integer index = null;
             final Class<?>[] argTypes = method.getParameterTypes();
@@ -288,6 +371,25 @@ public class MapperMethod {
             return index;
         }
 
+        private Keyset getKeyset(Method method, boolean returnsKeysetPage) {
+            final Keyset keyset = method.getAnnotation(Keyset.class);
+            if (returnsKeysetPage) {
+                if (keyset == null || keyset.columns().length == 0) {
+                    throw new BindingException(method.getName() + " returns a KeysetPage, so it must declare its key columns with @Keyset");
+                }
+                if (keyset.properties().length > 0 && keyset.properties().length != keyset.columns().length) {
+                    throw new BindingException(method.getName() + " must declare one @Keyset property per key column");
+                }
+                if (keyset.descending().length > 1 && keyset.descending().length != keyset.columns().length) {
+                    throw new BindingException(method.getName() + " must declare one @Keyset direction per key column, or a single one for all of them");
+                }
+                if (getUniqueParamIndex(method, RowBounds.class) == null) {
+                    throw new BindingException(method.getName() + " returns a KeysetPage, so it must have a KeysetBounds parameter");
+                }
+            }
+            return keyset;
+        }
+
         private String getMapKey(Method method) {
             String mapKey = null;
             if (Map.class.isAssignableFrom(method.getReturnType())) {
@@ -11,6 +11,8 @@ import java.util.Set;
 import java.util.StringTokenizer;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheMetrics;
+import org.apache.ibatis.cache.CacheMonitor;
 import org.apache.ibatis.cache.decorators.LruCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
 import org.apache.ibatis.executor.ErrorContext;
@@ -114,17 +116,34 @@ public class MapperBuilderAssistant extends BaseBuilder {
                              Integer size,
                              boolean readWrite,
                              Properties props) {
+        return useNewCache(typeClass, evictionClass, flushInterval, size, readWrite, false, props);
+    }
+
+    public Cache useNewCache(Class<? extends Cache> typeClass,
+                             Class<? extends Cache> evictionClass,
+                             Long flushInterval,
+                             Integer size,
+                             boolean readWrite,
+                             boolean blocking,
+                             Properties props) {
         typeClass = valueOrDefault(typeClass, PerpetualCache.class);
         evictionClass = valueOrDefault(evictionClass, LruCache.class);
+        CacheMetrics metrics = configuration.newCacheMetrics();
         Cache cache = new CacheBuilder(currentNamespace)
                 .implementation(typeClass)
                 .addDecorator(evictionClass)
                 .clearInterval(flushInterval)
                 .size(size)
                 .readWrite(readWrite)
+                .blocking(blocking)
+                .weightBudget(configuration.getCacheWeightBudget())
+                .invalidationBus(configuration.getCacheInvalidationBus())
+                .refresher(configuration.getCacheRefresher())
+                .metrics(metrics)
                 .properties(props)
                 .build();
         configuration.addCache(cache);
+        configuration.addCacheMonitor(new CacheMonitor(cache, metrics));
         currentCache = cache;
         return cache;
     }
@@ -292,7 +311,8 @@ public class MapperBuilderAssistant extends BaseBuilder {
             String keyColumn,
             String databaseId,
             LanguageDriver lang,
-            String resultSets) {
+            String resultSets,
+            String cacheTags) {
 
         if (unresolvedCacheRef) {
             throw new IncompleteElementException("Cache-ref not yet resolved");
@@ -312,6 +332,7 @@ public class MapperBuilderAssistant extends BaseBuilder {
         statementBuilder.lang(lang);
         statementBuilder.resultOrdered(resultOrdered);
         statementBuilder.resulSets(resultSets);
+        statementBuilder.cacheTags(cacheTags);
         setStatementTimeout(timeout, statementBuilder);
 
         setStatementParameterMap(parameterMap, parameterType, statementBuilder);
@@ -518,6 +539,34 @@ public class MapperBuilderAssistant extends BaseBuilder {
     /**
      * Backward compatibility signature
      */
+    public MappedStatement addMappedStatement(
+            String id,
+            SqlSource sqlSource,
+            StatementType statementType,
+            SqlCommandType sqlCommandType,
+            Integer fetchSize,
+            Integer timeout,
+            String parameterMap,
+            Class<?> parameterType,
+            String resultMap,
+            Class<?> resultType,
+            ResultSetType resultSetType,
+            boolean flushCache,
+            boolean useCache,
+            boolean resultOrdered,
+            KeyGenerator keyGenerator,
+            String keyProperty,
+            String keyColumn,
+            String databaseId,
+            LanguageDriver lang,
+            String resultSets) {
+        return addMappedStatement(
+                id, sqlSource, statementType, sqlCommandType, fetchSize, timeout,
+                parameterMap, parameterType, resultMap, resultType, resultSetType,
+                flushCache, useCache, resultOrdered, keyGenerator, keyProperty,
+                keyColumn, databaseId, lang, resultSets, null);
+    }
+
     public MappedStatement addMappedStatement(
             String id,
             SqlSource sqlSource,
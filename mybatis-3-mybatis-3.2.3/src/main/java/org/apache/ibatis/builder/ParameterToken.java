@@ -0,0 +1,180 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.builder;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.parsing.GenericTokenParser;
+import org.apache.ibatis.parsing.TokenHandler;
+import org.apache.ibatis.reflection.MetaClass;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.type.JdbcType;
+
+/**
+ * A {@code #{...}} token of a SQL statement, parsed once so the {@link ParameterMapping} it stands for
+ * can be built without tokenizing the statement again.
+ * <p>
+ * Unless the property is one of the additional parameters, whose type is only known at runtime,
+ * the mapping only depends on the parameter type and is cached per parameter type.
+ */
+public class ParameterToken extends BaseBuilder {
+
+    private static final String parameterProperties = "javaType,jdbcType,mode,numericScale,resultMap,typeHandler,jdbcTypeName";
+
+    private final String content;
+    private final Map<String, String> propertiesMap;
+    private final Map<Class<?>, ParameterMapping> parameterMappings;
+
+    /**
+     * @param cacheable true to cache the mappings built, for a token kept by a compiled statement
+     */
+    public ParameterToken(Configuration configuration, String content, boolean cacheable) {
+        this(configuration, content, parseParameterMapping(content), cacheable);
+    }
+
+    private ParameterToken(Configuration configuration, String content, Map<String, String> propertiesMap, boolean cacheable) {
+        super(configuration);
+        this.content = content;
+        this.propertiesMap = propertiesMap;
+        this.parameterMappings = cacheable ? new ConcurrentHashMap<Class<?>, ParameterMapping>() : null;
+    }
+
+    /**
+     * Replaces the {@code #{...}} tokens of the sql by {@code ?}.
+     *
+     * @param tokens receives the tokens found, in order
+     */
+    public static String parse(final Configuration configuration, String sql, final List<ParameterToken> tokens, final boolean cacheable) {
+        GenericTokenParser parser = new GenericTokenParser("#{", "}", new TokenHandler() {
+            public String handleToken(String content) {
+                tokens.add(new ParameterToken(configuration, content, cacheable));
+                return "?";
+            }
+        });
+        return parser.parse(sql);
+    }
+
+    public String getProperty() {
+        return propertiesMap.get("property");
+    }
+
+    /**
+     * @return the token for another property with the same attributes, e.g. a renamed foreach item
+     */
+    public ParameterToken withProperty(String property) {
+        Map<String, String> renamed = new HashMap<String, String>(propertiesMap);
+        renamed.put("property", property);
+        return new ParameterToken(configuration, content, renamed, false);
+    }
+
+    /**
+     * Sql参数的解析
+     *
+     * @param parameterType the type of the parameter object
+     * @param metaParameters the additional parameters
+     */
+    public ParameterMapping buildParameterMapping(Class<?> parameterType, MetaObject metaParameters) {
+        String property = getProperty();
+        if (metaParameters.hasGetter(property)) {
+            return buildParameterMapping(metaParameters.getGetterType(property));
+        }
+        if (parameterMappings == null) {
+            return buildParameterMapping(resolvePropertyType(parameterType));
+        }
+        ParameterMapping parameterMapping = parameterMappings.get(parameterType);
+        if (parameterMapping == null) {
+            parameterMapping = buildParameterMapping(resolvePropertyType(parameterType));
+            parameterMappings.put(parameterType, parameterMapping);
+        }
+        return parameterMapping;
+    }
+
+    private Class<?> resolvePropertyType(Class<?> parameterType) {
+        String property = getProperty();
+        Class<?> propertyType;
+        if (typeHandlerRegistry.hasTypeHandler(parameterType)) {
+            propertyType = parameterType;
+        } else if (JdbcType.CURSOR.name().equals(propertiesMap.get("jdbcType"))) {
+            propertyType = java.sql.ResultSet.class;
+        } else if (property != null) {
+            MetaClass metaClass = MetaClass.forClass(parameterType);
+            if (metaClass.hasGetter(property)) {
+                propertyType = metaClass.getGetterType(property);
+            } else {
+                propertyType = Object.class;
+            }
+        } else {
+            propertyType = Object.class;
+        }
+        return propertyType;
+    }
+
+    private ParameterMapping buildParameterMapping(Class<?> propertyType) {
+        ParameterMapping.Builder builder = new ParameterMapping.Builder(configuration, getProperty(), propertyType);
+        Class<?> javaType = propertyType;
+        String typeHandlerAlias = null;
+        for (Map.Entry<String, String> entry : propertiesMap.entrySet()) {
+            String name = entry.getKey();
+            String value = entry.getValue();
+            if ("javaType".equals(name)) {
+                javaType = resolveClass(value);
+                builder.javaType(javaType);
+            } else if ("jdbcType".equals(name)) {
+                builder.jdbcType(resolveJdbcType(value));
+            } else if ("mode".equals(name)) {
+                builder.mode(resolveParameterMode(value));
+            } else if ("numericScale".equals(name)) {
+                builder.numericScale(Integer.valueOf(value));
+            } else if ("resultMap".equals(name)) {
+                builder.resultMapId(value);
+            } else if ("typeHandler".equals(name)) {
+                typeHandlerAlias = value;
+            } else if ("jdbcTypeName".equals(name)) {
+                builder.jdbcTypeName(value);
+            } else if ("property".equals(name)) {
+                // Do Nothing
+            } else if ("expression".equals(name)) {
+                throw new BuilderException("Expression based parameters are not supported yet");
+            } else {
+                throw new BuilderException("An invalid property '" + name + "' was found in mapping #{" + content + "}.  Valid properties are " + parameterProperties);
+            }
+        }
+        if (typeHandlerAlias != null) {
+            builder.typeHandler(resolveTypeHandler(javaType, typeHandlerAlias));
+        }
+        return builder.build();
+    }
+
+    private static Map<String, String> parseParameterMapping(String content) {
+        try {
+            return new ParameterExpression(content);
+        } catch (BuilderException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new BuilderException("Parsing error was found in mapping #{" + content + "}.  Check syntax #{property|(expression), var1=value1, var2=value2, ...} ", ex);
+        }
+    }
+
+    public String toString() {
+        return "#{" + content + "}";
+    }
+
+}
@@ -45,9 +45,11 @@ import org.apache.ibatis.builder.BuilderException;
 import org.apache.ibatis.builder.IncompleteElementException;
 import org.apache.ibatis.builder.MapperBuilderAssistant;
 import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.executor.keygen.NoKeyGenerator;
+import org.apache.ibatis.executor.keygen.PrefetchingSelectKeyGenerator;
 import org.apache.ibatis.executor.keygen.SelectKeyGenerator;
 import org.apache.ibatis.io.Resources;
 import org.apache.ibatis.mapping.Discriminator;
@@ -60,6 +62,7 @@ import org.apache.ibatis.mapping.SqlSource;
 import org.apache.ibatis.mapping.StatementType;
 import org.apache.ibatis.scripting.LanguageDriver;
 import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.KeysetPage;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.type.JdbcType;
@@ -177,7 +180,7 @@ public class MapperAnnotationBuilder {
     private void parseCache() {
         CacheNamespace cacheDomain = type.getAnnotation(CacheNamespace.class);
         if (cacheDomain != null) {
-            assistant.useNewCache(cacheDomain.implementation(), cacheDomain.eviction(), cacheDomain.flushInterval(), cacheDomain.size(), cacheDomain.readWrite(), null);
+            assistant.useNewCache(cacheDomain.implementation(), cacheDomain.eviction(), cacheDomain.flushInterval(), cacheDomain.size(), cacheDomain.readWrite(), cacheDomain.blocking(), null);
         }
     }
 
@@ -294,6 +297,7 @@ public class MapperAnnotationBuilder {
             KeyGenerator keyGenerator;
             String keyProperty = "id";
             String keyColumn = null;
+            String cacheTags = null;
             // 当 语句是 Insert 时，判断是否有 SelectKey 注解，用于返回主键，
             // 猜测 在该版本只支持 insert 语句返回主键，但是在 3.5.3 版本，Update 语句也支持该属性
             if (SqlCommandType.INSERT.equals(sqlCommandType)) {
@@ -321,6 +325,7 @@ public class MapperAnnotationBuilder {
                 timeout = options.timeout() > -1 ? options.timeout() : null;
                 statementType = options.statementType();
                 resultSetType = options.resultSetType();
+                cacheTags = options.cacheTags();
             }
 
             String resultMapId = null;
@@ -361,7 +366,8 @@ public class MapperAnnotationBuilder {
                     keyColumn,
                     null,
                     languageDriver,
-                    null);
+                    null,
+                    cacheTags);
         }
     }
 
@@ -396,7 +402,8 @@ public class MapperAnnotationBuilder {
             if (rt != null) {
                 returnType = rt.value();
             }
-        } else if (Collection.class.isAssignableFrom(returnType)) {
+        } else if (Collection.class.isAssignableFrom(returnType) || Cursor.class.isAssignableFrom(returnType)
+                || KeysetPage.class.isAssignableFrom(returnType)) {
             Type returnTypeParameter = method.getGenericReturnType();
             if (returnTypeParameter instanceof ParameterizedType) {
                 Type[] actualTypeArguments = ((ParameterizedType) returnTypeParameter).getActualTypeArguments();
@@ -585,6 +592,10 @@ public class MapperAnnotationBuilder {
         StatementType statementType = selectKeyAnnotation.statementType();
         String keyProperty = selectKeyAnnotation.keyProperty();
         boolean executeBefore = selectKeyAnnotation.before();
+        int prefetch = selectKeyAnnotation.prefetch();
+        if (prefetch > 0 && !executeBefore) {
+            throw new BuilderException("The @SelectKey of statement '" + baseStatementId + "' can only prefetch keys when before is true.");
+        }
 
         // defaults
         boolean useCache = false;
@@ -606,7 +617,7 @@ public class MapperAnnotationBuilder {
         id = assistant.applyCurrentNamespace(id, false);
 
         MappedStatement keyStatement = configuration.getMappedStatement(id, false);
-        SelectKeyGenerator answer = new SelectKeyGenerator(keyStatement, executeBefore);
+        SelectKeyGenerator answer = prefetch > 0 ? new PrefetchingSelectKeyGenerator(keyStatement, prefetch, selectKeyAnnotation.prefetchMode()) : new SelectKeyGenerator(keyStatement, executeBefore);
         configuration.addKeyGenerator(id, answer);
         return answer;
     }
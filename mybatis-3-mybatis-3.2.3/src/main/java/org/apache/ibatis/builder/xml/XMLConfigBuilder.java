@@ -8,9 +8,12 @@ import javax.sql.DataSource;
 
 import org.apache.ibatis.builder.BaseBuilder;
 import org.apache.ibatis.builder.BuilderException;
+import org.apache.ibatis.cache.InvalidationTransport;
+import org.apache.ibatis.cache.decorators.BroadcastCache;
 import org.apache.ibatis.datasource.DataSourceFactory;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.loader.ProxyFactory;
+import org.apache.ibatis.executor.pagination.PaginationDialect;
 import org.apache.ibatis.io.Resources;
 import org.apache.ibatis.mapping.DatabaseIdProvider;
 import org.apache.ibatis.mapping.Environment;
@@ -20,7 +23,9 @@ import org.apache.ibatis.plugin.Interceptor;
 import org.apache.ibatis.reflection.MetaClass;
 import org.apache.ibatis.reflection.factory.ObjectFactory;
 import org.apache.ibatis.reflection.wrapper.ObjectWrapperFactory;
+import org.apache.ibatis.scripting.xmltags.ExpressionEngine;
 import org.apache.ibatis.session.AutoMappingBehavior;
+import org.apache.ibatis.session.BatchOrdering;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.LocalCacheScope;
@@ -112,6 +117,7 @@ public class XMLConfigBuilder extends BaseBuilder {
             settingsElement(root.evalNode("settings"));
             environmentsElement(root.evalNode("environments"));
             databaseIdProviderElement(root.evalNode("databaseIdProvider"));
+            cacheInvalidationElement(root.evalNode("cacheInvalidation"));
             typeHandlerElement(root.evalNode("typeHandlers"));
             // 加载 mapper 文件
             mapperElement(root.evalNode("mappers"));
@@ -268,9 +274,13 @@ public class XMLConfigBuilder extends BaseBuilder {
 
             configuration.setAutoMappingBehavior(AutoMappingBehavior.valueOf(props.getProperty("autoMappingBehavior", "PARTIAL")));
             configuration.setCacheEnabled(booleanValueOf(props.getProperty("cacheEnabled"), true));
+            configuration.setCacheMaxWeight(Long.valueOf(props.getProperty("cacheMaxWeight", "0")));
+            configuration.setCacheMetricsClass(resolveClass(props.getProperty("cacheMetrics")));
             configuration.setProxyFactory((ProxyFactory) createInstance(props.getProperty("proxyFactory")));
             configuration.setLazyLoadingEnabled(booleanValueOf(props.getProperty("lazyLoadingEnabled"), false));
             configuration.setAggressiveLazyLoading(booleanValueOf(props.getProperty("aggressiveLazyLoading"), true));
+            configuration.setLazyLoadBatchSize(integerValueOf(props.getProperty("lazyLoadBatchSize"), 0));
+            configuration.setEagerLoadBatchSize(integerValueOf(props.getProperty("eagerLoadBatchSize"), 0));
             configuration.setMultipleResultSetsEnabled(booleanValueOf(props.getProperty("multipleResultSetsEnabled"), true));
             configuration.setUseColumnLabel(booleanValueOf(props.getProperty("useColumnLabel"), true));
             configuration.setUseGeneratedKeys(booleanValueOf(props.getProperty("useGeneratedKeys"), false));
@@ -279,17 +289,44 @@ public class XMLConfigBuilder extends BaseBuilder {
             configuration.setMapUnderscoreToCamelCase(booleanValueOf(props.getProperty("mapUnderscoreToCamelCase"), false));
             configuration.setSafeRowBoundsEnabled(booleanValueOf(props.getProperty("safeRowBoundsEnabled"), false));
             configuration.setLocalCacheScope(LocalCacheScope.valueOf(props.getProperty("localCacheScope", "SESSION")));
+            configuration.setBatchOrdering(BatchOrdering.valueOf(props.getProperty("batchOrdering", "STRICT")));
+            configuration.setBatchFlushSize(integerValueOf(props.getProperty("batchFlushSize"), 0));
+            configuration.setMultiValuesInsertEnabled(booleanValueOf(props.getProperty("multiValuesInsertEnabled"), false));
+            configuration.setMultiValuesInsertMaxRows(integerValueOf(props.getProperty("multiValuesInsertMaxRows"), 1000));
+            configuration.setMultiValuesInsertMaxParameters(integerValueOf(props.getProperty("multiValuesInsertMaxParameters"), 2000));
             configuration.setJdbcTypeForNull(JdbcType.valueOf(props.getProperty("jdbcTypeForNull", "OTHER")));
             configuration.setLazyLoadTriggerMethods(stringSetValueOf(props.getProperty("lazyLoadTriggerMethods"), "equals,clone,hashCode,toString"));
             configuration.setSafeResultHandlerEnabled(booleanValueOf(props.getProperty("safeResultHandlerEnabled"), true));
             configuration.setDefaultScriptingLanguage(resolveClass(props.getProperty("defaultScriptingLanguage")));
             configuration.setCallSettersOnNulls(booleanValueOf(props.getProperty("callSettersOnNulls"), false));
+            configuration.setCompiledResultMappingEnabled(booleanValueOf(props.getProperty("compiledResultMappingEnabled"), false));
+            configuration.setDatabasePaginationEnabled(booleanValueOf(props.getProperty("databasePaginationEnabled"), false));
+            configuration.setPaginationDialect(paginationDialectValueOf(props.getProperty("paginationDialect")));
+            if (props.getProperty("expressionEngine") != null) {
+                configuration.setExpressionEngine((ExpressionEngine) createInstance(props.getProperty("expressionEngine")));
+            }
             configuration.setLogPrefix(props.getProperty("logPrefix"));
             configuration.setLogImpl(resolveClass(props.getProperty("logImpl")));
             configuration.setConfigurationFactory(resolveClass(props.getProperty("configurationFactory")));
         }
     }
 
+    /**
+     * 分页方言可以是 paginationDialectRegistry 中的数据库名（如 mysql、oracle），也可以是类名或别名
+     */
+    private PaginationDialect paginationDialectValueOf(String value) {
+        if (value == null) {
+            return null;
+        }
+        if (value.indexOf('.') == -1) {
+            PaginationDialect dialect = configuration.getPaginationDialectRegistry().getDialect(value);
+            if (dialect != null) {
+                return dialect;
+            }
+        }
+        return (PaginationDialect) createInstance(value);
+    }
+
     /**
      * 环境配置
      * <p>
@@ -360,6 +397,25 @@ public class XMLConfigBuilder extends BaseBuilder {
         }
     }
 
+    /**
+     * 集群中二级缓存失效消息的传输方式，配置后所有二级缓存的清空和按标签失效都会通知其他节点
+     *
+     * @param context
+     * @throws Exception
+     */
+    private void cacheInvalidationElement(XNode context) throws Exception {
+        if (context != null) {
+            String type = context.getStringAttribute("type");
+            Properties properties = context.getChildrenAsProperties();
+            InvalidationTransport transport = (InvalidationTransport) resolveClass(type).newInstance();
+            transport.setProperties(properties);
+            // 心跳间隔与最长静默时间，超过后清空所有缓存
+            long heartbeatInterval = context.getLongAttribute("heartbeatInterval", BroadcastCache.Bus.DEFAULT_HEARTBEAT_INTERVAL);
+            long maxSilence = context.getLongAttribute("maxSilence", BroadcastCache.Bus.DEFAULT_MAX_SILENCE);
+            configuration.setCacheInvalidationBus(new BroadcastCache.Bus(transport, heartbeatInterval, maxSilence));
+        }
+    }
+
     /**
      * 事物管理器解析，前者主要用于简单的JDBC模式，后者主要用于容器管理事物，一般使用JDBC事物管理方式。
      *
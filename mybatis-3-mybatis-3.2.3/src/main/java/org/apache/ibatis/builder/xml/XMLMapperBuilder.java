@@ -228,8 +228,10 @@ public class XMLMapperBuilder extends BaseBuilder {
             // 只读：mybatis认为所有从缓存中获取数据的操作都是只读操作，不会修改数据。mybatis为了加快获取数据，直接就会将数据在缓存中的引用交给用户 。不安全，速度快
             //false：读写(默认)：mybatis觉得获取的数据可能会被修改
             boolean readWrite = !context.getBooleanAttribute("readOnly", false);
+            // blocking：同一个key未命中时只有一个线程查询数据库，其他线程等待它的结果，默认false
+            boolean blocking = context.getBooleanAttribute("blocking", false);
             Properties props = context.getChildrenAsProperties();
-            builderAssistant.useNewCache(typeClass, evictionClass, flushInterval, size, readWrite, props);
+            builderAssistant.useNewCache(typeClass, evictionClass, flushInterval, size, readWrite, blocking, props);
         }
     }
 
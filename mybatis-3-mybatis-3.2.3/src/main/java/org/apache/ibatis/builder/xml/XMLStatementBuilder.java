@@ -19,12 +19,15 @@ import java.util.List;
 import java.util.Locale;
 
 import org.apache.ibatis.builder.BaseBuilder;
+import org.apache.ibatis.builder.BuilderException;
 import org.apache.ibatis.builder.MapperBuilderAssistant;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.executor.keygen.NoKeyGenerator;
+import org.apache.ibatis.executor.keygen.PrefetchingSelectKeyGenerator;
 import org.apache.ibatis.executor.keygen.SelectKeyGenerator;
 import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.PrefetchMode;
 import org.apache.ibatis.mapping.ResultSetType;
 import org.apache.ibatis.mapping.SqlCommandType;
 import org.apache.ibatis.mapping.SqlSource;
@@ -130,6 +133,8 @@ public class XMLStatementBuilder extends BaseBuilder {
         SqlSource sqlSource = langDriver.createSqlSource(configuration, context, parameterTypeClass);
 
         String resultSets = context.getStringAttribute("resultSets");
+        // 二级缓存标签，select 表示依赖的标签，insert/update/delete 表示只淘汰这些标签的缓存条目
+        String cacheTags = context.getStringAttribute("cacheTags");
         String keyProperty = context.getStringAttribute("keyProperty");
         String keyColumn = context.getStringAttribute("keyColumn");
         KeyGenerator keyGenerator;
@@ -147,7 +152,7 @@ public class XMLStatementBuilder extends BaseBuilder {
         builderAssistant.addMappedStatement(id, sqlSource, statementType, sqlCommandType,
                 fetchSize, timeout, parameterMap, parameterTypeClass, resultMap, resultTypeClass,
                 resultSetTypeEnum, flushCache, useCache, resultOrdered,
-                keyGenerator, keyProperty, keyColumn, databaseId, langDriver, resultSets);
+                keyGenerator, keyProperty, keyColumn, databaseId, langDriver, resultSets, cacheTags);
     }
 
     /**
@@ -177,6 +182,11 @@ public class XMLStatementBuilder extends BaseBuilder {
         StatementType statementType = StatementType.valueOf(nodeToHandle.getStringAttribute("statementType", StatementType.PREPARED.toString()));
         String keyProperty = nodeToHandle.getStringAttribute("keyProperty");
         boolean executeBefore = "BEFORE".equals(nodeToHandle.getStringAttribute("order", "AFTER"));
+        int prefetch = nodeToHandle.getIntAttribute("prefetch", 0);
+        PrefetchMode prefetchMode = PrefetchMode.valueOf(nodeToHandle.getStringAttribute("prefetchMode", PrefetchMode.ROWS.toString()));
+        if (prefetch > 0 && !executeBefore) {
+            throw new BuilderException("The selectKey of statement '" + id + "' can only prefetch keys when its order is BEFORE.");
+        }
 
         //defaults
         boolean useCache = false;
@@ -204,7 +214,8 @@ public class XMLStatementBuilder extends BaseBuilder {
         MappedStatement keyStatement = configuration.getMappedStatement(id, false);
 
         // 添加到 Configuration 中， 并通过 executeBefore 判断是在sql之前执行还是之后执行， oracle 是在insert之前获取主键， mysql是在insert之后获取主键
-        configuration.addKeyGenerator(id, new SelectKeyGenerator(keyStatement, executeBefore));
+        // 指定了 prefetch 时一次查询获取多个主键，供后续的插入使用
+        configuration.addKeyGenerator(id, prefetch > 0 ? new PrefetchingSelectKeyGenerator(keyStatement, prefetch, prefetchMode) : new SelectKeyGenerator(keyStatement, executeBefore));
         nodeToHandle.getParent().getNode().removeChild(nodeToHandle.getNode());
     }
 
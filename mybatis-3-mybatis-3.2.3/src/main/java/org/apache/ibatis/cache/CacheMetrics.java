@@ -0,0 +1,65 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * Receives the events of a second level cache and counts them.
+ * <p>
+ * Called on every lookup, from many threads and often under the lock of the cache, so an implementation must be
+ * thread safe and cheap. The default one is {@link org.apache.ibatis.cache.impl.StripedCacheMetrics}.
+ */
+public interface CacheMetrics {
+
+  void recordHit();
+
+  void recordMiss();
+
+  /**
+   * @param estimatedBytes the estimated size of the entry
+   */
+  void recordPut(long estimatedBytes);
+
+  /**
+   * An entry was evicted by the eviction policy or expired, rather than removed by a statement.
+   */
+  void recordEviction();
+
+  /**
+   * A miss was loaded from the database.
+   */
+  void recordLoad(long nanos);
+
+  long getHits();
+
+  long getMisses();
+
+  long getPuts();
+
+  /**
+   * @return the total estimated size of the entries put
+   */
+  long getPutBytes();
+
+  long getEvictions();
+
+  long getLoads();
+
+  /**
+   * @return the total time spent loading misses, in nanoseconds
+   */
+  long getLoadTime();
+
+}
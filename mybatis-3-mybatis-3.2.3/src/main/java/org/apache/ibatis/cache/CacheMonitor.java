@@ -0,0 +1,108 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * The live statistics of a second level cache: each getter reads the current counters.
+ */
+public class CacheMonitor implements CacheMonitorMBean {
+
+  private final Cache cache;
+  private final CacheMetrics metrics;
+
+  public CacheMonitor(Cache cache, CacheMetrics metrics) {
+    this.cache = cache;
+    this.metrics = metrics;
+  }
+
+  public CacheMetrics getMetrics() {
+    return metrics;
+  }
+
+  public String getId() {
+    return cache.getId();
+  }
+
+  public int getSize() {
+    return cache.getSize();
+  }
+
+  /**
+   * @return the entry count times the average estimated size of the entries put
+   */
+  public long getEstimatedBytes() {
+    return estimateBytes(getSize(), metrics.getPuts(), metrics.getPutBytes());
+  }
+
+  public long getHits() {
+    return metrics.getHits();
+  }
+
+  public long getMisses() {
+    return metrics.getMisses();
+  }
+
+  public double getHitRatio() {
+    return ratio(metrics.getHits(), metrics.getMisses());
+  }
+
+  public long getPuts() {
+    return metrics.getPuts();
+  }
+
+  public long getEvictions() {
+    return metrics.getEvictions();
+  }
+
+  public long getLoads() {
+    return metrics.getLoads();
+  }
+
+  public double getAverageLoadMillis() {
+    return averageMillis(metrics.getLoads(), metrics.getLoadTime());
+  }
+
+  /**
+   * @return the current counters, read once
+   */
+  public CacheStats getStats() {
+    long puts = metrics.getPuts();
+    long putBytes = metrics.getPutBytes();
+    long loads = metrics.getLoads();
+    long loadTime = metrics.getLoadTime();
+    int size = getSize();
+    return new CacheStats(getId(), size, estimateBytes(size, puts, putBytes), metrics.getHits(), metrics.getMisses(),
+        puts, metrics.getEvictions(), loads, averageMillis(loads, loadTime));
+  }
+
+  public String toString() {
+    return getStats().toString();
+  }
+
+  static double ratio(long hits, long misses) {
+    long requests = hits + misses;
+    return requests == 0 ? 0 : (double) hits / requests;
+  }
+
+  private static long estimateBytes(int size, long puts, long putBytes) {
+    return puts == 0 ? 0 : size * (putBytes / puts);
+  }
+
+  private static double averageMillis(long loads, long loadTime) {
+    return loads == 0 ? 0 : loadTime / 1e6 / loads;
+  }
+
+}
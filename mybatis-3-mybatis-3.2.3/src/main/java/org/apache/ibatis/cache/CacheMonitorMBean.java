@@ -0,0 +1,44 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * The statistics of a second level cache as a standard MBean, e.g.
+ * ManagementFactory.getPlatformMBeanServer().registerMBean(configuration.getCacheMonitor(namespace), name)
+ */
+public interface CacheMonitorMBean {
+
+  String getId();
+
+  int getSize();
+
+  long getEstimatedBytes();
+
+  long getHits();
+
+  long getMisses();
+
+  double getHitRatio();
+
+  long getPuts();
+
+  long getEvictions();
+
+  long getLoads();
+
+  double getAverageLoadMillis();
+
+}
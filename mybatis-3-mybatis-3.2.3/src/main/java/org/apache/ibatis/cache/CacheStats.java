@@ -0,0 +1,91 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * The statistics of a second level cache at a point in time.
+ */
+public class CacheStats {
+
+  private final String id;
+  private final int size;
+  private final long estimatedBytes;
+  private final long hits;
+  private final long misses;
+  private final long puts;
+  private final long evictions;
+  private final long loads;
+  private final double averageLoadMillis;
+
+  public CacheStats(String id, int size, long estimatedBytes, long hits, long misses, long puts, long evictions,
+      long loads, double averageLoadMillis) {
+    this.id = id;
+    this.size = size;
+    this.estimatedBytes = estimatedBytes;
+    this.hits = hits;
+    this.misses = misses;
+    this.puts = puts;
+    this.evictions = evictions;
+    this.loads = loads;
+    this.averageLoadMillis = averageLoadMillis;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  public long getEstimatedBytes() {
+    return estimatedBytes;
+  }
+
+  public long getHits() {
+    return hits;
+  }
+
+  public long getMisses() {
+    return misses;
+  }
+
+  public double getHitRatio() {
+    return CacheMonitor.ratio(hits, misses);
+  }
+
+  public long getPuts() {
+    return puts;
+  }
+
+  public long getEvictions() {
+    return evictions;
+  }
+
+  public long getLoads() {
+    return loads;
+  }
+
+  public double getAverageLoadMillis() {
+    return averageLoadMillis;
+  }
+
+  public String toString() {
+    return id + " size=" + size + " bytes=" + estimatedBytes + " hits=" + hits + " misses=" + misses
+        + " puts=" + puts + " evictions=" + evictions + " loads=" + loads + " loadMillis=" + averageLoadMillis;
+  }
+
+}
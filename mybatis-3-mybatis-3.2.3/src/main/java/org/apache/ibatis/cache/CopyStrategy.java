@@ -0,0 +1,34 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * Copies the values of a read-write cache, so that callers never share an instance with the cache or with each
+ * other.
+ */
+public interface CopyStrategy {
+
+  /**
+   * @return what the cache stores for the value being put
+   */
+  Object copyForWrite(Object value);
+
+  /**
+   * @return the copy handed to the caller for a value stored by {@link #copyForWrite(Object)}
+   */
+  Object copyForRead(Object stored);
+
+}
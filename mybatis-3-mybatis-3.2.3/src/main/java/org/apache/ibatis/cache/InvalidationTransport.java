@@ -0,0 +1,46 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * Carries the invalidations of the second level caches between the nodes of a cluster.
+ * <p>
+ * Messages are opaque and small. A transport may lose, duplicate or reorder them, and may deliver the messages
+ * a node sends to that node too.
+ */
+public interface InvalidationTransport {
+
+  void setProperties(Properties properties);
+
+  /**
+   * Starts delivering the messages of the other nodes to the receiver.
+   */
+  void open(Receiver receiver) throws IOException;
+
+  void send(byte[] message) throws IOException;
+
+  void close();
+
+  interface Receiver {
+
+    void receive(byte[] message);
+
+  }
+
+}
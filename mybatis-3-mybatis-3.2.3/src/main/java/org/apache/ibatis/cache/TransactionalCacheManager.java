@@ -16,6 +16,7 @@
 package org.apache.ibatis.cache;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.ibatis.cache.decorators.TransactionalCache;
@@ -28,10 +29,30 @@ public class TransactionalCacheManager {
     getTransactionalCache(cache).clear();
   }
 
+  public Object getObject(Cache cache, CacheKey key) {
+    return getTransactionalCache(cache).getObject(key);
+  }
+
   public void putObject(Cache cache, CacheKey key, Object value) {
     getTransactionalCache(cache).putObject(key, value);
   }
 
+  public void putObject(Cache cache, CacheKey key, Object value, List<String> tags) {
+    getTransactionalCache(cache).putObject(key, value, tags);
+  }
+
+  public void unlock(Cache cache, CacheKey key) {
+    getTransactionalCache(cache).unlock(key);
+  }
+
+  public boolean invalidate(Cache cache, List<String> tags, boolean untagged) {
+    return getTransactionalCache(cache).invalidate(tags, untagged);
+  }
+
+  public boolean isInvalidated(Cache cache, List<String> tags) {
+    return getTransactionalCache(cache).isInvalidated(tags);
+  }
+
   public void commit() {
     for (TransactionalCache txCache : transactionalCaches.values()) {
       txCache.commit();
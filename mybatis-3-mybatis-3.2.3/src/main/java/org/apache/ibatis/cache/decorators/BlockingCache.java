@@ -0,0 +1,161 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+
+/**
+ * Single-flight cache decorator.
+ * <p>
+ * The first thread that misses a key loads it from the database. The other threads that miss the same key wait until
+ * the value is put or removed and then read it from the cache, so a flushed hot entry is only loaded once. A
+ * {@link TransactionalCache} puts the value as soon as its query completes, and removes the key if the query fails,
+ * so the waiting threads do not depend on when the loader's transaction ends. A thread that waits longer than the
+ * timeout falls back to loading the value itself.
+ * <p>
+ * It must be the outermost decorator, as a thread waits inside getObject. For the same reason it does not expose the
+ * read/write lock of its delegate, which is synchronized by a SynchronizedCache: its own lock does not hold the readers,
+ * and only excludes the writers from each other.
+ */
+public class BlockingCache implements Cache {
+
+  private final Cache delegate;
+  private final ConcurrentHashMap<Object, Flight> flights;
+  private final ReadWriteLock readWriteLock;
+  private long timeout;
+
+  public BlockingCache(Cache delegate) {
+    this.delegate = delegate;
+    this.flights = new ConcurrentHashMap<Object, Flight>();
+    this.readWriteLock = new ExclusiveWriteLock();
+  }
+
+  public String getId() {
+    return delegate.getId();
+  }
+
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  public void putObject(Object key, Object value) {
+    try {
+      delegate.putObject(key, value);
+    } finally {
+      release(key);
+    }
+  }
+
+  public Object getObject(Object key) {
+    long deadline = timeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : 0;
+    while (true) {
+      Object value = delegate.getObject(key);
+      if (value != null) {
+        return value;
+      }
+      Flight flight = flights.get(key);
+      if (flight == null) {
+        flight = new Flight();
+        Flight loading = flights.putIfAbsent(key, flight);
+        if (loading == null) {
+          // this thread loads the value, unless it was put meanwhile
+          value = delegate.getObject(key);
+          if (value != null) {
+            release(key);
+          }
+          return value;
+        }
+        flight = loading;
+      }
+      if (flight.loader == Thread.currentThread() || !flight.await(deadline)) {
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Also called when the transaction that missed the key ends without putting it.
+   */
+  public Object removeObject(Object key) {
+    try {
+      return delegate.removeObject(key);
+    } finally {
+      release(key);
+    }
+  }
+
+  public void clear() {
+    delegate.clear();
+  }
+
+  public ReadWriteLock getReadWriteLock() {
+    return readWriteLock;
+  }
+
+  /**
+   * @param timeout the maximum time in milliseconds to wait for another thread to load a key, 0 to wait until it is loaded
+   */
+  public void setTimeout(long timeout) {
+    this.timeout = timeout;
+  }
+
+  public long getTimeout() {
+    return timeout;
+  }
+
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+  private void release(Object key) {
+    Flight flight = flights.remove(key);
+    if (flight != null) {
+      flight.latch.countDown();
+    }
+  }
+
+  private static final class Flight {
+
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private final Thread loader = Thread.currentThread();
+
+    /**
+     * @return false if the deadline passed or the thread was interrupted
+     */
+    private boolean await(long deadline) {
+      try {
+        if (deadline == 0) {
+          latch.await();
+          return true;
+        }
+        return latch.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,390 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.InvalidationTransport;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * Cache decorator that sends the invalidations of this cache to the same cache of the other nodes of a cluster.
+ * <p>
+ * Clearing the cache or invalidating tags is applied locally and then published on the {@link Bus}; the other nodes
+ * apply it to their local delegate without publishing it again. Puts and key removals stay local. The transport may
+ * lose messages, so each node also sends periodic heartbeats with the number of its last message, and a node that
+ * detects a gap in the messages of another node, or that stops hearing from it, clears all of its caches.
+ */
+public class BroadcastCache implements Cache {
+
+  private final Cache delegate;
+  private final TaggedCache taggedCache;
+  private Bus bus;
+
+  public BroadcastCache(Cache delegate) {
+    this.delegate = delegate;
+    this.taggedCache = delegate instanceof TaggedCache ? (TaggedCache) delegate : null;
+  }
+
+  public void setBus(Bus bus) {
+    this.bus = bus;
+    bus.register(this);
+  }
+
+  public String getId() {
+    return delegate.getId();
+  }
+
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  public void putObject(Object key, Object value) {
+    delegate.putObject(key, value);
+  }
+
+  /**
+   * @param tags the tags the entry depends on, or null if it depends on anything
+   */
+  public void putObject(Object key, Object value, Collection<String> tags) {
+    if (taggedCache != null) {
+      taggedCache.putObject(key, value, tags);
+    } else {
+      delegate.putObject(key, value);
+    }
+  }
+
+  public Object getObject(Object key) {
+    return delegate.getObject(key);
+  }
+
+  public Object removeObject(Object key) {
+    return delegate.removeObject(key);
+  }
+
+  public void clear() {
+    delegate.clear();
+    if (bus != null) {
+      bus.publish(getId(), null, false);
+    }
+  }
+
+  /**
+   * Evicts the entries that depend on any of the tags, here and on the other nodes.
+   *
+   * @param untagged whether to evict the entries put without tags too
+   */
+  public void invalidate(Collection<String> tags, boolean untagged) {
+    if (taggedCache == null) {
+      clear();
+      return;
+    }
+    taggedCache.invalidate(tags, untagged);
+    if (bus != null) {
+      bus.publish(getId(), tags, untagged);
+    }
+  }
+
+  public ReadWriteLock getReadWriteLock() {
+    return delegate.getReadWriteLock();
+  }
+
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+  Cache getDelegate() {
+    return delegate;
+  }
+
+  private void apply(List<String> tags, boolean untagged) {
+    Lock lock = delegate.getReadWriteLock().writeLock();
+    lock.lock();
+    try {
+      if (tags == null || taggedCache == null) {
+        delegate.clear();
+      } else {
+        taggedCache.invalidate(tags, untagged);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Publishes and receives the invalidations of all the caches of a node.
+   * <p>
+   * The transport is opened, and the heartbeats started, when the first cache is registered, and both are stopped by
+   * {@link #close()}.
+   */
+  public static class Bus implements InvalidationTransport.Receiver {
+
+    private static final Log log = LogFactory.getLog(Bus.class);
+
+    public static final long DEFAULT_HEARTBEAT_INTERVAL = 5000;
+    public static final long DEFAULT_MAX_SILENCE = 15000;
+
+    private static final byte VERSION = 2;
+    private static final byte INVALIDATION = 0;
+    private static final byte HEARTBEAT = 1;
+    // larger invalidations are sent as a clear so they fit in a datagram
+    private static final int MAX_MESSAGE_SIZE = 8192;
+
+    private final InvalidationTransport transport;
+    private final long heartbeatInterval;
+    private final long maxSilence;
+    private final UUID node = UUID.randomUUID();
+    // guarded by this, so that the messages are sent in order
+    private long sequence;
+    private boolean open;
+    private boolean closed;
+    private Timer timer;
+    private final ConcurrentMap<String, BroadcastCache> caches = new ConcurrentHashMap<String, BroadcastCache>();
+    // guarded by itself
+    private final Map<UUID, Peer> peers = new HashMap<UUID, Peer>();
+
+    public Bus(InvalidationTransport transport) {
+      this(transport, DEFAULT_HEARTBEAT_INTERVAL, DEFAULT_MAX_SILENCE);
+    }
+
+    /**
+     * @param heartbeatInterval milliseconds between two heartbeats, 0 to send them only when {@link #heartbeat()} is
+     *          called
+     * @param maxSilence milliseconds after which the caches are cleared if a node that was heard stays silent
+     */
+    public Bus(InvalidationTransport transport, long heartbeatInterval, long maxSilence) {
+      this.transport = transport;
+      this.heartbeatInterval = heartbeatInterval;
+      this.maxSilence = maxSilence;
+    }
+
+    /**
+     * Stops the heartbeats and closes the transport. The invalidations of the caches are not sent anymore.
+     */
+    public synchronized void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (timer != null) {
+        timer.cancel();
+      }
+      if (open) {
+        transport.close();
+      }
+    }
+
+    public void receive(byte[] message) {
+      try {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(message));
+        if (in.readByte() != VERSION) {
+          log.warn("Ignoring a cache invalidation of an unknown version.");
+          return;
+        }
+        UUID sender = new UUID(in.readLong(), in.readLong());
+        long number = in.readLong();
+        if (node.equals(sender)) {
+          return;
+        }
+        boolean heartbeat = in.readByte() == HEARTBEAT;
+        if (isAfterGap(sender, number, heartbeat)) {
+          log.warn("Cache invalidations from " + sender + " were lost, clearing all caches.");
+          clearAll();
+        }
+        if (heartbeat) {
+          return;
+        }
+        String id = in.readUTF();
+        List<String> tags = null;
+        boolean untagged = false;
+        if (in.readBoolean()) {
+          untagged = in.readBoolean();
+          int count = in.readInt();
+          tags = new ArrayList<String>(count);
+          for (int i = 0; i < count; i++) {
+            tags.add(in.readUTF());
+          }
+        }
+        BroadcastCache cache = caches.get(id);
+        if (cache != null) {
+          cache.apply(tags, untagged);
+        }
+      } catch (IOException e) {
+        log.warn("Ignoring a malformed cache invalidation. Cause: " + e);
+      }
+    }
+
+    /**
+     * Sends the number of the last invalidation of this node, so that the other nodes notice if they lost it, and
+     * clears all the caches if another node has been silent for longer than the max silence.
+     */
+    public void heartbeat() {
+      synchronized (this) {
+        if (!open || closed) {
+          return;
+        }
+        send(encode(sequence, HEARTBEAT, null, null, false), "heartbeat");
+      }
+      boolean silent = false;
+      long now = System.currentTimeMillis();
+      synchronized (peers) {
+        for (Map.Entry<UUID, Peer> entry : peers.entrySet()) {
+          Peer peer = entry.getValue();
+          if (!peer.silent && now - peer.lastHeard > maxSilence) {
+            log.warn("No cache invalidations from " + entry.getKey() + " for " + maxSilence + " ms, clearing all caches.");
+            peer.silent = true;
+            silent = true;
+          }
+        }
+      }
+      if (silent) {
+        clearAll();
+      }
+    }
+
+    synchronized void register(BroadcastCache cache) {
+      caches.put(cache.getId(), cache);
+      if (!open && !closed) {
+        try {
+          transport.open(this);
+        } catch (IOException e) {
+          throw new CacheException("Could not open the cache invalidation transport. Cause: " + e, e);
+        }
+        open = true;
+        if (heartbeatInterval > 0) {
+          timer = new Timer("MyBatis cache invalidation heartbeat", true);
+          timer.schedule(new TimerTask() {
+            public void run() {
+              heartbeat();
+            }
+          }, heartbeatInterval, heartbeatInterval);
+        }
+      }
+    }
+
+    synchronized void publish(String id, Collection<String> tags, boolean untagged) {
+      if (!open || closed) {
+        return;
+      }
+      long number = ++sequence;
+      byte[] message = encode(number, INVALIDATION, id, tags, untagged);
+      if (message.length > MAX_MESSAGE_SIZE && tags != null) {
+        message = encode(number, INVALIDATION, id, null, false);
+      }
+      send(message, "invalidation of cache " + id);
+    }
+
+    private void send(byte[] message, String description) {
+      try {
+        transport.send(message);
+      } catch (IOException e) {
+        log.warn("Could not publish the " + description + ". Cause: " + e);
+      }
+    }
+
+    private byte[] encode(long number, byte type, String id, Collection<String> tags, boolean untagged) {
+      try {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        out.writeLong(node.getMostSignificantBits());
+        out.writeLong(node.getLeastSignificantBits());
+        out.writeLong(number);
+        out.writeByte(type);
+        if (type == INVALIDATION) {
+          out.writeUTF(id);
+          out.writeBoolean(tags != null);
+          if (tags != null) {
+            out.writeBoolean(untagged);
+            out.writeInt(tags.size());
+            for (String tag : tags) {
+              out.writeUTF(tag);
+            }
+          }
+        }
+        out.flush();
+        return bytes.toByteArray();
+      } catch (IOException e) {
+        // writing to a byte array does not fail
+        throw new CacheException("Could not encode a cache invalidation. Cause: " + e, e);
+      }
+    }
+
+    private void clearAll() {
+      for (BroadcastCache cache : caches.values()) {
+        cache.apply(null, false);
+      }
+    }
+
+    /**
+     * An invalidation carries its own number and a heartbeat the number of the last invalidation sent. Late and
+     * duplicate messages are applied again, which is harmless.
+     */
+    private boolean isAfterGap(UUID sender, long number, boolean heartbeat) {
+      long last = heartbeat ? number : number - 1;
+      synchronized (peers) {
+        Peer peer = peers.get(sender);
+        if (peer == null) {
+          peers.put(sender, new Peer(number));
+          return false;
+        }
+        peer.lastHeard = System.currentTimeMillis();
+        peer.silent = false;
+        boolean gap = last > peer.sequence;
+        if (number > peer.sequence) {
+          peer.sequence = number;
+        }
+        return gap;
+      }
+    }
+
+    private static class Peer {
+
+      long sequence;
+      long lastHeard = System.currentTimeMillis();
+      boolean silent;
+
+      Peer(long sequence) {
+        this.sequence = sequence;
+      }
+    }
+
+  }
+
+}
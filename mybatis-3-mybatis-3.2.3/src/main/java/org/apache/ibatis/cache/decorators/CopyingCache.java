@@ -0,0 +1,88 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CopyStrategy;
+import org.apache.ibatis.cache.impl.ReflectionCopyStrategy;
+import org.apache.ibatis.io.Resources;
+
+/**
+ * Stores and returns copies of the values, so that changes made by a caller are not seen by the others.
+ */
+public class CopyingCache implements Cache {
+
+  private Cache delegate;
+  private CopyStrategy copyStrategy;
+
+  public CopyingCache(Cache delegate) {
+    this(delegate, new ReflectionCopyStrategy());
+  }
+
+  public CopyingCache(Cache delegate, CopyStrategy copyStrategy) {
+    this.delegate = delegate;
+    this.copyStrategy = copyStrategy;
+  }
+
+  public String getId() {
+    return delegate.getId();
+  }
+
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  public void putObject(Object key, Object object) {
+    delegate.putObject(key, copyStrategy.copyForWrite(object));
+  }
+
+  public Object getObject(Object key) {
+    Object object = delegate.getObject(key);
+    return object == null ? null : copyStrategy.copyForRead(object);
+  }
+
+  public Object removeObject(Object key) {
+    return delegate.removeObject(key);
+  }
+
+  public void clear() {
+    delegate.clear();
+  }
+
+  public ReadWriteLock getReadWriteLock() {
+    return delegate.getReadWriteLock();
+  }
+
+  public void setCopyStrategy(String copyStrategy) {
+    try {
+      this.copyStrategy = (CopyStrategy) Resources.classForName(copyStrategy).newInstance();
+    } catch (Exception e) {
+      throw new CacheException("Error creating copy strategy " + copyStrategy + " for cache " + getId() + ".  Cause: " + e, e);
+    }
+  }
+
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+}
@@ -0,0 +1,68 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lock returned by decorators that are thread safe on their own and must not serialize their readers.
+ * <p>
+ * The read lock does nothing, but the write lock still excludes the other writers, so a transaction commit or a
+ * refresh that checks an entry and then writes it is not interleaved with another commit.
+ */
+final class ExclusiveWriteLock implements ReadWriteLock {
+
+  private static final Lock NO_LOCK = new NoLock();
+
+  private final Lock writeLock = new ReentrantLock();
+
+  public Lock readLock() {
+    return NO_LOCK;
+  }
+
+  public Lock writeLock() {
+    return writeLock;
+  }
+
+  private static final class NoLock implements Lock {
+
+    public void lock() {
+    }
+
+    public void lockInterruptibly() {
+    }
+
+    public boolean tryLock() {
+      return true;
+    }
+
+    public boolean tryLock(long time, TimeUnit unit) {
+      return true;
+    }
+
+    public void unlock() {
+    }
+
+    public Condition newCondition() {
+      throw new UnsupportedOperationException("NoLock does not support conditions");
+    }
+  }
+
+}
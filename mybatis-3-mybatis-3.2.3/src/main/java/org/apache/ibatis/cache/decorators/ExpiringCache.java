@@ -0,0 +1,241 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheMetrics;
+
+/**
+ * Cache decorator that expires each entry on its own.
+ * <p>
+ * An entry expires expireAfterWrite milliseconds after it was put, or expireAfterAccess milliseconds after it was
+ * last read, whichever comes first; 0 disables either limit. Each lifetime is shortened by a random fraction of up
+ * to jitter (0.1 by default), so the entries put together do not expire together. When refreshAhead is set, an entry
+ * read after that fraction of its write lifetime can be claimed once with {@link #claimRefresh(Object)} to be
+ * reloaded before it expires.
+ */
+public class ExpiringCache implements Cache {
+
+  // the keys whose entries were evicted by the delegate are found when they are read, or swept once expired
+  private static final int SWEEP_SLACK = 1024;
+
+  private final Cache delegate;
+  private final ConcurrentMap<Object, Expiry> expiries;
+  private final Random random;
+  private long expireAfterWrite;
+  private long expireAfterAccess;
+  private double jitter;
+  private double refreshAhead;
+  private CacheMetrics metrics;
+  // the number of expiries above which the expired ones are swept, raised when a sweep finds few of them
+  private volatile int sweepThreshold = SWEEP_SLACK;
+
+  public ExpiringCache(Cache delegate) {
+    this.delegate = delegate;
+    this.expiries = new ConcurrentHashMap<Object, Expiry>();
+    this.random = new Random();
+    this.jitter = 0.1;
+  }
+
+  public void setExpireAfterWrite(long expireAfterWrite) {
+    this.expireAfterWrite = expireAfterWrite;
+  }
+
+  public void setExpireAfterAccess(long expireAfterAccess) {
+    this.expireAfterAccess = expireAfterAccess;
+  }
+
+  public void setJitter(double jitter) {
+    if (jitter < 0 || jitter >= 1) {
+      throw new IllegalArgumentException("Jitter must be at least 0 and less than 1, but was " + jitter);
+    }
+    this.jitter = jitter;
+  }
+
+  /**
+   * @param refreshAhead the fraction of the write lifetime after which a read entry is due for a refresh, 0 for never
+   */
+  public void setRefreshAhead(double refreshAhead) {
+    if (refreshAhead < 0 || refreshAhead >= 1) {
+      throw new IllegalArgumentException("Refresh ahead must be at least 0 and less than 1, but was " + refreshAhead);
+    }
+    this.refreshAhead = refreshAhead;
+  }
+
+  public boolean isRefreshAhead() {
+    return refreshAhead > 0 && expireAfterWrite > 0;
+  }
+
+  public void setMetrics(CacheMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public String getId() {
+    return delegate.getId();
+  }
+
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  public void putObject(Object key, Object value) {
+    long now = System.currentTimeMillis();
+    long writeDeadline = Long.MAX_VALUE;
+    long refreshTime = Long.MAX_VALUE;
+    if (expireAfterWrite > 0) {
+      long lifetime = jittered(expireAfterWrite);
+      writeDeadline = now + lifetime;
+      if (refreshAhead > 0) {
+        refreshTime = now + (long) (lifetime * refreshAhead);
+      }
+    }
+    Expiry expiry = new Expiry(writeDeadline, refreshTime);
+    if (expireAfterAccess > 0) {
+      expiry.accessDeadline = now + jittered(expireAfterAccess);
+    }
+    expiries.put(key, expiry);
+    delegate.putObject(key, value);
+    if (expiries.size() > Math.max(sweepThreshold, 2 * delegate.getSize() + SWEEP_SLACK)) {
+      sweep(now);
+    }
+  }
+
+  public Object getObject(Object key) {
+    Expiry expiry = expiries.get(key);
+    if (expiry == null) {
+      return delegate.getObject(key);
+    }
+    long now = System.currentTimeMillis();
+    if (expiry.isExpired(now)) {
+      expire(key, expiry);
+      return null;
+    }
+    Object value = delegate.getObject(key);
+    if (value == null) {
+      expiries.remove(key);
+    } else if (expireAfterAccess > 0) {
+      expiry.accessDeadline = now + jittered(expireAfterAccess);
+    }
+    return value;
+  }
+
+  public Object removeObject(Object key) {
+    expiries.remove(key);
+    return delegate.removeObject(key);
+  }
+
+  public void clear() {
+    expiries.clear();
+    delegate.clear();
+  }
+
+  /**
+   * @return true if the entry is due for a refresh and no one claimed it since it was put
+   */
+  public boolean claimRefresh(Object key) {
+    Expiry expiry = expiries.get(key);
+    if (expiry == null) {
+      return false;
+    }
+    long now = System.currentTimeMillis();
+    if (now < expiry.refreshTime || expiry.isExpired(now)) {
+      return false;
+    }
+    synchronized (expiry) {
+      if (expiry.refreshing) {
+        return false;
+      }
+      expiry.refreshing = true;
+      return true;
+    }
+  }
+
+  /**
+   * @return false if the claimed entry was removed or put again since it was claimed
+   */
+  public boolean isRefreshing(Object key) {
+    Expiry expiry = expiries.get(key);
+    return expiry != null && expiry.refreshing;
+  }
+
+  public ReadWriteLock getReadWriteLock() {
+    return delegate.getReadWriteLock();
+  }
+
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+  private long jittered(long lifetime) {
+    if (jitter == 0) {
+      return lifetime;
+    }
+    double fraction;
+    synchronized (random) {
+      fraction = random.nextDouble();
+    }
+    return lifetime - (long) (lifetime * jitter * fraction);
+  }
+
+  private void expire(Object key, Expiry expiry) {
+    if (expiries.remove(key, expiry)) {
+      delegate.removeObject(key);
+      if (metrics != null) {
+        metrics.recordEviction();
+      }
+    }
+  }
+
+  /**
+   * Only expired entries are removed. The next sweep waits until the expiries double, so the puts that find
+   * few entries expired do not scan them all again.
+   */
+  private void sweep(long now) {
+    for (Map.Entry<Object, Expiry> entry : expiries.entrySet()) {
+      if (entry.getValue().isExpired(now)) {
+        expire(entry.getKey(), entry.getValue());
+      }
+    }
+    sweepThreshold = 2 * expiries.size() + SWEEP_SLACK;
+  }
+
+  private static class Expiry {
+    private final long writeDeadline;
+    private final long refreshTime;
+    private volatile long accessDeadline = Long.MAX_VALUE;
+    private volatile boolean refreshing;
+
+    private Expiry(long writeDeadline, long refreshTime) {
+      this.writeDeadline = writeDeadline;
+      this.refreshTime = refreshTime;
+    }
+
+    private boolean isExpired(long now) {
+      return now >= writeDeadline || now >= accessDeadline;
+    }
+  }
+
+}
@@ -19,6 +19,7 @@ import java.util.LinkedList;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheMetrics;
 
 /*
  * FIFO (first in, first out) cache decorator
@@ -28,6 +29,7 @@ public class FifoCache implements Cache {
   private final Cache delegate;
   private final LinkedList<Object> keyList;
   private int size;
+  private CacheMetrics metrics;
 
   public FifoCache(Cache delegate) {
     this.delegate = delegate;
@@ -35,6 +37,10 @@ public class FifoCache implements Cache {
     this.size = 1024;
   }
 
+  public void setMetrics(CacheMetrics metrics) {
+    this.metrics = metrics;
+  }
+
   public String getId() {
     return delegate.getId();
   }
@@ -74,6 +80,9 @@ public class FifoCache implements Cache {
     if (keyList.size() > size) {
       Object oldestKey = keyList.removeFirst();
       delegate.removeObject(oldestKey);
+      if (metrics != null) {
+        metrics.recordEviction();
+      }
     }
   }
 
@@ -18,6 +18,10 @@ package org.apache.ibatis.cache.decorators;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheMetrics;
+import org.apache.ibatis.cache.Weigher;
+import org.apache.ibatis.cache.impl.ResultSizeWeigher;
+import org.apache.ibatis.cache.impl.StripedCacheMetrics;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 
@@ -26,11 +30,17 @@ public class LoggingCache implements Cache {
   private static final Log log = LogFactory.getLog(LoggingCache.class);
 
   private Cache delegate;
-  protected int requests = 0;
-  protected int hits = 0;
+  private CacheMetrics metrics;
+  private Weigher weigher;
 
   public LoggingCache(Cache delegate) {
     this.delegate = delegate;
+    this.metrics = new StripedCacheMetrics();
+    this.weigher = new ResultSizeWeigher();
+  }
+
+  public void setMetrics(CacheMetrics metrics) {
+    this.metrics = metrics;
   }
 
   public String getId() {
@@ -42,14 +52,16 @@ public class LoggingCache implements Cache {
   }
 
   public void putObject(Object key, Object object) {
+    metrics.recordPut(weigher.weigh(key, object));
     delegate.putObject(key, object);
   }
 
   public Object getObject(Object key) {
-    requests++;
     final Object value = delegate.getObject(key);
     if (value != null) {
-      hits++;
+      metrics.recordHit();
+    } else {
+      metrics.recordMiss();
     }
     if (log.isDebugEnabled()) {
       log.debug("Cache Hit Ratio [" + getId() + "]: " + getHitRatio());
@@ -78,7 +90,8 @@ public class LoggingCache implements Cache {
   }
 
   private double getHitRatio() {
-    return (double) hits / (double) requests;
+    long hits = metrics.getHits();
+    return (double) hits / (double) (hits + metrics.getMisses());
   }
 
 }
@@ -21,6 +21,7 @@ import java.util.Map;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheMetrics;
 
 /*
  * Lru (first in, first out) cache decorator
@@ -29,6 +30,7 @@ public class LruCache implements Cache {
 
   private final Cache delegate;
   private Map<Object, Object> keyMap;
+  private CacheMetrics metrics;
   private Object eldestKey;
 
   public LruCache(Cache delegate) {
@@ -36,6 +38,10 @@ public class LruCache implements Cache {
     setSize(1024);
   }
 
+  public void setMetrics(CacheMetrics metrics) {
+    this.metrics = metrics;
+  }
+
   public String getId() {
     return delegate.getId();
   }
@@ -87,6 +93,9 @@ public class LruCache implements Cache {
     keyMap.put(key, key);
     if (eldestKey != null) {
       delegate.removeObject(eldestKey);
+      if (metrics != null) {
+        metrics.recordEviction();
+      }
       eldestKey = null;
     }
   }
@@ -21,6 +21,7 @@ import java.util.LinkedList;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheMetrics;
 
 /**
  * Soft Reference cache decorator
@@ -31,6 +32,7 @@ public class SoftCache implements Cache {
   private final ReferenceQueue<Object> queueOfGarbageCollectedEntries;
   private final Cache delegate;
   private int numberOfHardLinks;
+  private CacheMetrics metrics;
 
   public SoftCache(Cache delegate) {
     this.delegate = delegate;
@@ -39,6 +41,10 @@ public class SoftCache implements Cache {
     this.queueOfGarbageCollectedEntries = new ReferenceQueue<Object>();
   }
 
+  public void setMetrics(CacheMetrics metrics) {
+    this.metrics = metrics;
+  }
+
   public String getId() {
     return delegate.getId();
   }
@@ -99,6 +105,9 @@ public class SoftCache implements Cache {
     SoftEntry sv;
     while ((sv = (SoftEntry) queueOfGarbageCollectedEntries.poll()) != null) {
       delegate.removeObject(sv.key);
+      if (metrics != null) {
+        metrics.recordEviction();
+      }
     }
   }
 
@@ -0,0 +1,285 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+
+/**
+ * Cache decorator that evicts entries by tag rather than clearing the whole cache.
+ * <p>
+ * A tag is either a name, such as a table, or a name and a key separated by a colon, such as {@code blog:5}.
+ * Invalidating {@code blog:5} evicts the entries tagged {@code blog:5} or {@code blog}; invalidating {@code blog}
+ * evicts every entry tagged with that name. Entries put without tags depend on anything, so they are evicted too
+ * when the invalidation comes from a statement of this cache.
+ * <p>
+ * The index is only kept once {@link #startIndexing()} is called, which the configuration does for the caches of the
+ * statements that declare tags, or once an entry is put with tags. A cache whose statements declare no tags is thus
+ * neither indexed nor locked. As the eviction policy below does not report the keys it evicts, the index keeps at most twice the
+ * size of the cache plus {@value #INDEX_SLACK} keys; the oldest keys beyond that are evicted with their entries.
+ */
+public class TaggedCache implements Cache {
+
+  private static final int INDEX_SLACK = 1024;
+
+  private final Cache delegate;
+  private final Object indexLock = new Object();
+  private volatile boolean indexing;
+  /* whether entries were put before indexing started, these entries have no tags */
+  private volatile boolean unindexed;
+
+  // guarded by indexLock
+  private final Map<Object, String[]> tagsByKey = new LinkedHashMap<Object, String[]>();
+  private final Map<String, Set<Object>> keysByTag = new HashMap<String, Set<Object>>();
+  private final Map<String, Set<Object>> keysByName = new HashMap<String, Set<Object>>();
+
+  public TaggedCache(Cache delegate) {
+    this.delegate = delegate;
+  }
+
+  public String getId() {
+    return delegate.getId();
+  }
+
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  public void putObject(Object key, Object value) {
+    putObject(key, value, null);
+  }
+
+  /**
+   * @param tags the tags the entry depends on, or null if it depends on anything
+   */
+  public void putObject(Object key, Object value, Collection<String> tags) {
+    if (!indexing && (tags == null || tags.isEmpty())) {
+      unindexed = true;
+      delegate.putObject(key, value);
+      return;
+    }
+    synchronized (indexLock) {
+      indexing = true;
+      delegate.putObject(key, value);
+      unindex(key);
+      index(key, tags == null ? new String[0] : tags.toArray(new String[tags.size()]));
+      trimIndex();
+    }
+  }
+
+  public Object getObject(Object key) {
+    return delegate.getObject(key);
+  }
+
+  public Object removeObject(Object key) {
+    if (!indexing) {
+      return delegate.removeObject(key);
+    }
+    synchronized (indexLock) {
+      unindex(key);
+      return delegate.removeObject(key);
+    }
+  }
+
+  public void clear() {
+    synchronized (indexLock) {
+      clearIndex();
+      unindexed = false;
+      delegate.clear();
+    }
+  }
+
+  /**
+   * Evicts the entries that depend on any of the tags.
+   *
+   * @param untagged whether to evict the entries put without tags too
+   */
+  public void invalidate(Collection<String> tags, boolean untagged) {
+    if (!indexing) {
+      // every entry is untagged
+      if (untagged) {
+        clear();
+      }
+      return;
+    }
+    synchronized (indexLock) {
+      if (untagged && unindexed) {
+        // the untagged entries put before indexing started are not known
+        clearIndex();
+        unindexed = false;
+        delegate.clear();
+        return;
+      }
+      Set<Object> keys = new LinkedHashSet<Object>();
+      if (untagged && keysByTag.containsKey("")) {
+        keys.addAll(keysByTag.get(""));
+      }
+      for (String tag : tags) {
+        int colon = tag.indexOf(':');
+        Set<Object> tagged = colon < 0 ? keysByName.get(tag) : keysByTag.get(tag);
+        if (tagged != null) {
+          keys.addAll(tagged);
+        }
+        if (colon >= 0) {
+          Set<Object> taggedByName = keysByTag.get(tag.substring(0, colon));
+          if (taggedByName != null) {
+            keys.addAll(taggedByName);
+          }
+        }
+      }
+      for (Object key : keys) {
+        unindex(key);
+        delegate.removeObject(key);
+      }
+    }
+  }
+
+  /**
+   * Indexes the entries put from now on. The entries put before have no tags and are evicted by a clear when
+   * untagged entries are invalidated.
+   */
+  public void startIndexing() {
+    indexing = true;
+  }
+
+  public ReadWriteLock getReadWriteLock() {
+    return delegate.getReadWriteLock();
+  }
+
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+  public Cache getDelegate() {
+    return delegate;
+  }
+
+  /**
+   * @return the TaggedCache of a cache built by CacheBuilder, or null
+   */
+  public static TaggedCache unwrap(Cache cache) {
+    if (cache instanceof BroadcastCache) {
+      cache = ((BroadcastCache) cache).getDelegate();
+    }
+    return cache instanceof TaggedCache ? (TaggedCache) cache : null;
+  }
+
+  /**
+   * @return true if invalidating the first tags would evict an entry depending on the second ones
+   */
+  public static boolean matches(Collection<String> invalidatedTags, boolean untagged, Collection<String> entryTags) {
+    if (entryTags == null || entryTags.isEmpty()) {
+      return untagged;
+    }
+    for (String invalidated : invalidatedTags) {
+      String invalidatedName = name(invalidated);
+      for (String tag : entryTags) {
+        if (invalidatedName.equals(name(tag))
+            && (invalidated.equals(invalidatedName) || tag.equals(invalidatedName) || invalidated.equals(tag))) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static String name(String tag) {
+    int colon = tag.indexOf(':');
+    return colon < 0 ? tag : tag.substring(0, colon);
+  }
+
+  private void index(Object key, String[] tags) {
+    tagsByKey.put(key, tags);
+    if (tags.length == 0) {
+      add(keysByTag, "", key);
+    }
+    for (String tag : tags) {
+      add(keysByTag, tag, key);
+      add(keysByName, name(tag), key);
+    }
+  }
+
+  private void unindex(Object key) {
+    String[] tags = tagsByKey.remove(key);
+    if (tags == null) {
+      return;
+    }
+    if (tags.length == 0) {
+      remove(keysByTag, "", key);
+    }
+    for (String tag : tags) {
+      remove(keysByTag, tag, key);
+      remove(keysByName, name(tag), key);
+    }
+  }
+
+  private void trimIndex() {
+    int maximum = 2 * delegate.getSize() + INDEX_SLACK;
+    if (tagsByKey.size() <= maximum) {
+      return;
+    }
+    List<Object> eldest = new ArrayList<Object>();
+    Iterator<Object> iterator = tagsByKey.keySet().iterator();
+    for (int i = tagsByKey.size() - maximum; i > 0; i--) {
+      eldest.add(iterator.next());
+    }
+    for (Object key : eldest) {
+      unindex(key);
+      delegate.removeObject(key);
+    }
+  }
+
+  private void clearIndex() {
+    tagsByKey.clear();
+    keysByTag.clear();
+    keysByName.clear();
+  }
+
+  private static void add(Map<String, Set<Object>> index, String tag, Object key) {
+    Set<Object> keys = index.get(tag);
+    if (keys == null) {
+      keys = new HashSet<Object>();
+      index.put(tag, keys);
+    }
+    keys.add(key);
+  }
+
+  private static void remove(Map<String, Set<Object>> index, String tag, Object key) {
+    Set<Object> keys = index.get(tag);
+    if (keys != null) {
+      keys.remove(key);
+      if (keys.isEmpty()) {
+        index.remove(tag);
+      }
+    }
+  }
+
+}
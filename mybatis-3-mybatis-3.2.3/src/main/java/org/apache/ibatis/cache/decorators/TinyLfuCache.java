@@ -0,0 +1,451 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheMetrics;
+
+/**
+ * W-TinyLFU cache decorator that can be read concurrently.
+ * <p>
+ * New entries go into a small LRU window. Entries evicted from the window compete with the eldest entries of the main
+ * segmented LRU, and the one used least often, according to a count-min sketch, is evicted. This keeps a recency
+ * based hit ratio on bursts while resisting scans that flush a plain LRU.
+ * <p>
+ * Reads are served from a concurrent map and recorded in striped, lossy buffers that are replayed under the
+ * eviction lock by the writers or when a buffer fills up, so readers never wait on a global lock. As this decorator
+ * keeps the values itself, the cache built on top of it is not wrapped in a SynchronizedCache, and its read/write lock
+ * only excludes the writers from each other.
+ */
+public class TinyLfuCache implements Cache {
+
+  private static final int WINDOW = 0;
+  private static final int PROBATION = 1;
+  private static final int PROTECTED = 2;
+  private static final int DEAD = 3;
+
+  private static final int READ_BUFFER_STRIPES = ceilingPowerOfTwo(Runtime.getRuntime().availableProcessors());
+
+  private final Cache delegate;
+  private final ConcurrentHashMap<Object, Node> data;
+  private final ReadBuffer[] readBuffers;
+  private final ReentrantLock evictionLock;
+  private final ReadWriteLock readWriteLock;
+
+  // guarded by evictionLock
+  private final AccessOrderQueue window;
+  private final AccessOrderQueue probation;
+  private final AccessOrderQueue protectedQueue;
+  private FrequencySketch sketch;
+  private int maximumSize;
+  private int windowMaximum;
+  private int protectedMaximum;
+  private CacheMetrics metrics;
+
+  public TinyLfuCache(Cache delegate) {
+    this.delegate = delegate;
+    this.data = new ConcurrentHashMap<Object, Node>();
+    this.readBuffers = new ReadBuffer[READ_BUFFER_STRIPES];
+    for (int i = 0; i < readBuffers.length; i++) {
+      readBuffers[i] = new ReadBuffer();
+    }
+    this.evictionLock = new ReentrantLock();
+    this.readWriteLock = new ExclusiveWriteLock();
+    this.window = new AccessOrderQueue();
+    this.probation = new AccessOrderQueue();
+    this.protectedQueue = new AccessOrderQueue();
+    setSize(1024);
+  }
+
+  public void setMetrics(CacheMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public String getId() {
+    return delegate.getId();
+  }
+
+  public int getSize() {
+    return data.size();
+  }
+
+  public void setSize(int size) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("TinyLfuCache size must be positive but was " + size);
+    }
+    evictionLock.lock();
+    try {
+      maximumSize = size;
+      windowMaximum = Math.max(1, size / 100);
+      protectedMaximum = (int) ((size - windowMaximum) * 0.8);
+      sketch = new FrequencySketch(size);
+      for (Node node = window.first(); node != null; node = window.first()) {
+        window.remove(node);
+        probation.add(node, PROBATION);
+      }
+      for (Node node = protectedQueue.first(); node != null; node = protectedQueue.first()) {
+        protectedQueue.remove(node);
+        probation.add(node, PROBATION);
+      }
+      evict();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  public void putObject(Object key, Object value) {
+    evictionLock.lock();
+    try {
+      drainReadBuffers();
+      delegate.putObject(key, value);
+      Node node = data.get(key);
+      if (node != null) {
+        node.value = value;
+        onAccess(node);
+      } else {
+        node = new Node(key, value);
+        sketch.increment(key);
+        data.put(key, node);
+        window.add(node, WINDOW);
+        evict();
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  public Object getObject(Object key) {
+    Node node = data.get(key);
+    if (node == null) {
+      return null;
+    }
+    ReadBuffer buffer = readBuffers[(int) Thread.currentThread().getId() & (READ_BUFFER_STRIPES - 1)];
+    if (buffer.offer(node) && evictionLock.tryLock()) {
+      try {
+        drainReadBuffers();
+      } finally {
+        evictionLock.unlock();
+      }
+    }
+    return node.value;
+  }
+
+  public Object removeObject(Object key) {
+    evictionLock.lock();
+    try {
+      Node node = data.remove(key);
+      if (node != null) {
+        unlink(node);
+      }
+      return delegate.removeObject(key);
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  public void clear() {
+    evictionLock.lock();
+    try {
+      drainReadBuffers();
+      clear(window);
+      clear(probation);
+      clear(protectedQueue);
+      data.clear();
+      delegate.clear();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  public ReadWriteLock getReadWriteLock() {
+    return readWriteLock;
+  }
+
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+  private void drainReadBuffers() {
+    for (ReadBuffer buffer : readBuffers) {
+      buffer.drainTo(this);
+    }
+  }
+
+  private void onAccess(Node node) {
+    if (node.queue == DEAD) {
+      return;
+    }
+    sketch.increment(node.key);
+    if (node.queue == WINDOW) {
+      window.moveToLast(node);
+    } else if (node.queue == PROBATION) {
+      probation.remove(node);
+      protectedQueue.add(node, PROTECTED);
+      while (protectedQueue.size > protectedMaximum) {
+        Node demoted = protectedQueue.first();
+        protectedQueue.remove(demoted);
+        probation.add(demoted, PROBATION);
+      }
+    } else {
+      protectedQueue.moveToLast(node);
+    }
+  }
+
+  private void evict() {
+    while (window.size > windowMaximum) {
+      Node candidate = window.first();
+      window.remove(candidate);
+      probation.add(candidate, PROBATION);
+    }
+    while (data.size() > maximumSize) {
+      Node victim = probation.first();
+      Node candidate = probation.last();
+      if (victim == null) {
+        victim = protectedQueue.first() != null ? protectedQueue.first() : window.first();
+      } else if (victim != candidate && sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+        victim = candidate;
+      }
+      data.remove(victim.key);
+      unlink(victim);
+      delegate.removeObject(victim.key);
+      if (metrics != null) {
+        metrics.recordEviction();
+      }
+    }
+  }
+
+  private void unlink(Node node) {
+    if (node.queue == WINDOW) {
+      window.remove(node);
+    } else if (node.queue == PROBATION) {
+      probation.remove(node);
+    } else if (node.queue == PROTECTED) {
+      protectedQueue.remove(node);
+    }
+    node.queue = DEAD;
+  }
+
+  private void clear(AccessOrderQueue queue) {
+    for (Node node = queue.first(); node != null; node = queue.first()) {
+      unlink(node);
+    }
+  }
+
+  private static int ceilingPowerOfTwo(int x) {
+    return 1 << (32 - Integer.numberOfLeadingZeros(Math.max(1, x - 1)));
+  }
+
+  private static final class Node {
+
+    private final Object key;
+    private volatile Object value;
+
+    // guarded by evictionLock
+    private int queue;
+    private Node prev;
+    private Node next;
+
+    private Node(Object key, Object value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  /**
+   * Doubly linked list ordered from the least to the most recently used node.
+   */
+  private static final class AccessOrderQueue {
+
+    private Node head;
+    private Node tail;
+    private int size;
+
+    private Node first() {
+      return head;
+    }
+
+    private Node last() {
+      return tail;
+    }
+
+    private void add(Node node, int queue) {
+      node.queue = queue;
+      node.prev = tail;
+      node.next = null;
+      if (tail == null) {
+        head = node;
+      } else {
+        tail.next = node;
+      }
+      tail = node;
+      size++;
+    }
+
+    private void remove(Node node) {
+      if (node.prev == null) {
+        head = node.next;
+      } else {
+        node.prev.next = node.next;
+      }
+      if (node.next == null) {
+        tail = node.prev;
+      } else {
+        node.next.prev = node.prev;
+      }
+      node.prev = null;
+      node.next = null;
+      size--;
+    }
+
+    private void moveToLast(Node node) {
+      if (node != tail) {
+        int queue = node.queue;
+        remove(node);
+        add(node, queue);
+      }
+    }
+  }
+
+  /**
+   * Ring buffer of recent reads. Reads are dropped when it is full, which only costs some accuracy in the policy.
+   */
+  private static final class ReadBuffer {
+
+    private static final int SIZE = 32;
+    private static final int MASK = SIZE - 1;
+
+    private final AtomicReferenceArray<Node> buffer = new AtomicReferenceArray<Node>(SIZE);
+    private final AtomicLong writeCounter = new AtomicLong();
+    private final AtomicLong readCounter = new AtomicLong();
+
+    /**
+     * @return true if the buffer should be drained
+     */
+    private boolean offer(Node node) {
+      long write = writeCounter.get();
+      long pending = write - readCounter.get();
+      if (pending >= SIZE) {
+        return true;
+      }
+      if (writeCounter.compareAndSet(write, write + 1)) {
+        buffer.set((int) write & MASK, node);
+      }
+      return pending >= SIZE / 2;
+    }
+
+    private void drainTo(TinyLfuCache cache) {
+      long read = readCounter.get();
+      while (true) {
+        int index = (int) read & MASK;
+        Node node = buffer.get(index);
+        if (node == null) {
+          break;
+        }
+        buffer.set(index, null);
+        cache.onAccess(node);
+        read++;
+      }
+      readCounter.set(read);
+    }
+  }
+
+  /**
+   * Count-min sketch of 4-bit counters that are halved once enough increments were recorded, so that the
+   * frequencies follow the recent history.
+   */
+  private static final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private final long[] table;
+    private final int sampleSize;
+    private int size;
+
+    private FrequencySketch(int maximumSize) {
+      int length = ceilingPowerOfTwo(Math.max(8, Math.min(maximumSize, 1 << 30)));
+      this.table = new long[length];
+      this.sampleSize = (int) Math.min(10L * length, Integer.MAX_VALUE);
+    }
+
+    private int frequency(Object key) {
+      int hash = spread(key.hashCode());
+      int start = (hash & 3) << 2;
+      int frequency = Integer.MAX_VALUE;
+      for (int i = 0; i < 4; i++) {
+        int count = (int) ((table[indexOf(hash, i)] >>> ((start + i) << 2)) & 0xfL);
+        frequency = Math.min(frequency, count);
+      }
+      return frequency;
+    }
+
+    private void increment(Object key) {
+      int hash = spread(key.hashCode());
+      int start = (hash & 3) << 2;
+      boolean added = false;
+      for (int i = 0; i < 4; i++) {
+        added |= incrementAt(indexOf(hash, i), start + i);
+      }
+      if (added && ++size == sampleSize) {
+        reset();
+      }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+      int offset = counter << 2;
+      long mask = 0xfL << offset;
+      if ((table[index] & mask) != mask) {
+        table[index] += 1L << offset;
+        return true;
+      }
+      return false;
+    }
+
+    private void reset() {
+      int odd = 0;
+      for (int i = 0; i < table.length; i++) {
+        odd += Long.bitCount(table[i] & ONE_MASK);
+        table[i] = (table[i] >>> 1) & RESET_MASK;
+      }
+      size = (size >>> 1) - (odd >>> 2);
+    }
+
+    private int indexOf(int hash, int i) {
+      long h = (hash + SEEDS[i]) * SEEDS[i];
+      h += h >>> 32;
+      return (int) h & (table.length - 1);
+    }
+
+    private static int spread(int x) {
+      x = ((x >>> 16) ^ x) * 0x45d9f3b;
+      x = ((x >>> 16) ^ x) * 0x45d9f3b;
+      return (x >>> 16) ^ x;
+    }
+  }
+
+}
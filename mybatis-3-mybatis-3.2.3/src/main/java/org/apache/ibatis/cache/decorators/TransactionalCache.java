@@ -15,8 +15,12 @@
  */
 package org.apache.ibatis.cache.decorators;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
@@ -27,12 +31,24 @@ public class TransactionalCache implements Cache {
   private boolean clearOnCommit;
   private Map<Object, AddEntry> entriesToAddOnCommit;
   private Map<Object, RemoveEntry> entriesToRemoveOnCommit;
+  private Set<Object> entriesMissedInCache;
+  private Set<String> tagsToInvalidateOnCommit;
+  private boolean untaggedToInvalidateOnCommit;
+  private BroadcastCache broadcastCache;
+  private TaggedCache taggedCache;
+  private boolean blocking;
 
   public TransactionalCache(Cache delegate) {
     this.delegate = delegate;
     this.clearOnCommit = false;
     this.entriesToAddOnCommit = new HashMap<Object, AddEntry>();
     this.entriesToRemoveOnCommit = new HashMap<Object, RemoveEntry>();
+    this.entriesMissedInCache = new HashSet<Object>();
+    this.tagsToInvalidateOnCommit = new HashSet<String>();
+    this.broadcastCache = delegate instanceof BroadcastCache ? (BroadcastCache) delegate : null;
+    Cache local = broadcastCache != null ? broadcastCache.getDelegate() : delegate;
+    this.taggedCache = local instanceof TaggedCache ? (TaggedCache) local : null;
+    this.blocking = (taggedCache != null ? taggedCache.getDelegate() : local) instanceof BlockingCache;
   }
 
   public String getId() {
@@ -44,7 +60,11 @@ public class TransactionalCache implements Cache {
   }
 
   public Object getObject(Object key) {
-    return delegate.getObject(key);
+    Object object = delegate.getObject(key);
+    if (object == null && blocking) {
+      entriesMissedInCache.add(key);
+    }
+    return object;
   }
 
   public ReadWriteLock getReadWriteLock() {
@@ -52,8 +72,36 @@ public class TransactionalCache implements Cache {
   }
 
   public void putObject(Object key, Object object) {
+    putObject(key, object, null);
+  }
+
+  /**
+   * @param tags the tags the entry depends on, or null if it depends on anything
+   */
+  public void putObject(Object key, Object object, Collection<String> tags) {
     entriesToRemoveOnCommit.remove(key);
-    entriesToAddOnCommit.put(key, new AddEntry(delegate, key, object));
+    AddEntry entry = new AddEntry(delegate, taggedCache, key, object, tags);
+    if (blocking && entriesMissedInCache.remove(key)) {
+      // the key was loaded by this clean session, the sessions waiting for it get it without waiting for the commit
+      entriesToAddOnCommit.remove(key);
+      delegate.getReadWriteLock().writeLock().lock();
+      try {
+        entry.commit();
+      } finally {
+        delegate.getReadWriteLock().writeLock().unlock();
+      }
+    } else {
+      entriesToAddOnCommit.put(key, entry);
+    }
+  }
+
+  /**
+   * Lets the sessions waiting for a key this one missed load it themselves, as this one failed to load it.
+   */
+  public void unlock(Object key) {
+    if (entriesMissedInCache.remove(key)) {
+      delegate.removeObject(key);
+    }
   }
 
   public Object removeObject(Object key) {
@@ -63,10 +111,40 @@ public class TransactionalCache implements Cache {
   }
 
   public void clear() {
+    for (Object key : entriesMissedInCache) {
+      delegate.removeObject(key);
+    }
     reset();
     clearOnCommit = true;
   }
 
+  /**
+   * Evicts on commit the entries that depend on any of the tags.
+   *
+   * @param untagged whether to evict the entries put without tags too
+   * @return false if the cache does not support tags and must be cleared instead
+   */
+  public boolean invalidate(Collection<String> tags, boolean untagged) {
+    if (taggedCache == null) {
+      return false;
+    }
+    for (Iterator<AddEntry> iterator = entriesToAddOnCommit.values().iterator(); iterator.hasNext();) {
+      if (TaggedCache.matches(tags, untagged, iterator.next().tags)) {
+        iterator.remove();
+      }
+    }
+    tagsToInvalidateOnCommit.addAll(tags);
+    untaggedToInvalidateOnCommit |= untagged;
+    return true;
+  }
+
+  /**
+   * @return true if an entry depending on the tags was invalidated by this transaction
+   */
+  public boolean isInvalidated(Collection<String> tags) {
+    return TaggedCache.matches(tagsToInvalidateOnCommit, untaggedToInvalidateOnCommit, tags);
+  }
+
   public void commit() {
     delegate.getReadWriteLock().writeLock().lock();
     try {
@@ -76,10 +154,18 @@ public class TransactionalCache implements Cache {
         for (RemoveEntry entry : entriesToRemoveOnCommit.values()) {
           entry.commit();
         }
+        if (!tagsToInvalidateOnCommit.isEmpty() || untaggedToInvalidateOnCommit) {
+          if (broadcastCache != null) {
+            broadcastCache.invalidate(tagsToInvalidateOnCommit, untaggedToInvalidateOnCommit);
+          } else {
+            taggedCache.invalidate(tagsToInvalidateOnCommit, untaggedToInvalidateOnCommit);
+          }
+        }
       }
       for (AddEntry entry : entriesToAddOnCommit.values()) {
         entry.commit();
       }
+      unlockMissedEntries();
       reset();
     } finally {
       delegate.getReadWriteLock().writeLock().unlock();
@@ -87,6 +173,8 @@ public class TransactionalCache implements Cache {
   }
 
   public void rollback() {
+    entriesToAddOnCommit.clear();
+    unlockMissedEntries();
     reset();
   }
 
@@ -94,21 +182,44 @@ public class TransactionalCache implements Cache {
     clearOnCommit = false;
     entriesToRemoveOnCommit.clear();
     entriesToAddOnCommit.clear();
+    entriesMissedInCache.clear();
+    tagsToInvalidateOnCommit.clear();
+    untaggedToInvalidateOnCommit = false;
+  }
+
+  /**
+   * A blocking cache keeps other sessions waiting for the keys this one missed until they are put or removed.
+   * The keys are put as soon as they are loaded, so these are the keys missed but not loaded.
+   */
+  private void unlockMissedEntries() {
+    for (Object key : entriesMissedInCache) {
+      if (!entriesToAddOnCommit.containsKey(key)) {
+        delegate.removeObject(key);
+      }
+    }
   }
 
   private static class AddEntry {
     private Cache cache;
+    private TaggedCache taggedCache;
     private Object key;
     private Object value;
+    private Collection<String> tags;
 
-    public AddEntry(Cache cache, Object key, Object value) {
+    public AddEntry(Cache cache, TaggedCache taggedCache, Object key, Object value, Collection<String> tags) {
       this.cache = cache;
+      this.taggedCache = taggedCache;
       this.key = key;
       this.value = value;
+      this.tags = tags;
     }
 
     public void commit() {
-      cache.putObject(key, value);
+      if (taggedCache != null) {
+        taggedCache.putObject(key, value, tags);
+      } else {
+        cache.putObject(key, value);
+      }
     }
   }
 
@@ -21,6 +21,7 @@ import java.util.LinkedList;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheMetrics;
 
 /**
  * Weak Reference cache decorator.
@@ -31,6 +32,7 @@ public class WeakCache implements Cache {
   private final ReferenceQueue<Object> queueOfGarbageCollectedEntries;
   private final Cache delegate;
   private int numberOfHardLinks;
+  private CacheMetrics metrics;
 
   public WeakCache(Cache delegate) {
     this.delegate = delegate;
@@ -39,6 +41,10 @@ public class WeakCache implements Cache {
     this.queueOfGarbageCollectedEntries = new ReferenceQueue<Object>();
   }
 
+  public void setMetrics(CacheMetrics metrics) {
+    this.metrics = metrics;
+  }
+
   public String getId() {
     return delegate.getId();
   }
@@ -94,6 +100,9 @@ public class WeakCache implements Cache {
     WeakEntry sv;
     while ((sv = (WeakEntry) queueOfGarbageCollectedEntries.poll()) != null) {
       delegate.removeObject(sv.key);
+      if (metrics != null) {
+        metrics.recordEviction();
+      }
     }
   }
 
@@ -0,0 +1,318 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheMetrics;
+import org.apache.ibatis.cache.Weigher;
+import org.apache.ibatis.cache.impl.ResultSizeWeigher;
+import org.apache.ibatis.io.Resources;
+
+/**
+ * Weight bounded cache decorator.
+ * <p>
+ * Entries are weighed with a {@link Weigher} and the least recently used ones are evicted when the total weight of
+ * this cache exceeds maxWeight, or when the weight of all the caches sharing a {@link Budget} exceeds its maximum.
+ * In the second case the least recently used entries of all these caches are evicted, whichever cache they belong
+ * to. An entry heavier than the bound is not cached.
+ */
+public class WeightedCache implements Cache {
+
+  private final Cache delegate;
+  private final Map<Object, Entry> entries;
+  /* guards the entries and the delegate, which the caches sharing a budget evict from each other */
+  private final ReentrantLock lock = new ReentrantLock();
+  private Weigher weigher;
+  private long maxWeight;
+  private long weight;
+  private Budget budget;
+  private CacheMetrics metrics;
+
+  public WeightedCache(Cache delegate) {
+    this.delegate = delegate;
+    this.entries = new LinkedHashMap<Object, Entry>(16, .75F, true);
+    this.weigher = new ResultSizeWeigher();
+    this.maxWeight = 64L * 1024 * 1024;
+  }
+
+  public void setMetrics(CacheMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public String getId() {
+    return delegate.getId();
+  }
+
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  public void putObject(Object key, Object value) {
+    lock.lock();
+    try {
+      release(key);
+      long entryWeight = weigher.weigh(key, value);
+      if (entryWeight > maxWeight || (budget != null && budget.isTooLow(entryWeight))) {
+        delegate.removeObject(key);
+        return;
+      }
+      delegate.putObject(key, value);
+      entries.put(key, new Entry(entryWeight, tick()));
+      addWeight(entryWeight);
+      evict(key);
+    } finally {
+      lock.unlock();
+    }
+    if (budget != null) {
+      budget.shed(this, key);
+    }
+  }
+
+  public Object getObject(Object key) {
+    lock.lock();
+    try {
+      Entry entry = entries.get(key); // touch
+      if (entry != null) {
+        entry.tick = tick();
+      }
+      return delegate.getObject(key);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public Object removeObject(Object key) {
+    lock.lock();
+    try {
+      release(key);
+      return delegate.removeObject(key);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void clear() {
+    lock.lock();
+    try {
+      addWeight(-weight);
+      entries.clear();
+      delegate.clear();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public ReadWriteLock getReadWriteLock() {
+    return delegate.getReadWriteLock();
+  }
+
+  public long getWeight() {
+    return weight;
+  }
+
+  public long getMaxWeight() {
+    return maxWeight;
+  }
+
+  /**
+   * @param maxWeight the maximum estimated size of this cache in bytes
+   */
+  public void setMaxWeight(long maxWeight) {
+    lock.lock();
+    try {
+      this.maxWeight = maxWeight;
+      evict(null);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @param weigher the fully qualified class name of a {@link Weigher}
+   */
+  public void setWeigher(String weigher) {
+    try {
+      this.weigher = (Weigher) Resources.classForName(weigher).newInstance();
+    } catch (Exception e) {
+      throw new CacheException("Error creating weigher " + weigher + " for cache " + getId() + ".  Cause: " + e, e);
+    }
+  }
+
+  public void setBudget(Budget budget) {
+    this.budget = budget;
+    budget.caches.add(this);
+  }
+
+  private long tick() {
+    return budget == null ? 0 : budget.clock.incrementAndGet();
+  }
+
+  private void release(Object key) {
+    Entry entry = entries.remove(key);
+    if (entry != null) {
+      addWeight(-entry.weight);
+    }
+  }
+
+  private void addWeight(long delta) {
+    weight += delta;
+    if (budget != null) {
+      budget.weight.addAndGet(delta);
+    }
+  }
+
+  /**
+   * Evicts the least recently used entries beyond maxWeight, except the one just put.
+   */
+  private void evict(Object keptKey) {
+    while (weight > maxWeight) {
+      if (!evictEldest(keptKey)) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * @return false when there is no entry to evict
+   */
+  private boolean evictEldest(Object keptKey) {
+    Iterator<Map.Entry<Object, Entry>> iterator = entries.entrySet().iterator();
+    if (!iterator.hasNext()) {
+      return false;
+    }
+    Map.Entry<Object, Entry> eldest = iterator.next();
+    if (eldest.getKey().equals(keptKey)) {
+      return false;
+    }
+    iterator.remove();
+    addWeight(-eldest.getValue().weight);
+    delegate.removeObject(eldest.getKey());
+    if (metrics != null) {
+      metrics.recordEviction();
+    }
+    return true;
+  }
+
+  /**
+   * @return the last access of the least recently used entry, Long.MAX_VALUE when there is none to evict
+   */
+  private long eldestTick(Object keptKey) {
+    Iterator<Map.Entry<Object, Entry>> iterator = entries.entrySet().iterator();
+    if (!iterator.hasNext()) {
+      return Long.MAX_VALUE;
+    }
+    Map.Entry<Object, Entry> eldest = iterator.next();
+    return eldest.getKey().equals(keptKey) ? Long.MAX_VALUE : eldest.getValue().tick;
+  }
+
+  private static class Entry {
+    private final long weight;
+    private long tick;
+
+    private Entry(long weight, long tick) {
+      this.weight = weight;
+      this.tick = tick;
+    }
+  }
+
+  /**
+   * Weight shared by several caches, usually all the weighted caches of a Configuration.
+   * <p>
+   * When the weight exceeds the maximum, the caches evict their entries in the order of their last access, as a
+   * single LRU list would. A cache being used by another thread is skipped, so that two caches never wait for each
+   * other.
+   */
+  public static class Budget {
+
+    private final AtomicLong weight = new AtomicLong();
+    private final AtomicLong clock = new AtomicLong();
+    private final List<WeightedCache> caches = new CopyOnWriteArrayList<WeightedCache>();
+    private volatile long maxWeight;
+
+    public long getWeight() {
+      return weight.get();
+    }
+
+    public long getMaxWeight() {
+      return maxWeight;
+    }
+
+    /**
+     * @param maxWeight the maximum estimated size in bytes of all the caches, 0 for no limit
+     */
+    public void setMaxWeight(long maxWeight) {
+      this.maxWeight = maxWeight;
+    }
+
+    private boolean isExceeded() {
+      long max = maxWeight;
+      return max > 0 && weight.get() > max;
+    }
+
+    private boolean isTooLow(long entryWeight) {
+      long max = maxWeight;
+      return max > 0 && entryWeight > max;
+    }
+
+    /**
+     * Evicts the least recently used entries of all the caches, except the entry the writer just put.
+     */
+    private void shed(WeightedCache writer, Object keptKey) {
+      while (isExceeded()) {
+        WeightedCache victim = null;
+        long oldest = Long.MAX_VALUE;
+        for (WeightedCache cache : caches) {
+          if (cache.lock.tryLock()) {
+            try {
+              long tick = cache.eldestTick(cache == writer ? keptKey : null);
+              if (tick < oldest) {
+                oldest = tick;
+                victim = cache;
+              }
+            } finally {
+              cache.lock.unlock();
+            }
+          }
+        }
+        if (victim == null || !evictFrom(victim, victim == writer ? keptKey : null)) {
+          return;
+        }
+      }
+    }
+
+    private boolean evictFrom(WeightedCache cache, Object keptKey) {
+      if (!cache.lock.tryLock()) {
+        return false;
+      }
+      try {
+        return cache.evictEldest(keptKey);
+      } finally {
+        cache.lock.unlock();
+      }
+    }
+  }
+
+}
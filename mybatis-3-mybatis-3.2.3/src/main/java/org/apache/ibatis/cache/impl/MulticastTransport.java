@@ -0,0 +1,124 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.util.Properties;
+
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.InvalidationTransport;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * Sends the cache invalidations as UDP datagrams to a multicast group.
+ * <p>
+ * The properties are the group address ({@code 239.255.27.1} by default), the port (45564 by default), the
+ * timeToLive of the datagrams (1, the local network, by default) and the name of the networkInterface to use.
+ * Several processes of the same machine can join the same group.
+ */
+public class MulticastTransport implements InvalidationTransport {
+
+  private static final Log log = LogFactory.getLog(MulticastTransport.class);
+
+  private static final int MAX_DATAGRAM_SIZE = 65507;
+
+  private String group = "239.255.27.1";
+  private int port = 45564;
+  private int timeToLive = 1;
+  private String networkInterface;
+
+  private InetAddress address;
+  private MulticastSocket socket;
+  private volatile boolean closed;
+
+  public void setProperties(Properties properties) {
+    group = properties.getProperty("group", group);
+    port = Integer.parseInt(properties.getProperty("port", String.valueOf(port)));
+    timeToLive = Integer.parseInt(properties.getProperty("timeToLive", String.valueOf(timeToLive)));
+    networkInterface = properties.getProperty("networkInterface", networkInterface);
+  }
+
+  public void open(final Receiver receiver) throws IOException {
+    address = InetAddress.getByName(group);
+    socket = new MulticastSocket(port);
+    socket.setTimeToLive(timeToLive);
+    // false enables the loopback, so that the other processes of this machine receive the datagrams
+    socket.setLoopbackMode(false);
+    if (networkInterface != null) {
+      NetworkInterface selected = NetworkInterface.getByName(networkInterface);
+      if (selected == null) {
+        socket.close();
+        throw new CacheException("Unknown network interface " + networkInterface + " for cache invalidations.");
+      }
+      socket.setNetworkInterface(selected);
+    }
+    socket.joinGroup(address);
+    Thread listener = new Thread("MyBatis cache invalidations " + group + ":" + port) {
+      public void run() {
+        listen(receiver);
+      }
+    };
+    listener.setDaemon(true);
+    listener.start();
+  }
+
+  public void send(byte[] message) throws IOException {
+    if (message.length > MAX_DATAGRAM_SIZE) {
+      throw new IOException("Cache invalidation of " + message.length + " bytes does not fit in a datagram.");
+    }
+    socket.send(new DatagramPacket(message, message.length, address, port));
+  }
+
+  public void close() {
+    closed = true;
+    if (socket != null) {
+      try {
+        socket.leaveGroup(address);
+      } catch (IOException e) {
+        // ignored, the socket is closed anyway
+      }
+      socket.close();
+    }
+  }
+
+  private void listen(Receiver receiver) {
+    byte[] buffer = new byte[MAX_DATAGRAM_SIZE];
+    while (!closed) {
+      DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+      try {
+        socket.receive(packet);
+      } catch (IOException e) {
+        if (!closed) {
+          log.error("Stopped receiving cache invalidations.", e);
+        }
+        return;
+      }
+      byte[] message = new byte[packet.getLength()];
+      System.arraycopy(buffer, packet.getOffset(), message, 0, message.length);
+      try {
+        receiver.receive(message);
+      } catch (RuntimeException e) {
+        log.error("Could not apply a cache invalidation.", e);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,344 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheMetrics;
+import org.apache.ibatis.cache.Codec;
+import org.apache.ibatis.io.Resources;
+
+/**
+ * Cache that stores its values outside of the Java heap, encoded by a {@link Codec}.
+ * <p>
+ * Values are appended to fixed size regions of direct buffers, or of a memory-mapped file when the file property is
+ * set. When all the regions are used, the oldest region is reused and the entries it held are dropped, so the cache
+ * never holds more than capacity bytes. The keys stay on the heap, in an open-addressing table that maps them to the
+ * position of their value. Every get returns a new copy of the value, so there is no need for a read-write cache.
+ */
+public class OffHeapCache implements Cache {
+
+  private static final int MINIMUM_TABLE_SIZE = 16;
+
+  private final String id;
+  private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+
+  private long capacity = 64L * 1024 * 1024;
+  private int regionSize = 16 * 1024 * 1024;
+  private String file;
+  private Codec codec = new ReflectionCodec();
+
+  private ByteBuffer[] regions;
+  private int region;
+  private int position;
+
+  // open-addressing index, with linear probing
+  private Object[] keys = new Object[MINIMUM_TABLE_SIZE];
+  private long[] addresses = new long[MINIMUM_TABLE_SIZE];
+  private int[] lengths = new int[MINIMUM_TABLE_SIZE];
+  private int size;
+  private CacheMetrics metrics;
+
+  public OffHeapCache(String id) {
+    this.id = id;
+  }
+
+  public void setMetrics(CacheMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  public void putObject(Object key, Object value) {
+    byte[] bytes = encode(value);
+    removeObject(key);
+    if (bytes.length > Math.min(regionSize, capacity)) {
+      return;
+    }
+    if (regions == null) {
+      regions = new ByteBuffer[(int) Math.max(1, capacity / Math.min(regionSize, capacity))];
+      regions[0] = allocate(0);
+    } else if (position + bytes.length > regions[region].capacity()) {
+      region = (region + 1) % regions.length;
+      position = 0;
+      if (regions[region] == null) {
+        regions[region] = allocate(region);
+      } else {
+        dropRegion(region);
+      }
+    }
+    ByteBuffer buffer = regions[region].duplicate();
+    // through Buffer, as ByteBuffer.position(int) only exists since Java 9
+    ((Buffer) buffer).position(position);
+    buffer.put(bytes);
+    insert(key, ((long) region << 32) | position, bytes.length);
+    position += bytes.length;
+  }
+
+  public Object getObject(Object key) {
+    int slot = find(key);
+    if (slot < 0) {
+      return null;
+    }
+    ByteBuffer buffer = regions[(int) (addresses[slot] >>> 32)].duplicate();
+    ((Buffer) buffer).position((int) addresses[slot]);
+    ((Buffer) buffer).limit(buffer.position() + lengths[slot]);
+    try {
+      return codec.decode(new DataInputStream(new ByteBufferInputStream(buffer)));
+    } catch (IOException e) {
+      throw new CacheException("Error decoding the value of " + key + " in cache " + id + ".  Cause: " + e, e);
+    }
+  }
+
+  /**
+   * @return always null, the removed value is not decoded
+   */
+  public Object removeObject(Object key) {
+    int slot = find(key);
+    if (slot >= 0) {
+      delete(slot);
+    }
+    return null;
+  }
+
+  public void clear() {
+    keys = new Object[MINIMUM_TABLE_SIZE];
+    addresses = new long[MINIMUM_TABLE_SIZE];
+    lengths = new int[MINIMUM_TABLE_SIZE];
+    size = 0;
+    region = 0;
+    position = 0;
+  }
+
+  public ReadWriteLock getReadWriteLock() {
+    return readWriteLock;
+  }
+
+  /**
+   * @param capacity the maximum number of bytes used to store the values
+   */
+  public void setCapacity(long capacity) {
+    checkNotStarted();
+    this.capacity = capacity;
+  }
+
+  /**
+   * @param regionSize the number of bytes allocated at once, and reused at once when the cache is full
+   */
+  public void setRegionSize(int regionSize) {
+    checkNotStarted();
+    this.regionSize = regionSize;
+  }
+
+  /**
+   * @param file the path of a file to map the regions to, instead of direct buffers
+   */
+  public void setFile(String file) {
+    checkNotStarted();
+    this.file = file;
+  }
+
+  /**
+   * @param codec the fully qualified class name of a {@link Codec}
+   */
+  public void setCodec(String codec) {
+    try {
+      this.codec = (Codec) Resources.classForName(codec).newInstance();
+    } catch (Exception e) {
+      throw new CacheException("Error creating codec " + codec + " for cache " + id + ".  Cause: " + e, e);
+    }
+    clear();
+  }
+
+  public boolean equals(Object o) {
+    if (getId() == null) throw new CacheException("Cache instances require an ID.");
+    if (this == o) return true;
+    if (!(o instanceof Cache)) return false;
+
+    Cache otherCache = (Cache) o;
+    return getId().equals(otherCache.getId());
+  }
+
+  public int hashCode() {
+    if (getId() == null) throw new CacheException("Cache instances require an ID.");
+    return getId().hashCode();
+  }
+
+  private void checkNotStarted() {
+    if (regions != null) {
+      throw new CacheException("The storage of cache " + id + " cannot be changed once it holds values.");
+    }
+  }
+
+  private byte[] encode(Object value) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      codec.encode(value, out);
+      out.flush();
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new CacheException("Error encoding a value for cache " + id + ".  Cause: " + e, e);
+    }
+  }
+
+  private ByteBuffer allocate(int index) {
+    int length = (int) Math.min(regionSize, capacity);
+    if (file == null) {
+      return ByteBuffer.allocateDirect(length);
+    }
+    try {
+      File mapped = new File(file);
+      if (index == 0) {
+        mapped.deleteOnExit();
+      }
+      RandomAccessFile randomAccessFile = new RandomAccessFile(mapped, "rw");
+      try {
+        return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, (long) index * length, length);
+      } finally {
+        randomAccessFile.close();
+      }
+    } catch (IOException e) {
+      throw new CacheException("Error mapping " + file + " for cache " + id + ".  Cause: " + e, e);
+    }
+  }
+
+  /**
+   * Drops the entries stored in a region that is about to be overwritten.
+   */
+  private void dropRegion(int index) {
+    List<Object> dropped = new ArrayList<Object>();
+    for (int slot = 0; slot < keys.length; slot++) {
+      if (keys[slot] != null && (int) (addresses[slot] >>> 32) == index) {
+        dropped.add(keys[slot]);
+      }
+    }
+    for (Object key : dropped) {
+      delete(find(key));
+      if (metrics != null) {
+        metrics.recordEviction();
+      }
+    }
+  }
+
+  private int find(Object key) {
+    int mask = keys.length - 1;
+    for (int slot = hash(key) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+      if (keys[slot].equals(key)) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  private void insert(Object key, long address, int length) {
+    if ((size + 1) * 2 > keys.length) {
+      resize(keys.length * 2);
+    }
+    int mask = keys.length - 1;
+    int slot = hash(key) & mask;
+    while (keys[slot] != null) {
+      slot = (slot + 1) & mask;
+    }
+    keys[slot] = key;
+    addresses[slot] = address;
+    lengths[slot] = length;
+    size++;
+  }
+
+  /**
+   * Removes a slot and shifts back the entries that probed past it, so that no tombstone is needed.
+   */
+  private void delete(int slot) {
+    int mask = keys.length - 1;
+    int hole = slot;
+    for (int next = (hole + 1) & mask; keys[next] != null; next = (next + 1) & mask) {
+      int home = hash(keys[next]) & mask;
+      if (((next - home) & mask) >= ((next - hole) & mask)) {
+        keys[hole] = keys[next];
+        addresses[hole] = addresses[next];
+        lengths[hole] = lengths[next];
+        hole = next;
+      }
+    }
+    keys[hole] = null;
+    size--;
+  }
+
+  private void resize(int length) {
+    Object[] oldKeys = keys;
+    long[] oldAddresses = addresses;
+    int[] oldLengths = lengths;
+    keys = new Object[length];
+    addresses = new long[length];
+    lengths = new int[length];
+    size = 0;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != null) {
+        insert(oldKeys[i], oldAddresses[i], oldLengths[i]);
+      }
+    }
+  }
+
+  private static int hash(Object key) {
+    int h = key.hashCode() * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  private static class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    private ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    public int read(byte[] bytes, int offset, int length) {
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, count);
+      return count;
+    }
+  }
+
+}
@@ -0,0 +1,420 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.Codec;
+import org.apache.ibatis.cache.decorators.SerializedCache;
+import org.apache.ibatis.executor.loader.WriteReplaceInterface;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.reflection.Reflector;
+
+/**
+ * Default codec, which writes the readable and writable properties of result objects as reported by
+ * {@link Reflector}.
+ * <p>
+ * Simple values, collections, maps and beans with a default constructor are written with a one byte tag, class
+ * names and property names only once per value, and shared or cyclic references are kept. Lazy loading proxies and
+ * other objects are written with Java serialization.
+ */
+public class ReflectionCodec implements Codec {
+
+  private static final byte NULL = 0;
+  private static final byte REFERENCE = 1;
+  private static final byte STRING = 2;
+  private static final byte INTEGER = 3;
+  private static final byte LONG = 4;
+  private static final byte SHORT = 5;
+  private static final byte BYTE = 6;
+  private static final byte DOUBLE = 7;
+  private static final byte FLOAT = 8;
+  private static final byte BOOLEAN = 9;
+  private static final byte CHARACTER = 10;
+  private static final byte BIG_DECIMAL = 11;
+  private static final byte BIG_INTEGER = 12;
+  private static final byte DATE = 13;
+  private static final byte SQL_DATE = 14;
+  private static final byte TIME = 15;
+  private static final byte TIMESTAMP = 16;
+  private static final byte BYTES = 17;
+  private static final byte ENUM = 18;
+  private static final byte COLLECTION = 19;
+  private static final byte MAP = 20;
+  private static final byte BEAN = 21;
+  private static final byte SERIALIZED = 22;
+
+  private static final Object[] NO_ARGUMENTS = new Object[0];
+
+  public void encode(Object value, DataOutput out) throws IOException {
+    new Writer(out).write(value);
+  }
+
+  public Object decode(DataInput in) throws IOException {
+    return new Reader(in).read();
+  }
+
+  private static String[] properties(Class<?> type) {
+    Reflector reflector = Reflector.forClass(type);
+    List<String> properties = new ArrayList<String>();
+    for (String name : reflector.getGetablePropertyNames()) {
+      if (reflector.hasSetter(name)) {
+        properties.add(name);
+      }
+    }
+    return properties.toArray(new String[properties.size()]);
+  }
+
+  private static boolean isBean(Class<?> type) {
+    if (type.isArray() || type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+      return false;
+    }
+    try {
+      Reflector.forClass(type).getDefaultConstructor();
+      return true;
+    } catch (RuntimeException e) {
+      return false;
+    }
+  }
+
+  private static Object newInstance(Class<?> type) {
+    try {
+      return Reflector.forClass(type).getDefaultConstructor().newInstance(NO_ARGUMENTS);
+    } catch (Exception e) {
+      throw new CacheException("Error creating an instance of " + type + " while decoding a cached value.  Cause: " + e, e);
+    }
+  }
+
+  private static class Writer {
+
+    private final DataOutput out;
+    private final Map<Object, Integer> references = new IdentityHashMap<Object, Integer>();
+    private final Map<Class<?>, Integer> classes = new HashMap<Class<?>, Integer>();
+
+    private Writer(DataOutput out) {
+      this.out = out;
+    }
+
+    private void write(Object value) throws IOException {
+      if (value == null) {
+        out.writeByte(NULL);
+      } else if (value instanceof String) {
+        out.writeByte(STRING);
+        writeString((String) value);
+      } else if (value instanceof Integer) {
+        out.writeByte(INTEGER);
+        out.writeInt((Integer) value);
+      } else if (value instanceof Long) {
+        out.writeByte(LONG);
+        out.writeLong((Long) value);
+      } else if (value instanceof Short) {
+        out.writeByte(SHORT);
+        out.writeShort((Short) value);
+      } else if (value instanceof Byte) {
+        out.writeByte(BYTE);
+        out.writeByte((Byte) value);
+      } else if (value instanceof Double) {
+        out.writeByte(DOUBLE);
+        out.writeDouble((Double) value);
+      } else if (value instanceof Float) {
+        out.writeByte(FLOAT);
+        out.writeFloat((Float) value);
+      } else if (value instanceof Boolean) {
+        out.writeByte(BOOLEAN);
+        out.writeBoolean((Boolean) value);
+      } else if (value instanceof Character) {
+        out.writeByte(CHARACTER);
+        out.writeChar((Character) value);
+      } else if (value.getClass() == BigDecimal.class) {
+        out.writeByte(BIG_DECIMAL);
+        writeBytes(((BigDecimal) value).unscaledValue().toByteArray());
+        out.writeInt(((BigDecimal) value).scale());
+      } else if (value.getClass() == BigInteger.class) {
+        out.writeByte(BIG_INTEGER);
+        writeBytes(((BigInteger) value).toByteArray());
+      } else if (value.getClass() == java.sql.Timestamp.class) {
+        out.writeByte(TIMESTAMP);
+        out.writeLong(((Date) value).getTime());
+        out.writeInt(((java.sql.Timestamp) value).getNanos());
+      } else if (value.getClass() == java.sql.Date.class) {
+        out.writeByte(SQL_DATE);
+        out.writeLong(((Date) value).getTime());
+      } else if (value.getClass() == java.sql.Time.class) {
+        out.writeByte(TIME);
+        out.writeLong(((Date) value).getTime());
+      } else if (value.getClass() == Date.class) {
+        out.writeByte(DATE);
+        out.writeLong(((Date) value).getTime());
+      } else if (value instanceof byte[]) {
+        out.writeByte(BYTES);
+        writeBytes((byte[]) value);
+      } else if (value instanceof Enum) {
+        out.writeByte(ENUM);
+        writeClass(((Enum<?>) value).getDeclaringClass(), false);
+        writeString(((Enum<?>) value).name());
+      } else if (references.containsKey(value)) {
+        out.writeByte(REFERENCE);
+        out.writeInt(references.get(value));
+      } else if (value instanceof WriteReplaceInterface) {
+        writeSerialized(value);
+      } else if (value instanceof Collection) {
+        references.put(value, references.size());
+        out.writeByte(COLLECTION);
+        writeClass(value.getClass(), false);
+        Collection<?> collection = (Collection<?>) value;
+        out.writeInt(collection.size());
+        for (Object element : collection) {
+          write(element);
+        }
+      } else if (value instanceof Map) {
+        references.put(value, references.size());
+        out.writeByte(MAP);
+        writeClass(value.getClass(), false);
+        Map<?, ?> map = (Map<?, ?>) value;
+        out.writeInt(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+          write(entry.getKey());
+          write(entry.getValue());
+        }
+      } else if (isBean(value.getClass())) {
+        references.put(value, references.size());
+        out.writeByte(BEAN);
+        Reflector reflector = Reflector.forClass(value.getClass());
+        for (String property : writeClass(value.getClass(), true)) {
+          try {
+            write(reflector.getGetInvoker(property).invoke(value, NO_ARGUMENTS));
+          } catch (IOException e) {
+            throw e;
+          } catch (Exception e) {
+            throw new CacheException("Error reading property " + property + " of " + value.getClass() + " while encoding a cached value.  Cause: " + e, e);
+          }
+        }
+      } else {
+        writeSerialized(value);
+      }
+    }
+
+    /**
+     * @return the properties of the class, when they are requested
+     */
+    private String[] writeClass(Class<?> type, boolean bean) throws IOException {
+      Integer index = classes.get(type);
+      String[] properties = bean ? properties(type) : null;
+      if (index != null) {
+        out.writeInt(index);
+      } else {
+        out.writeInt(-1);
+        out.writeUTF(type.getName());
+        out.writeBoolean(bean);
+        if (bean) {
+          out.writeInt(properties.length);
+          for (String property : properties) {
+            out.writeUTF(property);
+          }
+        }
+        classes.put(type, classes.size());
+      }
+      return properties;
+    }
+
+    private void writeSerialized(Object value) throws IOException {
+      if (!(value instanceof Serializable)) {
+        throw new CacheException("Cannot encode " + value.getClass() + ", which has no default constructor and is not Serializable.");
+      }
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream stream = new ObjectOutputStream(bytes);
+      stream.writeObject(value);
+      stream.close();
+      out.writeByte(SERIALIZED);
+      writeBytes(bytes.toByteArray());
+    }
+
+    private void writeString(String value) throws IOException {
+      writeBytes(value.getBytes("UTF-8"));
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static class Reader {
+
+    private final DataInput in;
+    private final List<Object> references = new ArrayList<Object>();
+    private final List<Class<?>> classes = new ArrayList<Class<?>>();
+    private final List<String[]> classProperties = new ArrayList<String[]>();
+
+    private Reader(DataInput in) {
+      this.in = in;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Object read() throws IOException {
+      byte tag = in.readByte();
+      switch (tag) {
+      case NULL:
+        return null;
+      case REFERENCE:
+        return references.get(in.readInt());
+      case STRING:
+        return readString();
+      case INTEGER:
+        return in.readInt();
+      case LONG:
+        return in.readLong();
+      case SHORT:
+        return in.readShort();
+      case BYTE:
+        return in.readByte();
+      case DOUBLE:
+        return in.readDouble();
+      case FLOAT:
+        return in.readFloat();
+      case BOOLEAN:
+        return in.readBoolean();
+      case CHARACTER:
+        return in.readChar();
+      case BIG_DECIMAL:
+        return new BigDecimal(new BigInteger(readBytes()), in.readInt());
+      case BIG_INTEGER:
+        return new BigInteger(readBytes());
+      case DATE:
+        return new Date(in.readLong());
+      case SQL_DATE:
+        return new java.sql.Date(in.readLong());
+      case TIME:
+        return new java.sql.Time(in.readLong());
+      case TIMESTAMP:
+        java.sql.Timestamp timestamp = new java.sql.Timestamp(in.readLong());
+        timestamp.setNanos(in.readInt());
+        return timestamp;
+      case BYTES:
+        return readBytes();
+      case ENUM:
+        return Enum.valueOf((Class<Enum>) readClass(), readString());
+      case COLLECTION: {
+        Class<?> type = readClass();
+        Collection<Object> collection = (Collection<Object>) newContainer(type, Set.class.isAssignableFrom(type) ? HashSet.class : ArrayList.class);
+        references.add(collection);
+        for (int size = in.readInt(); size > 0; size--) {
+          collection.add(read());
+        }
+        return collection;
+      }
+      case MAP: {
+        Map<Object, Object> map = (Map<Object, Object>) newContainer(readClass(), HashMap.class);
+        references.add(map);
+        for (int size = in.readInt(); size > 0; size--) {
+          map.put(read(), read());
+        }
+        return map;
+      }
+      case BEAN: {
+        Class<?> type = readClass();
+        String[] properties = classProperties.get(classes.indexOf(type));
+        Object bean = newInstance(type);
+        references.add(bean);
+        Reflector reflector = Reflector.forClass(type);
+        for (String property : properties) {
+          Object value = read();
+          try {
+            reflector.getSetInvoker(property).invoke(bean, new Object[] { value });
+          } catch (Exception e) {
+            throw new CacheException("Error setting property " + property + " of " + type + " while decoding a cached value.  Cause: " + e, e);
+          }
+        }
+        return bean;
+      }
+      case SERIALIZED:
+        return readSerialized();
+      default:
+        throw new CacheException("Unknown tag " + tag + " while decoding a cached value.");
+      }
+    }
+
+    private Object newContainer(Class<?> type, Class<?> defaultType) {
+      return isBean(type) ? newInstance(type) : newInstance(defaultType);
+    }
+
+    private Class<?> readClass() throws IOException {
+      int index = in.readInt();
+      if (index >= 0) {
+        return classes.get(index);
+      }
+      String name = in.readUTF();
+      Class<?> type;
+      try {
+        type = Resources.classForName(name);
+      } catch (ClassNotFoundException e) {
+        throw new CacheException("Cannot find class " + name + " while decoding a cached value.  Cause: " + e, e);
+      }
+      String[] properties = null;
+      if (in.readBoolean()) {
+        properties = new String[in.readInt()];
+        for (int i = 0; i < properties.length; i++) {
+          properties[i] = in.readUTF();
+        }
+      }
+      classes.add(type);
+      classProperties.add(properties);
+      return type;
+    }
+
+    private Object readSerialized() throws IOException {
+      ObjectInputStream stream = new SerializedCache.CustomObjectInputStream(new ByteArrayInputStream(readBytes()));
+      try {
+        return stream.readObject();
+      } catch (ClassNotFoundException e) {
+        throw new CacheException("Cannot find a class while decoding a cached value.  Cause: " + e, e);
+      } finally {
+        stream.close();
+      }
+    }
+
+    private String readString() throws IOException {
+      return new String(readBytes(), "UTF-8");
+    }
+
+    private byte[] readBytes() throws IOException {
+      byte[] bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      return bytes;
+    }
+  }
+
+}
@@ -0,0 +1,411 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CopyStrategy;
+import org.apache.ibatis.cache.decorators.SerializedCache;
+import org.apache.ibatis.executor.loader.WriteReplaceInterface;
+import org.apache.ibatis.reflection.Reflector;
+import org.apache.ibatis.reflection.invoker.Invoker;
+
+/**
+ * Default copy strategy, which makes a deep copy of the value on every write and every read.
+ * <p>
+ * The way to copy each class is worked out once from the {@link Reflector} metadata and reused: immutable values are
+ * shared, dates and arrays are cloned, collections and maps are rebuilt with copies of their elements and beans with
+ * a default constructor are copied property by property. Shared or cyclic references to beans, collections, maps
+ * and object arrays are kept. Lazy loading proxies
+ * and other JDK or non-bean classes are copied with Java serialization.
+ */
+public class ReflectionCopyStrategy implements CopyStrategy {
+
+  private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<Class<?>>();
+  private static final Object[] NO_ARGUMENTS = new Object[0];
+
+  private static final ConcurrentMap<Class<?>, Copier> COPIERS = new ConcurrentHashMap<Class<?>, Copier>();
+
+  static {
+    IMMUTABLE_TYPES.add(String.class);
+    IMMUTABLE_TYPES.add(Boolean.class);
+    IMMUTABLE_TYPES.add(Character.class);
+    IMMUTABLE_TYPES.add(Byte.class);
+    IMMUTABLE_TYPES.add(Short.class);
+    IMMUTABLE_TYPES.add(Integer.class);
+    IMMUTABLE_TYPES.add(Long.class);
+    IMMUTABLE_TYPES.add(Float.class);
+    IMMUTABLE_TYPES.add(Double.class);
+    IMMUTABLE_TYPES.add(BigDecimal.class);
+    IMMUTABLE_TYPES.add(BigInteger.class);
+    IMMUTABLE_TYPES.add(UUID.class);
+    IMMUTABLE_TYPES.add(Locale.class);
+    IMMUTABLE_TYPES.add(Class.class);
+  }
+
+  public Object copyForWrite(Object value) {
+    return copy(value);
+  }
+
+  public Object copyForRead(Object stored) {
+    return copy(stored);
+  }
+
+  private static Object copy(Object value) {
+    return value == null ? null : new Copy().copy(value);
+  }
+
+  private static Copier copierFor(Class<?> type) {
+    Copier copier = COPIERS.get(type);
+    if (copier == null) {
+      copier = newCopier(type);
+      COPIERS.putIfAbsent(type, copier);
+    }
+    return copier;
+  }
+
+  private static Copier newCopier(Class<?> type) {
+    if (IMMUTABLE_TYPES.contains(type) || type.isEnum()
+        || (type.getSuperclass() != null && type.getSuperclass().isEnum())) {
+      return IMMUTABLE;
+    } else if (Date.class.isAssignableFrom(type)) {
+      return DATE;
+    } else if (type.isArray()) {
+      return type.getComponentType().isPrimitive() ? PRIMITIVE_ARRAY : OBJECT_ARRAY;
+    } else if (WriteReplaceInterface.class.isAssignableFrom(type)) {
+      return SERIALIZED;
+    } else if (Collection.class.isAssignableFrom(type)) {
+      return new CollectionCopier(type, defaultConstructor(type));
+    } else if (Map.class.isAssignableFrom(type)) {
+      return new MapCopier(type, defaultConstructor(type));
+    } else if (type.getName().startsWith("java.") || type.getName().startsWith("javax.")) {
+      return SERIALIZED;
+    } else {
+      Copier copier = BeanCopier.forClass(type);
+      return copier != null ? copier : SERIALIZED;
+    }
+  }
+
+  private static Constructor<?> defaultConstructor(Class<?> type) {
+    if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+      return null;
+    }
+    try {
+      return Reflector.forClass(type).getDefaultConstructor();
+    } catch (RuntimeException e) {
+      return null;
+    }
+  }
+
+  private static Object newInstance(Constructor<?> constructor) {
+    try {
+      return constructor.newInstance(NO_ARGUMENTS);
+    } catch (Exception e) {
+      throw new CacheException("Error creating an instance of " + constructor.getDeclaringClass() + " while copying a cached value.  Cause: " + e, e);
+    }
+  }
+
+  /**
+   * The state of one deep copy: the copies already made, by original.
+   */
+  private static class Copy {
+
+    private Map<Object, Object> copies;
+
+    private Object copy(Object value) {
+      if (value == null) {
+        return null;
+      }
+      Copier copier = copierFor(value.getClass());
+      if (copier == IMMUTABLE) {
+        return value;
+      } else if (copier == DATE || copier == PRIMITIVE_ARRAY) {
+        return copier.copy(value, this);
+      }
+      if (copies == null) {
+        copies = new IdentityHashMap<Object, Object>();
+      } else {
+        Object copy = copies.get(value);
+        if (copy != null) {
+          return copy;
+        }
+      }
+      return copier.copy(value, this);
+    }
+
+    private void add(Object value, Object copy) {
+      copies.put(value, copy);
+    }
+  }
+
+  private static abstract class Copier {
+
+    /**
+     * Copies the value and adds the copy to the context before copying anything the value refers to. Dates and
+     * primitive arrays refer to nothing and are not added.
+     */
+    abstract Object copy(Object value, Copy context);
+  }
+
+  private static final Copier IMMUTABLE = new Copier() {
+    Object copy(Object value, Copy context) {
+      return value;
+    }
+  };
+
+  private static final Copier DATE = new Copier() {
+    Object copy(Object value, Copy context) {
+      return ((Date) value).clone();
+    }
+  };
+
+  private static final Copier PRIMITIVE_ARRAY = new Copier() {
+    Object copy(Object value, Copy context) {
+      int length = Array.getLength(value);
+      Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+      System.arraycopy(value, 0, copy, 0, length);
+      return copy;
+    }
+  };
+
+  private static final Copier OBJECT_ARRAY = new Copier() {
+    Object copy(Object value, Copy context) {
+      Object[] array = (Object[]) value;
+      Object[] copy = (Object[]) Array.newInstance(value.getClass().getComponentType(), array.length);
+      context.add(value, copy);
+      for (int i = 0; i < array.length; i++) {
+        copy[i] = context.copy(array[i]);
+      }
+      return copy;
+    }
+  };
+
+  private static final Copier SERIALIZED = new Copier() {
+    Object copy(Object value, Copy context) {
+      if (!(value instanceof Serializable)) {
+        throw new CacheException("Cannot copy " + value.getClass() + ", which has no default constructor and is not Serializable.");
+      }
+      Object copy;
+      try {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(value);
+        out.close();
+        ObjectInputStream in = new SerializedCache.CustomObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        copy = in.readObject();
+        in.close();
+      } catch (Exception e) {
+        throw new CacheException("Error copying " + value.getClass() + " with serialization.  Cause: " + e, e);
+      }
+      context.add(value, copy);
+      return copy;
+    }
+  };
+
+  /**
+   * Sorted collections keep their comparator, other collections keep their class when it has a default constructor.
+   * The usual JDK collections are created directly with the right capacity.
+   */
+  private static class CollectionCopier extends Copier {
+
+    private final Class<?> type;
+    private final Constructor<?> constructor;
+
+    private CollectionCopier(Class<?> type, Constructor<?> constructor) {
+      this.type = type;
+      this.constructor = constructor;
+    }
+
+    @SuppressWarnings("unchecked")
+    Object copy(Object value, Copy context) {
+      Collection<Object> collection = (Collection<Object>) value;
+      Collection<Object> copy;
+      if (type == ArrayList.class) {
+        copy = new ArrayList<Object>(collection.size());
+      } else if (type == HashSet.class) {
+        copy = new HashSet<Object>(capacity(collection.size()));
+      } else if (type == LinkedHashSet.class) {
+        copy = new LinkedHashSet<Object>(capacity(collection.size()));
+      } else if (value instanceof SortedSet) {
+        copy = new TreeSet<Object>(((SortedSet<Object>) value).comparator());
+      } else if (constructor != null) {
+        copy = (Collection<Object>) newInstance(constructor);
+      } else if (value instanceof Set) {
+        copy = new LinkedHashSet<Object>(capacity(collection.size()));
+      } else {
+        copy = new ArrayList<Object>(collection.size());
+      }
+      context.add(value, copy);
+      for (Object element : collection) {
+        copy.add(context.copy(element));
+      }
+      return copy;
+    }
+  }
+
+  private static class MapCopier extends Copier {
+
+    private final Class<?> type;
+    private final Constructor<?> constructor;
+
+    private MapCopier(Class<?> type, Constructor<?> constructor) {
+      this.type = type;
+      this.constructor = constructor;
+    }
+
+    @SuppressWarnings("unchecked")
+    Object copy(Object value, Copy context) {
+      Map<Object, Object> map = (Map<Object, Object>) value;
+      Map<Object, Object> copy;
+      if (type == HashMap.class) {
+        copy = new HashMap<Object, Object>(capacity(map.size()));
+      } else if (type == LinkedHashMap.class) {
+        copy = new LinkedHashMap<Object, Object>(capacity(map.size()));
+      } else if (value instanceof SortedMap) {
+        copy = new TreeMap<Object, Object>(((SortedMap<Object, Object>) value).comparator());
+      } else if (constructor != null) {
+        copy = (Map<Object, Object>) newInstance(constructor);
+      } else {
+        copy = new LinkedHashMap<Object, Object>(capacity(map.size()));
+      }
+      context.add(value, copy);
+      for (Map.Entry<Object, Object> entry : map.entrySet()) {
+        copy.put(context.copy(entry.getKey()), context.copy(entry.getValue()));
+      }
+      return copy;
+    }
+  }
+
+  private static int capacity(int size) {
+    return size * 4 / 3 + 1;
+  }
+
+  /**
+   * Copies the properties that have both a getter and a setter, looking their invokers up only once per class.
+   */
+  private static class BeanCopier extends Copier {
+
+    private final Constructor<?> constructor;
+    private final String[] properties;
+    private final Invoker[] getters;
+    private final Invoker[] setters;
+
+    private BeanCopier(Constructor<?> constructor, String[] properties, Invoker[] getters, Invoker[] setters) {
+      this.constructor = constructor;
+      this.properties = properties;
+      this.getters = getters;
+      this.setters = setters;
+    }
+
+    /**
+     * @return null when the class is not a bean whose properties can be copied back and forth
+     */
+    private static BeanCopier forClass(Class<?> type) {
+      Constructor<?> constructor = defaultConstructor(type);
+      if (constructor == null) {
+        return null;
+      }
+      try {
+        Reflector reflector = Reflector.forClass(type);
+        List<String> properties = new ArrayList<String>();
+        List<Invoker> getters = new ArrayList<Invoker>();
+        List<Invoker> setters = new ArrayList<Invoker>();
+        for (String name : reflector.getGetablePropertyNames()) {
+          if (reflector.hasSetter(name)) {
+            if (!boxed(reflector.getSetterType(name)).isAssignableFrom(boxed(reflector.getGetterType(name)))) {
+              return null;
+            }
+            properties.add(name);
+            getters.add(reflector.getGetInvoker(name));
+            setters.add(reflector.getSetInvoker(name));
+          }
+        }
+        return new BeanCopier(constructor, properties.toArray(new String[properties.size()]),
+            getters.toArray(new Invoker[getters.size()]), setters.toArray(new Invoker[setters.size()]));
+      } catch (RuntimeException e) {
+        return null;
+      }
+    }
+
+    private static Class<?> boxed(Class<?> type) {
+      if (!type.isPrimitive()) {
+        return type;
+      } else if (type == int.class) {
+        return Integer.class;
+      } else if (type == long.class) {
+        return Long.class;
+      } else if (type == boolean.class) {
+        return Boolean.class;
+      } else if (type == double.class) {
+        return Double.class;
+      } else if (type == float.class) {
+        return Float.class;
+      } else if (type == short.class) {
+        return Short.class;
+      } else if (type == byte.class) {
+        return Byte.class;
+      } else {
+        return Character.class;
+      }
+    }
+
+    Object copy(Object value, Copy context) {
+      Object copy = newInstance(constructor);
+      context.add(value, copy);
+      for (int i = 0; i < properties.length; i++) {
+        try {
+          Object property = getters[i].invoke(value, NO_ARGUMENTS);
+          setters[i].invoke(copy, new Object[] { context.copy(property) });
+        } catch (CacheException e) {
+          throw e;
+        } catch (Exception e) {
+          throw new CacheException("Error copying property " + properties[i] + " of " + value.getClass() + ".  Cause: " + e, e);
+        }
+      }
+      return copy;
+    }
+  }
+
+}
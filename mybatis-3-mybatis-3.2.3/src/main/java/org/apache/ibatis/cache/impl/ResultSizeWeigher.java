@@ -0,0 +1,87 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+import org.apache.ibatis.cache.Weigher;
+import org.apache.ibatis.reflection.Reflector;
+
+/**
+ * Default weigher of a cached result: the number of rows times the estimated size of the first row.
+ * <p>
+ * Only the first row is inspected so that weighing a list of thousands of rows stays cheap. Strings are counted with
+ * their length, numbers and dates with a fixed size and beans with a fixed size per readable property.
+ */
+public class ResultSizeWeigher implements Weigher {
+
+  private static final int OBJECT_OVERHEAD = 16;
+  private static final int REFERENCE = 8;
+  private static final int ENTRY_OVERHEAD = 128;
+  private static final int SIMPLE_VALUE = 24;
+
+  public long weigh(Object key, Object value) {
+    return ENTRY_OVERHEAD + weigh(value, true);
+  }
+
+  private long weigh(Object value, boolean deep) {
+    if (value == null) {
+      return 0;
+    }
+    if (value instanceof Collection) {
+      Collection<?> collection = (Collection<?>) value;
+      if (collection.isEmpty()) {
+        return OBJECT_OVERHEAD;
+      }
+      long row = deep ? weigh(collection.iterator().next(), false) : SIMPLE_VALUE;
+      return OBJECT_OVERHEAD + collection.size() * (REFERENCE + row);
+    }
+    if (value instanceof Map) {
+      Map<?, ?> map = (Map<?, ?>) value;
+      long weight = OBJECT_OVERHEAD;
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        weight += 2 * REFERENCE + OBJECT_OVERHEAD + weighSimple(entry.getKey()) + weighSimple(entry.getValue());
+      }
+      return weight;
+    }
+    return weighSimple(value);
+  }
+
+  private long weighSimple(Object value) {
+    if (value == null) {
+      return 0;
+    }
+    if (value instanceof CharSequence) {
+      return 2 * OBJECT_OVERHEAD + 2 * ((CharSequence) value).length();
+    }
+    if (value instanceof byte[]) {
+      return OBJECT_OVERHEAD + ((byte[]) value).length;
+    }
+    if (value instanceof Number || value instanceof Boolean || value instanceof Character || value instanceof Date
+        || value instanceof Enum || value instanceof Collection || value instanceof Map) {
+      return SIMPLE_VALUE;
+    }
+    Class<?> type = value.getClass();
+    if (type.isArray()) {
+      return OBJECT_OVERHEAD + Array.getLength(value) * REFERENCE;
+    }
+    return OBJECT_OVERHEAD + Reflector.forClass(type).getGetablePropertyNames().length * (REFERENCE + SIMPLE_VALUE);
+  }
+
+}
@@ -0,0 +1,71 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CopyStrategy;
+import org.apache.ibatis.cache.decorators.SerializedCache;
+
+/**
+ * Stores values serialized and deserializes them on every read. Values must be {@link Serializable}.
+ */
+public class SerializationCopyStrategy implements CopyStrategy {
+
+  public Object copyForWrite(Object value) {
+    if (value == null || value instanceof Serializable) {
+      return serialize((Serializable) value);
+    } else {
+      throw new CacheException("SharedCache failed to make a copy of a non-serializable object: " + value);
+    }
+  }
+
+  public Object copyForRead(Object stored) {
+    return deserialize((byte[]) stored);
+  }
+
+  private byte[] serialize(Serializable value) {
+    try {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      ObjectOutputStream oos = new ObjectOutputStream(bos);
+      oos.writeObject(value);
+      oos.flush();
+      oos.close();
+      return bos.toByteArray();
+    } catch (Exception e) {
+      throw new CacheException("Error serializing object.  Cause: " + e, e);
+    }
+  }
+
+  private Serializable deserialize(byte[] value) {
+    Serializable result;
+    try {
+      ByteArrayInputStream bis = new ByteArrayInputStream(value);
+      ObjectInputStream ois = new SerializedCache.CustomObjectInputStream(bis);
+      result = (Serializable) ois.readObject();
+      ois.close();
+    } catch (Exception e) {
+      throw new CacheException("Error deserializing object.  Cause: " + e, e);
+    }
+    return result;
+  }
+
+}
@@ -0,0 +1,118 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.ibatis.cache.CacheMetrics;
+
+/**
+ * Counts the cache events in striped counters, so that threads reading the same cache do not contend on a counter.
+ */
+public class StripedCacheMetrics implements CacheMetrics {
+
+  private final StripedCounter hits = new StripedCounter();
+  private final StripedCounter misses = new StripedCounter();
+  private final StripedCounter puts = new StripedCounter();
+  private final StripedCounter putBytes = new StripedCounter();
+  private final StripedCounter evictions = new StripedCounter();
+  private final StripedCounter loads = new StripedCounter();
+  private final StripedCounter loadTime = new StripedCounter();
+
+  public void recordHit() {
+    hits.add(1);
+  }
+
+  public void recordMiss() {
+    misses.add(1);
+  }
+
+  public void recordPut(long estimatedBytes) {
+    puts.add(1);
+    putBytes.add(estimatedBytes);
+  }
+
+  public void recordEviction() {
+    evictions.add(1);
+  }
+
+  public void recordLoad(long nanos) {
+    loads.add(1);
+    loadTime.add(nanos);
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public long getPuts() {
+    return puts.sum();
+  }
+
+  public long getPutBytes() {
+    return putBytes.sum();
+  }
+
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  public long getLoads() {
+    return loads.sum();
+  }
+
+  public long getLoadTime() {
+    return loadTime.sum();
+  }
+
+  /**
+   * A counter split in cells of their own cache line, each thread adding to the cell of its id.
+   */
+  static class StripedCounter {
+
+    // 8 longs, a cache line, between two cells
+    private static final int PADDING = 8;
+    private static final int STRIPES = stripes();
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    void add(long value) {
+      int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1));
+      cells.addAndGet(stripe * PADDING, value);
+    }
+
+    long sum() {
+      long sum = 0;
+      for (int i = 0; i < STRIPES; i++) {
+        sum += cells.get(i * PADDING);
+      }
+      return sum;
+    }
+
+    private static int stripes() {
+      int stripes = 1;
+      while (stripes < Runtime.getRuntime().availableProcessors() * 2 && stripes < 64) {
+        stripes <<= 1;
+      }
+      return stripes;
+    }
+  }
+
+}
@@ -0,0 +1,47 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cursor;
+
+import java.io.Closeable;
+
+/**
+ * Lazily fetches the rows of a query, so a large result does not have to be held in memory.
+ * <p>
+ * A cursor is bound to the statement and result set that produced it: it must be consumed
+ * and closed while the owning {@link org.apache.ibatis.session.SqlSession} is still open.
+ * Result maps with nested result maps can only be fetched by a cursor when the statement is
+ * marked {@code resultOrdered="true"} and the rows are ordered by the parent id.
+ *
+ * @param <T> type of the mapped rows
+ */
+public interface Cursor<T> extends Closeable, Iterable<T> {
+
+    /**
+     * @return true if the cursor has started to fetch rows from the database and has not been closed
+     */
+    boolean isOpen();
+
+    /**
+     * @return true when all the rows of the query have been fetched
+     */
+    boolean isConsumed();
+
+    /**
+     * @return the index of the last returned row, starting at 0, or -1 when no row has been returned yet
+     */
+    int getCurrentIndex();
+
+}
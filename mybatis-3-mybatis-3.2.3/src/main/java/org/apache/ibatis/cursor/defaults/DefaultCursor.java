@@ -0,0 +1,229 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cursor.defaults;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.executor.ExecutorException;
+import org.apache.ibatis.executor.resultset.DefaultResultSetHandler;
+import org.apache.ibatis.executor.resultset.ResultSetWrapper;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+
+/**
+ * Fetches one mapped object per step from an open result set.
+ * <p>
+ * The cursor owns the result set and its statement, both are closed when the last row
+ * has been read, when the row bounds limit is reached or when {@link #close()} is called.
+ *
+ * @param <T> type of the mapped rows
+ */
+public class DefaultCursor<T> implements Cursor<T> {
+
+    private final DefaultResultSetHandler resultSetHandler;
+    private final ResultMap resultMap;
+    private final ResultSetWrapper rsw;
+    private final RowBounds rowBounds;
+    private final SingleObjectResultHandler objectHandler = new SingleObjectResultHandler();
+
+    private final CursorIterator cursorIterator = new CursorIterator();
+    private boolean iteratorRetrieved;
+
+    private CursorStatus status = CursorStatus.CREATED;
+    private int fetchedCount;
+    private Runnable closeListener;
+
+    private enum CursorStatus {
+        /** No row has been fetched yet */
+        CREATED,
+        /** Rows are being fetched */
+        OPEN,
+        /** Closed before all the rows were fetched */
+        CLOSED,
+        /** All the rows have been fetched and the cursor is closed */
+        CONSUMED
+    }
+
+    /**
+     * @param rsw the result set to read, or null when the statement did not return any result set
+     */
+    public DefaultCursor(DefaultResultSetHandler resultSetHandler, ResultMap resultMap, ResultSetWrapper rsw, RowBounds rowBounds) {
+        this.resultSetHandler = resultSetHandler;
+        this.resultMap = resultMap;
+        this.rsw = rsw;
+        this.rowBounds = rowBounds;
+        if (rsw == null) {
+            status = CursorStatus.CONSUMED;
+        }
+    }
+
+    /**
+     * @param closeListener run once when the cursor is closed, by {@link #close()} or after its last row
+     */
+    public void setCloseListener(Runnable closeListener) {
+        this.closeListener = closeListener;
+    }
+
+    public boolean isOpen() {
+        return status == CursorStatus.OPEN;
+    }
+
+    public boolean isConsumed() {
+        return status == CursorStatus.CONSUMED;
+    }
+
+    public int getCurrentIndex() {
+        return rowBounds.getOffset() + cursorIterator.iteratorIndex;
+    }
+
+    public Iterator<T> iterator() {
+        if (iteratorRetrieved) {
+            throw new IllegalStateException("Cannot open more than one iterator on a Cursor");
+        }
+        iteratorRetrieved = true;
+        return cursorIterator;
+    }
+
+    public void close() {
+        if (isClosed()) {
+            return;
+        }
+        closeResources();
+        status = CursorStatus.CLOSED;
+    }
+
+    private boolean isClosed() {
+        return status == CursorStatus.CLOSED || status == CursorStatus.CONSUMED;
+    }
+
+    /**
+     * Reads the next mapped object into {@link #objectHandler}.
+     *
+     * @return false when there are no more rows to return
+     */
+    private boolean fetchNextObject() {
+        if (isClosed()) {
+            return false;
+        }
+        if (rowBounds.getLimit() != RowBounds.NO_ROW_LIMIT && fetchedCount >= rowBounds.getLimit()) {
+            markConsumed();
+            return false;
+        }
+        // the offset is skipped by the result set handler on the first fetch only
+        final RowBounds fetchBounds = status == CursorStatus.CREATED ? new RowBounds(rowBounds.getOffset(), RowBounds.NO_ROW_LIMIT) : RowBounds.DEFAULT;
+        status = CursorStatus.OPEN;
+        objectHandler.reset();
+        try {
+            resultSetHandler.handleRowValues(rsw, resultMap, objectHandler, fetchBounds, null);
+        } catch (SQLException e) {
+            closeResources();
+            status = CursorStatus.CLOSED;
+            throw new ExecutorException("Error fetching the next row from the cursor.  Cause: " + e, e);
+        }
+        if (!objectHandler.fetched) {
+            markConsumed();
+            return false;
+        }
+        fetchedCount++;
+        return true;
+    }
+
+    private void markConsumed() {
+        closeResources();
+        status = CursorStatus.CONSUMED;
+    }
+
+    private void closeResources() {
+        if (closeListener != null) {
+            closeListener.run();
+            closeListener = null;
+        }
+        if (rsw == null) {
+            return;
+        }
+        final ResultSet rs = rsw.getResultSet();
+        try {
+            final Statement statement = rs.getStatement();
+            rs.close();
+            if (statement != null) {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            // ignore
+        }
+    }
+
+    private class SingleObjectResultHandler implements ResultHandler {
+
+        private Object result;
+        private boolean fetched;
+
+        public void handleResult(ResultContext context) {
+            result = context.getResultObject();
+            fetched = true;
+            context.stop();
+        }
+
+        void reset() {
+            result = null;
+            fetched = false;
+        }
+    }
+
+    private class CursorIterator implements Iterator<T> {
+
+        /** The next object, valid while {@link #hasNext} is true */
+        private T next;
+        private boolean hasNext;
+        private int iteratorIndex = -1;
+
+        public boolean hasNext() {
+            if (!hasNext && fetchNextObject()) {
+                next = nextResult();
+                hasNext = true;
+            }
+            return hasNext;
+        }
+
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final T result = next;
+            next = null;
+            hasNext = false;
+            iteratorIndex++;
+            return result;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Cannot remove element from Cursor");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T nextResult() {
+        return (T) objectHandler.result;
+    }
+
+}
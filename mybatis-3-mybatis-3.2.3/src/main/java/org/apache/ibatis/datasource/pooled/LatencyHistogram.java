@@ -0,0 +1,103 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * A lock-free histogram of durations in milliseconds. Bucket 0 counts the durations under 1ms and
+ * bucket i the durations from 2^(i-1) up to 2^i milliseconds, so a percentile is accurate to a
+ * factor of two, which is enough to size a pool and spot its tail.
+ */
+public class LatencyHistogram {
+
+  private static final int BUCKETS = 40;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong total = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  public void record(long millis) {
+    long value = Math.max(millis, 0);
+    buckets.incrementAndGet(bucketOf(value));
+    count.incrementAndGet();
+    total.addAndGet(value);
+    long currentMax;
+    while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value)) {
+      // retry
+    }
+  }
+
+  private static int bucketOf(long millis) {
+    int bucket = 64 - Long.numberOfLeadingZeros(millis);
+    return Math.min(bucket, BUCKETS - 1);
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getMean() {
+    long n = count.get();
+    return n == 0 ? 0 : total.get() / n;
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  /*
+   * @param percentile - between 0 and 100
+   * @return the upper bound of the bucket holding the percentile, at most the maximum recorded
+   */
+  public long getPercentile(double percentile) {
+    long[] counts = getBucketCounts();
+    long n = 0;
+    for (long c : counts) {
+      n += c;
+    }
+    if (n == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(n * Math.min(Math.max(percentile, 0), 100) / 100);
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank && counts[i] > 0) {
+        return Math.min(i == 0 ? 0 : (1L << i) - 1, getMax());
+      }
+    }
+    return getMax();
+  }
+
+  /*
+   * @return a copy of the counts of the buckets, bucket i holding the durations under 2^i milliseconds
+   */
+  public long[] getBucketCounts() {
+    long[] counts = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = buckets.get(i);
+    }
+    return counts;
+  }
+
+  public String toString() {
+    return "count=" + getCount() + " mean=" + getMean() + " p50=" + getPercentile(50) + " p99=" + getPercentile(99) + " max=" + getMax();
+  }
+
+}
@@ -0,0 +1,97 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/*
+ * Runs the housekeeping of a PooledDataSource every poolHousekeepingInterval milliseconds, or
+ * every half poolLeakDetectionThreshold when only leaks are detected, on a background daemon
+ * thread shared by all the pools. The pool is only weakly referenced, so the housekeeping stops
+ * when the pool is garbage collected or both settings are set to 0.
+ */
+final class PoolHousekeeper implements Runnable {
+
+  private static final Log log = LogFactory.getLog(PoolHousekeeper.class);
+
+  private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "mybatis-pool-housekeeper");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  private final WeakReference<PooledDataSource> dataSource;
+
+  private PoolHousekeeper(PooledDataSource dataSource) {
+    this.dataSource = new WeakReference<PooledDataSource>(dataSource);
+  }
+
+  public static void start(PooledDataSource dataSource) {
+    new PoolHousekeeper(dataSource).schedule(dataSource.getHousekeeperInterval());
+  }
+
+  /*
+   * Opens the initial connections of the pool on the housekeeping thread
+   */
+  public static void warmUp(PooledDataSource dataSource) {
+    final WeakReference<PooledDataSource> reference = new WeakReference<PooledDataSource>(dataSource);
+    EXECUTOR.execute(new Runnable() {
+      public void run() {
+        PooledDataSource pool = reference.get();
+        if (pool == null) {
+          return;
+        }
+        try {
+          pool.warmUp();
+        } catch (Throwable t) {
+          log.warn("Warm-up of the connection pool failed. Cause: " + t);
+        }
+      }
+    });
+  }
+
+  private void schedule(int interval) {
+    EXECUTOR.schedule(this, interval, TimeUnit.MILLISECONDS);
+  }
+
+  public void run() {
+    PooledDataSource pool = dataSource.get();
+    if (pool == null) {
+      return;
+    }
+    try {
+      pool.housekeep();
+    } catch (Throwable t) {
+      log.warn("Housekeeping of the connection pool failed. Cause: " + t);
+    }
+    int interval = pool.getHousekeeperInterval();
+    if (interval > 0) {
+      schedule(interval);
+    } else {
+      pool.housekeeperStopped();
+    }
+  }
+
+}
@@ -15,71 +15,127 @@
  */
 package org.apache.ibatis.datasource.pooled;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class PoolState {
+/*
+ * The connections and statistics of a PooledDataSource. Every counter is an atomic that is updated
+ * and read without locking, so the averages are not a consistent snapshot of the pool.
+ * The histograms record the time spent waiting for a connection, the time to get a connection
+ * (the request time) and the time a connection is held before it is returned.
+ */
+public class PoolState implements PoolStateMBean {
 
   protected PooledDataSource dataSource;
 
-  protected final List<PooledConnection> idleConnections = new ArrayList<PooledConnection>();
-  protected final List<PooledConnection> activeConnections = new ArrayList<PooledConnection>();
-  protected long requestCount = 0;
-  protected long accumulatedRequestTime = 0;
-  protected long accumulatedCheckoutTime = 0;
-  protected long claimedOverdueConnectionCount = 0;
-  protected long accumulatedCheckoutTimeOfOverdueConnections = 0;
-  protected long accumulatedWaitTime = 0;
-  protected long hadToWaitCount = 0;
-  protected long badConnectionCount = 0;
+  protected final Queue<PooledConnection> idleConnections = new ConcurrentLinkedQueue<PooledConnection>();
+  protected final ConcurrentMap<Long, PooledConnection> activeConnections = new ConcurrentHashMap<Long, PooledConnection>();
+  protected final AtomicInteger idleConnectionCount = new AtomicInteger();
+  /* the connections checked out or being opened, bounded by poolMaximumActiveConnections */
+  protected final AtomicInteger reservedConnectionCount = new AtomicInteger();
+  protected final AtomicLong requestCount = new AtomicLong();
+  protected final AtomicLong accumulatedRequestTime = new AtomicLong();
+  protected final AtomicLong accumulatedCheckoutTime = new AtomicLong();
+  protected final AtomicLong claimedOverdueConnectionCount = new AtomicLong();
+  protected final AtomicLong accumulatedCheckoutTimeOfOverdueConnections = new AtomicLong();
+  protected final AtomicLong accumulatedWaitTime = new AtomicLong();
+  protected final AtomicLong hadToWaitCount = new AtomicLong();
+  protected final AtomicLong badConnectionCount = new AtomicLong();
+  protected final AtomicLong leakedConnectionCount = new AtomicLong();
+  protected final LatencyHistogram waitTimeHistogram = new LatencyHistogram();
+  protected final LatencyHistogram requestTimeHistogram = new LatencyHistogram();
+  protected final LatencyHistogram holdTimeHistogram = new LatencyHistogram();
 
   public PoolState(PooledDataSource dataSource) {
     this.dataSource = dataSource;
   }
 
-  public synchronized long getRequestCount() {
-    return requestCount;
+  public long getRequestCount() {
+    return requestCount.get();
   }
 
-  public synchronized long getAverageRequestTime() {
-    return requestCount == 0 ? 0 : accumulatedRequestTime / requestCount;
+  public long getAverageRequestTime() {
+    long requests = requestCount.get();
+    return requests == 0 ? 0 : accumulatedRequestTime.get() / requests;
   }
 
-  public synchronized long getAverageWaitTime() {
-    return hadToWaitCount == 0 ? 0 : accumulatedWaitTime / hadToWaitCount;
+  public long getAverageWaitTime() {
+    long waits = hadToWaitCount.get();
+    return waits == 0 ? 0 : accumulatedWaitTime.get() / waits;
 
   }
 
-  public synchronized long getHadToWaitCount() {
-    return hadToWaitCount;
+  public long getHadToWaitCount() {
+    return hadToWaitCount.get();
   }
 
-  public synchronized long getBadConnectionCount() {
-    return badConnectionCount;
+  public long getBadConnectionCount() {
+    return badConnectionCount.get();
   }
 
-  public synchronized long getClaimedOverdueConnectionCount() {
-    return claimedOverdueConnectionCount;
+  public long getClaimedOverdueConnectionCount() {
+    return claimedOverdueConnectionCount.get();
   }
 
-  public synchronized long getAverageOverdueCheckoutTime() {
-    return claimedOverdueConnectionCount == 0 ? 0 : accumulatedCheckoutTimeOfOverdueConnections / claimedOverdueConnectionCount;
+  public long getAverageOverdueCheckoutTime() {
+    long overdue = claimedOverdueConnectionCount.get();
+    return overdue == 0 ? 0 : accumulatedCheckoutTimeOfOverdueConnections.get() / overdue;
   }
 
-  public synchronized long getAverageCheckoutTime() {
-    return requestCount == 0 ? 0 : accumulatedCheckoutTime / requestCount;
+  public long getAverageCheckoutTime() {
+    long requests = requestCount.get();
+    return requests == 0 ? 0 : accumulatedCheckoutTime.get() / requests;
   }
 
 
-  public synchronized int getIdleConnectionCount() {
-    return idleConnections.size();
+  public int getIdleConnectionCount() {
+    return idleConnectionCount.get();
   }
 
-  public synchronized int getActiveConnectionCount() {
+  public int getActiveConnectionCount() {
     return activeConnections.size();
   }
 
-  public synchronized String toString() {
+  /*
+   * @return the number of connections held longer than poolLeakDetectionThreshold
+   */
+  public long getLeakedConnectionCount() {
+    return leakedConnectionCount.get();
+  }
+
+  public LatencyHistogram getWaitTimeHistogram() {
+    return waitTimeHistogram;
+  }
+
+  public LatencyHistogram getRequestTimeHistogram() {
+    return requestTimeHistogram;
+  }
+
+  public LatencyHistogram getHoldTimeHistogram() {
+    return holdTimeHistogram;
+  }
+
+  public long getWaitTime99thPercentile() {
+    return waitTimeHistogram.getPercentile(99);
+  }
+
+  public long getRequestTime99thPercentile() {
+    return requestTimeHistogram.getPercentile(99);
+  }
+
+  public long getHoldTime99thPercentile() {
+    return holdTimeHistogram.getPercentile(99);
+  }
+
+  public long getMaxHoldTime() {
+    return holdTimeHistogram.getMax();
+  }
+
+  public String toString() {
     StringBuffer buffer = new StringBuffer();
     buffer.append("\n===CONFINGURATION==============================================");
     buffer.append("\n jdbcDriver                     ").append(dataSource.getDriver());
@@ -93,6 +149,12 @@ public class PoolState {
     buffer.append("\n poolPingEnabled                ").append(dataSource.poolPingEnabled);
     buffer.append("\n poolPingQuery                  ").append(dataSource.poolPingQuery);
     buffer.append("\n poolPingConnectionsNotUsedFor  ").append(dataSource.poolPingConnectionsNotUsedFor);
+    buffer.append("\n poolMinimumIdle                ").append(dataSource.poolMinimumIdle);
+    buffer.append("\n poolInitialSize                ").append(dataSource.poolInitialSize);
+    buffer.append("\n poolMaximumLifetime            ").append(dataSource.poolMaximumLifetime);
+    buffer.append("\n poolHousekeepingInterval       ").append(dataSource.poolHousekeepingInterval);
+    buffer.append("\n poolLeakDetectionThreshold     ").append(dataSource.poolLeakDetectionThreshold);
+    buffer.append("\n poolLeakStackSamplingRate      ").append(dataSource.poolLeakStackSamplingRate);
     buffer.append("\n ---STATUS-----------------------------------------------------");
     buffer.append("\n activeConnections              ").append(getActiveConnectionCount());
     buffer.append("\n idleConnections                ").append(getIdleConnectionCount());
@@ -104,6 +166,10 @@ public class PoolState {
     buffer.append("\n hadToWait                      ").append(getHadToWaitCount());
     buffer.append("\n averageWaitTime                ").append(getAverageWaitTime());
     buffer.append("\n badConnectionCount             ").append(getBadConnectionCount());
+    buffer.append("\n leakedConnectionCount          ").append(getLeakedConnectionCount());
+    buffer.append("\n waitTime                       ").append(waitTimeHistogram);
+    buffer.append("\n requestTime                    ").append(requestTimeHistogram);
+    buffer.append("\n holdTime                       ").append(holdTimeHistogram);
     buffer.append("\n===============================================================");
     return buffer.toString();
   }
@@ -20,6 +20,8 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.ibatis.reflection.ExceptionUtil;
 
@@ -27,16 +29,21 @@ class PooledConnection implements InvocationHandler {
 
   private static final String CLOSE = "close";
   private static final Class<?>[] IFACES = new Class<?>[] { Connection.class };
+  private static final AtomicLong ID_SEQUENCE = new AtomicLong();
 
+  private final long id = ID_SEQUENCE.incrementAndGet();
+  private final AtomicBoolean claimed = new AtomicBoolean();
   private int hashCode = 0;
   private PooledDataSource dataSource;
   private Connection realConnection;
   private Connection proxyConnection;
-  private long checkoutTimestamp;
+  private volatile long checkoutTimestamp;
   private long createdTimestamp;
   private long lastUsedTimestamp;
   private int connectionTypeCode;
-  private boolean valid;
+  private volatile boolean valid;
+  private volatile Throwable checkoutStack;
+  private volatile boolean leakReported;
 
   /*
    * Constructor for SimplePooledConnection that uses the Connection and PooledDataSource passed in
@@ -70,6 +77,25 @@ class PooledConnection implements InvocationHandler {
     return valid && realConnection != null && dataSource.pingConnection(this);
   }
 
+  /*
+   * Getter for the identity of this pooled connection, unlike the hashcode it differs from
+   * the other pooled connections wrapping the same real connection
+   *
+   * @return The id
+   */
+  public long getId() {
+    return id;
+  }
+
+  /*
+   * Takes this connection out of the idle connections, only one caller can succeed
+   *
+   * @return True if the caller now owns the connection
+   */
+  public boolean claim() {
+    return claimed.compareAndSet(false, true);
+  }
+
   /*
    * Getter for the *real* connection that this wraps
    *
@@ -200,6 +226,37 @@ class PooledConnection implements InvocationHandler {
     return System.currentTimeMillis() - checkoutTimestamp;
   }
 
+  /*
+   * Getter for the stack of the thread that checked this connection out, captured for leak detection
+   *
+   * @return the stack or null if it was not sampled
+   */
+  public Throwable getCheckoutStack() {
+    return checkoutStack;
+  }
+
+  /*
+   * Setter for the stack of the thread that checked this connection out
+   *
+   * @param checkoutStack the stack
+   */
+  public void setCheckoutStack(Throwable checkoutStack) {
+    this.checkoutStack = checkoutStack;
+  }
+
+  /*
+   * Marks this connection as reported leaked, only the first caller gets true
+   *
+   * @return True if the leak was not reported yet
+   */
+  public boolean reportLeak() {
+    if (leakReported) {
+      return false;
+    }
+    leakReported = true;
+    return true;
+  }
+
   public int hashCode() {
     return hashCode;
   }
@@ -16,6 +16,8 @@
 package org.apache.ibatis.datasource.pooled;
 
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
 import java.sql.Connection;
@@ -24,6 +26,13 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Logger;
 
 import javax.sql.DataSource;
@@ -33,7 +42,12 @@ import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 
 /*
- * This is a simple, synchronous, thread-safe database connection pool.
+ * This is a simple, thread-safe database connection pool.
+ *
+ * Checkouts and returns do not lock: the active connections are bounded by a counter of slots, the idle
+ * connections are kept in a lock-free queue, and a thread first tries the connection it returned last.
+ * Threads waiting for a connection are queued in arrival order and a returned connection is handed
+ * over to the longest waiting thread.
  */
 public class PooledDataSource implements DataSource {
 
@@ -51,8 +65,22 @@ public class PooledDataSource implements DataSource {
   protected String poolPingQuery = "NO PING QUERY SET";
   protected boolean poolPingEnabled = false;
   protected int poolPingConnectionsNotUsedFor = 0;
+  protected int poolMinimumIdle = 0;
+  protected int poolInitialSize = 0;
+  protected int poolMaximumLifetime = 0;
+  protected int poolHousekeepingInterval = 0;
+  protected int poolLeakDetectionThreshold = 0;
+  protected int poolLeakStackSamplingRate = 10;
+
+  private volatile int expectedConnectionTypeCode;
 
-  private int expectedConnectionTypeCode;
+  private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<Waiter>();
+  private final ThreadLocal<WeakReference<PooledConnection>> lastReturnedConnection = new ThreadLocal<WeakReference<PooledConnection>>();
+
+  private final AtomicBoolean initialized = new AtomicBoolean();
+  private final AtomicBoolean housekeeperStarted = new AtomicBoolean();
+  private final Object housekeepingLock = new Object();
+  private final AtomicLong checkoutSequence = new AtomicLong();
 
   public PooledDataSource() {
     dataSource = new UnpooledDataSource();
@@ -79,10 +107,16 @@ public class PooledDataSource implements DataSource {
   }
 
   public Connection getConnection() throws SQLException {
+    if (!initialized.get()) {
+      initializeInBackground();
+    }
     return popConnection(dataSource.getUsername(), dataSource.getPassword()).getProxyConnection();
   }
 
   public Connection getConnection(String username, String password) throws SQLException {
+    if (!initialized.get()) {
+      initializeInBackground();
+    }
     return popConnection(username, password).getProxyConnection();
   }
 
@@ -209,6 +243,77 @@ public class PooledDataSource implements DataSource {
     forceCloseAll();
   }
 
+  /*
+   * The number of idle connections the housekeeping keeps open
+   *
+   * @param poolMinimumIdle The minimum number of idle connections
+   */
+  public void setPoolMinimumIdle(int poolMinimumIdle) {
+    this.poolMinimumIdle = poolMinimumIdle;
+    forceCloseAll();
+  }
+
+  /*
+   * The number of connections opened when the pool is initialized
+   *
+   * @param poolInitialSize The initial number of connections
+   */
+  public void setPoolInitialSize(int poolInitialSize) {
+    this.poolInitialSize = poolInitialSize;
+    forceCloseAll();
+  }
+
+  /*
+   * The maximum time a connection is kept open, after which it is closed
+   * once returned or while idle. 0 keeps connections open indefinitely.
+   *
+   * @param poolMaximumLifetime The maximum lifetime in milliseconds
+   */
+  public void setPoolMaximumLifetime(int poolMaximumLifetime) {
+    this.poolMaximumLifetime = poolMaximumLifetime;
+    forceCloseAll();
+  }
+
+  /*
+   * How often the idle connections are validated, retired, trimmed and
+   * replenished on a background thread. 0 disables the housekeeping.
+   *
+   * @param milliseconds the number of milliseconds between two runs
+   */
+  public void setPoolHousekeepingInterval(int milliseconds) {
+    this.poolHousekeepingInterval = milliseconds;
+    forceCloseAll();
+    if (initialized.get()) {
+      startHousekeeper();
+    }
+  }
+
+  /*
+   * The time after which the housekeeping reports a checked out connection as leaked.
+   * Without poolHousekeepingInterval, the housekeeping thread only looks for leaks, every
+   * half threshold. 0 disables the leak detection.
+   *
+   * @param milliseconds the number of milliseconds a connection can be held
+   */
+  public void setPoolLeakDetectionThreshold(int milliseconds) {
+    this.poolLeakDetectionThreshold = milliseconds;
+    forceCloseAll();
+    if (initialized.get()) {
+      startHousekeeper();
+    }
+  }
+
+  /*
+   * With leak detection enabled, the stack of one checkout out of this many is captured
+   * to report where a leaked connection was checked out.
+   *
+   * @param poolLeakStackSamplingRate 10 by default, 1 to capture every checkout, 0 to capture none
+   */
+  public void setPoolLeakStackSamplingRate(int poolLeakStackSamplingRate) {
+    this.poolLeakStackSamplingRate = poolLeakStackSamplingRate;
+    forceCloseAll();
+  }
+
   public String getDriver() {
     return dataSource.getDriver();
   }
@@ -265,40 +370,197 @@ public class PooledDataSource implements DataSource {
     return poolPingConnectionsNotUsedFor;
   }
 
+  public int getPoolMinimumIdle() {
+    return poolMinimumIdle;
+  }
+
+  public int getPoolInitialSize() {
+    return poolInitialSize;
+  }
+
+  public int getPoolMaximumLifetime() {
+    return poolMaximumLifetime;
+  }
+
+  public int getPoolHousekeepingInterval() {
+    return poolHousekeepingInterval;
+  }
+
+  public int getPoolLeakDetectionThreshold() {
+    return poolLeakDetectionThreshold;
+  }
+
+  public int getPoolLeakStackSamplingRate() {
+    return poolLeakStackSamplingRate;
+  }
+
   /*
-   * Closes all active and idle connections in the pool
+   * Opens the initial connections on the calling thread and starts the housekeeping.
+   * Call it at startup so the first requests find the pool warm. Otherwise the first
+   * checkout starts it and the initial connections are opened on the housekeeping thread.
    */
-  public void forceCloseAll() {
-    synchronized (state) {
-      expectedConnectionTypeCode = assembleConnectionTypeCode(dataSource.getUrl(), dataSource.getUsername(), dataSource.getPassword());
-      for (int i = state.activeConnections.size(); i > 0; i--) {
-        try {
-          PooledConnection conn = state.activeConnections.remove(i - 1);
-          conn.invalidate();
+  public void initialize() {
+    if (initialized.compareAndSet(false, true)) {
+      warmUp();
+      startHousekeeper();
+    }
+  }
 
-          Connection realConn = conn.getRealConnection();
-          if (!realConn.getAutoCommit()) {
-            realConn.rollback();
+  private void initializeInBackground() {
+    if (initialized.compareAndSet(false, true)) {
+      if (Math.max(poolInitialSize, poolMinimumIdle) > 0) {
+        PoolHousekeeper.warmUp(this);
+      }
+      startHousekeeper();
+    }
+  }
+
+  void warmUp() {
+    synchronized (housekeepingLock) {
+      fillIdleConnections(Math.max(poolInitialSize, poolMinimumIdle));
+    }
+  }
+
+  private void startHousekeeper() {
+    if (getHousekeeperInterval() > 0 && housekeeperStarted.compareAndSet(false, true)) {
+      PoolHousekeeper.start(this);
+    }
+  }
+
+  void housekeeperStopped() {
+    housekeeperStarted.set(false);
+    if (getHousekeeperInterval() > 0) {
+      startHousekeeper();
+    }
+  }
+
+  /*
+   * @return poolHousekeepingInterval, or half poolLeakDetectionThreshold when only leaks are detected, 0 for no housekeeping
+   */
+  int getHousekeeperInterval() {
+    if (poolHousekeepingInterval > 0) {
+      return poolHousekeepingInterval;
+    }
+    if (poolLeakDetectionThreshold > 0) {
+      return Math.max(1, poolLeakDetectionThreshold / 2);
+    }
+    return 0;
+  }
+
+  /*
+   * Closes the idle connections past poolMaximumLifetime, above poolMaximumIdleConnections or
+   * failing the ping query, then opens connections up to poolMinimumIdle. A validated connection
+   * counts as used, so a checkout does not ping it again within poolPingConnectionsNotUsedFor.
+   * Finally reports the connections checked out for longer than poolLeakDetectionThreshold.
+   * Without poolHousekeepingInterval, only the leaks are reported.
+   */
+  void housekeep() {
+    if (poolHousekeepingInterval <= 0) {
+      detectLeaks();
+      return;
+    }
+    synchronized (housekeepingLock) {
+      for (int i = state.idleConnectionCount.get(); i > 0; i--) {
+        PooledConnection conn = pollIdleConnection(false);
+        if (conn == null) {
+          break;
+        }
+        if (isRetired(conn)) {
+          if (log.isDebugEnabled()) {
+            log.debug("Retired connection " + conn.getRealHashCode() + ".");
+          }
+          closeQuietly(conn);
+        } else if (state.idleConnectionCount.get() >= poolMaximumIdleConnections) {
+          if (log.isDebugEnabled()) {
+            log.debug("Closed idle connection " + conn.getRealHashCode() + ".");
           }
-          realConn.close();
-        } catch (Exception e) {
-          // ignore
+          closeQuietly(conn);
+        } else if (!pingConnection(conn, poolPingEnabled)) {
+          state.badConnectionCount.incrementAndGet();
+          closeQuietly(conn);
+        } else {
+          PooledConnection newConn = new PooledConnection(conn.getRealConnection(), this);
+          newConn.setCreatedTimestamp(conn.getCreatedTimestamp());
+          newConn.setLastUsedTimestamp(poolPingEnabled ? System.currentTimeMillis() : conn.getLastUsedTimestamp());
+          newConn.setConnectionTypeCode(conn.getConnectionTypeCode());
+          conn.invalidate();
+          addIdleConnection(newConn);
         }
       }
-      for (int i = state.idleConnections.size(); i > 0; i--) {
-        try {
-          PooledConnection conn = state.idleConnections.remove(i - 1);
-          conn.invalidate();
+      fillIdleConnections(poolMinimumIdle);
+      detectLeaks();
+    }
+  }
 
-          Connection realConn = conn.getRealConnection();
-          if (!realConn.getAutoCommit()) {
-            realConn.rollback();
-          }
-          realConn.close();
-        } catch (Exception e) {
-          // ignore
+  /*
+   * Reports once each active connection held longer than poolLeakDetectionThreshold
+   */
+  private void detectLeaks() {
+    if (poolLeakDetectionThreshold <= 0) {
+      return;
+    }
+    for (PooledConnection conn : state.activeConnections.values()) {
+      long checkoutTime = conn.getCheckoutTime();
+      if (checkoutTime > poolLeakDetectionThreshold && conn.reportLeak()) {
+        state.leakedConnectionCount.incrementAndGet();
+        Throwable checkoutStack = conn.getCheckoutStack();
+        log.warn("Connection " + conn.getRealHashCode() + " has been checked out for " + checkoutTime + " milliseconds, it may have leaked."
+            + (checkoutStack != null ? " It was checked out at:" + stackTraceOf(checkoutStack) : ""));
+      }
+    }
+  }
+
+  /*
+   * @return the stack of the current thread when leak detection is enabled and the checkout is sampled
+   */
+  private Throwable sampleCheckoutStack() {
+    if (poolLeakDetectionThreshold <= 0 || poolLeakStackSamplingRate <= 0
+        || checkoutSequence.incrementAndGet() % poolLeakStackSamplingRate != 0) {
+      return null;
+    }
+    return new Throwable("Connection checked out by " + Thread.currentThread().getName());
+  }
+
+  private static String stackTraceOf(Throwable throwable) {
+    StringWriter writer = new StringWriter();
+    throwable.printStackTrace(new PrintWriter(writer));
+    return "\n" + writer.toString();
+  }
+
+  private void fillIdleConnections(int size) {
+    int target = Math.min(size, poolMaximumIdleConnections);
+    try {
+      while (state.idleConnectionCount.get() < target) {
+        PooledConnection conn = new PooledConnection(dataSource.getConnection(), this);
+        conn.setConnectionTypeCode(expectedConnectionTypeCode);
+        addIdleConnection(conn);
+        if (log.isDebugEnabled()) {
+          log.debug("Created idle connection " + conn.getRealHashCode() + ".");
         }
       }
+    } catch (SQLException e) {
+      log.warn("Could not open the idle connections of the pool. Cause: " + e);
+    }
+  }
+
+  private boolean isRetired(PooledConnection conn) {
+    return poolMaximumLifetime > 0 && conn.getAge() > poolMaximumLifetime;
+  }
+
+  /*
+   * Closes all active and idle connections in the pool
+   */
+  public void forceCloseAll() {
+    expectedConnectionTypeCode = assembleConnectionTypeCode(dataSource.getUrl(), dataSource.getUsername(), dataSource.getPassword());
+    for (PooledConnection conn : state.activeConnections.values()) {
+      if (state.activeConnections.remove(conn.getId(), conn)) {
+        state.reservedConnectionCount.decrementAndGet();
+        closeQuietly(conn);
+      }
+    }
+    PooledConnection conn;
+    while ((conn = pollIdleConnection(false)) != null) {
+      closeQuietly(conn);
     }
     if (log.isDebugEnabled()) {
       log.debug("PooledDataSource forcefully closed/removed all connections.");
@@ -313,135 +575,179 @@ public class PooledDataSource implements DataSource {
     return ("" + url + username + password).hashCode();
   }
 
-  protected void pushConnection(PooledConnection conn) throws SQLException {
+  private void closeQuietly(PooledConnection conn) {
+    conn.invalidate();
+    Connection realConn = conn.getRealConnection();
+    try {
+      if (!realConn.getAutoCommit()) {
+        realConn.rollback();
+      }
+    } catch (Exception e) {
+      // ignore, the connection is closed anyway
+    }
+    try {
+      realConn.close();
+    } catch (Exception e) {
+      // ignore
+    }
+  }
 
-    synchronized (state) {
-      state.activeConnections.remove(conn);
+  protected void pushConnection(PooledConnection conn) throws SQLException {
+    if (!state.activeConnections.remove(conn.getId(), conn)) {
+      // claimed as overdue or closed by forceCloseAll, its slot is no longer ours to release
+      conn.invalidate();
+      if (log.isDebugEnabled()) {
+        log.debug("A bad connection (" + conn.getRealHashCode() + ") attempted to return to the pool, discarding connection.");
+      }
+      state.badConnectionCount.incrementAndGet();
+      return;
+    }
+    state.holdTimeHistogram.record(conn.getCheckoutTime());
+    try {
       if (conn.isValid()) {
-        if (state.idleConnections.size() < poolMaximumIdleConnections && conn.getConnectionTypeCode() == expectedConnectionTypeCode) {
-          state.accumulatedCheckoutTime += conn.getCheckoutTime();
-          if (!conn.getRealConnection().getAutoCommit()) {
-            conn.getRealConnection().rollback();
-          }
+        state.accumulatedCheckoutTime.addAndGet(conn.getCheckoutTime());
+        if (!conn.getRealConnection().getAutoCommit()) {
+          conn.getRealConnection().rollback();
+        }
+        if (conn.getConnectionTypeCode() == expectedConnectionTypeCode && !isRetired(conn)) {
           PooledConnection newConn = new PooledConnection(conn.getRealConnection(), this);
-          state.idleConnections.add(newConn);
           newConn.setCreatedTimestamp(conn.getCreatedTimestamp());
           newConn.setLastUsedTimestamp(conn.getLastUsedTimestamp());
           conn.invalidate();
-          if (log.isDebugEnabled()) {
-            log.debug("Returned connection " + newConn.getRealHashCode() + " to pool.");
-          }
-          state.notifyAll();
-        } else {
-          state.accumulatedCheckoutTime += conn.getCheckoutTime();
-          if (!conn.getRealConnection().getAutoCommit()) {
-            conn.getRealConnection().rollback();
+          if (handOff(newConn)) {
+            // the slot of the connection passes to the waiting thread
+            if (log.isDebugEnabled()) {
+              log.debug("Handed connection " + newConn.getRealHashCode() + " over to a waiting thread.");
+            }
+            return;
           }
-          conn.getRealConnection().close();
-          if (log.isDebugEnabled()) {
-            log.debug("Closed connection " + conn.getRealHashCode() + ".");
+          if (state.idleConnectionCount.get() < poolMaximumIdleConnections) {
+            addIdleConnection(newConn);
+            lastReturnedConnection.set(new WeakReference<PooledConnection>(newConn));
+            releaseSlot();
+            if (log.isDebugEnabled()) {
+              log.debug("Returned connection " + newConn.getRealHashCode() + " to pool.");
+            }
+            return;
           }
-          conn.invalidate();
         }
+        conn.getRealConnection().close();
+        if (log.isDebugEnabled()) {
+          log.debug("Closed connection " + conn.getRealHashCode() + ".");
+        }
+        conn.invalidate();
+        releaseSlot();
       } else {
         if (log.isDebugEnabled()) {
           log.debug("A bad connection (" + conn.getRealHashCode() + ") attempted to return to the pool, discarding connection.");
         }
-        state.badConnectionCount++;
+        state.badConnectionCount.incrementAndGet();
+        releaseSlot();
       }
+    } catch (SQLException e) {
+      conn.invalidate();
+      releaseSlot();
+      throw e;
     }
   }
 
   private PooledConnection popConnection(String username, String password) throws SQLException {
     boolean countedWait = false;
+    long waitTime = 0;
     PooledConnection conn = null;
     long t = System.currentTimeMillis();
     int localBadConnectionCount = 0;
 
     while (conn == null) {
-      synchronized (state) {
-        if (state.idleConnections.size() > 0) {
+      if (reserveSlot()) {
+        conn = pollIdleConnection(true);
+        if (conn != null) {
           // Pool has available connection
-          conn = state.idleConnections.remove(0);
           if (log.isDebugEnabled()) {
             log.debug("Checked out connection " + conn.getRealHashCode() + " from pool.");
           }
         } else {
-          // Pool does not have available connection
-          if (state.activeConnections.size() < poolMaximumActiveConnections) {
-            // Can create new connection
+          // Pool does not have available connection, but can create new connection
+          try {
             conn = new PooledConnection(dataSource.getConnection(), this);
-            @SuppressWarnings("unused")
-            //used in logging, if enabled
-            Connection realConn = conn.getRealConnection();
-            if (log.isDebugEnabled()) {
-              log.debug("Created connection " + conn.getRealHashCode() + ".");
-            }
-          } else {
-            // Cannot create new connection
-            PooledConnection oldestActiveConnection = state.activeConnections.get(0);
-            long longestCheckoutTime = oldestActiveConnection.getCheckoutTime();
-            if (longestCheckoutTime > poolMaximumCheckoutTime) {
-              // Can claim overdue connection
-              state.claimedOverdueConnectionCount++;
-              state.accumulatedCheckoutTimeOfOverdueConnections += longestCheckoutTime;
-              state.accumulatedCheckoutTime += longestCheckoutTime;
-              state.activeConnections.remove(oldestActiveConnection);
-              if (!oldestActiveConnection.getRealConnection().getAutoCommit()) {
-                oldestActiveConnection.getRealConnection().rollback();
-              }
-              conn = new PooledConnection(oldestActiveConnection.getRealConnection(), this);
-              oldestActiveConnection.invalidate();
-              if (log.isDebugEnabled()) {
-                log.debug("Claimed overdue connection " + conn.getRealHashCode() + ".");
-              }
-            } else {
-              // Must wait
-              try {
-                if (!countedWait) {
-                  state.hadToWaitCount++;
-                  countedWait = true;
-                }
-                if (log.isDebugEnabled()) {
-                  log.debug("Waiting as long as " + poolTimeToWait + " milliseconds for connection.");
-                }
-                long wt = System.currentTimeMillis();
-                state.wait(poolTimeToWait);
-                state.accumulatedWaitTime += System.currentTimeMillis() - wt;
-              } catch (InterruptedException e) {
-                break;
-              }
-            }
+          } catch (SQLException e) {
+            releaseSlot();
+            throw e;
+          } catch (RuntimeException e) {
+            releaseSlot();
+            throw e;
+          }
+          if (log.isDebugEnabled()) {
+            log.debug("Created connection " + conn.getRealHashCode() + ".");
           }
         }
-        if (conn != null) {
-          if (conn.isValid()) {
-            if (!conn.getRealConnection().getAutoCommit()) {
-              conn.getRealConnection().rollback();
-            }
-            conn.setConnectionTypeCode(assembleConnectionTypeCode(dataSource.getUrl(), username, password));
-            conn.setCheckoutTimestamp(System.currentTimeMillis());
-            conn.setLastUsedTimestamp(System.currentTimeMillis());
-            state.activeConnections.add(conn);
-            state.requestCount++;
-            state.accumulatedRequestTime += System.currentTimeMillis() - t;
-          } else {
+      } else {
+        // Cannot create new connection
+        conn = claimOverdueConnection();
+        if (conn == null) {
+          // Must wait
+          if (!countedWait) {
+            state.hadToWaitCount.incrementAndGet();
+            countedWait = true;
+          }
+          if (log.isDebugEnabled()) {
+            log.debug("Waiting as long as " + poolTimeToWait + " milliseconds for connection.");
+          }
+          long wt = System.currentTimeMillis();
+          Waiter waiter = new Waiter();
+          try {
+            conn = awaitHandOff(waiter);
+          } catch (InterruptedException e) {
+            break;
+          } finally {
+            long waited = System.currentTimeMillis() - wt;
+            waitTime += waited;
+            state.accumulatedWaitTime.addAndGet(waited);
+          }
+        }
+      }
+      if (conn != null) {
+        boolean valid;
+        try {
+          valid = conn.isValid();
+          if (valid && !conn.getRealConnection().getAutoCommit()) {
+            conn.getRealConnection().rollback();
+          }
+        } catch (SQLException e) {
+          // a connection that cannot be reset is neither handed out nor pooled again
+          closeQuietly(conn);
+          releaseSlot();
+          throw e;
+        }
+        if (valid) {
+          conn.setConnectionTypeCode(assembleConnectionTypeCode(dataSource.getUrl(), username, password));
+          conn.setCheckoutTimestamp(System.currentTimeMillis());
+          conn.setLastUsedTimestamp(System.currentTimeMillis());
+          conn.setCheckoutStack(sampleCheckoutStack());
+          state.activeConnections.put(conn.getId(), conn);
+          state.requestCount.incrementAndGet();
+          long requestTime = System.currentTimeMillis() - t;
+          state.accumulatedRequestTime.addAndGet(requestTime);
+          state.requestTimeHistogram.record(requestTime);
+          if (countedWait) {
+            state.waitTimeHistogram.record(waitTime);
+          }
+        } else {
+          if (log.isDebugEnabled()) {
+            log.debug("A bad connection (" + conn.getRealHashCode() + ") was returned from the pool, getting another connection.");
+          }
+          state.badConnectionCount.incrementAndGet();
+          localBadConnectionCount++;
+          conn = null;
+          releaseSlot();
+          if (localBadConnectionCount > (poolMaximumIdleConnections + 3)) {
             if (log.isDebugEnabled()) {
-              log.debug("A bad connection (" + conn.getRealHashCode() + ") was returned from the pool, getting another connection.");
-            }
-            state.badConnectionCount++;
-            localBadConnectionCount++;
-            conn = null;
-            if (localBadConnectionCount > (poolMaximumIdleConnections + 3)) {
-              if (log.isDebugEnabled()) {
-                log.debug("PooledDataSource: Could not get a good connection to the database.");
-              }
-              throw new SQLException("PooledDataSource: Could not get a good connection to the database.");
+              log.debug("PooledDataSource: Could not get a good connection to the database.");
             }
+            throw new SQLException("PooledDataSource: Could not get a good connection to the database.");
           }
         }
       }
-
     }
 
     if (conn == null) {
@@ -454,6 +760,181 @@ public class PooledDataSource implements DataSource {
     return conn;
   }
 
+  /*
+   * Takes one of the poolMaximumActiveConnections slots
+   *
+   * @return True if a slot was free
+   */
+  private boolean reserveSlot() {
+    while (true) {
+      int reserved = state.reservedConnectionCount.get();
+      if (reserved >= poolMaximumActiveConnections) {
+        return false;
+      }
+      if (state.reservedConnectionCount.compareAndSet(reserved, reserved + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /*
+   * Frees a slot and lets the longest waiting thread compete for it
+   */
+  private void releaseSlot() {
+    state.reservedConnectionCount.decrementAndGet();
+    Waiter waiter = waiters.peek();
+    if (waiter != null) {
+      LockSupport.unpark(waiter.thread);
+    }
+  }
+
+  /*
+   * Claims an idle connection, preferring the one last returned by the current thread if threadAffine
+   *
+   * @return The connection or null if there is no idle connection
+   */
+  private PooledConnection pollIdleConnection(boolean threadAffine) {
+    WeakReference<PooledConnection> lastReturned = threadAffine ? lastReturnedConnection.get() : null;
+    if (lastReturned != null) {
+      PooledConnection conn = lastReturned.get();
+      lastReturnedConnection.remove();
+      if (conn != null && conn.claim()) {
+        state.idleConnections.remove(conn);
+        state.idleConnectionCount.decrementAndGet();
+        return conn;
+      }
+    }
+    PooledConnection conn;
+    while ((conn = state.idleConnections.poll()) != null) {
+      // skips the connections already claimed by their last thread
+      if (conn.claim()) {
+        state.idleConnectionCount.decrementAndGet();
+        return conn;
+      }
+    }
+    return null;
+  }
+
+  private void addIdleConnection(PooledConnection conn) {
+    state.idleConnections.add(conn);
+    state.idleConnectionCount.incrementAndGet();
+  }
+
+  /*
+   * Takes over the active connection checked out for the longest time if it is overdue
+   *
+   * @return The connection or null if none is overdue
+   */
+  private PooledConnection claimOverdueConnection() throws SQLException {
+    PooledConnection oldestActiveConnection = null;
+    for (PooledConnection conn : state.activeConnections.values()) {
+      if (oldestActiveConnection == null || conn.getCheckoutTimestamp() < oldestActiveConnection.getCheckoutTimestamp()) {
+        oldestActiveConnection = conn;
+      }
+    }
+    if (oldestActiveConnection == null) {
+      return null;
+    }
+    long longestCheckoutTime = oldestActiveConnection.getCheckoutTime();
+    if (longestCheckoutTime <= poolMaximumCheckoutTime
+        || !state.activeConnections.remove(oldestActiveConnection.getId(), oldestActiveConnection)) {
+      return null;
+    }
+    // Can claim overdue connection, its slot passes to the current thread
+    state.claimedOverdueConnectionCount.incrementAndGet();
+    state.accumulatedCheckoutTimeOfOverdueConnections.addAndGet(longestCheckoutTime);
+    state.accumulatedCheckoutTime.addAndGet(longestCheckoutTime);
+    state.holdTimeHistogram.record(longestCheckoutTime);
+    oldestActiveConnection.invalidate();
+    if (oldestActiveConnection.getCheckoutStack() != null) {
+      log.warn("Claimed overdue connection " + oldestActiveConnection.getRealHashCode() + " held for " + longestCheckoutTime
+          + " milliseconds, checked out at:" + stackTraceOf(oldestActiveConnection.getCheckoutStack()));
+    }
+    try {
+      if (!oldestActiveConnection.getRealConnection().getAutoCommit()) {
+        oldestActiveConnection.getRealConnection().rollback();
+      }
+    } catch (SQLException e) {
+      // the overdue connection cannot be reset, it is closed and the claimed slot opens a new one
+      if (log.isDebugEnabled()) {
+        log.debug("Could not reset overdue connection " + oldestActiveConnection.getRealHashCode() + ", closing it. Cause: " + e);
+      }
+      closeQuietly(oldestActiveConnection);
+      try {
+        return new PooledConnection(dataSource.getConnection(), this);
+      } catch (SQLException e2) {
+        releaseSlot();
+        throw e2;
+      } catch (RuntimeException e2) {
+        releaseSlot();
+        throw e2;
+      }
+    }
+    PooledConnection conn = new PooledConnection(oldestActiveConnection.getRealConnection(), this);
+    if (log.isDebugEnabled()) {
+      log.debug("Claimed overdue connection " + conn.getRealHashCode() + ".");
+    }
+    return conn;
+  }
+
+  /*
+   * Hands a returned connection over to the longest waiting thread
+   *
+   * @return True if a waiting thread took the connection
+   */
+  private boolean handOff(PooledConnection conn) {
+    Waiter waiter;
+    while ((waiter = waiters.poll()) != null) {
+      if (waiter.slot.compareAndSet(null, conn)) {
+        LockSupport.unpark(waiter.thread);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /*
+   * Queues the current thread until a connection is handed over, a slot is freed or poolTimeToWait elapses
+   *
+   * @return The connection handed over, or null to try again to get a connection
+   */
+  private PooledConnection awaitHandOff(Waiter waiter) throws InterruptedException {
+    waiters.add(waiter);
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(poolTimeToWait);
+    try {
+      while (true) {
+        Object handedOff = waiter.slot.get();
+        if (handedOff instanceof PooledConnection) {
+          return (PooledConnection) handedOff;
+        }
+        long remaining = deadline - System.nanoTime();
+        boolean interrupted = Thread.interrupted();
+        if (interrupted || remaining <= 0 || state.reservedConnectionCount.get() < poolMaximumActiveConnections) {
+          if (waiter.slot.compareAndSet(null, Waiter.CANCELLED)) {
+            if (interrupted) {
+              throw new InterruptedException();
+            }
+            return null;
+          }
+          // a connection was handed over meanwhile
+          return (PooledConnection) waiter.slot.get();
+        }
+        LockSupport.parkNanos(remaining);
+      }
+    } finally {
+      waiters.remove(waiter);
+    }
+  }
+
+  private static final class Waiter {
+
+    static final Object CANCELLED = new Object();
+
+    final Thread thread = Thread.currentThread();
+    final AtomicReference<Object> slot = new AtomicReference<Object>();
+
+  }
+
   /*
    * Method to check to see if a connection is still usable
    *
@@ -461,6 +942,13 @@ public class PooledDataSource implements DataSource {
    * @return True if the connection is still usable
    */
   protected boolean pingConnection(PooledConnection conn) {
+    return pingConnection(conn, false);
+  }
+
+  /*
+   * @param force - True to run the ping query even if the connection was used recently
+   */
+  private boolean pingConnection(PooledConnection conn, boolean force) {
     boolean result = true;
 
     try {
@@ -474,7 +962,7 @@ public class PooledDataSource implements DataSource {
 
     if (result) {
       if (poolPingEnabled) {
-        if (poolPingConnectionsNotUsedFor >= 0 && conn.getTimeElapsedSinceLastUse() > poolPingConnectionsNotUsedFor) {
+        if (force || poolPingConnectionsNotUsedFor >= 0 && conn.getTimeElapsedSinceLastUse() > poolPingConnectionsNotUsedFor) {
           try {
             if (log.isDebugEnabled()) {
               log.debug("Testing connection " + conn.getRealHashCode() + " ...");
@@ -25,6 +25,8 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.ibatis.cache.CacheKey;
 import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.executor.statement.StatementHandler;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 import org.apache.ibatis.logging.jdbc.ConnectionLogger;
@@ -36,6 +38,7 @@ import org.apache.ibatis.mapping.StatementType;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.factory.ObjectFactory;
 import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.KeysetBounds;
 import org.apache.ibatis.session.LocalCacheScope;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
@@ -164,6 +167,20 @@ public abstract class BaseExecutor implements Executor {
         return list;
     }
 
+    @Override
+    public <E> Cursor<E> queryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds) throws SQLException {
+        ErrorContext.instance().resource(ms.getResource()).activity("executing a query").object(ms.getId());
+        if (closed) {
+            throw new ExecutorException("Executor was closed.");
+        }
+        if (queryStack == 0 && ms.isFlushCacheRequired()) {
+            clearLocalCache();
+        }
+        // 游标的结果逐行读取，不放入本地缓存
+        BoundSql boundSql = ms.getBoundSql(parameter);
+        return doQueryCursor(ms, parameter, rowBounds, boundSql);
+    }
+
     @Override
     public void deferLoad(MappedStatement ms, MetaObject resultObject, String property, CacheKey key, Class<?> targetType) {
         if (closed) {
@@ -188,6 +205,21 @@ public abstract class BaseExecutor implements Executor {
         cacheKey.update(ms.getId());
         cacheKey.update(rowBounds.getOffset());
         cacheKey.update(rowBounds.getLimit());
+        if (rowBounds instanceof KeysetBounds) {
+            // 键集分页的语句在StatementHandler中才改写，键列及起始键需计入缓存Key
+            KeysetBounds keysetBounds = (KeysetBounds) rowBounds;
+            if (keysetBounds.getColumns() != null) {
+                for (int i = 0; i < keysetBounds.getColumns().length; i++) {
+                    cacheKey.update(keysetBounds.getColumns()[i]);
+                    cacheKey.update(keysetBounds.isDescending(i));
+                }
+            }
+            if (keysetBounds.getAfterKey() != null) {
+                for (Object value : keysetBounds.getAfterKey()) {
+                    cacheKey.update(value);
+                }
+            }
+        }
         cacheKey.update(boundSql.getSql());
 
         List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
@@ -256,6 +288,30 @@ public abstract class BaseExecutor implements Executor {
     protected abstract <E> List<E> doQuery(MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler resultHandler, BoundSql boundSql)
             throws SQLException;
 
+    /**
+     * 返回的游标持有新创建的 Statement，由游标在读完或关闭时负责关闭
+     */
+    protected abstract <E> Cursor<E> doQueryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds, BoundSql boundSql)
+            throws SQLException;
+
+    /**
+     * 为游标创建一个不复用的 Statement 并执行查询，执行失败时关闭该 Statement
+     */
+    protected <E> Cursor<E> openCursor(StatementHandler handler, Log statementLog) throws SQLException {
+        Statement stmt = handler.prepare(getConnection(statementLog));
+        boolean opened = false;
+        try {
+            handler.parameterize(stmt);
+            Cursor<E> cursor = handler.<E>queryCursor(stmt);
+            opened = true;
+            return cursor;
+        } finally {
+            if (!opened) {
+                closeStatement(stmt);
+            }
+        }
+    }
+
     protected void closeStatement(Statement statement) {
         if (statement != null) {
             try {
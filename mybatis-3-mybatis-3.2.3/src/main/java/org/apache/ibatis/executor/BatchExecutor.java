@@ -21,13 +21,18 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.executor.statement.StatementHandler;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.BatchOrdering;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
@@ -39,8 +44,15 @@ public class BatchExecutor extends BaseExecutor {
 
   private final List<Statement> statementList = new ArrayList<Statement>();
   private final List<BatchResult> batchResultList = new ArrayList<BatchResult>();
+  /* the rewritten INSERT of each group, null for a JDBC batch */
+  private final List<MultiValuesInsert> multiValuesInsertList = new ArrayList<MultiValuesInsert>();
   private String currentSql;
   private MappedStatement currentStatement;
+  /* statement index by sql, for the groups that later executions may still join */
+  private final Map<String, Integer> openStatements = new HashMap<String, Integer>();
+  private SqlCommandType currentCommandType;
+  private int pendingCount;
+  private final List<BatchResult> flushedResults = new ArrayList<BatchResult>();
 
   public BatchExecutor(Configuration configuration, Transaction transaction) {
     super(configuration, transaction);
@@ -52,24 +64,66 @@ public class BatchExecutor extends BaseExecutor {
     final BoundSql boundSql = handler.getBoundSql();
     final String sql = boundSql.getSql();
     final Statement stmt;
-    if (sql.equals(currentSql) && ms.equals(currentStatement)) {
-      int last = statementList.size() - 1;
-      stmt = statementList.get(last);
-      BatchResult batchResult = batchResultList.get(last);
+    final MultiValuesInsert multiValuesInsert;
+    int index = findStatement(ms, sql);
+    if (index > -1) {
+      stmt = statementList.get(index);
+      multiValuesInsert = multiValuesInsertList.get(index);
+      BatchResult batchResult = batchResultList.get(index);
       batchResult.addParameterObject(parameterObject);
     } else {
-      Connection connection = getConnection(ms.getStatementLog());
-      stmt = handler.prepare(connection);
+      multiValuesInsert = configuration.isMultiValuesInsertEnabled() ? MultiValuesInsert.forStatement(ms, boundSql) : null;
+      if (multiValuesInsert == null) {
+        Connection connection = getConnection(ms.getStatementLog());
+        stmt = handler.prepare(connection);
+      } else {
+        stmt = null;
+      }
       currentSql = sql;
       currentStatement = ms;
+      openStatements.put(sql, statementList.size());
       statementList.add(stmt);
+      multiValuesInsertList.add(multiValuesInsert);
       batchResultList.add(new BatchResult(ms, sql, parameterObject));
     }
-    handler.parameterize(stmt);
-    handler.batch(stmt);
+    if (multiValuesInsert != null) {
+      multiValuesInsert.addRow(handler.getParameterHandler());
+    } else {
+      handler.parameterize(stmt);
+      handler.batch(stmt);
+    }
+    int batchFlushSize = configuration.getBatchFlushSize();
+    if (batchFlushSize > 0 && ++pendingCount >= batchFlushSize) {
+      // the results are returned by the next flushStatements
+      executeBatches(flushedResults);
+    }
     return BATCH_UPDATE_RETURN_VALUE;
   }
 
+  /**
+   * @return the index of the statement this execution can be added to, -1 for a new statement
+   */
+  private int findStatement(MappedStatement ms, String sql) {
+    if (ms.getConfiguration().getBatchOrdering() == BatchOrdering.STRICT) {
+      return sql.equals(currentSql) && ms.equals(currentStatement) ? statementList.size() - 1 : -1;
+    }
+    if (ms.getSqlCommandType() != currentCommandType) {
+      // moving executions across a change of command type could change the outcome
+      openStatements.clear();
+      currentCommandType = ms.getSqlCommandType();
+    } else if (currentCommandType != SqlCommandType.INSERT && !sql.equals(currentSql)) {
+      // an update or delete may depend on the one before it, only repeated executions are grouped
+      openStatements.clear();
+    }
+    Integer index = openStatements.get(sql);
+    if (index != null && batchResultList.get(index).getMappedStatement().equals(ms)) {
+      currentSql = sql;
+      currentStatement = ms;
+      return index;
+    }
+    return -1;
+  }
+
   @Override
   public <E> List<E> doQuery(MappedStatement ms, Object parameterObject, RowBounds rowBounds, ResultHandler resultHandler, BoundSql boundSql)
       throws SQLException {
@@ -87,19 +141,43 @@ public class BatchExecutor extends BaseExecutor {
     }
   }
 
+  @Override
+  protected <E> Cursor<E> doQueryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds, BoundSql boundSql) throws SQLException {
+    flushStatements();
+    Configuration configuration = ms.getConfiguration();
+    StatementHandler handler = configuration.newStatementHandler(this, ms, parameter, rowBounds, null, boundSql);
+    return openCursor(handler, ms.getStatementLog());
+  }
+
   public List<BatchResult> doFlushStatements(boolean isRollback) throws SQLException {
     try {
-      List<BatchResult> results = new ArrayList<BatchResult>();
       if (isRollback) {
+        clearBatches();
         return Collections.emptyList();
-      } else {
-        for (int i = 0, n = statementList.size(); i < n; i++) {
-          Statement stmt = statementList.get(i);
-          BatchResult batchResult = batchResultList.get(i);
-          try {
+      }
+      return executeBatches(new ArrayList<BatchResult>(flushedResults));
+    } finally {
+      flushedResults.clear();
+    }
+  }
+
+  /**
+   * Runs the pending batches and adds their results to the given list, that is also reported if one fails.
+   */
+  private List<BatchResult> executeBatches(List<BatchResult> results) throws SQLException {
+    try {
+      for (int i = 0, n = statementList.size(); i < n; i++) {
+        Statement stmt = statementList.get(i);
+        MultiValuesInsert multiValuesInsert = multiValuesInsertList.get(i);
+        BatchResult batchResult = batchResultList.get(i);
+        try {
+          MappedStatement ms = batchResult.getMappedStatement();
+          List<Object> parameterObjects = batchResult.getParameterObjects();
+          if (multiValuesInsert != null) {
+            // the generated keys are processed along each rewritten statement
+            batchResult.setUpdateCounts(multiValuesInsert.execute(this, getConnection(ms.getStatementLog()), parameterObjects));
+          } else {
             batchResult.setUpdateCounts(stmt.executeBatch());
-            MappedStatement ms = batchResult.getMappedStatement();
-            List<Object> parameterObjects = batchResult.getParameterObjects();
             KeyGenerator keyGenerator = ms.getKeyGenerator();
             if (keyGenerator instanceof Jdbc3KeyGenerator) {
               Jdbc3KeyGenerator jdbc3KeyGenerator = (Jdbc3KeyGenerator) keyGenerator;
@@ -109,32 +187,41 @@ public class BatchExecutor extends BaseExecutor {
                 keyGenerator.processAfter(this, ms, stmt, parameter);
               }
             }
-          } catch (BatchUpdateException e) {
-            StringBuffer message = new StringBuffer();
-            message.append(batchResult.getMappedStatement().getId())
-                .append(" (batch index #")
-                .append(i + 1)
-                .append(")")
-                .append(" failed.");
-            if (i > 0) {
-              message.append(" ")
-                  .append(i)
-                  .append(" prior sub executor(s) completed successfully, but will be rolled back.");
-            }
-            throw new BatchExecutorException(message.toString(), e, results, batchResult);
           }
-          results.add(batchResult);
+        } catch (BatchUpdateException e) {
+          StringBuffer message = new StringBuffer();
+          message.append(batchResult.getMappedStatement().getId())
+              .append(" (batch index #")
+              .append(i + 1)
+              .append(")")
+              .append(" failed.");
+          if (i > 0) {
+            message.append(" ")
+                .append(i)
+                .append(" prior sub executor(s) completed successfully, but will be rolled back.");
+          }
+          throw new BatchExecutorException(message.toString(), e, results, batchResult);
         }
-        return results;
+        results.add(batchResult);
       }
+      return results;
     } finally {
-      for (Statement stmt : statementList) {
-        closeStatement(stmt);
-      }
-      currentSql = null;
-      statementList.clear();
-      batchResultList.clear();
+      clearBatches();
+    }
+  }
+
+  private void clearBatches() {
+    for (Statement stmt : statementList) {
+      closeStatement(stmt);
     }
+    currentSql = null;
+    currentStatement = null;
+    currentCommandType = null;
+    openStatements.clear();
+    pendingCount = 0;
+    statementList.clear();
+    multiValuesInsertList.clear();
+    batchResultList.clear();
   }
 
 }
@@ -0,0 +1,162 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Lock;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.CopyStrategy;
+import org.apache.ibatis.cache.decorators.ExpiringCache;
+import org.apache.ibatis.cache.decorators.TransactionalCache;
+import org.apache.ibatis.cache.impl.ReflectionCopyStrategy;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.transaction.Transaction;
+
+/**
+ * Reloads in the background the cached results that are read shortly before they expire.
+ * <p>
+ * The statement runs again with a copy of the parameter of the read that found the entry due, in a transaction of
+ * its own, and the result replaces the entry unless it was invalidated in the meantime. Entries whose parameter
+ * cannot be copied are not refreshed and expire as usual.
+ */
+public class CacheRefresher {
+
+    private static final Log log = LogFactory.getLog(CacheRefresher.class);
+
+    private static final int THREADS = 2;
+
+    private final Configuration configuration;
+    private final ConcurrentMap<String, ExpiringCache> caches = new ConcurrentHashMap<String, ExpiringCache>();
+    private final CopyStrategy parameterCopier = new ReflectionCopyStrategy();
+    private volatile ExecutorService threads;
+
+    public CacheRefresher(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    public void register(ExpiringCache cache) {
+        if (cache.isRefreshAhead()) {
+            caches.put(cache.getId(), cache);
+        }
+    }
+
+    /**
+     * Called when a read found the entry of the key in the cache.
+     */
+    public void refreshIfDue(final Cache cache, final MappedStatement ms, Object parameterObject,
+                             final RowBounds rowBounds, final CacheKey key) {
+        final ExpiringCache expiringCache = caches.get(cache.getId());
+        if (expiringCache != null && expiringCache.claimRefresh(key)) {
+            // the caller may change its parameter while the refresh runs
+            final Object parameterCopy;
+            try {
+                parameterCopy = parameterCopier.copyForWrite(parameterObject);
+            } catch (CacheException e) {
+                log.debug("Not refreshing an entry of cache " + cache.getId() + ", its parameter cannot be copied. Cause: " + e);
+                return;
+            }
+            threads().execute(new Runnable() {
+                public void run() {
+                    refresh(cache, expiringCache, ms, parameterCopy, rowBounds, key);
+                }
+            });
+        }
+    }
+
+    private void refresh(Cache cache, ExpiringCache expiringCache, MappedStatement ms, Object parameterObject,
+                         RowBounds rowBounds, CacheKey key) {
+        Executor executor = null;
+        try {
+            executor = newExecutor();
+            BoundSql boundSql = ms.getBoundSql(parameterObject);
+            // the parameter object was changed before it was copied
+            if (!key.equals(executor.createCacheKey(ms, parameterObject, rowBounds, boundSql))) {
+                return;
+            }
+            List<Object> list = executor.query(ms, parameterObject, rowBounds, Executor.NO_RESULT_HANDLER);
+            TransactionalCache transactionalCache = new TransactionalCache(cache);
+            transactionalCache.putObject(key, list, ms.getCacheTags(parameterObject));
+            // flushes and invalidations commit under the same lock, so none can land between the check and the put
+            Lock lock = cache.getReadWriteLock().writeLock();
+            lock.lock();
+            try {
+                if (expiringCache.isRefreshing(key)) {
+                    transactionalCache.commit();
+                }
+            } finally {
+                lock.unlock();
+            }
+        } catch (Exception e) {
+            log.warn("Could not refresh an entry of cache " + cache.getId() + ". Cause: " + e);
+        } finally {
+            if (executor != null) {
+                executor.close(false);
+            }
+        }
+    }
+
+    /**
+     * Not the configured executor, which would find the entry in the cache again, but with the same plugins.
+     */
+    private Executor newExecutor() {
+        Environment environment = configuration.getEnvironment();
+        if (environment == null || environment.getDataSource() == null) {
+            throw new ExecutorException("Could not refresh the cache.  Environment was not configured.");
+        }
+        DataSource dataSource = environment.getDataSource();
+        Transaction transaction = environment.getTransactionFactory().newTransaction(dataSource, null, false);
+        Executor executor = new SimpleExecutor(configuration, transaction);
+        for (Interceptor interceptor : configuration.getInterceptors()) {
+            executor = (Executor) interceptor.plugin(executor);
+        }
+        return executor;
+    }
+
+    private ExecutorService threads() {
+        if (threads == null) {
+            synchronized (this) {
+                if (threads == null) {
+                    threads = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "MyBatis cache refresh");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                }
+            }
+        }
+        return threads;
+    }
+
+}
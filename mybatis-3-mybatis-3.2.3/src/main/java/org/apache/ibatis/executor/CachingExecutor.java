@@ -1,15 +1,19 @@
 package org.apache.ibatis.executor;
 
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.CacheMonitor;
 import org.apache.ibatis.cache.TransactionalCacheManager;
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.mapping.ParameterMapping;
 import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.mapping.SqlCommandType;
 import org.apache.ibatis.mapping.StatementType;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.session.ResultHandler;
@@ -32,6 +36,11 @@ public class CachingExecutor implements Executor {
      */
     private boolean dirty;
 
+    /**
+     * 是否有按标签失效的缓存条目，关闭会话时和dirty一样需要回滚
+     */
+    private boolean invalidated;
+
     public CachingExecutor(Executor delegate) {
         this(delegate, false);
     }
@@ -47,7 +56,7 @@ public class CachingExecutor implements Executor {
 
     public void close(boolean forceRollback) {
         try {
-            if (dirty && !autoCommit) {
+            if ((dirty || invalidated) && !autoCommit) {
                 tcm.rollback();
             } else {
                 tcm.commit();
@@ -62,7 +71,7 @@ public class CachingExecutor implements Executor {
     }
 
     public int update(MappedStatement ms, Object parameterObject) throws SQLException {
-        flushCacheIfRequired(ms);
+        flushCacheIfRequired(ms, parameterObject);
         return delegate.update(ms, parameterObject);
     }
 
@@ -72,6 +81,14 @@ public class CachingExecutor implements Executor {
         return query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
     }
 
+    /**
+     * 游标查询不读取也不写入二级缓存
+     */
+    public <E> Cursor<E> queryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds) throws SQLException {
+        flushCacheIfRequired(ms, parameter);
+        return delegate.queryCursor(ms, parameter, rowBounds);
+    }
+
     /**
      * 查询， 如果使用缓存，1. 判断是否需要刷新缓存，如果刷新了缓存，则不从缓存中获取数据。如果使用了缓存，则将查询结果放入缓存中。
      *
@@ -89,24 +106,44 @@ public class CachingExecutor implements Executor {
         Cache cache = ms.getCache();
         if (cache != null) {
             // 刷新缓存
-            flushCacheIfRequired(ms);
+            flushCacheIfRequired(ms, parameterObject);
             if (ms.isUseCache() && resultHandler == null) {
                 // 当为存储过程时的判断：不支持使用OUT params 缓存存储过程，请在中配置useCache=false
                 ensureNoOutParams(ms, parameterObject, boundSql);
-                if (!dirty) {
+                // 结果依赖的缓存标签，被本会话的写语句失效时不读取缓存
+                List<String> tags = ms.getCacheTags(parameterObject);
+                if (!dirty && !tcm.isInvalidated(cache, tags)) {
                     cache.getReadWriteLock().readLock().lock();
                     try {
                         @SuppressWarnings("unchecked")
-                        List<E> cachedList = (List<E>) cache.getObject(key);
+                        List<E> cachedList = (List<E>) tcm.getObject(cache, key);
                         if (cachedList != null) {
+                            // 即将过期的条目在后台重新加载
+                            ms.getConfiguration().getCacheRefresher().refreshIfDue(cache, ms, parameterObject, rowBounds, key);
                             return cachedList;
                         }
                     } finally {
                         cache.getReadWriteLock().readLock().unlock();
                     }
                 }
-                List<E> list = delegate.<E>query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
-                tcm.putObject(cache, key, list);
+                long start = System.nanoTime();
+                List<E> list;
+                try {
+                    list = delegate.<E>query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
+                } catch (SQLException e) {
+                    // 阻塞缓存中等待这个key的会话改为自己查询
+                    tcm.unlock(cache, key);
+                    throw e;
+                } catch (RuntimeException e) {
+                    tcm.unlock(cache, key);
+                    throw e;
+                }
+                // 记录未命中时从数据库加载的耗时
+                CacheMonitor cacheMonitor = ms.getConfiguration().getCacheMonitor(cache.getId());
+                if (cacheMonitor != null) {
+                    cacheMonitor.getMetrics().recordLoad(System.nanoTime() - start);
+                }
+                tcm.putObject(cache, key, list, tags);
                 return list;
             }
         }
@@ -121,12 +158,14 @@ public class CachingExecutor implements Executor {
         delegate.commit(required);
         tcm.commit();
         dirty = false;
+        invalidated = false;
     }
 
     public void rollback(boolean required) throws SQLException {
         try {
             delegate.rollback(required);
             dirty = false;
+            invalidated = false;
         } finally {
             if (required) {
                 tcm.rollback();
@@ -160,11 +199,27 @@ public class CachingExecutor implements Executor {
         delegate.clearLocalCache();
     }
 
-    private void flushCacheIfRequired(MappedStatement ms) {
+    /**
+     * 写语句声明了缓存标签时，只失效依赖这些标签的条目：本命名空间的缓存中还包括没有标签的条目，
+     * 其他命名空间的缓存中只包括带有相同标签的条目。缓存不支持标签时仍然清空整个缓存
+     */
+    private void flushCacheIfRequired(MappedStatement ms, Object parameterObject) {
         Cache cache = ms.getCache();
         if (cache != null && ms.isFlushCacheRequired()) {
-            dirty = true; // issue #524. Disable using cached data for this session
-            tcm.clear(cache);
+            List<String> tags = ms.getSqlCommandType() == SqlCommandType.SELECT
+                    ? Collections.<String>emptyList() : ms.getCacheTags(parameterObject);
+            if (!tags.isEmpty() && tcm.invalidate(cache, tags, true)) {
+                invalidated = true;
+                // 其他缓存中只有声明了相同标签的查询放入的条目需要失效
+                for (Cache other : ms.getConfiguration().getTaggedCaches(tags)) {
+                    if (other != cache) {
+                        tcm.invalidate(other, tags, false);
+                    }
+                }
+            } else {
+                dirty = true; // issue #524. Disable using cached data for this session
+                tcm.clear(cache);
+            }
         }
     }
 
@@ -0,0 +1,236 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
+import org.apache.ibatis.executor.keygen.KeyGenerator;
+import org.apache.ibatis.executor.keygen.NoKeyGenerator;
+import org.apache.ibatis.executor.parameter.ParameterHandler;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.reflection.ExceptionUtil;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+
+/**
+ * The batched executions of a single row INSERT, run as multi-row
+ * {@code INSERT ... VALUES (...), (...)} statements by the BatchExecutor.
+ */
+final class MultiValuesInsert {
+
+  private static final Pattern INSERT_VALUES = Pattern.compile(
+      "^\\s*insert\\s+into\\s+[^()'\"?;]+(\\([^()'\"?;]*\\))?\\s*values\\s*(?=\\()", Pattern.CASE_INSENSITIVE);
+
+  private final MappedStatement mappedStatement;
+  private final BoundSql boundSql;
+  private final String head;
+  private final String row;
+  private final int parameterCount;
+  private final List<ParameterHandler> parameterHandlers = new ArrayList<ParameterHandler>();
+
+  private MultiValuesInsert(MappedStatement mappedStatement, BoundSql boundSql, String head, String row, int parameterCount) {
+    this.mappedStatement = mappedStatement;
+    this.boundSql = boundSql;
+    this.head = head;
+    this.row = row;
+    this.parameterCount = parameterCount;
+  }
+
+  /**
+   * @return the rewriter for the statement, or null if the statement is not an INSERT of a single row
+   *         or needs each row to be executed on its own (e.g. a selectKey run after the insert)
+   */
+  static MultiValuesInsert forStatement(MappedStatement ms, BoundSql boundSql) {
+    KeyGenerator keyGenerator = ms.getKeyGenerator();
+    if (ms.getSqlCommandType() != SqlCommandType.INSERT || ms.getStatementType() != StatementType.PREPARED
+        || !(keyGenerator instanceof Jdbc3KeyGenerator || keyGenerator instanceof NoKeyGenerator)) {
+      return null;
+    }
+    String sql = boundSql.getSql();
+    Matcher matcher = INSERT_VALUES.matcher(sql);
+    if (!matcher.find()) {
+      return null;
+    }
+    String row = sql.substring(matcher.end()).trim();
+    // nothing may follow the row, like other rows or ON DUPLICATE KEY clauses
+    if (closingParenthesis(row) != row.length() - 1) {
+      return null;
+    }
+    int parameterCount = countParameters(row);
+    if (parameterCount != boundSql.getParameterMappings().size()) {
+      return null;
+    }
+    return new MultiValuesInsert(ms, boundSql, sql.substring(0, matcher.end()), row, parameterCount);
+  }
+
+  void addRow(ParameterHandler parameterHandler) {
+    parameterHandlers.add(parameterHandler);
+  }
+
+  /**
+   * Inserts the rows in statements of at most multiValuesInsertMaxRows rows and multiValuesInsertMaxParameters parameters.
+   *
+   * @return the update count of each row
+   */
+  int[] execute(Executor executor, Connection connection, List<Object> parameterObjects) throws SQLException {
+    Configuration configuration = mappedStatement.getConfiguration();
+    int maxRows = configuration.getMultiValuesInsertMaxRows();
+    if (parameterCount > 0) {
+      maxRows = Math.min(maxRows, configuration.getMultiValuesInsertMaxParameters() / parameterCount);
+    }
+    maxRows = Math.max(maxRows, 1);
+    int rows = parameterHandlers.size();
+    int[] updateCounts = new int[rows];
+    for (int start = 0; start < rows; start += maxRows) {
+      int end = Math.min(rows, start + maxRows);
+      BoundSql rowsBoundSql = boundSql.copy(configuration, sql(end - start), boundSql.getParameterMappings());
+      StatementHandler handler = configuration.newStatementHandler(executor, mappedStatement, parameterObjects.get(start), RowBounds.DEFAULT, null, rowsBoundSql);
+      Statement stmt = null;
+      try {
+        stmt = handler.prepare(connection);
+        PreparedStatement ps = (PreparedStatement) stmt;
+        for (int i = start; i < end; i++) {
+          parameterHandlers.get(i).setParameters(OffsetPreparedStatement.newInstance(ps, (i - start) * parameterCount));
+        }
+        ps.execute();
+        int updateCount = ps.getUpdateCount();
+        Arrays.fill(updateCounts, start, end, updateCount == end - start ? 1 : Statement.SUCCESS_NO_INFO);
+        if (mappedStatement.getKeyGenerator() instanceof Jdbc3KeyGenerator) {
+          ((Jdbc3KeyGenerator) mappedStatement.getKeyGenerator()).processBatch(mappedStatement, ps, parameterObjects.subList(start, end));
+        }
+      } catch (BatchUpdateException e) {
+        throw e;
+      } catch (SQLException e) {
+        int[] executedCounts = new int[start];
+        System.arraycopy(updateCounts, 0, executedCounts, 0, start);
+        BatchUpdateException batchUpdateException = new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(), executedCounts);
+        batchUpdateException.initCause(e);
+        throw batchUpdateException;
+      } finally {
+        if (stmt != null) {
+          try {
+            stmt.close();
+          } catch (SQLException e) {
+            // ignore
+          }
+        }
+      }
+    }
+    return updateCounts;
+  }
+
+  private String sql(int rows) {
+    StringBuilder sql = new StringBuilder(head.length() + (row.length() + 2) * rows);
+    sql.append(head).append(row);
+    for (int i = 1; i < rows; i++) {
+      sql.append(", ").append(row);
+    }
+    return sql.toString();
+  }
+
+  /**
+   * @return the index of the parenthesis closing the one at index 0, -1 if none
+   */
+  private static int closingParenthesis(String sql) {
+    int depth = 0;
+    char quote = 0;
+    for (int i = 0; i < sql.length(); i++) {
+      char c = sql.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '\'' || c == '"') {
+        quote = c;
+      } else if (c == '(') {
+        depth++;
+      } else if (c == ')' && --depth == 0) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int countParameters(String sql) {
+    int count = 0;
+    char quote = 0;
+    for (int i = 0; i < sql.length(); i++) {
+      char c = sql.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '\'' || c == '"') {
+        quote = c;
+      } else if (c == '?') {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Shifts the parameter indexes so the parameter handler of each row sets the parameters of its own row.
+   */
+  private static final class OffsetPreparedStatement implements InvocationHandler {
+
+    private final PreparedStatement statement;
+    private final int offset;
+
+    private OffsetPreparedStatement(PreparedStatement statement, int offset) {
+      this.statement = statement;
+      this.offset = offset;
+    }
+
+    static PreparedStatement newInstance(PreparedStatement statement, int offset) {
+      if (offset == 0) {
+        return statement;
+      }
+      InvocationHandler handler = new OffsetPreparedStatement(statement, offset);
+      ClassLoader cl = PreparedStatement.class.getClassLoader();
+      return (PreparedStatement) Proxy.newProxyInstance(cl, new Class[]{PreparedStatement.class}, handler);
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] params) throws Throwable {
+      try {
+        if (method.getName().startsWith("set") && params != null && params.length > 1 && params[0] instanceof Integer) {
+          params[0] = (Integer) params[0] + offset;
+        }
+        return method.invoke(statement, params);
+      } catch (Throwable t) {
+        throw ExceptionUtil.unwrapThrowable(t);
+      }
+    }
+  }
+
+}
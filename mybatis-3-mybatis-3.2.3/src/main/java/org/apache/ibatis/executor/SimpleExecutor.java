@@ -6,6 +6,7 @@ import java.sql.Statement;
 import java.util.Collections;
 import java.util.List;
 
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.statement.StatementHandler;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.mapping.BoundSql;
@@ -53,6 +54,13 @@ public class SimpleExecutor extends BaseExecutor {
         }
     }
 
+    @Override
+    protected <E> Cursor<E> doQueryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds, BoundSql boundSql) throws SQLException {
+        Configuration configuration = ms.getConfiguration();
+        StatementHandler handler = configuration.newStatementHandler(this, ms, parameter, rowBounds, null, boundSql);
+        return openCursor(handler, ms.getStatementLog());
+    }
+
     public List<BatchResult> doFlushStatements(boolean isRollback) throws SQLException {
         return Collections.emptyList();
     }
@@ -0,0 +1,104 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.keygen;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.ExecutorException;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.PrefetchMode;
+
+/**
+ * A selectKey run before the insert that fetches the keys of several inserts at once and hands them out from memory.
+ * <p>
+ * The key statement is run with a parameter object whose {@code prefetch} property is the number of keys to fetch.
+ * In {@link PrefetchMode#ROWS} mode it returns one row per key, like
+ * {@code select nextval('seq') from generate_series(1, #{prefetch})}. In {@link PrefetchMode#HILO} mode it returns
+ * a single value of a sequence incremented by the prefetch size, and the keys from that value up to
+ * value + prefetch - 1 are handed out.
+ * <p>
+ * Keys left unused, e.g. on a rollback or when the application stops, are lost as with any sequence.
+ */
+public class PrefetchingSelectKeyGenerator extends SelectKeyGenerator {
+
+    private final int prefetch;
+    private final PrefetchMode mode;
+    private final Queue<Object> keys = new LinkedList<Object>();
+
+    public PrefetchingSelectKeyGenerator(MappedStatement keyStatement, int prefetch) {
+        this(keyStatement, prefetch, PrefetchMode.ROWS);
+    }
+
+    public PrefetchingSelectKeyGenerator(MappedStatement keyStatement, int prefetch, PrefetchMode mode) {
+        super(keyStatement, true);
+        this.prefetch = prefetch;
+        this.mode = mode;
+    }
+
+    @Override
+    protected synchronized Object selectKey(Executor executor, Object parameter) throws SQLException {
+        if (keys.isEmpty()) {
+            fetchKeys(executor);
+        }
+        return keys.poll();
+    }
+
+    private void fetchKeys(Executor executor) throws SQLException {
+        Map<String, Object> parameter = new HashMap<String, Object>();
+        parameter.put("prefetch", prefetch);
+        List<Object> values = query(executor, parameter);
+        if (values.size() == 0) {
+            throw new ExecutorException("SelectKey returned no data.");
+        } else if (mode == PrefetchMode.HILO) {
+            if (values.size() > 1) {
+                throw new ExecutorException("SelectKey with prefetchMode HILO returned " + values.size() + " rows, it must return a single value.");
+            }
+            Object value = values.get(0);
+            for (int i = 0; i < prefetch; i++) {
+                keys.add(add(value, i));
+            }
+        } else if (values.size() < prefetch) {
+            // a single value of a sequence incremented by one must not be taken for a block of keys
+            throw new ExecutorException("SelectKey with prefetch " + prefetch + " returned only " + values.size()
+                    + " rows. Return one row per key, or use prefetchMode HILO with a sequence incremented by the prefetch size.");
+        } else {
+            keys.addAll(values);
+        }
+    }
+
+    private static Object add(Object value, int increment) {
+        if (value instanceof Integer) {
+            return (Integer) value + increment;
+        } else if (value instanceof Long) {
+            return (Long) value + increment;
+        } else if (value instanceof BigInteger) {
+            return ((BigInteger) value).add(BigInteger.valueOf(increment));
+        } else if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).add(BigDecimal.valueOf(increment));
+        }
+        throw new ExecutorException("SelectKey with prefetch returned a single value of " + (value == null ? null : value.getClass())
+                + " that cannot be incremented. Return an Integer, Long, BigInteger or BigDecimal.");
+    }
+
+}
@@ -15,6 +15,7 @@
  */
 package org.apache.ibatis.executor.keygen;
 
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
 
@@ -56,17 +57,7 @@ public class SelectKeyGenerator implements KeyGenerator {
                 final Configuration configuration = ms.getConfiguration();
                 final MetaObject metaParam = configuration.newMetaObject(parameter);
                 if (keyProperty != null && metaParam.hasSetter(keyProperty)) {
-                    // Do not close keyExecutor.
-                    // The transaction will be closed by parent executor.
-                    Executor keyExecutor = configuration.newExecutor(executor.getTransaction(), ExecutorType.SIMPLE);
-                    List<Object> values = keyExecutor.query(keyStatement, parameter, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
-                    if (values.size() == 0) {
-                        throw new ExecutorException("SelectKey returned no data.");
-                    } else if (values.size() > 1) {
-                        throw new ExecutorException("SelectKey returned more than one value.");
-                    } else {
-                        metaParam.setValue(keyProperty, values.get(0));
-                    }
+                    metaParam.setValue(keyProperty, selectKey(executor, parameter));
                 }
             }
         } catch (ExecutorException e) {
@@ -76,4 +67,24 @@ public class SelectKeyGenerator implements KeyGenerator {
         }
     }
 
+    /**
+     * Runs the key statement and returns the key to set to the parameter object.
+     */
+    protected Object selectKey(Executor executor, Object parameter) throws SQLException {
+        List<Object> values = query(executor, parameter);
+        if (values.size() == 0) {
+            throw new ExecutorException("SelectKey returned no data.");
+        } else if (values.size() > 1) {
+            throw new ExecutorException("SelectKey returned more than one value.");
+        }
+        return values.get(0);
+    }
+
+    protected List<Object> query(Executor executor, Object parameter) throws SQLException {
+        // Do not close keyExecutor.
+        // The transaction will be closed by parent executor.
+        Executor keyExecutor = keyStatement.getConfiguration().newExecutor(executor.getTransaction(), ExecutorType.SIMPLE);
+        return keyExecutor.query(keyStatement, parameter, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+    }
+
 }
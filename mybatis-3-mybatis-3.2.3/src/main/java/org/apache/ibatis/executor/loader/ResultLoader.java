@@ -49,6 +49,7 @@ public class ResultLoader {
   
   protected boolean loaded;
   protected Object resultObject;
+  protected ResultLoaderBatch batch;
   
   public ResultLoader(Configuration config, Executor executor, MappedStatement mappedStatement, Object parameterObject, Class<?> targetType, CacheKey cacheKey, BoundSql boundSql) {
     this.configuration = config;
@@ -64,17 +65,27 @@ public class ResultLoader {
   }
 
   public Object loadResult() throws SQLException {
-    List<Object> list = selectList();
-    resultObject = resultExtractor.extractObjectFromList(list, targetType);
+    if (!loaded && !(batch != null && batch.load(this))) {
+      List<Object> list = selectList(mappedStatement, parameterObject, cacheKey, boundSql);
+      setResult(list);
+    }
     return resultObject;
   }
 
-  private <E> List<E> selectList() throws SQLException {
+  void setResult(List<Object> list) {
+    resultObject = resultExtractor.extractObjectFromList(list, targetType);
+    loaded = true;
+  }
+
+  <E> List<E> selectList(MappedStatement mappedStatement, Object parameterObject, CacheKey cacheKey, BoundSql boundSql) throws SQLException {
     Executor localExecutor = executor;
     if (Thread.currentThread().getId() != this.creatorThreadId || localExecutor.isClosed()) {
       localExecutor = newExecutor();
     }
     try {
+      if (cacheKey == null && boundSql != null) {
+        cacheKey = localExecutor.createCacheKey(mappedStatement, parameterObject, RowBounds.DEFAULT, boundSql);
+      }
       return localExecutor.<E> query(mappedStatement, parameterObject, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER, cacheKey, boundSql);
     } finally {
       if (localExecutor != executor) {
@@ -0,0 +1,267 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.loader;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.ibatis.executor.ExecutorException;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.reflection.MetaClass;
+import org.apache.ibatis.session.Configuration;
+
+/**
+ * The pending loaders of a nested select created while handling the same result.
+ * <p>
+ * When one of them is loaded, up to batchSize pending loaders are loaded by a single query that turns the
+ * {@code column = ?} condition of the nested select into {@code column IN (?, ?, ...)}. The rows are given back to each
+ * loader by the value of the property mapped to that column. Nested selects that cannot be rewritten safely, e.g.
+ * because of a composite key, a LIMIT or an OR, are loaded one by one as usual.
+ * <p>
+ * Numbers are matched by value. Other keys, like strings, may be equal for the database but not for Java, e.g. with a
+ * case insensitive collation or a padded CHAR column, so a loader with such a key that gets no row loads its result on
+ * its own.
+ */
+public class ResultLoaderBatch {
+
+  private static final Pattern KEY_CONDITION = Pattern.compile("([\\w$.\"`\\[\\]]+)\\s*=\\s*$");
+  private static final Pattern UNSAFE_KEYWORDS = Pattern.compile("\\b(limit|offset|fetch|top|rownum|group|having|union|or)\\b", Pattern.CASE_INSENSITIVE);
+  private static final String KEY_PARAMETER_PREFIX = "__batch_";
+
+  private final Configuration configuration;
+  private final MappedStatement mappedStatement;
+  private final int batchSize;
+  private final Set<ResultLoader> pendingLoaders = new LinkedHashSet<ResultLoader>();
+  private boolean disabled;
+
+  public ResultLoaderBatch(Configuration configuration, MappedStatement mappedStatement, int batchSize) {
+    this.configuration = configuration;
+    this.mappedStatement = mappedStatement;
+    this.batchSize = batchSize;
+  }
+
+  public synchronized void add(ResultLoader resultLoader) {
+    resultLoader.batch = this;
+    pendingLoaders.add(resultLoader);
+  }
+
+  /**
+   * Loads the result of the given loader along with the results of other pending loaders.
+   *
+   * @return false if the nested select cannot be batched or did not load the result of the given loader, which must
+   *         then load its result on its own
+   */
+  synchronized boolean load(ResultLoader trigger) throws SQLException {
+    pendingLoaders.remove(trigger);
+    BoundSql boundSql = trigger.boundSql;
+    if (!isBatchable() || boundSql == null || !isKey(trigger.parameterObject)
+        || boundSql.getParameterMappings().size() != 1) {
+      return false;
+    }
+    String sql = boundSql.getSql();
+    int parameterIndex = parameterIndex(sql);
+    if (parameterIndex == -1 || UNSAFE_KEYWORDS.matcher(sql).find()) {
+      return false;
+    }
+    Matcher matcher = KEY_CONDITION.matcher(sql.substring(0, parameterIndex));
+    String keyProperty = matcher.find() ? findKeyProperty(matcher.group(1)) : null;
+    if (keyProperty == null) {
+      return false;
+    }
+
+    Map<Object, List<ResultLoader>> loadersByKey = selectLoaders(trigger);
+    List<Object> rows = selectRows(trigger, boundSql, sql.substring(0, matcher.end()).replaceFirst("=\\s*$", "IN ("), sql.substring(parameterIndex + 1), loadersByKey);
+    Map<Object, List<Object>> rowsByKey = new HashMap<Object, List<Object>>();
+    for (Object row : rows) {
+      Object key = row == null ? null : configuration.newMetaObject(row).getValue(keyProperty);
+      if (key == null) {
+        // the key column is not among the selected ones
+        disabled = true;
+        return false;
+      }
+      List<Object> keyRows = rowsByKey.get(normalize(key));
+      if (keyRows == null) {
+        keyRows = new ArrayList<Object>();
+        rowsByKey.put(normalize(key), keyRows);
+      }
+      keyRows.add(row);
+    }
+    boolean triggerLoaded = true;
+    for (Map.Entry<Object, List<ResultLoader>> entry : loadersByKey.entrySet()) {
+      List<Object> keyRows = rowsByKey.get(entry.getKey());
+      if (keyRows == null && !(entry.getKey() instanceof Number)) {
+        // maybe a row the database matched with a key Java does not find equal
+        for (ResultLoader loader : entry.getValue()) {
+          if (loader == trigger) {
+            triggerLoaded = false;
+          } else {
+            loader.batch = null;
+            pendingLoaders.remove(loader);
+          }
+        }
+        continue;
+      }
+      if (keyRows == null) {
+        keyRows = new ArrayList<Object>();
+      }
+      for (ResultLoader loader : entry.getValue()) {
+        try {
+          loader.setResult(keyRows);
+        } catch (ExecutorException e) {
+          if (loader == trigger) {
+            throw e;
+          }
+          // left pending, the loader will fail on its own if it is ever loaded
+          continue;
+        }
+        pendingLoaders.remove(loader);
+      }
+    }
+    return triggerLoaded;
+  }
+
+  private Map<Object, List<ResultLoader>> selectLoaders(ResultLoader trigger) {
+    Map<Object, List<ResultLoader>> loadersByKey = new LinkedHashMap<Object, List<ResultLoader>>();
+    List<ResultLoader> triggerLoaders = new ArrayList<ResultLoader>();
+    triggerLoaders.add(trigger);
+    loadersByKey.put(normalize(trigger.parameterObject), triggerLoaders);
+    for (Iterator<ResultLoader> iterator = pendingLoaders.iterator(); iterator.hasNext();) {
+      ResultLoader loader = iterator.next();
+      if (loader.loaded) {
+        iterator.remove();
+        continue;
+      }
+      if (!isKey(loader.parameterObject)) {
+        continue;
+      }
+      Object key = normalize(loader.parameterObject);
+      List<ResultLoader> loaders = loadersByKey.get(key);
+      if (loaders == null) {
+        if (loadersByKey.size() >= batchSize) {
+          continue;
+        }
+        loaders = new ArrayList<ResultLoader>();
+        loadersByKey.put(key, loaders);
+      }
+      loaders.add(loader);
+    }
+    return loadersByKey;
+  }
+
+  private List<Object> selectRows(ResultLoader trigger, BoundSql boundSql, String head, String tail, Map<Object, List<ResultLoader>> loadersByKey) throws SQLException {
+    ParameterMapping keyMapping = boundSql.getParameterMappings().get(0);
+    StringBuilder sql = new StringBuilder(head);
+    List<ParameterMapping> parameterMappings = new ArrayList<ParameterMapping>();
+    Map<String, Object> parameterObject = new HashMap<String, Object>();
+    for (List<ResultLoader> loaders : loadersByKey.values()) {
+      String property = KEY_PARAMETER_PREFIX + parameterMappings.size();
+      if (!parameterMappings.isEmpty()) {
+        sql.append(", ");
+      }
+      sql.append('?');
+      parameterMappings.add(new ParameterMapping.Builder(configuration, property, keyMapping.getTypeHandler())
+          .javaType(keyMapping.getJavaType())
+          .jdbcType(keyMapping.getJdbcType())
+          .build());
+      parameterObject.put(property, loaders.get(0).parameterObject);
+    }
+    sql.append(')').append(tail);
+    BoundSql batchBoundSql = new BoundSql(configuration, sql.toString(), parameterMappings, parameterObject);
+    return trigger.selectList(mappedStatement, parameterObject, null, batchBoundSql);
+  }
+
+  private boolean isBatchable() {
+    return !disabled && mappedStatement.getStatementType() == StatementType.PREPARED && mappedStatement.getResultMaps().size() == 1
+        && !configuration.getTypeHandlerRegistry().hasTypeHandler(mappedStatement.getResultMaps().get(0).getType());
+  }
+
+  /**
+   * @return the property the key column is mapped to, null if none
+   */
+  private String findKeyProperty(String column) {
+    column = column.replaceAll("[\"`\\[\\]]", "");
+    column = column.substring(column.lastIndexOf('.') + 1);
+    ResultMap resultMap = mappedStatement.getResultMaps().get(0);
+    for (ResultMapping resultMapping : resultMap.getResultMappings()) {
+      if (column.equalsIgnoreCase(resultMapping.getColumn()) && resultMapping.getProperty() != null
+          && resultMapping.getNestedQueryId() == null && resultMapping.getNestedResultMapId() == null) {
+        return resultMapping.getProperty();
+      }
+    }
+    if (resultMap.getAutoMapping() == Boolean.FALSE) {
+      return null;
+    }
+    return MetaClass.forClass(resultMap.getType()).findProperty(column, configuration.isMapUnderscoreToCamelCase());
+  }
+
+  private boolean isKey(Object parameterObject) {
+    return parameterObject != null && configuration.getTypeHandlerRegistry().hasTypeHandler(parameterObject.getClass());
+  }
+
+  /**
+   * @return the index of the only parameter of the sql, -1 if there is not exactly one
+   */
+  private static int parameterIndex(String sql) {
+    int index = -1;
+    char quote = 0;
+    for (int i = 0; i < sql.length(); i++) {
+      char c = sql.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '\'' || c == '"') {
+        quote = c;
+      } else if (c == '?') {
+        if (index != -1) {
+          return -1;
+        }
+        index = i;
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Numbers of different types, like the Integer parameter and the Long property of the rows, match by value.
+   */
+  private static Object normalize(Object key) {
+    if (key instanceof Number) {
+      try {
+        return new BigDecimal(key.toString()).stripTrailingZeros();
+      } catch (NumberFormatException e) {
+        // NaN or infinity
+      }
+    }
+    return key;
+  }
+
+}
@@ -0,0 +1,35 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.pagination;
+
+/**
+ * Derives the count query by wrapping the select, dropping a trailing ORDER BY that does not
+ * restrict the rows.
+ */
+public abstract class BasePaginationDialect implements PaginationDialect {
+
+    public String getCountSql(String sql) {
+        return "select count(*) from (" + removeOrderBy(sql) + ") count_";
+    }
+
+    /**
+     * @see BoundSqlPaginator#removeOrderBy(String)
+     */
+    protected String removeOrderBy(String sql) {
+        return BoundSqlPaginator.removeOrderBy(sql);
+    }
+
+}
@@ -0,0 +1,407 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.pagination;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.ibatis.executor.ExecutorException;
+import org.apache.ibatis.executor.keygen.NoKeyGenerator;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.KeysetBounds;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.type.TypeHandlerRegistry;
+
+/**
+ * Applies a {@link PaginationDialect} to the {@link BoundSql} of a select.
+ */
+public final class BoundSqlPaginator {
+
+    /**
+     * Suffix of the derived statement counting the rows of a select, e.g. {@code selectUsers!count}.
+     */
+    public static final String COUNT_STATEMENT_SUFFIX = "!count";
+
+    private static final String PAGE_PARAMETER_PREFIX = "_pageParameter";
+    private static final String KEYSET_PARAMETER_PREFIX = "_keysetParameter";
+
+    private static final Pattern ROW_LIMITING_CLAUSE = Pattern.compile("\\b(limit|offset|fetch|top)\\b");
+    // the clauses after which a predicate added to the WHERE clause would not filter the result rows
+    private static final String[] DERIVED_TABLE_KEYWORDS = { "group", "having", "union", "intersect", "except", "minus",
+        "limit", "offset", "fetch", "top", "for", "window" };
+    private static final Pattern SELECT_QUANTIFIER = Pattern.compile("^\\s*(?:(?:distinct|all)\\s+|top\\s+\\S+\\s+)+", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ALIASED_SELECT_ITEM = Pattern.compile("^(.*?[\\w)'\"*])\\s+(?:as\\s+)?([a-z_][\\w$]*)$",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern COLUMN_NAME = Pattern.compile("[a-z_][\\w$]*(?:\\.[a-z_][\\w$]*)*", Pattern.CASE_INSENSITIVE);
+    // the words that end an expression rather than alias it, e.g. case ... end
+    private static final List<String> NOT_ALIASES = Arrays.asList("end", "null", "true", "false", "and", "or", "not", "is",
+        "then", "else", "when", "in", "like", "between", "desc", "asc");
+
+    private BoundSqlPaginator() {
+        // Prevent Instantiation
+    }
+
+    /**
+     * Row bounds are only pushed down to the database for selects mapped one row per object,
+     * the rows of nested result maps do not match the mapped objects.
+     */
+    public static boolean isPageable(MappedStatement ms, RowBounds rowBounds) {
+        if (rowBounds == null || rowBounds.getOffset() == RowBounds.NO_ROW_OFFSET && rowBounds.getLimit() == RowBounds.NO_ROW_LIMIT) {
+            return false;
+        }
+        if (ms.getSqlCommandType() != SqlCommandType.SELECT || ms.getStatementType() == StatementType.CALLABLE) {
+            return false;
+        }
+        for (ResultMap resultMap : ms.getResultMaps()) {
+            if (resultMap.hasNestedResultMaps()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static BoundSql paginate(Configuration configuration, PaginationDialect dialect, BoundSql boundSql, RowBounds rowBounds) {
+        final List<Integer> pageParameters = new ArrayList<Integer>();
+        final String pagedSql = dialect.getPagedSql(boundSql.getSql(), rowBounds.getOffset(), rowBounds.getLimit(), pageParameters);
+        final List<ParameterMapping> parameterMappings = new ArrayList<ParameterMapping>(boundSql.getParameterMappings());
+        for (int i = 0; i < pageParameters.size(); i++) {
+            parameterMappings.add(new ParameterMapping.Builder(configuration, PAGE_PARAMETER_PREFIX + i, Integer.class).build());
+        }
+        final BoundSql pagedBoundSql = boundSql.copy(configuration, pagedSql, parameterMappings);
+        for (int i = 0; i < pageParameters.size(); i++) {
+            pagedBoundSql.setAdditionalParameter(PAGE_PARAMETER_PREFIX + i, pageParameters.get(i));
+        }
+        return pagedBoundSql;
+    }
+
+    /**
+     * Restricts the select to the rows sorting after the key of the bounds, in the order of the key columns.
+     * <p>
+     * The predicate is added to the WHERE clause, where the database can seek an index on the key columns,
+     * rather than to the select wrapped as a derived table, which not every database merges. Selects whose
+     * WHERE clause does not filter the result rows, those with GROUP BY, HAVING, set operators or a row
+     * limiting clause, are still wrapped. The predicate is expanded to {@code k1 > ? or (k1 = ? and k2 < ?)}
+     * rather than the row value comparison {@code (k1, k2) > (?, ?)}, which not every database supports and
+     * which cannot mix directions.
+     * <p>
+     * A key column names an item of the select list by its expression (a column, qualified or not) or by its
+     * alias, or a column of the tables when the list is {@code *}. Either way the predicate and the ORDER BY
+     * use the expression of the item when the select is not wrapped, and its result column when it is, so
+     * the same key columns work in both forms.
+     */
+    public static BoundSql keyset(Configuration configuration, MappedStatement ms, BoundSql boundSql, KeysetBounds keysetBounds) {
+        if (ms.getSqlCommandType() != SqlCommandType.SELECT || ms.getStatementType() == StatementType.CALLABLE) {
+            throw new ExecutorException("Keyset pagination requires a select, but '" + ms.getId() + "' is not.");
+        }
+        final String[] columns = keysetBounds.getColumns();
+        if (columns == null || columns.length == 0) {
+            throw new ExecutorException("Keyset pagination of '" + ms.getId() + "' requires the key columns.");
+        }
+        final Object[] afterKey = keysetBounds.getAfterKey();
+        final List<ParameterMapping> parameterMappings = new ArrayList<ParameterMapping>(boundSql.getParameterMappings());
+        final List<Object> keyParameters = new ArrayList<Object>();
+        final String select = removeOrderBy(boundSql.getSql());
+        final String lowerSelect = select.toLowerCase(Locale.ENGLISH);
+        final boolean wrapped = indexOfTopLevelWord(lowerSelect, 0, DERIVED_TABLE_KEYWORDS) != -1;
+        final String[] keyColumns = resolveKeyColumns(ms, select, lowerSelect, columns, wrapped);
+        final StringBuilder sql = new StringBuilder(select.length() + 64);
+        if (wrapped) {
+            sql.append("select * from (").append(select).append(") keyset_");
+        }
+        if (afterKey != null) {
+            final StringBuilder predicate = new StringBuilder();
+            for (int i = 0; i < columns.length; i++) {
+                if (afterKey[i] == null) {
+                    throw new ExecutorException("Keyset pagination of '" + ms.getId() + "' does not support null values of the key column '" + columns[i] + "'.");
+                }
+                if (i > 0) {
+                    predicate.append(" or (");
+                }
+                for (int j = 0; j < i; j++) {
+                    predicate.append(keyColumns[j]).append(" = ? and ");
+                    keyParameters.add(afterKey[j]);
+                }
+                predicate.append(keyColumns[i]).append(keysetBounds.isDescending(i) ? " < ?" : " > ?");
+                keyParameters.add(afterKey[i]);
+                if (i > 0) {
+                    predicate.append(")");
+                }
+            }
+            final int where = wrapped ? -1 : indexOfTopLevelWord(lowerSelect, 0, "where");
+            if (wrapped) {
+                sql.append(" where ").append(predicate);
+            } else if (where == -1) {
+                sql.append(select).append(" where ").append(predicate);
+            } else {
+                // the WHERE clause ends the select, so the key parameters still follow all the others
+                final int condition = where + "where".length();
+                sql.append(select, 0, condition).append(" (").append(select, condition, select.length())
+                        .append(") and (").append(predicate).append(")");
+            }
+        } else if (!wrapped) {
+            sql.append(select);
+        }
+        sql.append(" order by ");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(keyColumns[i]);
+            if (keysetBounds.isDescending(i)) {
+                sql.append(" desc");
+            }
+        }
+        final TypeHandlerRegistry typeHandlerRegistry = configuration.getTypeHandlerRegistry();
+        for (int i = 0; i < keyParameters.size(); i++) {
+            final Class<?> javaType = keyParameters.get(i).getClass();
+            parameterMappings.add(new ParameterMapping.Builder(configuration, KEYSET_PARAMETER_PREFIX + i,
+                    typeHandlerRegistry.hasTypeHandler(javaType) ? javaType : Object.class).build());
+        }
+        final BoundSql keysetBoundSql = boundSql.copy(configuration, sql.toString(), parameterMappings);
+        for (int i = 0; i < keyParameters.size(); i++) {
+            keysetBoundSql.setAdditionalParameter(KEYSET_PARAMETER_PREFIX + i, keyParameters.get(i));
+        }
+        return keysetBoundSql;
+    }
+
+    /**
+     * @return the key columns as the select refers to them, its expressions if not wrapped or its result columns if wrapped
+     */
+    private static String[] resolveKeyColumns(MappedStatement ms, String select, String lowerSelect, String[] columns, boolean wrapped) {
+        final List<String[]> items = getSelectItems(select, lowerSelect);
+        final String[] keyColumns = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            final String column = columns[i].trim();
+            String expression = null;
+            String label = null;
+            for (String[] item : items) {
+                if (item[1] != null && item[1].equalsIgnoreCase(column)) {
+                    expression = item[0];
+                    label = item[1];
+                    break;
+                }
+            }
+            if (expression == null) {
+                expression = column;
+                for (String[] item : items) {
+                    if (normalize(item[0]).equals(normalize(column))) {
+                        label = item[1];
+                        break;
+                    }
+                }
+                if (label == null && COLUMN_NAME.matcher(column).matches()) {
+                    label = column.substring(column.lastIndexOf('.') + 1);
+                }
+            }
+            if (wrapped && label == null) {
+                throw new ExecutorException("Keyset pagination of '" + ms.getId() + "' wraps the select in a derived table, so the key column '"
+                        + column + "' must be a column or an aliased item of the select list.");
+            }
+            keyColumns[i] = wrapped ? label : expression;
+        }
+        return keyColumns;
+    }
+
+    /**
+     * @return the expression and the alias, or null, of each item of the select list of the first select
+     */
+    private static List<String[]> getSelectItems(String select, String lowerSelect) {
+        final List<String[]> items = new ArrayList<String[]>();
+        final int selectIndex = indexOfTopLevelWord(lowerSelect, 0, "select");
+        final int from = selectIndex == -1 ? -1 : indexOfTopLevelWord(lowerSelect, selectIndex, "from");
+        if (from == -1) {
+            return items;
+        }
+        final Matcher quantifier = SELECT_QUANTIFIER.matcher(select.substring(selectIndex + "select".length(), from));
+        final int start = selectIndex + "select".length() + (quantifier.find() ? quantifier.end() : 0);
+        int itemStart = start;
+        int depth = 0;
+        boolean quoted = false;
+        for (int i = start; i <= from; i++) {
+            final char c = i == from ? ',' : select.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted) {
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                } else if (c == ',' && depth == 0) {
+                    items.add(parseSelectItem(select.substring(itemStart, i).trim()));
+                    itemStart = i + 1;
+                }
+            }
+        }
+        return items;
+    }
+
+    private static String[] parseSelectItem(String item) {
+        final Matcher matcher = ALIASED_SELECT_ITEM.matcher(item);
+        if (matcher.matches() && !NOT_ALIASES.contains(matcher.group(2).toLowerCase(Locale.ENGLISH))) {
+            return new String[] { matcher.group(1).trim(), matcher.group(2) };
+        }
+        return new String[] { item, null };
+    }
+
+    private static String normalize(String expression) {
+        return expression.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * @param dialect the dialect of the database, or null to use a portable count query
+     */
+    public static BoundSql count(Configuration configuration, PaginationDialect dialect, BoundSql boundSql) {
+        final String countSql = dialect != null ? dialect.getCountSql(boundSql.getSql()) : getPortableCountSql(boundSql.getSql());
+        return boundSql.copy(configuration, countSql, boundSql.getParameterMappings());
+    }
+
+    /**
+     * @return the select wrapped in a derived table counted by an outer select, without its outermost ORDER BY
+     */
+    public static String getPortableCountSql(String sql) {
+        return "select count(*) from (" + removeOrderBy(sql) + ") count_";
+    }
+
+    /**
+     * Builds the statement registered as {@code <id>!count} for a select, sharing its parameters and cache.
+     */
+    public static MappedStatement createCountStatement(final MappedStatement ms) {
+        if (ms.getSqlCommandType() != SqlCommandType.SELECT || ms.getStatementType() == StatementType.CALLABLE) {
+            throw new ExecutorException("A count statement can only be derived from a select, but '" + ms.getId() + "' is not.");
+        }
+        final Configuration configuration = ms.getConfiguration();
+        final String id = ms.getId() + COUNT_STATEMENT_SUFFIX;
+        final SqlSource sqlSource = new SqlSource() {
+            public BoundSql getBoundSql(Object parameterObject) {
+                return count(configuration, configuration.getPaginationDialect(), ms.getBoundSql(parameterObject));
+            }
+        };
+        final List<ResultMap> resultMaps = new ArrayList<ResultMap>();
+        resultMaps.add(new ResultMap.Builder(configuration, id + "-Inline", Long.class, new ArrayList<ResultMapping>()).build());
+        return new MappedStatement.Builder(configuration, id, sqlSource, SqlCommandType.SELECT)
+                .resource(ms.getResource())
+                .parameterMap(ms.getParameterMap())
+                .resultMaps(resultMaps)
+                .statementType(ms.getStatementType())
+                .timeout(ms.getTimeout())
+                .databaseId(ms.getDatabaseId())
+                .lang(ms.getLang())
+                .keyGenerator(new NoKeyGenerator())
+                .cache(ms.getCache())
+                .useCache(ms.isUseCache())
+                .flushCacheRequired(false)
+                .build();
+    }
+
+    /**
+     * @return the select without its outermost ORDER BY clause, or unchanged when the clause cannot be safely removed
+     */
+    public static String removeOrderBy(String sql) {
+        final String lowerSql = sql.toLowerCase(Locale.ENGLISH);
+        final int orderBy = lastTopLevelOrderBy(lowerSql);
+        if (orderBy == -1 || ROW_LIMITING_CLAUSE.matcher(lowerSql.substring(orderBy)).find()) {
+            return sql;
+        }
+        return sql.substring(0, orderBy);
+    }
+
+    /**
+     * @return true if the select ends with an ORDER BY clause, outside parentheses and quotes
+     */
+    public static boolean hasOrderBy(String sql) {
+        return lastTopLevelOrderBy(sql.toLowerCase(Locale.ENGLISH)) != -1;
+    }
+
+    private static int lastTopLevelOrderBy(String lowerSql) {
+        int found = -1;
+        int depth = 0;
+        boolean quoted = false;
+        for (int i = 0; i < lowerSql.length(); i++) {
+            final char c = lowerSql.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted) {
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                } else if (depth == 0 && lowerSql.startsWith("order", i) && isWordStart(lowerSql, i) && isFollowedByBy(lowerSql, i + 5)) {
+                    found = i;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return the index of the first of the words found from the start index outside parentheses and quotes, or -1
+     */
+    private static int indexOfTopLevelWord(String lowerSql, int start, String... words) {
+        int depth = 0;
+        boolean quoted = false;
+        for (int i = start; i < lowerSql.length(); i++) {
+            final char c = lowerSql.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted) {
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                } else if (depth == 0 && isWordStart(lowerSql, i)) {
+                    for (String word : words) {
+                        if (lowerSql.startsWith(word, i) && isWordEnd(lowerSql, i + word.length())) {
+                            return i;
+                        }
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isWordEnd(String sql, int index) {
+        return index == sql.length() || !Character.isLetterOrDigit(sql.charAt(index)) && sql.charAt(index) != '_';
+    }
+
+    private static boolean isWordStart(String sql, int index) {
+        return index == 0 || !Character.isLetterOrDigit(sql.charAt(index - 1)) && sql.charAt(index - 1) != '_';
+    }
+
+    private static boolean isFollowedByBy(String sql, int index) {
+        int i = index;
+        if (i >= sql.length() || !Character.isWhitespace(sql.charAt(i))) {
+            return false;
+        }
+        while (i < sql.length() && Character.isWhitespace(sql.charAt(i))) {
+            i++;
+        }
+        return sql.startsWith("by", i) && (i + 2 == sql.length() || !Character.isLetterOrDigit(sql.charAt(i + 2)));
+    }
+
+}
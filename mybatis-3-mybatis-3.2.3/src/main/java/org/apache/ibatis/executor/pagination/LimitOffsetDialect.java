@@ -0,0 +1,38 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.pagination;
+
+import java.util.List;
+
+import org.apache.ibatis.session.RowBounds;
+
+/**
+ * {@code LIMIT ? OFFSET ?}, for MySQL, MariaDB, PostgreSQL, H2, HSQLDB and SQLite.
+ */
+public class LimitOffsetDialect extends BasePaginationDialect {
+
+    public String getPagedSql(String sql, int offset, int limit, List<Integer> pageParameters) {
+        // MySQL and SQLite do not accept an OFFSET without a LIMIT
+        final StringBuilder pagedSql = new StringBuilder(sql.length() + 20).append(sql).append(" LIMIT ?");
+        pageParameters.add(limit);
+        if (offset != RowBounds.NO_ROW_OFFSET) {
+            pagedSql.append(" OFFSET ?");
+            pageParameters.add(offset);
+        }
+        return pagedSql.toString();
+    }
+
+}
@@ -0,0 +1,40 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.pagination;
+
+import java.util.List;
+
+import org.apache.ibatis.session.RowBounds;
+
+/**
+ * SQL:2008 {@code OFFSET ? ROWS FETCH NEXT ? ROWS ONLY}, for Derby, DB2 and Oracle 12c.
+ * SQL Server only accepts it after an ORDER BY clause, see {@link SqlServerDialect}.
+ */
+public class OffsetFetchDialect extends BasePaginationDialect {
+
+    public String getPagedSql(String sql, int offset, int limit, List<Integer> pageParameters) {
+        final StringBuilder pagedSql = new StringBuilder(sql.length() + 40).append(sql);
+        // SQL Server requires the OFFSET clause whenever FETCH is used
+        pagedSql.append(" OFFSET ? ROWS");
+        pageParameters.add(offset);
+        if (limit != RowBounds.NO_ROW_LIMIT) {
+            pagedSql.append(" FETCH NEXT ? ROWS ONLY");
+            pageParameters.add(limit);
+        }
+        return pagedSql.toString();
+    }
+
+}
@@ -0,0 +1,43 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.pagination;
+
+import java.util.List;
+
+/**
+ * Rewrites a select so the database itself applies the offset and limit of a
+ * {@link org.apache.ibatis.session.RowBounds}, instead of the result set handler skipping rows.
+ */
+public interface PaginationDialect {
+
+    /**
+     * Every placeholder added by the dialect must come after the original statement, and its
+     * value must be added to {@code pageParameters} in the order the placeholders appear.
+     *
+     * @param sql            the select to restrict
+     * @param offset         rows to skip, {@link org.apache.ibatis.session.RowBounds#NO_ROW_OFFSET} when none
+     * @param limit          max rows to return, {@link org.apache.ibatis.session.RowBounds#NO_ROW_LIMIT} when unlimited
+     * @param pageParameters receives the values bound to the added placeholders
+     * @return the paged select
+     */
+    String getPagedSql(String sql, int offset, int limit, List<Integer> pageParameters);
+
+    /**
+     * @return a select returning the number of rows of {@code sql} in a single numeric column
+     */
+    String getCountSql(String sql);
+
+}
@@ -0,0 +1,76 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.pagination;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Dialects by database id. A database id matches a registered name when it is equal to it or contains it,
+ * ignoring case, so both the product names returned by {@link org.apache.ibatis.mapping.VendorDatabaseIdProvider}
+ * and the usual short aliases are recognized.
+ */
+public class PaginationDialectRegistry {
+
+    private final Map<String, PaginationDialect> dialects = new LinkedHashMap<String, PaginationDialect>();
+
+    public PaginationDialectRegistry() {
+        final PaginationDialect limitOffset = new LimitOffsetDialect();
+        register("mysql", limitOffset);
+        register("mariadb", limitOffset);
+        register("postgres", limitOffset);
+        register("h2", limitOffset);
+        register("hsql", limitOffset);
+        register("sqlite", limitOffset);
+
+        final PaginationDialect offsetFetch = new OffsetFetchDialect();
+        register("derby", offsetFetch);
+        register("db2", offsetFetch);
+
+        final PaginationDialect sqlServer = new SqlServerDialect();
+        register("sql server", sqlServer);
+        register("sqlserver", sqlServer);
+        register("mssql", sqlServer);
+
+        register("oracle", new RowNumDialect());
+    }
+
+    public void register(String name, PaginationDialect dialect) {
+        dialects.put(name.toLowerCase(Locale.ENGLISH), dialect);
+    }
+
+    /**
+     * @return the dialect of the database, or null when the database is unknown
+     */
+    public PaginationDialect getDialect(String databaseId) {
+        if (databaseId == null) {
+            return null;
+        }
+        final String key = databaseId.toLowerCase(Locale.ENGLISH);
+        final PaginationDialect dialect = dialects.get(key);
+        if (dialect != null) {
+            return dialect;
+        }
+        for (Map.Entry<String, PaginationDialect> entry : dialects.entrySet()) {
+            if (key.contains(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+}
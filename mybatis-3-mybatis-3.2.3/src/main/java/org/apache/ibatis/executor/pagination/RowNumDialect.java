@@ -0,0 +1,44 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.pagination;
+
+import java.util.List;
+
+import org.apache.ibatis.session.RowBounds;
+
+/**
+ * Oracle {@code ROWNUM} filtering, which works with every Oracle version.
+ * The paged rows carry an additional {@code ROWNUM_} column.
+ */
+public class RowNumDialect extends BasePaginationDialect {
+
+    public String getPagedSql(String sql, int offset, int limit, List<Integer> pageParameters) {
+        final StringBuilder pagedSql = new StringBuilder(sql.length() + 120);
+        if (limit == RowBounds.NO_ROW_LIMIT) {
+            pagedSql.append("select * from ( select row_.*, rownum rownum_ from ( ").append(sql).append(" ) row_ ) where rownum_ > ?");
+            pageParameters.add(offset);
+        } else if (offset == RowBounds.NO_ROW_OFFSET) {
+            pagedSql.append("select * from ( ").append(sql).append(" ) where rownum <= ?");
+            pageParameters.add(limit);
+        } else {
+            pagedSql.append("select * from ( select row_.*, rownum rownum_ from ( ").append(sql).append(" ) row_ where rownum <= ? ) where rownum_ > ?");
+            pageParameters.add((int) Math.min((long) offset + limit, Integer.MAX_VALUE));
+            pageParameters.add(offset);
+        }
+        return pagedSql.toString();
+    }
+
+}
@@ -0,0 +1,33 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.pagination;
+
+import java.util.List;
+
+/**
+ * {@code OFFSET ? ROWS FETCH NEXT ? ROWS ONLY} for SQL Server 2012, which only accepts it after an ORDER BY clause.
+ * A select without one is ordered by {@code (SELECT NULL)}, that is in no particular order, as it would be unpaged.
+ */
+public class SqlServerDialect extends OffsetFetchDialect {
+
+    public String getPagedSql(String sql, int offset, int limit, List<Integer> pageParameters) {
+        if (!BoundSqlPaginator.hasOrderBy(sql)) {
+            sql = sql + " ORDER BY (SELECT NULL)";
+        }
+        return super.getPagedSql(sql, offset, limit, pageParameters);
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.ibatis.executor.ExecutorException;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.reflection.ExceptionUtil;
+import org.apache.ibatis.reflection.MetaClass;
+import org.apache.ibatis.reflection.ReflectionException;
+import org.apache.ibatis.reflection.factory.ObjectFactory;
+import org.apache.ibatis.reflection.invoker.Invoker;
+import org.apache.ibatis.reflection.wrapper.DefaultObjectWrapperFactory;
+import org.apache.ibatis.session.AutoMappingBehavior;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.type.TypeHandler;
+import org.apache.ibatis.type.TypeHandlerRegistry;
+
+/**
+ * A row mapping plan for a simple {@link ResultMap} bound to the column layout of one result set.
+ * <p>
+ * Column indexes, setters and type handlers are resolved once by {@link #compile}, so mapping a row
+ * does not walk the result mappings nor resolve any property path or column label.
+ * Result maps that need the interpreted path (constructors, discriminators, nested mappings,
+ * nested property paths, maps or custom object wrappers) are not compiled.
+ */
+class CompiledRowMapper {
+
+    private final Class<?> type;
+    private final ObjectFactory objectFactory;
+    private final boolean callSettersOnNulls;
+    private final PropertyMapper[] propertyMappers;
+
+    private CompiledRowMapper(Class<?> type, ObjectFactory objectFactory, boolean callSettersOnNulls, List<PropertyMapper> propertyMappers) {
+        this.type = type;
+        this.objectFactory = objectFactory;
+        this.callSettersOnNulls = callSettersOnNulls;
+        this.propertyMappers = propertyMappers.toArray(new PropertyMapper[propertyMappers.size()]);
+    }
+
+    /**
+     * @return the compiled plan or null when the result map must be handled by the interpreted path
+     */
+    public static CompiledRowMapper compile(ResultSetWrapper rsw, ResultMap resultMap, Configuration configuration) throws SQLException {
+        if (!isCompilable(resultMap, configuration)) {
+            return null;
+        }
+        final Class<?> type = resultMap.getType();
+        final TypeHandlerRegistry typeHandlerRegistry = configuration.getTypeHandlerRegistry();
+        final MetaClass metaClass = MetaClass.forClass(type);
+        final List<PropertyMapper> propertyMappers = new ArrayList<PropertyMapper>();
+        final boolean autoMapping = resultMap.getAutoMapping() != null ? resultMap.getAutoMapping() : !AutoMappingBehavior.NONE.equals(configuration.getAutoMappingBehavior());
+        if (autoMapping) {
+            for (String columnName : rsw.getUnmappedColumnNames(resultMap, null)) {
+                final String property = metaClass.findProperty(columnName, configuration.isMapUnderscoreToCamelCase());
+                if (property != null && metaClass.hasSetter(property)) {
+                    if (!isSimpleProperty(property)) {
+                        return null;
+                    }
+                    final Class<?> propertyType = metaClass.getSetterType(property);
+                    if (typeHandlerRegistry.hasTypeHandler(propertyType)) {
+                        final int columnIndex = columnIndex(rsw, columnName);
+                        final TypeHandler<?> typeHandler = rsw.getTypeHandler(propertyType, columnIndex);
+                        propertyMappers.add(new PropertyMapper(property, columnIndex, typeHandler, metaClass.getSetInvoker(property), propertyType.isPrimitive()));
+                    }
+                }
+            }
+        }
+        final List<String> mappedColumnNames = rsw.getMappedColumnNames(resultMap, null);
+        for (ResultMapping propertyMapping : resultMap.getPropertyResultMappings()) {
+            final String column = propertyMapping.getColumn();
+            final String property = propertyMapping.getProperty();
+            if (column == null || !mappedColumnNames.contains(column.toUpperCase(Locale.ENGLISH))) {
+                continue;
+            }
+            if (property == null) {
+                // issue #541 make property optional
+                continue;
+            }
+            if (!isSimpleProperty(property) || !metaClass.hasSetter(property)) {
+                return null;
+            }
+            final Class<?> setterType = metaClass.getSetterType(property);
+            propertyMappers.add(new PropertyMapper(property, columnIndex(rsw, column), propertyMapping.getTypeHandler(), metaClass.getSetInvoker(property), setterType.isPrimitive()));
+        }
+        return new CompiledRowMapper(type, configuration.getObjectFactory(), configuration.isCallSettersOnNulls(), propertyMappers);
+    }
+
+    private static boolean isCompilable(ResultMap resultMap, Configuration configuration) {
+        final Class<?> type = resultMap.getType();
+        if (resultMap.hasNestedResultMaps() || resultMap.hasNestedQueries() || resultMap.getDiscriminator() != null
+                || !resultMap.getConstructorResultMappings().isEmpty()) {
+            return false;
+        }
+        if (configuration.getTypeHandlerRegistry().hasTypeHandler(type) || Map.class.isAssignableFrom(type) || Collection.class.isAssignableFrom(type)) {
+            return false;
+        }
+        if (!(configuration.getObjectWrapperFactory() instanceof DefaultObjectWrapperFactory)) {
+            return false;
+        }
+        for (ResultMapping propertyMapping : resultMap.getPropertyResultMappings()) {
+            if (propertyMapping.isCompositeResult() || propertyMapping.getResultSet() != null || propertyMapping.getNestedResultMapId() != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSimpleProperty(String property) {
+        return property.indexOf('.') == -1 && property.indexOf('[') == -1;
+    }
+
+    private static int columnIndex(ResultSetWrapper rsw, String column) {
+        final int columnIndex = rsw.getColumnIndex(column);
+        if (columnIndex < 1) {
+            throw new ExecutorException("Column '" + column + "' was not found in the result set.");
+        }
+        return columnIndex;
+    }
+
+    public Object mapRow(ResultSet rs) throws SQLException {
+        final Object resultObject = objectFactory.create(type);
+        boolean foundValues = false;
+        for (PropertyMapper propertyMapper : propertyMappers) {
+            final Object value = propertyMapper.typeHandler.getResult(rs, propertyMapper.columnIndex);
+            if (value != null || callSettersOnNulls) { // issue #377, call setter on nulls
+                if (value != null || !propertyMapper.primitive) {
+                    propertyMapper.set(resultObject, value);
+                }
+                foundValues = true;
+            }
+        }
+        return foundValues ? resultObject : null;
+    }
+
+    private static class PropertyMapper {
+        private final String property;
+        private final int columnIndex;
+        private final TypeHandler<?> typeHandler;
+        private final Invoker setter;
+        private final boolean primitive;
+
+        PropertyMapper(String property, int columnIndex, TypeHandler<?> typeHandler, Invoker setter, boolean primitive) {
+            this.property = property;
+            this.columnIndex = columnIndex;
+            this.typeHandler = typeHandler;
+            this.setter = setter;
+            this.primitive = primitive;
+        }
+
+        void set(Object target, Object value) {
+            try {
+                try {
+                    setter.invoke(target, new Object[]{value});
+                } catch (Throwable t) {
+                    throw ExceptionUtil.unwrapThrowable(t);
+                }
+            } catch (Throwable t) {
+                throw new ReflectionException("Could not set property '" + property + "' of '" + target.getClass() + "' with value '" + value + "' Cause: " + t.toString(), t);
+            }
+        }
+    }
+
+}
@@ -22,6 +22,7 @@ import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -29,11 +30,14 @@ import java.util.Set;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.cursor.defaults.DefaultCursor;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.executor.ExecutorException;
 import org.apache.ibatis.executor.ResultExtractor;
 import org.apache.ibatis.executor.loader.ProxyFactory;
 import org.apache.ibatis.executor.loader.ResultLoader;
+import org.apache.ibatis.executor.loader.ResultLoaderBatch;
 import org.apache.ibatis.executor.loader.ResultLoaderMap;
 import org.apache.ibatis.executor.parameter.ParameterHandler;
 import org.apache.ibatis.executor.result.DefaultResultContext;
@@ -59,6 +63,15 @@ import org.apache.ibatis.type.TypeHandlerRegistry;
 public class DefaultResultSetHandler implements ResultSetHandler {
 
     private static final Object NO_VALUE = new Object();
+    private static final Object DEFERRED = new Object();
+
+    // 当前线程正在批量加载的嵌套查询，嵌套查询循环引用时退回逐行加载，由一级缓存的占位符终止递归
+    private static final ThreadLocal<Set<String>> BATCH_LOADING_QUERIES = new ThreadLocal<Set<String>>() {
+        @Override
+        protected Set<String> initialValue() {
+            return new HashSet<String>();
+        }
+    };
 
     private final Executor executor;
     private final Configuration configuration;
@@ -80,11 +93,31 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     private final Map<String, ResultMapping> nextResultMaps = new HashMap<String, ResultMapping>();
     private final Map<CacheKey, PendingRelation> pendingRelations = new HashMap<CacheKey, PendingRelation>();
 
+    // 同一结果中同一嵌套查询的加载器，按嵌套查询 id 分组批量加载
+    private final Map<String, ResultLoaderBatch> resultLoaderBatches = new HashMap<String, ResultLoaderBatch>();
+    // 立即加载的嵌套查询在整个结果映射完成后才批量加载
+    private final List<PendingNestedSelect> pendingNestedSelects = new ArrayList<PendingNestedSelect>();
+    private boolean deferNestedSelects;
+
+    // 游标逐行读取时，有序嵌套结果中尚未结束的父对象
+    private Object previousRowValue;
+
+    // 游标会对同一个结果集多次调用 handleRowValues，编译后的映射计划只生成一次
+    private ResultSetWrapper compiledRsw;
+    private ResultMap compiledResultMap;
+    private CompiledRowMapper compiledRowMapper;
+
     private static class PendingRelation {
         public MetaObject metaObject;
         public ResultMapping propertyMapping;
     }
 
+    private static class PendingNestedSelect {
+        public MetaObject metaObject;
+        public String property;
+        public ResultLoader resultLoader;
+    }
+
     public DefaultResultSetHandler(Executor executor, MappedStatement mappedStatement, ParameterHandler parameterHandler, ResultHandler resultHandler, BoundSql boundSql,
                                    RowBounds rowBounds) {
         this.executor = executor;
@@ -141,6 +174,8 @@ public class DefaultResultSetHandler implements ResultSetHandler {
      */
     public List<Object> handleResultSets(Statement stmt) throws SQLException {
         final List<Object> multipleResults = new ArrayList<Object>();
+        // 结果交给自定义的 ResultHandler 时对象须在处理时就已完整，不能延后加载
+        deferNestedSelects = configuration.getEagerLoadBatchSize() > 1 && resultHandler == null;
 
         int resultSetCount = 0;
         ResultSetWrapper rsw = getFirstResultSet(stmt);
@@ -168,9 +203,33 @@ public class DefaultResultSetHandler implements ResultSetHandler {
             resultSetCount++;
         }
 
+        loadPendingNestedSelects();
         return collapseSingleResultList(multipleResults);
     }
 
+    /**
+     * 以游标的形式返回第一个结果集，结果在遍历时逐行映射
+     */
+    public <E> Cursor<E> handleCursorResultSets(Statement stmt) throws SQLException {
+        ResultSetWrapper rsw = getFirstResultSet(stmt);
+
+        List<ResultMap> resultMaps = mappedStatement.getResultMaps();
+        int resultMapCount = resultMaps.size();
+        validateResultMapsCount(rsw, resultMapCount);
+        if (resultMapCount != 1) {
+            throw new ExecutorException("Cursor results cannot be mapped to multiple resultMaps");
+        }
+
+        ResultMap resultMap = resultMaps.get(0);
+        if (resultMap.hasNestedResultMaps() && !mappedStatement.isResultOrdered()) {
+            throw new ExecutorException("Mapped Statements with nested result mappings can only be used with a Cursor "
+                    + "when the statement returns ordered data and sets resultOrdered=true on it.");
+        }
+        // 游标逐个返回对象，嵌套查询须在对象返回前加载，不能延后合并
+        deferNestedSelects = false;
+        return new DefaultCursor<E>(this, resultMap, rsw, rowBounds);
+    }
+
     private ResultSetWrapper getFirstResultSet(Statement stmt) throws SQLException {
         ResultSet rs = stmt.getResultSet();
         while (rs == null) {
@@ -256,7 +315,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     // HANDLE ROWS FOR SIMPLE RESULTMAP
     //
 
-    private void handleRowValues(ResultSetWrapper rsw, ResultMap resultMap, ResultHandler resultHandler, RowBounds rowBounds, ResultMapping parentMapping) throws SQLException {
+    public void handleRowValues(ResultSetWrapper rsw, ResultMap resultMap, ResultHandler resultHandler, RowBounds rowBounds, ResultMapping parentMapping) throws SQLException {
         if (resultMap.hasNestedResultMaps()) {
             // 是否分页
             ensureNoRowBounds();
@@ -285,14 +344,30 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     private void handleRowValuesForSimpleResultMap(ResultSetWrapper rsw, ResultMap resultMap, ResultHandler resultHandler, RowBounds rowBounds, ResultMapping parentMapping)
             throws SQLException {
         DefaultResultContext resultContext = new DefaultResultContext();
+        // 开启 compiledResultMappingEnabled 时，按当前结果集的列布局预先编译映射计划，之后每行不再解释 ResultMap
+        final CompiledRowMapper compiledRowMapper = configuration.isCompiledResultMappingEnabled() ? getCompiledRowMapper(rsw, resultMap) : null;
         skipRows(rsw.getResultSet(), rowBounds);
         while (shouldProcessMoreRows(rsw.getResultSet(), resultContext, rowBounds)) {
-            ResultMap discriminatedResultMap = resolveDiscriminatedResultMap(rsw.getResultSet(), resultMap, null);
-            Object rowValue = getRowValue(rsw, discriminatedResultMap, null);
+            final Object rowValue;
+            if (compiledRowMapper != null) {
+                rowValue = compiledRowMapper.mapRow(rsw.getResultSet());
+            } else {
+                ResultMap discriminatedResultMap = resolveDiscriminatedResultMap(rsw.getResultSet(), resultMap, null);
+                rowValue = getRowValue(rsw, discriminatedResultMap, null);
+            }
             storeObject(resultHandler, resultContext, rowValue, parentMapping, rsw.getResultSet());
         }
     }
 
+    private CompiledRowMapper getCompiledRowMapper(ResultSetWrapper rsw, ResultMap resultMap) throws SQLException {
+        if (compiledRsw != rsw || compiledResultMap != resultMap) {
+            compiledRowMapper = CompiledRowMapper.compile(rsw, resultMap, configuration);
+            compiledRsw = rsw;
+            compiledResultMap = resultMap;
+        }
+        return compiledRowMapper;
+    }
+
     private void storeObject(ResultHandler resultHandler, DefaultResultContext resultContext, Object rowValue, ResultMapping parentMapping, ResultSet rs) throws SQLException {
         if (parentMapping != null) {
             linkToParent(rs, parentMapping, rowValue);
@@ -331,12 +406,16 @@ public class DefaultResultSetHandler implements ResultSetHandler {
         Object resultObject = createResultObject(rsw, resultMap, lazyLoader, null);
         if (resultObject != null && !typeHandlerRegistry.hasTypeHandler(resultMap.getType())) {
             final MetaObject metaObject = configuration.newMetaObject(resultObject);
+            final int firstPendingNestedSelect = pendingNestedSelects.size();
             boolean foundValues = resultMap.getConstructorResultMappings().size() > 0;
             if (shouldApplyAutomaticMappings(resultMap, !AutoMappingBehavior.NONE.equals(configuration.getAutoMappingBehavior()))) {
                 foundValues = applyAutomaticMappings(rsw, resultMap, metaObject, null) || foundValues;
             }
             foundValues = applyPropertyMappings(rsw, resultMap, metaObject, lazyLoader, null) || foundValues;
             foundValues = (lazyLoader != null && lazyLoader.size() > 0) || foundValues;
+            if (!foundValues) {
+                foundValues = loadPendingNestedSelects(metaObject, firstPendingNestedSelect);
+            }
             resultObject = foundValues ? resultObject : null;
             return resultObject;
         }
@@ -357,17 +436,19 @@ public class DefaultResultSetHandler implements ResultSetHandler {
 
     private boolean applyPropertyMappings(ResultSetWrapper rsw, ResultMap resultMap, MetaObject metaObject, ResultLoaderMap lazyLoader, String columnPrefix)
             throws SQLException {
-        final List<String> mappedColumnNames = rsw.getMappedColumnNames(resultMap, columnPrefix);
         boolean foundValues = false;
         final List<ResultMapping> propertyMappings = resultMap.getPropertyResultMappings();
         for (ResultMapping propertyMapping : propertyMappings) {
             final String column = prependPrefix(propertyMapping.getColumn(), columnPrefix);
+            // 列位置在每个结果集中只解析一次，之后按索引取值，避免驱动每次按列名扫描
+            final int columnIndex = column != null ? rsw.getColumnIndex(column) : -1;
             if (propertyMapping.isCompositeResult()
-                    || (column != null && mappedColumnNames.contains(column.toUpperCase(Locale.ENGLISH)))
+                    || columnIndex > 0
                     || propertyMapping.getResultSet() != null) {
-                Object value = getPropertyMappingValue(rsw.getResultSet(), metaObject, propertyMapping, lazyLoader, columnPrefix);
+                Object value = getPropertyMappingValue(rsw.getResultSet(), metaObject, propertyMapping, lazyLoader, columnPrefix, columnIndex);
                 final String property = propertyMapping.getProperty(); // issue #541 make property optional
-                if (value != NO_VALUE && property != null && (value != null || configuration.isCallSettersOnNulls())) { // issue #377, call setter on nulls
+                // 延后加载的嵌套查询须加载后才能判断是否为空值
+                if (value != DEFERRED && value != NO_VALUE && property != null && (value != null || configuration.isCallSettersOnNulls())) { // issue #377, call setter on nulls
                     if (value != null || !metaObject.getSetterType(property).isPrimitive()) {
                         metaObject.setValue(property, value);
                     }
@@ -378,8 +459,8 @@ public class DefaultResultSetHandler implements ResultSetHandler {
         return foundValues;
     }
 
-    private Object getPropertyMappingValue(ResultSet rs, MetaObject metaResultObject, ResultMapping propertyMapping, ResultLoaderMap lazyLoader, String columnPrefix)
-            throws SQLException {
+    private Object getPropertyMappingValue(ResultSet rs, MetaObject metaResultObject, ResultMapping propertyMapping, ResultLoaderMap lazyLoader, String columnPrefix,
+                                           int columnIndex) throws SQLException {
         if (propertyMapping.getNestedQueryId() != null) {
             return getNestedQueryMappingValue(rs, metaResultObject, propertyMapping, lazyLoader, columnPrefix);
         } else if (propertyMapping.getResultSet() != null) {
@@ -390,8 +471,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
             return NO_VALUE;
         } else {
             final TypeHandler<?> typeHandler = propertyMapping.getTypeHandler();
-            final String column = prependPrefix(propertyMapping.getColumn(), columnPrefix);
-            return typeHandler.getResult(rs, column);
+            return typeHandler.getResult(rs, columnIndex);
         }
     }
 
@@ -413,8 +493,9 @@ public class DefaultResultSetHandler implements ResultSetHandler {
             if (property != null && metaObject.hasSetter(property)) {
                 final Class<?> propertyType = metaObject.getSetterType(property);
                 if (typeHandlerRegistry.hasTypeHandler(propertyType)) {
-                    final TypeHandler<?> typeHandler = rsw.getTypeHandler(propertyType, columnName);
-                    final Object value = typeHandler.getResult(rsw.getResultSet(), columnName);
+                    final int columnIndex = rsw.getColumnIndex(columnName);
+                    final TypeHandler<?> typeHandler = rsw.getTypeHandler(propertyType, columnIndex);
+                    final Object value = typeHandler.getResult(rsw.getResultSet(), columnIndex);
                     if (value != null || configuration.isCallSettersOnNulls()) { // issue #377, call setter on nulls
                         if (value != null || !propertyType.isPrimitive()) {
                             metaObject.setValue(property, value);
@@ -548,7 +629,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
                 value = createResultObject(rsw, resultMap, lazyLoader, columnPrefix);
             } else {
                 final TypeHandler<?> typeHandler = constructorMapping.getTypeHandler();
-                value = typeHandler.getResult(rsw.getResultSet(), prependPrefix(column, columnPrefix));
+                value = getColumnValue(rsw, typeHandler, prependPrefix(column, columnPrefix));
             }
             constructorArgTypes.add(parameterType);
             constructorArgs.add(value);
@@ -568,7 +649,16 @@ public class DefaultResultSetHandler implements ResultSetHandler {
             columnName = rsw.getColumnNames().get(0);
         }
         final TypeHandler<?> typeHandler = rsw.getTypeHandler(resultType, columnName);
-        return typeHandler.getResult(rsw.getResultSet(), columnName);
+        return getColumnValue(rsw, typeHandler, columnName);
+    }
+
+    private Object getColumnValue(ResultSetWrapper rsw, TypeHandler<?> typeHandler, String column) throws SQLException {
+        final int columnIndex = column != null ? rsw.getColumnIndex(column) : -1;
+        if (columnIndex > 0) {
+            return typeHandler.getResult(rsw.getResultSet(), columnIndex);
+        }
+        // let the driver report the missing column
+        return typeHandler.getResult(rsw.getResultSet(), column);
     }
 
     //
@@ -616,7 +706,18 @@ public class DefaultResultSetHandler implements ResultSetHandler {
             } else {
                 final ResultLoader resultLoader = new ResultLoader(configuration, executor, nestedQuery, nestedQueryParameterObject, targetType, key, nestedBoundSql);
                 if (configuration.isLazyLoadingEnabled()) {
+                    if (configuration.getLazyLoadBatchSize() > 1) {
+                        getResultLoaderBatch(nestedQuery, configuration.getLazyLoadBatchSize()).add(resultLoader);
+                    }
                     lazyLoader.addLoader(property, metaResultObject, resultLoader);
+                } else if (deferNestedSelects && !BATCH_LOADING_QUERIES.get().contains(nestedQueryId)) {
+                    getResultLoaderBatch(nestedQuery, configuration.getEagerLoadBatchSize()).add(resultLoader);
+                    PendingNestedSelect pending = new PendingNestedSelect();
+                    pending.metaObject = metaResultObject;
+                    pending.property = property;
+                    pending.resultLoader = resultLoader;
+                    pendingNestedSelects.add(pending);
+                    value = DEFERRED;
                 } else {
                     value = resultLoader.loadResult();
                 }
@@ -625,6 +726,78 @@ public class DefaultResultSetHandler implements ResultSetHandler {
         return value;
     }
 
+    private ResultLoaderBatch getResultLoaderBatch(MappedStatement nestedQuery, int batchSize) {
+        ResultLoaderBatch batch = resultLoaderBatches.get(nestedQuery.getId());
+        if (batch == null) {
+            batch = new ResultLoaderBatch(configuration, nestedQuery, batchSize);
+            resultLoaderBatches.put(nestedQuery.getId(), batch);
+        }
+        return batch;
+    }
+
+    /**
+     * 加载映射结果时收集的嵌套查询，同一嵌套查询的多个键合并为 IN 查询后设置到各自的结果对象上
+     */
+    private void loadPendingNestedSelects() throws SQLException {
+        if (pendingNestedSelects.isEmpty()) {
+            return;
+        }
+        try {
+            loadNestedSelects(pendingNestedSelects);
+        } finally {
+            pendingNestedSelects.clear();
+            resultLoaderBatches.clear();
+        }
+    }
+
+    /**
+     * 结果对象除延后的嵌套查询外没有任何非空值时，立即加载它的嵌套查询，以判断该对象是否为空
+     *
+     * @param firstPendingNestedSelect 映射该对象之前已延后的嵌套查询个数
+     * @return 有嵌套查询的结果非空时返回 true
+     */
+    private boolean loadPendingNestedSelects(MetaObject metaObject, int firstPendingNestedSelect) throws SQLException {
+        if (pendingNestedSelects.size() == firstPendingNestedSelect) {
+            return false;
+        }
+        final List<PendingNestedSelect> ownNestedSelects = new ArrayList<PendingNestedSelect>();
+        for (Iterator<PendingNestedSelect> iterator = pendingNestedSelects.listIterator(firstPendingNestedSelect); iterator.hasNext();) {
+            final PendingNestedSelect pending = iterator.next();
+            // 嵌套结果映射的子对象也可能在其后延后了嵌套查询
+            if (pending.metaObject == metaObject) {
+                ownNestedSelects.add(pending);
+                iterator.remove();
+            }
+        }
+        return loadNestedSelects(ownNestedSelects);
+    }
+
+    /**
+     * @return 有嵌套查询的结果非空时返回 true
+     */
+    private boolean loadNestedSelects(List<PendingNestedSelect> nestedSelects) throws SQLException {
+        final Set<String> loadingQueries = BATCH_LOADING_QUERIES.get();
+        final List<String> addedQueries = new ArrayList<String>();
+        for (String nestedQueryId : resultLoaderBatches.keySet()) {
+            if (loadingQueries.add(nestedQueryId)) {
+                addedQueries.add(nestedQueryId);
+            }
+        }
+        boolean foundValues = false;
+        try {
+            for (PendingNestedSelect pending : nestedSelects) {
+                final Object value = pending.resultLoader.loadResult();
+                if (value != null || configuration.isCallSettersOnNulls() && !pending.metaObject.getSetterType(pending.property).isPrimitive()) {
+                    pending.metaObject.setValue(pending.property, value);
+                }
+                foundValues = value != null || foundValues;
+            }
+        } finally {
+            loadingQueries.removeAll(addedQueries);
+        }
+        return foundValues;
+    }
+
     @SuppressWarnings("unchecked")
     private List<Object> getNestedQueryCacheObject(MappedStatement nestedQuery, CacheKey key) {
         final Cache nestedQueryCache = nestedQuery.getCache();
@@ -717,7 +890,9 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     private void handleRowValuesForNestedResultMap(ResultSetWrapper rsw, ResultMap resultMap, ResultHandler resultHandler, RowBounds rowBounds, ResultMapping parentMapping) throws SQLException {
         final DefaultResultContext resultContext = new DefaultResultContext();
         skipRows(rsw.getResultSet(), rowBounds);
-        Object rowValue = null;
+        // 上一次被 stop 中断时已经读到的下一个父对象
+        Object rowValue = previousRowValue;
+        previousRowValue = null;
         while (shouldProcessMoreRows(rsw.getResultSet(), resultContext, rowBounds)) {
             final ResultMap discriminatedResultMap = resolveDiscriminatedResultMap(rsw.getResultSet(), resultMap, null);
             final CacheKey rowKey = createRowKey(discriminatedResultMap, rsw, null);
@@ -736,7 +911,11 @@ public class DefaultResultSetHandler implements ResultSetHandler {
             }
         }
         if (rowValue != null && mappedStatement.isResultOrdered()) {
-            storeObject(resultHandler, resultContext, rowValue, parentMapping, rsw.getResultSet());
+            if (resultContext.isStopped()) {
+                previousRowValue = rowValue;
+            } else {
+                storeObject(resultHandler, resultContext, rowValue, parentMapping, rsw.getResultSet());
+            }
         }
     }
 
@@ -756,6 +935,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
             resultObject = createResultObject(rsw, resultMap, lazyLoader, columnPrefix);
             if (resultObject != null && !typeHandlerRegistry.hasTypeHandler(resultMap.getType())) {
                 final MetaObject metaObject = configuration.newMetaObject(resultObject);
+                final int firstPendingNestedSelect = pendingNestedSelects.size();
                 boolean foundValues = resultMap.getConstructorResultMappings().size() > 0;
                 if (shouldApplyAutomaticMappings(resultMap, AutoMappingBehavior.FULL.equals(configuration.getAutoMappingBehavior()))) {
                     // 1
@@ -766,6 +946,9 @@ public class DefaultResultSetHandler implements ResultSetHandler {
                 foundValues = applyNestedResultMappings(rsw, resultMap, metaObject, columnPrefix, combinedKey, true) || foundValues;
                 ancestorObjects.remove(absoluteKey);
                 foundValues = (lazyLoader != null && lazyLoader.size() > 0) || foundValues;
+                if (!foundValues) {
+                    foundValues = loadPendingNestedSelects(metaObject, firstPendingNestedSelect);
+                }
                 resultObject = foundValues ? resultObject : null;
             }
             if (combinedKey != CacheKey.NULL_CACHE_KEY) nestedResultObjects.put(combinedKey, resultObject);
@@ -794,7 +977,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
                         Object rowValue = nestedResultObjects.get(combinedKey);
                         boolean knownValue = (rowValue != null);
                         final Object collectionProperty = instantiateCollectionPropertyIfAppropriate(resultMapping, metaObject);
-                        if (anyNotNullColumnHasValue(resultMapping, columnPrefix, rsw.getResultSet())) {
+                        if (anyNotNullColumnHasValue(resultMapping, columnPrefix, rsw)) {
                             rowValue = getRowValue(rsw, nestedResultMap, combinedKey, rowKey, columnPrefix, rowValue);
                             if (rowValue != null && !knownValue) {
                                 if (collectionProperty != null) {
@@ -823,13 +1006,20 @@ public class DefaultResultSetHandler implements ResultSetHandler {
         return columnPrefix;
     }
 
-    private boolean anyNotNullColumnHasValue(ResultMapping resultMapping, String columnPrefix, ResultSet rs) throws SQLException {
+    private boolean anyNotNullColumnHasValue(ResultMapping resultMapping, String columnPrefix, ResultSetWrapper rsw) throws SQLException {
         Set<String> notNullColumns = resultMapping.getNotNullColumns();
         boolean anyNotNullColumnHasValue = true;
         if (notNullColumns != null && !notNullColumns.isEmpty()) {
+            final ResultSet rs = rsw.getResultSet();
             anyNotNullColumnHasValue = false;
             for (String column : notNullColumns) {
-                rs.getObject(prependPrefix(column, columnPrefix));
+                final String prefixedColumn = prependPrefix(column, columnPrefix);
+                final int columnIndex = rsw.getColumnIndex(prefixedColumn);
+                if (columnIndex > 0) {
+                    rs.getObject(columnIndex);
+                } else {
+                    rs.getObject(prefixedColumn);
+                }
                 if (!rs.wasNull()) {
                     anyNotNullColumnHasValue = true;
                     break;
@@ -896,9 +1086,9 @@ public class DefaultResultSetHandler implements ResultSetHandler {
             } else if (resultMapping.getNestedQueryId() == null) {
                 final String column = prependPrefix(resultMapping.getColumn(), columnPrefix);
                 final TypeHandler<?> th = resultMapping.getTypeHandler();
-                List<String> mappedColumnNames = rsw.getMappedColumnNames(resultMap, columnPrefix);
-                if (column != null && mappedColumnNames.contains(column.toUpperCase(Locale.ENGLISH))) { // Issue #114
-                    final Object value = th.getResult(rsw.getResultSet(), column);
+                final int columnIndex = column != null ? rsw.getColumnIndex(column) : -1;
+                if (columnIndex > 0) { // Issue #114
+                    final Object value = th.getResult(rsw.getResultSet(), columnIndex);
                     if (value != null) {
                         cacheKey.update(column);
                         cacheKey.update(value);
@@ -923,7 +1113,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
                 }
             }
             if (metaType.findProperty(property, configuration.isMapUnderscoreToCamelCase()) != null) {
-                String value = rsw.getResultSet().getString(column);
+                String value = rsw.getResultSet().getString(rsw.getColumnIndex(column));
                 if (value != null) {
                     cacheKey.update(column);
                     cacheKey.update(value);
@@ -934,8 +1124,9 @@ public class DefaultResultSetHandler implements ResultSetHandler {
 
     private void createRowKeyForMap(ResultSetWrapper rsw, CacheKey cacheKey) throws SQLException {
         List<String> columnNames = rsw.getColumnNames();
-        for (String columnName : columnNames) {
-            final String value = rsw.getResultSet().getString(columnName);
+        for (int i = 0; i < columnNames.size(); i++) {
+            final String columnName = columnNames.get(i);
+            final String value = rsw.getResultSet().getString(i + 1);
             if (value != null) {
                 cacheKey.update(columnName);
                 cacheKey.update(value);
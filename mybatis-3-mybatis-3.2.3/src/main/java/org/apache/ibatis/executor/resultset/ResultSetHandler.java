@@ -20,10 +20,14 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
 
+import org.apache.ibatis.cursor.Cursor;
+
 public interface ResultSetHandler {
 
   <E> List<E> handleResultSets(Statement stmt) throws SQLException;
 
+  <E> Cursor<E> handleCursorResultSets(Statement stmt) throws SQLException;
+
   void handleOutputParameters(CallableStatement cs) throws SQLException;
 
 }
@@ -35,14 +35,16 @@ import org.apache.ibatis.type.TypeHandler;
 import org.apache.ibatis.type.TypeHandlerRegistry;
 import org.apache.ibatis.type.UnknownTypeHandler;
 
-class ResultSetWrapper {
+public class ResultSetWrapper {
 
   private final ResultSet resultSet;
   private final TypeHandlerRegistry typeHandlerRegistry;
   private final List<String> columnNames = new ArrayList<String>();
   private final List<String> classNames = new ArrayList<String>();
   private final List<JdbcType> jdbcTypes = new ArrayList<JdbcType>();
-  private final Map<String, Map<Class<?>, TypeHandler<?>>> typeHandlerMap = new HashMap<String, Map<Class<?>, TypeHandler<?>>>();
+  private final Map<String, Integer> columnIndexes = new HashMap<String, Integer>();
+  private final Map<String, Integer> columnIndexLookup = new HashMap<String, Integer>();
+  private final Map<Class<?>, TypeHandler<?>>[] typeHandlers;
   private Map<String, List<String>> mappedColumnNamesMap = new HashMap<String, List<String>>();
   private Map<String, List<String>> unMappedColumnNamesMap = new HashMap<String, List<String>>();
 
@@ -53,10 +55,22 @@ class ResultSetWrapper {
     final ResultSetMetaData metaData = rs.getMetaData();
     final int columnCount = metaData.getColumnCount();
     for (int i = 1; i <= columnCount; i++) {
-      columnNames.add(configuration.isUseColumnLabel() ? metaData.getColumnLabel(i) : metaData.getColumnName(i));
+      final String columnName = configuration.isUseColumnLabel() ? metaData.getColumnLabel(i) : metaData.getColumnName(i);
+      columnNames.add(columnName);
       jdbcTypes.add(JdbcType.forCode(metaData.getColumnType(i)));
       classNames.add(metaData.getColumnClassName(i));
+      final String upperColumnName = columnName.toUpperCase(Locale.ENGLISH);
+      if (!columnIndexes.containsKey(upperColumnName)) {
+        // like the JDBC by-label lookup, the first column wins when a label is repeated
+        columnIndexes.put(upperColumnName, i);
+      }
     }
+    this.typeHandlers = newTypeHandlerArray(columnCount);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<Class<?>, TypeHandler<?>>[] newTypeHandlerArray(int columnCount) {
+    return new Map[columnCount + 1];
   }
 
   public ResultSet getResultSet() {
@@ -67,12 +81,39 @@ class ResultSetWrapper {
     return this.columnNames;
   }
 
+  /**
+   * Resolves the 1-based position of a column, ignoring case as JDBC does for column labels.
+   * Lookups are cached by the exact name passed in, so repeated calls do not upper-case it again.
+   *
+   * @return the column index or -1 when the result set has no such column
+   */
+  public int getColumnIndex(String columnName) {
+    Integer index = columnIndexLookup.get(columnName);
+    if (index == null) {
+      index = columnIndexes.get(columnName.toUpperCase(Locale.ENGLISH));
+      if (index == null) {
+        index = -1;
+      }
+      columnIndexLookup.put(columnName, index);
+    }
+    return index;
+  }
+
   public TypeHandler<?> getTypeHandler(Class<?> propertyType, String columnName) {
+    return getTypeHandler(propertyType, getColumnIndex(columnName));
+  }
+
+  public TypeHandler<?> getTypeHandler(Class<?> propertyType, int columnIndex) {
+    if (columnIndex < 1) {
+      // unknown column, there is no metadata to resolve the handler with
+      final TypeHandler<?> handler = typeHandlerRegistry.getTypeHandler(propertyType);
+      return handler == null || handler instanceof UnknownTypeHandler ? new ObjectTypeHandler() : handler;
+    }
     TypeHandler<?> handler = null;
-    Map<Class<?>, TypeHandler<?>> columnHandlers = typeHandlerMap.get(columnName);
+    Map<Class<?>, TypeHandler<?>> columnHandlers = typeHandlers[columnIndex];
     if (columnHandlers == null) {
       columnHandlers = new HashMap<Class<?>, TypeHandler<?>>();
-      typeHandlerMap.put(columnName, columnHandlers);
+      typeHandlers[columnIndex] = columnHandlers;
     } else {
       handler = columnHandlers.get(propertyType);
     }
@@ -81,7 +122,7 @@ class ResultSetWrapper {
       // Replicate logic of UnknownTypeHandler#resolveTypeHandler
       // See issue #59 comment 10
       if (handler == null || handler instanceof UnknownTypeHandler) {
-        final int index = columnNames.indexOf(columnName);
+        final int index = columnIndex - 1;
         final JdbcType jdbcType = jdbcTypes.get(index);
         final Class<?> javaType = resolveClass(classNames.get(index));
         if (javaType != null && jdbcType != null) {
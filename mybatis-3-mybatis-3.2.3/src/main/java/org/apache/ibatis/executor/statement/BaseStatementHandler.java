@@ -8,12 +8,15 @@ import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.executor.ExecutorException;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
+import org.apache.ibatis.executor.pagination.BoundSqlPaginator;
+import org.apache.ibatis.executor.pagination.PaginationDialect;
 import org.apache.ibatis.executor.parameter.ParameterHandler;
 import org.apache.ibatis.executor.resultset.ResultSetHandler;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.reflection.factory.ObjectFactory;
 import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.KeysetBounds;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.type.TypeHandlerRegistry;
@@ -39,7 +42,6 @@ public abstract class BaseStatementHandler implements StatementHandler {
         this.configuration = mappedStatement.getConfiguration();
         this.executor = executor;
         this.mappedStatement = mappedStatement;
-        this.rowBounds = rowBounds;
 
         this.typeHandlerRegistry = configuration.getTypeHandlerRegistry();
         this.objectFactory = configuration.getObjectFactory();
@@ -49,6 +51,22 @@ public abstract class BaseStatementHandler implements StatementHandler {
             boundSql = mappedStatement.getBoundSql(parameterObject);
         }
 
+        // 键集分页：追加键列的条件及排序，页大小仍作为普通分页处理
+        if (rowBounds instanceof KeysetBounds) {
+            boundSql = BoundSqlPaginator.keyset(configuration, mappedStatement, boundSql, (KeysetBounds) rowBounds);
+            rowBounds = new RowBounds(RowBounds.NO_ROW_OFFSET, rowBounds.getLimit());
+        }
+
+        // 数据库端分页：改写为方言的分页语句后，结果集不再需要跳过行
+        if (configuration.isDatabasePaginationEnabled() && BoundSqlPaginator.isPageable(mappedStatement, rowBounds)) {
+            PaginationDialect dialect = configuration.getPaginationDialect();
+            if (dialect != null) {
+                boundSql = BoundSqlPaginator.paginate(configuration, dialect, boundSql, rowBounds);
+                rowBounds = RowBounds.DEFAULT;
+            }
+        }
+
+        this.rowBounds = rowBounds;
         this.boundSql = boundSql;
 
         this.parameterHandler = configuration.newParameterHandler(mappedStatement, parameterObject, boundSql);
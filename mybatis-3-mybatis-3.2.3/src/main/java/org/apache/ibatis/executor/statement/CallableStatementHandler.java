@@ -22,6 +22,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
 
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.executor.ExecutorException;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
@@ -68,6 +69,15 @@ public class CallableStatementHandler extends BaseStatementHandler {
         return resultList;
     }
 
+    @Override
+    public <E> Cursor<E> queryCursor(Statement statement) throws SQLException {
+        CallableStatement cs = (CallableStatement) statement;
+        cs.execute();
+        Cursor<E> cursor = resultSetHandler.<E>handleCursorResultSets(cs);
+        resultSetHandler.handleOutputParameters(cs);
+        return cursor;
+    }
+
     protected Statement instantiateStatement(Connection connection) throws SQLException {
         String sql = boundSql.getSql();
         if (mappedStatement.getResultSetType() != null) {
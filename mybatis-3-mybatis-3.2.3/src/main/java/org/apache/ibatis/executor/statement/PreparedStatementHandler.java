@@ -22,6 +22,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
 
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
@@ -59,6 +60,13 @@ public class PreparedStatementHandler extends BaseStatementHandler {
         return resultSetHandler.<E>handleResultSets(ps);
     }
 
+    @Override
+    public <E> Cursor<E> queryCursor(Statement statement) throws SQLException {
+        PreparedStatement ps = (PreparedStatement) statement;
+        ps.execute();
+        return resultSetHandler.<E>handleCursorResultSets(ps);
+    }
+
     protected Statement instantiateStatement(Connection connection) throws SQLException {
         String sql = boundSql.getSql();
         // 只处理Jdbc3KeyGenerator，因为它代表的是自增，另外一个是 SelectKeyGenerator 用于不支持自增的情况
@@ -47,6 +47,15 @@ public class BoundSql {
         this.metaParameters = configuration.newMetaObject(additionalParameters);
     }
 
+    /**
+     * 以新的sql文本和参数说明复制，运行时参数对象和额外参数保持不变
+     */
+    public BoundSql copy(Configuration configuration, String sql, List<ParameterMapping> parameterMappings) {
+        BoundSql copy = new BoundSql(configuration, sql, parameterMappings, parameterObject);
+        copy.additionalParameters.putAll(additionalParameters);
+        return copy;
+    }
+
     public String getSql() {
         return sql;
     }
@@ -59,6 +68,13 @@ public class BoundSql {
         return parameterObject;
     }
 
+    /**
+     * 额外参数中是否有该键，不解析属性路径
+     */
+    public boolean containsAdditionalParameter(String key) {
+        return additionalParameters.containsKey(key);
+    }
+
     public boolean hasAdditionalParameter(String name) {
         return metaParameters.hasGetter(name);
     }
@@ -8,11 +8,20 @@ import java.util.Properties;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheMetrics;
+import org.apache.ibatis.cache.decorators.BlockingCache;
+import org.apache.ibatis.cache.decorators.BroadcastCache;
+import org.apache.ibatis.cache.decorators.CopyingCache;
+import org.apache.ibatis.cache.decorators.ExpiringCache;
 import org.apache.ibatis.cache.decorators.FifoCache;
 import org.apache.ibatis.cache.decorators.LoggingCache;
 import org.apache.ibatis.cache.decorators.ScheduledCache;
-import org.apache.ibatis.cache.decorators.SerializedCache;
 import org.apache.ibatis.cache.decorators.SynchronizedCache;
+import org.apache.ibatis.cache.decorators.TaggedCache;
+import org.apache.ibatis.cache.decorators.TinyLfuCache;
+import org.apache.ibatis.cache.decorators.WeightedCache;
+import org.apache.ibatis.cache.impl.OffHeapCache;
+import org.apache.ibatis.executor.CacheRefresher;
 import org.apache.ibatis.cache.impl.PerpetualCache;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.SystemMetaObject;
@@ -30,6 +39,11 @@ public class CacheBuilder {
     private Integer size;
     private Long clearInterval;
     private boolean readWrite;
+    private boolean blocking;
+    private WeightedCache.Budget weightBudget;
+    private BroadcastCache.Bus invalidationBus;
+    private CacheRefresher refresher;
+    private CacheMetrics metrics;
     private Properties properties;
 
     public CacheBuilder(String id) {
@@ -64,6 +78,31 @@ public class CacheBuilder {
         return this;
     }
 
+    public CacheBuilder blocking(boolean blocking) {
+        this.blocking = blocking;
+        return this;
+    }
+
+    public CacheBuilder weightBudget(WeightedCache.Budget weightBudget) {
+        this.weightBudget = weightBudget;
+        return this;
+    }
+
+    public CacheBuilder invalidationBus(BroadcastCache.Bus invalidationBus) {
+        this.invalidationBus = invalidationBus;
+        return this;
+    }
+
+    public CacheBuilder refresher(CacheRefresher refresher) {
+        this.refresher = refresher;
+        return this;
+    }
+
+    public CacheBuilder metrics(CacheMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
     public CacheBuilder properties(Properties properties) {
         this.properties = properties;
         return this;
@@ -73,11 +112,13 @@ public class CacheBuilder {
         setDefaultImplementations();
         Cache cache = newBaseCacheInstance(implementation, id);
         setCacheProperties(cache);
+        setCacheMetrics(cache);
         // issue #352, do not apply decorators to custom caches
         if (cache.getClass().getName().startsWith("org.apache.ibatis")) {
             for (Class<? extends Cache> decorator : decorators) {
                 cache = newCacheDecoratorInstance(decorator, cache);
                 setCacheProperties(cache);
+                setCacheMetrics(cache);
             }
             cache = setStandardDecorators(cache);
         }
@@ -95,25 +136,71 @@ public class CacheBuilder {
 
     private Cache setStandardDecorators(Cache cache) {
         try {
+            // TinyLfuCache自己保存缓存的值并支持并发读取，不需要再用SynchronizedCache加全局锁
+            boolean concurrent = cache instanceof TinyLfuCache;
             MetaObject metaCache = SystemMetaObject.forObject(cache);
             if (size != null && metaCache.hasSetter("size")) {
                 metaCache.setValue("size", size);
             }
+            // WEIGHTED缓存除了自身的maxWeight，还受所有缓存共享的内存上限约束
+            if (weightBudget != null && cache instanceof WeightedCache) {
+                ((WeightedCache) cache).setBudget(weightBudget);
+            }
             if (clearInterval != null) {
                 cache = new ScheduledCache(cache);
                 ((ScheduledCache) cache).setClearInterval(clearInterval);
             }
-            if (readWrite) {
-                cache = new SerializedCache(cache);
+            // 每个条目在写入或最后一次读取一段时间后单独过期，过期时间带有随机抖动，避免整个缓存同时失效
+            if (properties != null
+                    && (properties.containsKey("expireAfterWrite") || properties.containsKey("expireAfterAccess"))) {
+                cache = new ExpiringCache(cache);
+                setCacheProperties(cache);
+                setCacheMetrics(cache);
+                if (refresher != null) {
+                    refresher.register((ExpiringCache) cache);
+                }
+            }
+            // 读写缓存保存并返回值的深拷贝，默认按Reflector的属性信息复制，可以通过copyStrategy属性换成序列化；
+            // OffHeapCache每次读取都会解码出新的对象，不需要再复制
+            if (readWrite && !OffHeapCache.class.isAssignableFrom(implementation)) {
+                cache = new CopyingCache(cache);
+                setCacheProperties(cache);
             }
             cache = new LoggingCache(cache);
-            cache = new SynchronizedCache(cache);
+            setCacheMetrics(cache);
+            if (!concurrent) {
+                cache = new SynchronizedCache(cache);
+            }
+            // 阻塞缓存必须在最外层，未命中的线程会在getObject中等待其他线程加载同一个key
+            if (blocking) {
+                cache = new BlockingCache(cache);
+                setCacheProperties(cache);
+            }
+            // 按标签失效：写语句只淘汰依赖相同标签的条目，而不是清空整个缓存；没有带标签的条目时不建立索引
+            cache = new TaggedCache(cache);
+            // 集群中清空缓存或按标签失效时，通知其他节点的同名缓存
+            if (invalidationBus != null) {
+                cache = new BroadcastCache(cache);
+                ((BroadcastCache) cache).setBus(invalidationBus);
+            }
             return cache;
         } catch (Exception e) {
             throw new CacheException("Error building standard cache decorators.  Cause: " + e, e);
         }
     }
 
+    /**
+     * 缓存及其淘汰策略通过setMetrics(CacheMetrics)记录命中、写入和淘汰次数
+     */
+    private void setCacheMetrics(Cache cache) {
+        if (metrics != null) {
+            MetaObject metaCache = SystemMetaObject.forObject(cache);
+            if (metaCache.hasSetter("metrics") && metaCache.getSetterType("metrics") == CacheMetrics.class) {
+                metaCache.setValue("metrics", metrics);
+            }
+        }
+    }
+
     private void setCacheProperties(Cache cache) {
         if (properties != null) {
             MetaObject metaCache = SystemMetaObject.forObject(cache);
@@ -1,8 +1,12 @@
 package org.apache.ibatis.mapping;
 
+import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
@@ -10,7 +14,9 @@ import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.executor.keygen.NoKeyGenerator;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.scripting.LanguageDriver;
+import org.apache.ibatis.scripting.defaults.ParameterBindingPlan;
 import org.apache.ibatis.session.Configuration;
 
 /**
@@ -49,6 +55,16 @@ public final class MappedStatement {
     private LanguageDriver lang;
     private String[] resultSets;
 
+    /**
+     * 二级缓存标签：查询语句表示结果依赖的标签，写语句表示要失效的标签，格式为 name 或 name:参数属性
+     */
+    private String[] cacheTags;
+
+    /**
+     * 按参数类型缓存的参数绑定计划，动态Sql的每种参数形状各有一个计划
+     */
+    private final Map<Class<?>, ParameterBindingPlan[]> parameterBindingPlans = new ConcurrentHashMap<Class<?>, ParameterBindingPlan[]>();
+
     private MappedStatement() {
         // constructor disabled
     }
@@ -166,6 +182,17 @@ public final class MappedStatement {
             return this;
         }
 
+        public Builder cacheTags(String cacheTags) {
+            String[] tags = delimitedStringtoArray(cacheTags);
+            if (tags != null) {
+                for (int i = 0; i < tags.length; i++) {
+                    tags[i] = tags[i].trim();
+                }
+            }
+            mappedStatement.cacheTags = tags;
+            return this;
+        }
+
         public MappedStatement build() {
             assert mappedStatement.configuration != null;
             assert mappedStatement.id != null;
@@ -268,6 +295,63 @@ public final class MappedStatement {
         return resultSets;
     }
 
+    public String[] getCacheTags() {
+        return cacheTags;
+    }
+
+    /**
+     * 用参数对象计算缓存标签，name:property 中的属性取自参数对象，参数为简单类型时取参数本身，
+     * 属性值为空时退化为 name，为集合或数组时每个元素生成一个标签
+     *
+     * @param parameterObject
+     * @return 没有声明标签时为空列表
+     */
+    public List<String> getCacheTags(Object parameterObject) {
+        if (cacheTags == null) {
+            return Collections.emptyList();
+        }
+        List<String> tags = new ArrayList<String>();
+        MetaObject metaParameter = null;
+        for (String tag : cacheTags) {
+            int colon = tag.indexOf(':');
+            if (colon < 0) {
+                tags.add(tag);
+                continue;
+            }
+            String name = tag.substring(0, colon);
+            Object value;
+            if (parameterObject == null) {
+                value = null;
+            } else if (configuration.getTypeHandlerRegistry().hasTypeHandler(parameterObject.getClass())) {
+                value = parameterObject;
+            } else {
+                if (metaParameter == null) {
+                    metaParameter = configuration.newMetaObject(parameterObject);
+                }
+                value = metaParameter.getValue(tag.substring(colon + 1));
+            }
+            if (value == null) {
+                tags.add(name);
+            } else if (value instanceof Collection) {
+                for (Object element : (Collection<?>) value) {
+                    tags.add(element == null ? name : name + ":" + element);
+                }
+            } else if (value.getClass().isArray()) {
+                for (int i = 0; i < Array.getLength(value); i++) {
+                    Object element = Array.get(value, i);
+                    tags.add(element == null ? name : name + ":" + element);
+                }
+            } else {
+                tags.add(name + ":" + value);
+            }
+        }
+        return tags;
+    }
+
+    public Map<Class<?>, ParameterBindingPlan[]> getParameterBindingPlans() {
+        return parameterBindingPlans;
+    }
+
     public BoundSql getBoundSql(Object parameterObject) {
         BoundSql boundSql = sqlSource.getBoundSql(parameterObject);
         List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
@@ -0,0 +1,32 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.mapping;
+
+/**
+ * How a selectKey with prefetch returns the keys it fetches.
+ */
+public enum PrefetchMode {
+
+    /**
+     * 每一行是一个主键，返回的行数不能少于prefetch
+     */
+    ROWS,
+
+    /**
+     * 返回一个按prefetch递增的序列值，使用从该值到值+prefetch-1的主键
+     */
+    HILO
+}
@@ -3,6 +3,7 @@ package org.apache.ibatis.scripting.defaults;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.parameter.ParameterHandler;
@@ -21,6 +22,11 @@ import org.apache.ibatis.type.TypeHandlerRegistry;
  */
 public class DefaultParameterHandler implements ParameterHandler {
 
+    /**
+     * 每个参数类型最多缓存的参数形状数，foreach 等生成的形状超过时替换最早的计划
+     */
+    public static final int MAX_PLANS_PER_TYPE = 16;
+
     private final TypeHandlerRegistry typeHandlerRegistry;
 
     private final MappedStatement mappedStatement;
@@ -43,7 +49,10 @@ public class DefaultParameterHandler implements ParameterHandler {
     public void setParameters(PreparedStatement ps) throws SQLException {
         ErrorContext.instance().activity("setting parameters").object(mappedStatement.getParameterMap().getId());
         List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
-        if (parameterMappings != null) {
+        if (parameterMappings != null && (parameterObject == null
+                || !configuration.getObjectWrapperFactory().hasWrapperFor(parameterObject))) {
+            setParameters(ps, parameterMappings, getParameterBindingPlan(parameterMappings));
+        } else if (parameterMappings != null) {
             MetaObject metaObject = parameterObject == null ? null : configuration.newMetaObject(parameterObject);
             for (int i = 0; i < parameterMappings.size(); i++) {
                 ParameterMapping parameterMapping = parameterMappings.get(i);
@@ -78,4 +87,49 @@ public class DefaultParameterHandler implements ParameterHandler {
         }
     }
 
+    /**
+     * 按参数绑定计划设置参数，计划按 (MappedStatement, 参数类型, 参数形状) 缓存
+     */
+    private void setParameters(PreparedStatement ps, List<ParameterMapping> parameterMappings, ParameterBindingPlan plan) throws SQLException {
+        ParameterBindingPlan.MetaObjectHolder metaObjectHolder = plan.usesMetaObject() ? new ParameterBindingPlan.MetaObjectHolder(configuration) : null;
+        for (int i = 0; i < parameterMappings.size(); i++) {
+            ParameterMapping parameterMapping = parameterMappings.get(i);
+            if (parameterMapping.getMode() != ParameterMode.OUT) {
+                Object value = plan.getValue(i, boundSql, parameterObject, metaObjectHolder);
+                TypeHandler typeHandler = parameterMapping.getTypeHandler();
+                JdbcType jdbcType = parameterMapping.getJdbcType();
+                if (value == null && jdbcType == null) {
+                    jdbcType = configuration.getJdbcTypeForNull();
+                }
+                typeHandler.setParameter(ps, i + 1, value, jdbcType);
+            }
+        }
+    }
+
+    private ParameterBindingPlan getParameterBindingPlan(List<ParameterMapping> parameterMappings) {
+        Class<?> parameterType = parameterObject == null ? Object.class : parameterObject.getClass();
+        Map<Class<?>, ParameterBindingPlan[]> plans = mappedStatement.getParameterBindingPlans();
+        ParameterBindingPlan[] typePlans = plans.get(parameterType);
+        if (typePlans != null) {
+            for (ParameterBindingPlan plan : typePlans) {
+                if (plan.matches(parameterMappings)) {
+                    return plan;
+                }
+            }
+        }
+        // 动态Sql的参数随执行变化时增加一个计划，并发时丢失的计划下次再建立
+        ParameterBindingPlan plan = new ParameterBindingPlan(configuration, parameterType, parameterMappings);
+        ParameterBindingPlan[] updatedPlans;
+        if (typePlans == null) {
+            updatedPlans = new ParameterBindingPlan[] { plan };
+        } else {
+            int kept = Math.min(typePlans.length, MAX_PLANS_PER_TYPE - 1);
+            updatedPlans = new ParameterBindingPlan[kept + 1];
+            System.arraycopy(typePlans, typePlans.length - kept, updatedPlans, 0, kept);
+            updatedPlans[kept] = plan;
+        }
+        plans.put(parameterType, updatedPlans);
+        return plan;
+    }
+
 }
@@ -0,0 +1,204 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.scripting.defaults;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.reflection.ExceptionUtil;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.Reflector;
+import org.apache.ibatis.reflection.ReflectionException;
+import org.apache.ibatis.reflection.invoker.Invoker;
+import org.apache.ibatis.reflection.wrapper.ObjectWrapper;
+import org.apache.ibatis.session.Configuration;
+
+/**
+ * How the values of the parameter mappings of a statement are read from a parameter type,
+ * resolved once and reused by {@link DefaultParameterHandler}.
+ * <p>
+ * Simple properties of beans and maps are read directly; property paths and indexed properties
+ * go through a {@link MetaObject} as before. Whether a property is an additional parameter still
+ * depends on each {@link BoundSql}, but is checked without parsing the property.
+ */
+public class ParameterBindingPlan {
+
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
+    private final String[] properties;
+    private final String[] additionalParameterKeys;
+    private final Binding[] bindings;
+    private boolean usesMetaObject;
+
+    /**
+     * @param parameterType the type of the parameter object, Object for a null parameter
+     */
+    public ParameterBindingPlan(Configuration configuration, Class<?> parameterType, List<ParameterMapping> parameterMappings) {
+        int size = parameterMappings.size();
+        this.properties = new String[size];
+        this.additionalParameterKeys = new String[size];
+        this.bindings = new Binding[size];
+        boolean isParameter = configuration.getTypeHandlerRegistry().hasTypeHandler(parameterType);
+        for (int i = 0; i < size; i++) {
+            String property = parameterMappings.get(i).getProperty();
+            properties[i] = property;
+            additionalParameterKeys[i] = additionalParameterKey(property);
+            bindings[i] = isParameter ? PARAMETER : binding(parameterType, property);
+            usesMetaObject |= bindings[i] == META_OBJECT;
+        }
+    }
+
+    /**
+     * @return true if some values are read through a MetaObject of the parameter object
+     */
+    public boolean usesMetaObject() {
+        return usesMetaObject;
+    }
+
+    /**
+     * @return true if the plan reads the properties of these mappings, in the same order
+     */
+    public boolean matches(List<ParameterMapping> parameterMappings) {
+        if (parameterMappings.size() != properties.length) {
+            return false;
+        }
+        for (int i = 0; i < properties.length; i++) {
+            String property = parameterMappings.get(i).getProperty();
+            if (property != properties[i] && (property == null || !property.equals(properties[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 按计划获取第 i 个参数的值，优先级与 DefaultParameterHandler 相同
+     */
+    public Object getValue(int i, BoundSql boundSql, Object parameterObject, MetaObjectHolder metaObjectHolder) {
+        String property = properties[i];
+        if (boundSql.containsAdditionalParameter(additionalParameterKeys[i]) && boundSql.hasAdditionalParameter(property)) {
+            return boundSql.getAdditionalParameter(property);
+        } else if (parameterObject == null) {
+            return null;
+        }
+        return bindings[i].getValue(parameterObject, property, metaObjectHolder);
+    }
+
+    /**
+     * The key of the additional parameters that must exist for the property to be one of them.
+     * Same as the lookup of the MapWrapper behind BoundSql.hasAdditionalParameter.
+     */
+    private static String additionalParameterKey(String property) {
+        if (property == null) {
+            return null;
+        }
+        int dot = property.indexOf('.');
+        if (dot > -1) {
+            return property.substring(0, dot);
+        }
+        int bracket = property.indexOf('[');
+        return bracket > -1 ? property.substring(0, bracket) : property;
+    }
+
+    private static Binding binding(Class<?> parameterType, String property) {
+        if (property == null || property.indexOf('.') > -1 || property.indexOf('[') > -1) {
+            return META_OBJECT;
+        }
+        if (ObjectWrapper.class.isAssignableFrom(parameterType)) {
+            return META_OBJECT;
+        }
+        if (Map.class.isAssignableFrom(parameterType)) {
+            return MAP_KEY;
+        }
+        if (Collection.class.isAssignableFrom(parameterType)) {
+            return META_OBJECT;
+        }
+        Reflector reflector = Reflector.forClass(parameterType);
+        if (!reflector.hasGetter(property)) {
+            // MetaObject reports the missing getter
+            return META_OBJECT;
+        }
+        return new GetterBinding(reflector.getGetInvoker(property));
+    }
+
+    /**
+     * The MetaObject of the parameter object, created at most once per statement execution.
+     */
+    public static class MetaObjectHolder {
+        private final Configuration configuration;
+        private MetaObject metaObject;
+
+        public MetaObjectHolder(Configuration configuration) {
+            this.configuration = configuration;
+        }
+
+        MetaObject get(Object parameterObject) {
+            if (metaObject == null) {
+                metaObject = configuration.newMetaObject(parameterObject);
+            }
+            return metaObject;
+        }
+    }
+
+    private interface Binding {
+        Object getValue(Object parameterObject, String property, MetaObjectHolder metaObjectHolder);
+    }
+
+    private static final Binding PARAMETER = new Binding() {
+        public Object getValue(Object parameterObject, String property, MetaObjectHolder metaObjectHolder) {
+            return parameterObject;
+        }
+    };
+
+    private static final Binding MAP_KEY = new Binding() {
+        public Object getValue(Object parameterObject, String property, MetaObjectHolder metaObjectHolder) {
+            return ((Map<?, ?>) parameterObject).get(property);
+        }
+    };
+
+    private static final Binding META_OBJECT = new Binding() {
+        public Object getValue(Object parameterObject, String property, MetaObjectHolder metaObjectHolder) {
+            return metaObjectHolder.get(parameterObject).getValue(property);
+        }
+    };
+
+    private static class GetterBinding implements Binding {
+        private final Invoker invoker;
+
+        GetterBinding(Invoker invoker) {
+            this.invoker = invoker;
+        }
+
+        public Object getValue(Object parameterObject, String property, MetaObjectHolder metaObjectHolder) {
+            // same exceptions as BeanWrapper
+            try {
+                try {
+                    return invoker.invoke(parameterObject, NO_ARGUMENTS);
+                } catch (Throwable t) {
+                    throw ExceptionUtil.unwrapThrowable(t);
+                }
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new ReflectionException("Could not get property '" + property + "' from " + parameterObject.getClass() + ".  Cause: " + t.toString(), t);
+            }
+        }
+    }
+
+}
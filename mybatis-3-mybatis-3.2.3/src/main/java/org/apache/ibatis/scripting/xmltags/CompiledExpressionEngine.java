@@ -0,0 +1,85 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.scripting.xmltags;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiles the common expressions of the dynamic SQL tags to a tree of direct accessors:
+ * property paths, {@code null} and literals, comparisons, {@code and}/{@code or}/{@code not},
+ * {@code size()} and {@code isEmpty()}.
+ * <p>
+ * The compiled expressions keep the OGNL semantics. Any other expression, and any evaluation
+ * that meets something the compiled form does not handle (a null in the middle of a path,
+ * a property without a getter...), is delegated to the fallback engine, OGNL by default.
+ * <p>
+ * Each engine, and so each {@link org.apache.ibatis.session.Configuration}, keeps the plans of
+ * at most {@link #MAX_PLANS} expressions; the others are compiled at each evaluation.
+ */
+public class CompiledExpressionEngine implements ExpressionEngine {
+
+  public static final int MAX_PLANS = 4096;
+
+  private final Map<String, ExpressionCompiler.Node> plans = new ConcurrentHashMap<String, ExpressionCompiler.Node>();
+  private final ExpressionEngine fallback;
+
+  public CompiledExpressionEngine() {
+    this(new OgnlExpressionEngine());
+  }
+
+  public CompiledExpressionEngine(ExpressionEngine fallback) {
+    this.fallback = fallback;
+  }
+
+  public Object getValue(String expression, Object root) {
+    ExpressionCompiler.Node compiled = compile(expression);
+    if (compiled != ExpressionCompiler.NOT_COMPILED && root instanceof DynamicContext.ContextMap) {
+      try {
+        return compiled.getValue(root);
+      } catch (ExpressionCompiler.FallbackException e) {
+        // evaluated by the fallback engine, that also reports the errors
+      }
+    }
+    return fallback.getValue(expression, root);
+  }
+
+  /**
+   * @return true if the expression is compiled rather than always delegated to the fallback engine
+   */
+  public boolean isCompiled(String expression) {
+    return compile(expression) != ExpressionCompiler.NOT_COMPILED;
+  }
+
+  /**
+   * @return the number of plans this engine keeps
+   */
+  public int getPlanCount() {
+    return plans.size();
+  }
+
+  private ExpressionCompiler.Node compile(String expression) {
+    ExpressionCompiler.Node plan = plans.get(expression);
+    if (plan == null) {
+      plan = ExpressionCompiler.compile(expression);
+      if (plans.size() < MAX_PLANS) {
+        plans.put(expression, plan);
+      }
+    }
+    return plan;
+  }
+
+}
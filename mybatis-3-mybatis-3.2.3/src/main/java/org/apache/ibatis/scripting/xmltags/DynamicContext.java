@@ -1,12 +1,16 @@
 package org.apache.ibatis.scripting.xmltags;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import ognl.OgnlException;
 import ognl.OgnlRuntime;
 import ognl.PropertyAccessor;
 
+import org.apache.ibatis.builder.ParameterToken;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.session.Configuration;
 
@@ -19,11 +23,14 @@ public class DynamicContext {
         OgnlRuntime.setPropertyAccessor(ContextMap.class, new ContextAccessor());
     }
 
+    private final Configuration configuration;
     private final ContextMap bindings;
     private final StringBuilder sqlBuilder = new StringBuilder();
+    private final List<ParameterToken> parameterTokens = new ArrayList<ParameterToken>();
     private int uniqueNumber = 0;
 
     public DynamicContext(Configuration configuration, Object parameterObject) {
+        this.configuration = configuration;
         if (parameterObject != null && !(parameterObject instanceof Map)) {
             MetaObject metaObject = configuration.newMetaObject(parameterObject);
             bindings = new ContextMap(metaObject);
@@ -43,8 +50,31 @@ public class DynamicContext {
     }
 
     public void appendSql(String sql) {
+        if (sql != null && sql.indexOf("#{") > -1) {
+            List<ParameterToken> tokens = new ArrayList<ParameterToken>();
+            appendSql(ParameterToken.parse(configuration, sql, tokens, false), tokens);
+        } else {
+            appendSql(sql, Collections.<ParameterToken>emptyList());
+        }
+    }
+
+    /**
+     * 追加已解析的Sql, #{...} 已替换为 ?
+     *
+     * @param sql    the sql, with a ? for each token
+     * @param tokens the #{...} tokens of the sql, in order
+     */
+    public void appendSql(String sql, List<ParameterToken> tokens) {
         sqlBuilder.append(sql);
         sqlBuilder.append(" ");
+        parameterTokens.addAll(tokens);
+    }
+
+    /**
+     * @return the #{...} tokens of the sql, in order
+     */
+    public List<ParameterToken> getParameterTokens() {
+        return parameterTokens;
     }
 
     /**
@@ -1,10 +1,14 @@
 package org.apache.ibatis.scripting.xmltags;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
-import org.apache.ibatis.builder.SqlSourceBuilder;
+import org.apache.ibatis.builder.ParameterToken;
 import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.ParameterMapping;
 import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.session.Configuration;
 
 
@@ -28,10 +32,14 @@ public class DynamicSqlSource implements SqlSource {
     public BoundSql getBoundSql(Object parameterObject) {
         DynamicContext context = new DynamicContext(configuration, parameterObject);
         rootSqlNode.apply(context);
-        SqlSourceBuilder sqlSourceParser = new SqlSourceBuilder(configuration);
+        // #{...} 在节点中已解析, 不再重新解析整条Sql
         Class<?> parameterType = parameterObject == null ? Object.class : parameterObject.getClass();
-        SqlSource sqlSource = sqlSourceParser.parse(context.getSql(), parameterType, context.getBindings());
-        BoundSql boundSql = sqlSource.getBoundSql(parameterObject);
+        MetaObject metaParameters = configuration.newMetaObject(context.getBindings());
+        List<ParameterMapping> parameterMappings = new ArrayList<ParameterMapping>(context.getParameterTokens().size());
+        for (ParameterToken token : context.getParameterTokens()) {
+            parameterMappings.add(token.buildParameterMapping(parameterType, metaParameters));
+        }
+        BoundSql boundSql = new BoundSql(configuration, context.getSql(), parameterMappings, parameterObject);
         for (Map.Entry<String, Object> entry : context.getBindings().entrySet()) {
             boundSql.setAdditionalParameter(entry.getKey(), entry.getValue());
         }
@@ -0,0 +1,531 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.scripting.xmltags;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ognl.OgnlOps;
+
+import org.apache.ibatis.reflection.Reflector;
+import org.apache.ibatis.reflection.invoker.Invoker;
+import org.apache.ibatis.reflection.invoker.MethodInvoker;
+
+/**
+ * Compiles the subset of OGNL supported by {@link CompiledExpressionEngine}.
+ * The operators follow the OGNL precedence and are evaluated with {@link OgnlOps}.
+ * The property paths remember the getter they last resolved for each class.
+ */
+final class ExpressionCompiler {
+
+  static final FallbackException FALLBACK = new FallbackException();
+
+  static final Node NOT_COMPILED = new Node() {
+    Object getValue(Object root) {
+      throw FALLBACK;
+    }
+  };
+
+  private static final Object[] NO_ARGUMENTS = new Object[0];
+
+  /** OGNL keywords, and the names the OGNL accessors of maps and collections handle themselves. */
+  private static final Set<String> RESERVED_NAMES = new HashSet<String>(Arrays.asList(
+      "and", "or", "not", "eq", "neq", "lt", "lte", "gt", "gte", "in", "instanceof",
+      "shl", "shr", "ushr", "band", "bor", "xor", "new", "true", "false", "null",
+      "size", "isEmpty", "keys", "keySet", "values", "iterator", "length", "class"));
+
+  private final String expression;
+  private final List<String> tokens;
+  private int position;
+
+  private ExpressionCompiler(String expression, List<String> tokens) {
+    this.expression = expression;
+    this.tokens = tokens;
+  }
+
+  /**
+   * @return the compiled expression, or {@link #NOT_COMPILED} if it is not part of the supported subset
+   */
+  static Node compile(String expression) {
+    List<String> tokens = tokenize(expression);
+    if (tokens == null || tokens.isEmpty()) {
+      return NOT_COMPILED;
+    }
+    ExpressionCompiler compiler = new ExpressionCompiler(expression, tokens);
+    Node node = compiler.parseOr();
+    if (node == null || compiler.position != tokens.size()) {
+      return NOT_COMPILED;
+    }
+    return node;
+  }
+
+  private static List<String> tokenize(String expression) {
+    List<String> tokens = new ArrayList<String>();
+    int length = expression.length();
+    int i = 0;
+    while (i < length) {
+      char c = expression.charAt(i);
+      if (Character.isWhitespace(c)) {
+        i++;
+      } else if (Character.isJavaIdentifierStart(c) && c != '$') {
+        int start = i;
+        while (i < length && Character.isJavaIdentifierPart(expression.charAt(i)) && expression.charAt(i) != '$') {
+          i++;
+        }
+        tokens.add(expression.substring(start, i));
+      } else if (Character.isDigit(c)) {
+        int start = i;
+        while (i < length && (Character.isLetterOrDigit(expression.charAt(i)) || expression.charAt(i) == '.')) {
+          i++;
+        }
+        tokens.add(expression.substring(start, i));
+      } else if (c == '\'' || c == '"') {
+        int end = expression.indexOf(c, i + 1);
+        if (end == -1 || expression.substring(i, end).indexOf('\\') > -1) {
+          return null;
+        }
+        tokens.add(expression.substring(i, end + 1));
+        i = end + 1;
+      } else if (i + 1 < length && isTwoCharOperator(expression.substring(i, i + 2))) {
+        tokens.add(expression.substring(i, i + 2));
+        i += 2;
+      } else if ("<>!().".indexOf(c) > -1) {
+        tokens.add(String.valueOf(c));
+        i++;
+      } else {
+        return null;
+      }
+    }
+    return tokens;
+  }
+
+  private static boolean isTwoCharOperator(String s) {
+    return "==".equals(s) || "!=".equals(s) || "<=".equals(s) || ">=".equals(s) || "&&".equals(s) || "||".equals(s);
+  }
+
+  private String peek() {
+    return position < tokens.size() ? tokens.get(position) : null;
+  }
+
+  private boolean accept(String... candidates) {
+    String token = peek();
+    for (String candidate : candidates) {
+      if (candidate.equals(token)) {
+        position++;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private Node parseOr() {
+    List<Node> operands = new ArrayList<Node>();
+    do {
+      Node operand = parseAnd();
+      if (operand == null) {
+        return null;
+      }
+      operands.add(operand);
+    } while (accept("or", "||"));
+    return operands.size() == 1 ? operands.get(0) : new Or(operands.toArray(new Node[operands.size()]));
+  }
+
+  private Node parseAnd() {
+    List<Node> operands = new ArrayList<Node>();
+    do {
+      Node operand = parseEquality();
+      if (operand == null) {
+        return null;
+      }
+      operands.add(operand);
+    } while (accept("and", "&&"));
+    return operands.size() == 1 ? operands.get(0) : new And(operands.toArray(new Node[operands.size()]));
+  }
+
+  private Node parseEquality() {
+    Node left = parseRelational();
+    while (left != null) {
+      Operator operator;
+      if (accept("==", "eq")) {
+        operator = Operator.EQ;
+      } else if (accept("!=", "neq")) {
+        operator = Operator.NEQ;
+      } else {
+        break;
+      }
+      Node right = parseRelational();
+      left = right == null ? null : new Comparison(operator, left, right);
+    }
+    return left;
+  }
+
+  private Node parseRelational() {
+    Node left = parseUnary();
+    while (left != null) {
+      Operator operator;
+      if (accept("<", "lt")) {
+        operator = Operator.LT;
+      } else if (accept("<=", "lte")) {
+        operator = Operator.LTE;
+      } else if (accept(">", "gt")) {
+        operator = Operator.GT;
+      } else if (accept(">=", "gte")) {
+        operator = Operator.GTE;
+      } else {
+        break;
+      }
+      Node right = parseUnary();
+      left = right == null ? null : new Comparison(operator, left, right);
+    }
+    return left;
+  }
+
+  private Node parseUnary() {
+    if (accept("!", "not")) {
+      Node operand = parseUnary();
+      return operand == null ? null : new Not(operand);
+    }
+    return parsePrimary();
+  }
+
+  private Node parsePrimary() {
+    String token = peek();
+    if (token == null) {
+      return null;
+    }
+    position++;
+    if ("(".equals(token)) {
+      Node node = parseOr();
+      return node != null && accept(")") ? node : null;
+    } else if ("null".equals(token)) {
+      return new Literal(null);
+    } else if ("true".equals(token)) {
+      return new Literal(Boolean.TRUE);
+    } else if ("false".equals(token)) {
+      return new Literal(Boolean.FALSE);
+    } else if (token.charAt(0) == '\'') {
+      String value = token.substring(1, token.length() - 1);
+      // like OGNL, a single quoted character is a char
+      return new Literal(value.length() == 1 ? (Object) Character.valueOf(value.charAt(0)) : value);
+    } else if (token.charAt(0) == '"') {
+      return new Literal(token.substring(1, token.length() - 1));
+    } else if (Character.isDigit(token.charAt(0))) {
+      return parseNumber(token);
+    } else if (isName(token)) {
+      return parsePath(token);
+    }
+    return null;
+  }
+
+  private Node parseNumber(String token) {
+    // leading zeros are octal in OGNL, suffixes select other types: both are left to OGNL
+    if (token.length() > 1 && token.charAt(0) == '0' && token.charAt(1) != '.') {
+      return null;
+    }
+    try {
+      if (token.matches("\\d+")) {
+        return new Literal(Integer.valueOf(token));
+      } else if (token.matches("\\d+\\.\\d+")) {
+        return new Literal(Double.valueOf(token));
+      }
+    } catch (NumberFormatException e) {
+      // too large for an int
+    }
+    return null;
+  }
+
+  private Node parsePath(String root) {
+    List<String> names = new ArrayList<String>();
+    names.add(root);
+    while (accept(".")) {
+      String name = peek();
+      if (name == null || !Character.isJavaIdentifierStart(name.charAt(0))) {
+        return null;
+      }
+      position++;
+      if (accept("(")) {
+        if (!accept(")") || ".".equals(peek()) || "(".equals(peek())) {
+          return null;
+        }
+        if ("size".equals(name)) {
+          return new Size(new Path(expression, names));
+        } else if ("isEmpty".equals(name)) {
+          return new IsEmpty(new Path(expression, names));
+        }
+        return null;
+      }
+      if (!isName(name)) {
+        return null;
+      }
+      names.add(name);
+    }
+    if ("(".equals(peek())) {
+      return null;
+    }
+    return new Path(expression, names);
+  }
+
+  private static boolean isName(String token) {
+    return Character.isJavaIdentifierStart(token.charAt(0)) && !RESERVED_NAMES.contains(token);
+  }
+
+  /**
+   * Thrown when a compiled expression meets a value it does not handle. Carries no stack trace.
+   */
+  static final class FallbackException extends RuntimeException {
+    private static final long serialVersionUID = 5196227164541066397L;
+
+    public Throwable fillInStackTrace() {
+      return this;
+    }
+  }
+
+  abstract static class Node {
+    abstract Object getValue(Object root);
+  }
+
+  private static final class Literal extends Node {
+    private final Object value;
+
+    Literal(Object value) {
+      this.value = value;
+    }
+
+    Object getValue(Object root) {
+      return value;
+    }
+  }
+
+  private static final class Path extends Node {
+    private final String expression;
+    private final String[] names;
+    // the getter last resolved for each name, shared by the threads evaluating the plan
+    private final Getter[] getters;
+
+    Path(String expression, List<String> names) {
+      this.expression = expression;
+      this.names = names.toArray(new String[names.size()]);
+      this.getters = new Getter[this.names.length];
+    }
+
+    Object getValue(Object root) {
+      Object value = getRootValue((Map<?, ?>) root, names[0]);
+      for (int i = 1; i < names.length; i++) {
+        value = getProperty(value, i);
+      }
+      return value;
+    }
+
+    private Object getRootValue(Map<?, ?> bindings, String name) {
+      // same lookup as DynamicContext.ContextAccessor
+      Object value;
+      try {
+        value = bindings.get(name);
+      } catch (RuntimeException e) {
+        throw FALLBACK;
+      }
+      if (value == null) {
+        Object parameterObject = bindings.get(DynamicContext.PARAMETER_OBJECT_KEY);
+        if (parameterObject instanceof Map) {
+          value = ((Map<?, ?>) parameterObject).get(name);
+        }
+      }
+      return value;
+    }
+
+    private Object getProperty(Object target, int index) {
+      if (target == null) {
+        throw FALLBACK;
+      }
+      Getter getter = getters[index];
+      if (getter == null || getter.type != target.getClass()) {
+        if (target instanceof Collection || target instanceof Iterator
+            || target instanceof Enumeration || target.getClass().isArray()) {
+          throw FALLBACK;
+        }
+        if (target instanceof Map) {
+          return ((Map<?, ?>) target).get(names[index]);
+        }
+        Reflector reflector = Reflector.forClass(target.getClass());
+        if (!reflector.hasGetter(names[index])) {
+          throw FALLBACK;
+        }
+        Invoker invoker = reflector.getGetInvoker(names[index]);
+        if (!(invoker instanceof MethodInvoker)) {
+          throw FALLBACK;
+        }
+        getter = new Getter(target.getClass(), invoker);
+        getters[index] = getter;
+      }
+      try {
+        return getter.invoker.invoke(target, NO_ARGUMENTS);
+      } catch (Exception e) {
+        throw FALLBACK;
+      }
+    }
+
+    public String toString() {
+      return expression;
+    }
+  }
+
+  private static final class Getter {
+    private final Class<?> type;
+    private final Invoker invoker;
+
+    Getter(Class<?> type, Invoker invoker) {
+      this.type = type;
+      this.invoker = invoker;
+    }
+  }
+
+  private static final class Size extends Node {
+    private final Node target;
+
+    Size(Node target) {
+      this.target = target;
+    }
+
+    Object getValue(Object root) {
+      Object value = target.getValue(root);
+      if (value instanceof Collection) {
+        return ((Collection<?>) value).size();
+      } else if (value instanceof Map) {
+        return ((Map<?, ?>) value).size();
+      }
+      throw FALLBACK;
+    }
+  }
+
+  private static final class IsEmpty extends Node {
+    private final Node target;
+
+    IsEmpty(Node target) {
+      this.target = target;
+    }
+
+    Object getValue(Object root) {
+      Object value = target.getValue(root);
+      if (value instanceof Collection) {
+        return ((Collection<?>) value).isEmpty();
+      } else if (value instanceof Map) {
+        return ((Map<?, ?>) value).isEmpty();
+      } else if (value instanceof String) {
+        return ((String) value).length() == 0;
+      }
+      throw FALLBACK;
+    }
+  }
+
+  private enum Operator {
+    EQ, NEQ, LT, LTE, GT, GTE
+  }
+
+  private static final class Comparison extends Node {
+    private final Operator operator;
+    private final Node left;
+    private final Node right;
+
+    Comparison(Operator operator, Node left, Node right) {
+      this.operator = operator;
+      this.left = left;
+      this.right = right;
+    }
+
+    Object getValue(Object root) {
+      Object v1 = left.getValue(root);
+      Object v2 = right.getValue(root);
+      try {
+        switch (operator) {
+          case EQ:
+            return OgnlOps.equal(v1, v2);
+          case NEQ:
+            return !OgnlOps.equal(v1, v2);
+          case LT:
+            return OgnlOps.less(v1, v2);
+          case LTE:
+            return !OgnlOps.greater(v1, v2);
+          case GT:
+            return OgnlOps.greater(v1, v2);
+          default:
+            return !OgnlOps.less(v1, v2);
+        }
+      } catch (RuntimeException e) {
+        // e.g. values that cannot be compared
+        throw FALLBACK;
+      }
+    }
+  }
+
+  private static final class Not extends Node {
+    private final Node operand;
+
+    Not(Node operand) {
+      this.operand = operand;
+    }
+
+    Object getValue(Object root) {
+      return !OgnlOps.booleanValue(operand.getValue(root));
+    }
+  }
+
+  private static final class And extends Node {
+    private final Node[] operands;
+
+    And(Node[] operands) {
+      this.operands = operands;
+    }
+
+    Object getValue(Object root) {
+      // like OGNL, returns the last operand evaluated
+      Object result = null;
+      for (int i = 0; i < operands.length; i++) {
+        result = operands[i].getValue(root);
+        if (i != operands.length - 1 && !OgnlOps.booleanValue(result)) {
+          break;
+        }
+      }
+      return result;
+    }
+  }
+
+  private static final class Or extends Node {
+    private final Node[] operands;
+
+    Or(Node[] operands) {
+      this.operands = operands;
+    }
+
+    Object getValue(Object root) {
+      Object result = null;
+      for (int i = 0; i < operands.length; i++) {
+        result = operands[i].getValue(root);
+        if (i != operands.length - 1 && OgnlOps.booleanValue(result)) {
+          break;
+        }
+      }
+      return result;
+    }
+  }
+
+}
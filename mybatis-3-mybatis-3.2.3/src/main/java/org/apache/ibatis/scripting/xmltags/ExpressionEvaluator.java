@@ -25,15 +25,25 @@ import org.apache.ibatis.builder.BuilderException;
 
 public class ExpressionEvaluator {
 
+  private final ExpressionEngine engine;
+
+  public ExpressionEvaluator() {
+    this(new OgnlExpressionEngine());
+  }
+
+  public ExpressionEvaluator(ExpressionEngine engine) {
+    this.engine = engine;
+  }
+
   public boolean evaluateBoolean(String expression, Object parameterObject) {
-    Object value = OgnlCache.getValue(expression, parameterObject);
+    Object value = engine.getValue(expression, parameterObject);
     if (value instanceof Boolean) return (Boolean) value;
     if (value instanceof Number) return !new BigDecimal(String.valueOf(value)).equals(BigDecimal.ZERO);
     return value != null;
   }
 
   public Iterable<?> evaluateIterable(String expression, Object parameterObject) {
-    Object value = OgnlCache.getValue(expression, parameterObject);
+    Object value = engine.getValue(expression, parameterObject);
     if (value == null) throw new BuilderException("The expression '" + expression + "' evaluated to a null value.");
     if (value instanceof Iterable) return (Iterable<?>) value;
     if (value.getClass().isArray()) {
@@ -15,10 +15,11 @@
  */
 package org.apache.ibatis.scripting.xmltags;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
-import org.apache.ibatis.parsing.GenericTokenParser;
-import org.apache.ibatis.parsing.TokenHandler;
+import org.apache.ibatis.builder.ParameterToken;
 import org.apache.ibatis.session.Configuration;
 
 public class ForEachSqlNode implements SqlNode {
@@ -35,7 +36,7 @@ public class ForEachSqlNode implements SqlNode {
     private Configuration configuration;
 
     public ForEachSqlNode(Configuration configuration, SqlNode contents, String collectionExpression, String index, String item, String open, String close, String separator) {
-        this.evaluator = new ExpressionEvaluator();
+        this.evaluator = new ExpressionEvaluator(configuration.getExpressionEngine());
         this.collectionExpression = collectionExpression;
         this.contents = contents;
         this.open = open;
@@ -142,18 +143,25 @@ public class ForEachSqlNode implements SqlNode {
         }
 
         @Override
-        public void appendSql(String sql) {
-            GenericTokenParser parser = new GenericTokenParser("#{", "}", new TokenHandler() {
-                public String handleToken(String content) {
-                    String newContent = content.replaceFirst("^\\s*" + item + "(?![^.,:\\s])", itemizeItem(item, index));
-                    if (itemIndex != null && newContent.equals(content)) {
-                        newContent = content.replaceFirst("^\\s*" + itemIndex + "(?![^.,:\\s])", itemizeItem(itemIndex, index));
-                    }
-                    return new StringBuilder("#{").append(newContent).append("}").toString();
+        public void appendSql(String sql, List<ParameterToken> tokens) {
+            List<ParameterToken> itemized = new ArrayList<ParameterToken>(tokens.size());
+            for (ParameterToken token : tokens) {
+                String property = token.getProperty();
+                String newProperty = itemize(property, item);
+                if (itemIndex != null && newProperty.equals(property)) {
+                    newProperty = itemize(property, itemIndex);
                 }
-            });
+                itemized.add(newProperty.equals(property) ? token : token.withProperty(newProperty));
+            }
+            delegate.appendSql(sql, itemized);
+        }
 
-            delegate.appendSql(parser.parse(sql));
+        private String itemize(String property, String name) {
+            if (property != null && name != null && property.startsWith(name)
+                    && (property.length() == name.length() || property.charAt(name.length()) == '.')) {
+                return itemizeItem(name, index) + property.substring(name.length());
+            }
+            return property;
         }
 
         @Override
@@ -191,12 +199,12 @@ public class ForEachSqlNode implements SqlNode {
         }
 
         @Override
-        public void appendSql(String sql) {
+        public void appendSql(String sql, List<ParameterToken> tokens) {
             if (!prefixApplied && sql != null && sql.trim().length() > 0) {
                 delegate.appendSql(prefix);
                 prefixApplied = true;
             }
-            delegate.appendSql(sql);
+            delegate.appendSql(sql, tokens);
         }
 
         @Override
@@ -21,9 +21,13 @@ public class IfSqlNode implements SqlNode {
   private SqlNode contents;
 
   public IfSqlNode(SqlNode contents, String test) {
+    this(contents, test, new OgnlExpressionEngine());
+  }
+
+  public IfSqlNode(SqlNode contents, String test, ExpressionEngine expressionEngine) {
     this.test = test;
     this.contents = contents;
-    this.evaluator = new ExpressionEvaluator();
+    this.evaluator = new ExpressionEvaluator(expressionEngine);
   }
 
   public boolean apply(DynamicContext context) {
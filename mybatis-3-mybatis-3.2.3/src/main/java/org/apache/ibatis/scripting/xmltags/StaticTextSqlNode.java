@@ -0,0 +1,51 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.scripting.xmltags;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.ibatis.builder.ParameterToken;
+import org.apache.ibatis.session.Configuration;
+
+/**
+ * Text without ${} substitutions, tokenized once when the statement is built.
+ * The {@code #{...}} tokens keep their ParameterMappings between executions.
+ */
+public class StaticTextSqlNode implements SqlNode {
+
+    private final String text;
+    private final String sql;
+    private final List<ParameterToken> tokens;
+
+    public StaticTextSqlNode(Configuration configuration, String text) {
+        List<ParameterToken> tokens = new ArrayList<ParameterToken>();
+        this.text = text;
+        this.sql = ParameterToken.parse(configuration, text, tokens, true);
+        this.tokens = Collections.unmodifiableList(tokens);
+    }
+
+    public boolean apply(DynamicContext context) {
+        context.appendSql(sql, tokens);
+        return true;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+}
@@ -16,12 +16,36 @@ public class TextSqlNode implements SqlNode {
         this.text = text;
     }
 
+    /**
+     * @return true if the text has ${} substitutions and must be tokenized on every execution
+     */
+    public boolean isDynamic() {
+        DynamicCheckerTokenParser checker = new DynamicCheckerTokenParser();
+        GenericTokenParser parser = new GenericTokenParser("${", "}", checker);
+        parser.parse(text);
+        return checker.isDynamic();
+    }
+
     public boolean apply(DynamicContext context) {
         GenericTokenParser parser = new GenericTokenParser("${", "}", new BindingTokenParser(context));
         context.appendSql(parser.parse(text));
         return true;
     }
 
+    private static class DynamicCheckerTokenParser implements TokenHandler {
+
+        private boolean dynamic;
+
+        public boolean isDynamic() {
+            return dynamic;
+        }
+
+        public String handleToken(String content) {
+            this.dynamic = true;
+            return null;
+        }
+    }
+
     private static class BindingTokenParser implements TokenHandler {
 
         private DynamicContext context;
@@ -22,6 +22,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.StringTokenizer;
 
+import org.apache.ibatis.builder.ParameterToken;
 import org.apache.ibatis.session.Configuration;
 
 public class TrimSqlNode implements SqlNode {
@@ -74,6 +75,7 @@ public class TrimSqlNode implements SqlNode {
     private boolean prefixApplied;
     private boolean suffixApplied;
     private StringBuilder sqlBuffer;
+    private List<ParameterToken> tokenBuffer;
 
     public FilteredDynamicContext(DynamicContext delegate) {
       super(configuration, null);
@@ -81,6 +83,7 @@ public class TrimSqlNode implements SqlNode {
       this.prefixApplied = false;
       this.suffixApplied = false;
       this.sqlBuffer = new StringBuilder();
+      this.tokenBuffer = new ArrayList<ParameterToken>();
     }
 
     public void applyAll() {
@@ -90,7 +93,7 @@ public class TrimSqlNode implements SqlNode {
         applyPrefix(sqlBuffer, trimmedUppercaseSql);
         applySuffix(sqlBuffer, trimmedUppercaseSql);
       }
-      delegate.appendSql(sqlBuffer.toString());
+      delegate.appendSql(sqlBuffer.toString(), tokenBuffer);
     }
 
     @Override
@@ -109,8 +112,9 @@ public class TrimSqlNode implements SqlNode {
     }
 
     @Override
-    public void appendSql(String sql) {
+    public void appendSql(String sql, List<ParameterToken> tokens) {
       sqlBuffer.append(sql);
+      tokenBuffer.addAll(tokens);
     }
 
     @Override
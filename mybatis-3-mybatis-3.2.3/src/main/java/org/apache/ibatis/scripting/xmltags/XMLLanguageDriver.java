@@ -41,7 +41,12 @@ public class XMLLanguageDriver implements LanguageDriver {
             return builder.parseScriptNode();
         } else {
             List<SqlNode> contents = new ArrayList<SqlNode>();
-            contents.add(new TextSqlNode(script.toString()));
+            TextSqlNode textSqlNode = new TextSqlNode(script.toString());
+            if (textSqlNode.isDynamic()) {
+                contents.add(textSqlNode);
+            } else {
+                contents.add(new StaticTextSqlNode(configuration, script.toString()));
+            }
             MixedSqlNode rootSqlNode = new MixedSqlNode(contents);
             return new DynamicSqlSource(configuration, rootSqlNode);
         }
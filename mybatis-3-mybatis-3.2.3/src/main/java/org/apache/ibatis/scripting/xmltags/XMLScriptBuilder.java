@@ -61,7 +61,13 @@ public class XMLScriptBuilder extends BaseBuilder {
             if (child.getNode().getNodeType() == Node.CDATA_SECTION_NODE
                     || child.getNode().getNodeType() == Node.TEXT_NODE) {
                 String data = child.getStringBody("");
-                contents.add(new TextSqlNode(data));
+                // 不含 ${} 的文本在此预先解析 #{...}
+                TextSqlNode textSqlNode = new TextSqlNode(data);
+                if (textSqlNode.isDynamic()) {
+                    contents.add(textSqlNode);
+                } else {
+                    contents.add(new StaticTextSqlNode(configuration, data));
+                }
             }
             // Node.ELEMENT_NODE :代表元素
             else if (child.getNode().getNodeType() == Node.ELEMENT_NODE && !"selectKey".equals(nodeName)) {
@@ -172,7 +178,7 @@ public class XMLScriptBuilder extends BaseBuilder {
             MixedSqlNode mixedSqlNode = new MixedSqlNode(contents);
             String test = nodeToHandle.getStringAttribute("test");
             // 获取if属性的值，将值设置为IfSqlNode的属性，便于运行时解析
-            IfSqlNode ifSqlNode = new IfSqlNode(mixedSqlNode, test);
+            IfSqlNode ifSqlNode = new IfSqlNode(mixedSqlNode, test, configuration.getExpressionEngine());
             targetContents.add(ifSqlNode);
         }
     }
@@ -0,0 +1,33 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session;
+
+/**
+ * How the BatchExecutor groups the executions of a batch into JDBC statements.
+ */
+public enum BatchOrdering {
+  /**
+   * Reuses the statement of the immediately preceding execution only, the batch runs in execution order.
+   */
+  STRICT,
+  /**
+   * Groups the executions of the same statement and SQL across the batch, the groups run in order of
+   * their first execution. Executions are not regrouped across a change of command type, so an insert
+   * is never moved before a preceding update or delete. Updates and deletes are only grouped with the
+   * executions of the same SQL immediately before them.
+   */
+  STATEMENT
+}
@@ -1,14 +1,18 @@
 package org.apache.ibatis.session;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.apache.ibatis.binding.MapperRegistry;
 import org.apache.ibatis.builder.CacheRefResolver;
@@ -16,15 +20,27 @@ import org.apache.ibatis.builder.ResultMapResolver;
 import org.apache.ibatis.builder.annotation.MethodResolver;
 import org.apache.ibatis.builder.xml.XMLStatementBuilder;
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheMetrics;
+import org.apache.ibatis.cache.CacheMonitor;
+import org.apache.ibatis.cache.CacheStats;
+import org.apache.ibatis.cache.decorators.BroadcastCache;
 import org.apache.ibatis.cache.decorators.FifoCache;
 import org.apache.ibatis.cache.decorators.LruCache;
 import org.apache.ibatis.cache.decorators.SoftCache;
+import org.apache.ibatis.cache.decorators.TaggedCache;
+import org.apache.ibatis.cache.decorators.TinyLfuCache;
 import org.apache.ibatis.cache.decorators.WeakCache;
+import org.apache.ibatis.cache.decorators.WeightedCache;
+import org.apache.ibatis.cache.impl.MulticastTransport;
+import org.apache.ibatis.cache.impl.OffHeapCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.impl.StripedCacheMetrics;
 import org.apache.ibatis.datasource.jndi.JndiDataSourceFactory;
 import org.apache.ibatis.datasource.pooled.PooledDataSourceFactory;
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSourceFactory;
 import org.apache.ibatis.executor.BatchExecutor;
+import org.apache.ibatis.executor.CacheRefresher;
 import org.apache.ibatis.executor.CachingExecutor;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.executor.ReuseExecutor;
@@ -33,6 +49,9 @@ import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.executor.loader.ProxyFactory;
 import org.apache.ibatis.executor.loader.cglib.CglibProxyFactory;
 import org.apache.ibatis.executor.loader.javassist.JavassistProxyFactory;
+import org.apache.ibatis.executor.pagination.BoundSqlPaginator;
+import org.apache.ibatis.executor.pagination.PaginationDialect;
+import org.apache.ibatis.executor.pagination.PaginationDialectRegistry;
 import org.apache.ibatis.executor.parameter.ParameterHandler;
 import org.apache.ibatis.executor.resultset.DefaultResultSetHandler;
 import org.apache.ibatis.executor.resultset.ResultSetHandler;
@@ -64,6 +83,9 @@ import org.apache.ibatis.reflection.wrapper.ObjectWrapperFactory;
 import org.apache.ibatis.scripting.LanguageDriver;
 import org.apache.ibatis.scripting.LanguageDriverRegistry;
 import org.apache.ibatis.scripting.defaults.RawLanguageDriver;
+import org.apache.ibatis.scripting.xmltags.CompiledExpressionEngine;
+import org.apache.ibatis.scripting.xmltags.ExpressionEngine;
+import org.apache.ibatis.scripting.xmltags.OgnlExpressionEngine;
 import org.apache.ibatis.scripting.xmltags.XMLLanguageDriver;
 import org.apache.ibatis.transaction.Transaction;
 import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
@@ -109,6 +131,16 @@ public class Configuration {
      */
     protected boolean aggressiveLazyLoading = true;
 
+    /**
+     * 延迟加载时，同一结果中同一嵌套查询的多个延迟加载器合并为一条 IN 查询，每次最多加载的个数，0 表示不合并
+     */
+    protected int lazyLoadBatchSize = 0;
+
+    /**
+     * 未开启延迟加载时，嵌套查询在整个结果映射完成后合并为 IN 查询批量加载，每条查询最多包含的键个数，0 表示逐行加载
+     */
+    protected int eagerLoadBatchSize = 0;
+
     /**
      * 是否允许单一语句返回多结果集（需要兼容驱动）
      */
@@ -129,11 +161,52 @@ public class Configuration {
      */
     protected boolean cacheEnabled = true;
 
+    /**
+     * 所有WEIGHTED二级缓存共享的内存上限（估算的字节数），超过时正在写入的缓存淘汰自己最久未使用的条目，0 表示不限制
+     */
+    protected final WeightedCache.Budget cacheWeightBudget = new WeightedCache.Budget();
+
+    /**
+     * 集群中发布和接收二级缓存失效消息的总线，为null时缓存只在本节点失效
+     */
+    protected BroadcastCache.Bus cacheInvalidationBus;
+
+    /**
+     * 在后台重新加载即将过期的二级缓存条目（缓存配置了refreshAhead时）
+     */
+    protected final CacheRefresher cacheRefresher = new CacheRefresher(this);
+
+    /**
+     * 二级缓存统计的实现类，每个缓存一个实例，需要有无参构造方法
+     */
+    protected Class<? extends CacheMetrics> cacheMetricsClass = StripedCacheMetrics.class;
+
     /**
      * 指定当结果集为null的时候，是否调用映射对象的 setter 方法，这对于 Map.keySet()依赖或null值初始化的时候有用。
      */
     protected boolean callSettersOnNulls = false;
 
+    /**
+     * 是否将简单 ResultMap 按结果集的列布局编译为行映射计划（预先解析列索引、setter 和类型处理器），默认false。
+     */
+    protected boolean compiledResultMappingEnabled = false;
+
+    /**
+     * 是否把 RowBounds 改写为数据库方言的分页语句，而不是在结果集中逐行跳过，默认false。
+     */
+    protected boolean databasePaginationEnabled = false;
+
+    /**
+     * 指定分页方言，未指定时按 databaseId 从 paginationDialectRegistry 中选择
+     */
+    protected PaginationDialect paginationDialect;
+    protected final PaginationDialectRegistry paginationDialectRegistry = new PaginationDialectRegistry();
+
+    /**
+     * 动态Sql标签（if、when、foreach）表达式的求值引擎，默认编译常用表达式，其余交给 OGNL
+     */
+    protected ExpressionEngine expressionEngine = new CompiledExpressionEngine();
+
     /**
      * 指定 Mybatis 增加到日志名称的前缀
      */
@@ -150,6 +223,31 @@ public class Configuration {
      */
     protected LocalCacheScope localCacheScope = LocalCacheScope.SESSION;
 
+    /**
+     * 批量执行器如何把执行分组到 JDBC 语句，默认 STRICT 只复用紧邻的上一条语句
+     */
+    protected BatchOrdering batchOrdering = BatchOrdering.STRICT;
+
+    /**
+     * 批量执行器累积多少次执行后自动执行批处理，0 表示只在 flushStatements、提交或查询时执行
+     */
+    protected int batchFlushSize = 0;
+
+    /**
+     * 批量执行器是否把同一 INSERT 语句的多次执行改写为多行 INSERT ... VALUES (...), (...) 语句
+     */
+    protected boolean multiValuesInsertEnabled = false;
+
+    /**
+     * 改写后的每条多行 INSERT 语句最多包含的行数
+     */
+    protected int multiValuesInsertMaxRows = 1000;
+
+    /**
+     * 改写后的每条多行 INSERT 语句最多包含的参数个数，很多驱动和数据库对此有限制
+     */
+    protected int multiValuesInsertMaxParameters = 2000;
+
     /**
      * 当没有为参数提供特定的 JDBC 类型时，为空值或指定JDBC类型，某些驱动需要指定列的JDBC类型，多数情况直接用一般类型即可，比如 NULL，VARCHAR 或 OTHER。
      */
@@ -235,7 +333,15 @@ public class Configuration {
     protected final LanguageDriverRegistry languageRegistry = new LanguageDriverRegistry();
 
     protected final Map<String, MappedStatement> mappedStatements = new StrictMap<MappedStatement>("Mapped Statements collection");
+    // 按需派生的计数语句（id!count），运行期才创建，所以不放入 mappedStatements
+    protected final Map<String, MappedStatement> countStatements = new ConcurrentHashMap<String, MappedStatement>();
     protected final Map<String, Cache> caches = new StrictMap<Cache>("Caches collection");
+    protected final Map<String, CacheMonitor> cacheMonitors = new ConcurrentHashMap<String, CacheMonitor>();
+
+    /**
+     * 按缓存标签的名称索引声明了该标签的查询所使用的缓存，写语句按标签失效时只需要处理这些缓存
+     */
+    protected final Map<String, Set<Cache>> cachesByTagName = new ConcurrentHashMap<String, Set<Cache>>();
     protected final Map<String, ResultMap> resultMaps = new StrictMap<ResultMap>("Result Maps collection");
     protected final Map<String, ParameterMap> parameterMaps = new StrictMap<ParameterMap>("Parameter Maps collection");
     protected final Map<String, KeyGenerator> keyGenerators = new StrictMap<KeyGenerator>("Key Generators collection");
@@ -269,16 +375,24 @@ public class Configuration {
         typeAliasRegistry.registerAlias("UNPOOLED", UnpooledDataSourceFactory.class);
 
         typeAliasRegistry.registerAlias("PERPETUAL", PerpetualCache.class);
+        typeAliasRegistry.registerAlias("OFFHEAP", OffHeapCache.class);
         typeAliasRegistry.registerAlias("FIFO", FifoCache.class);
         typeAliasRegistry.registerAlias("LRU", LruCache.class);
         typeAliasRegistry.registerAlias("SOFT", SoftCache.class);
         typeAliasRegistry.registerAlias("WEAK", WeakCache.class);
+        typeAliasRegistry.registerAlias("TINYLFU", TinyLfuCache.class);
+        typeAliasRegistry.registerAlias("WEIGHTED", WeightedCache.class);
+
+        typeAliasRegistry.registerAlias("MULTICAST", MulticastTransport.class);
 
         typeAliasRegistry.registerAlias("DB_VENDOR", VendorDatabaseIdProvider.class);
 
         typeAliasRegistry.registerAlias("XML", XMLLanguageDriver.class);
         typeAliasRegistry.registerAlias("RAW", RawLanguageDriver.class);
 
+        typeAliasRegistry.registerAlias("OGNL", OgnlExpressionEngine.class);
+        typeAliasRegistry.registerAlias("COMPILED", CompiledExpressionEngine.class);
+
         typeAliasRegistry.registerAlias("SLF4J", Slf4jImpl.class);
         typeAliasRegistry.registerAlias("COMMONS_LOGGING", JakartaCommonsLoggingImpl.class);
         typeAliasRegistry.registerAlias("LOG4J", Log4jImpl.class);
@@ -322,6 +436,45 @@ public class Configuration {
         this.callSettersOnNulls = callSettersOnNulls;
     }
 
+    public boolean isCompiledResultMappingEnabled() {
+        return compiledResultMappingEnabled;
+    }
+
+    public void setCompiledResultMappingEnabled(boolean compiledResultMappingEnabled) {
+        this.compiledResultMappingEnabled = compiledResultMappingEnabled;
+    }
+
+    public boolean isDatabasePaginationEnabled() {
+        return databasePaginationEnabled;
+    }
+
+    public void setDatabasePaginationEnabled(boolean databasePaginationEnabled) {
+        this.databasePaginationEnabled = databasePaginationEnabled;
+    }
+
+    /**
+     * @return 指定的分页方言，未指定时为 databaseId 对应的方言，数据库未知时为null
+     */
+    public PaginationDialect getPaginationDialect() {
+        return paginationDialect != null ? paginationDialect : paginationDialectRegistry.getDialect(databaseId);
+    }
+
+    public void setPaginationDialect(PaginationDialect paginationDialect) {
+        this.paginationDialect = paginationDialect;
+    }
+
+    public PaginationDialectRegistry getPaginationDialectRegistry() {
+        return paginationDialectRegistry;
+    }
+
+    public ExpressionEngine getExpressionEngine() {
+        return expressionEngine;
+    }
+
+    public void setExpressionEngine(ExpressionEngine expressionEngine) {
+        this.expressionEngine = expressionEngine;
+    }
+
     public String getDatabaseId() {
         return databaseId;
     }
@@ -413,6 +566,22 @@ public class Configuration {
         this.aggressiveLazyLoading = aggressiveLazyLoading;
     }
 
+    public int getLazyLoadBatchSize() {
+        return lazyLoadBatchSize;
+    }
+
+    public void setLazyLoadBatchSize(int lazyLoadBatchSize) {
+        this.lazyLoadBatchSize = lazyLoadBatchSize;
+    }
+
+    public int getEagerLoadBatchSize() {
+        return eagerLoadBatchSize;
+    }
+
+    public void setEagerLoadBatchSize(int eagerLoadBatchSize) {
+        this.eagerLoadBatchSize = eagerLoadBatchSize;
+    }
+
     public boolean isMultipleResultSetsEnabled() {
         return multipleResultSetsEnabled;
     }
@@ -453,6 +622,49 @@ public class Configuration {
         this.cacheEnabled = cacheEnabled;
     }
 
+    public long getCacheMaxWeight() {
+        return cacheWeightBudget.getMaxWeight();
+    }
+
+    public void setCacheMaxWeight(long cacheMaxWeight) {
+        cacheWeightBudget.setMaxWeight(cacheMaxWeight);
+    }
+
+    public WeightedCache.Budget getCacheWeightBudget() {
+        return cacheWeightBudget;
+    }
+
+    public Class<? extends CacheMetrics> getCacheMetricsClass() {
+        return cacheMetricsClass;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void setCacheMetricsClass(Class<?> cacheMetricsClass) {
+        if (cacheMetricsClass != null) {
+            this.cacheMetricsClass = (Class<? extends CacheMetrics>) cacheMetricsClass;
+        }
+    }
+
+    public CacheMetrics newCacheMetrics() {
+        try {
+            return cacheMetricsClass.newInstance();
+        } catch (Exception e) {
+            throw new CacheException("Error creating cache metrics " + cacheMetricsClass + ".  Cause: " + e, e);
+        }
+    }
+
+    public CacheRefresher getCacheRefresher() {
+        return cacheRefresher;
+    }
+
+    public BroadcastCache.Bus getCacheInvalidationBus() {
+        return cacheInvalidationBus;
+    }
+
+    public void setCacheInvalidationBus(BroadcastCache.Bus cacheInvalidationBus) {
+        this.cacheInvalidationBus = cacheInvalidationBus;
+    }
+
     public Integer getDefaultStatementTimeout() {
         return defaultStatementTimeout;
     }
@@ -477,6 +689,46 @@ public class Configuration {
         this.localCacheScope = localCacheScope;
     }
 
+    public BatchOrdering getBatchOrdering() {
+        return batchOrdering;
+    }
+
+    public void setBatchOrdering(BatchOrdering batchOrdering) {
+        this.batchOrdering = batchOrdering;
+    }
+
+    public int getBatchFlushSize() {
+        return batchFlushSize;
+    }
+
+    public void setBatchFlushSize(int batchFlushSize) {
+        this.batchFlushSize = batchFlushSize;
+    }
+
+    public boolean isMultiValuesInsertEnabled() {
+        return multiValuesInsertEnabled;
+    }
+
+    public void setMultiValuesInsertEnabled(boolean multiValuesInsertEnabled) {
+        this.multiValuesInsertEnabled = multiValuesInsertEnabled;
+    }
+
+    public int getMultiValuesInsertMaxRows() {
+        return multiValuesInsertMaxRows;
+    }
+
+    public void setMultiValuesInsertMaxRows(int multiValuesInsertMaxRows) {
+        this.multiValuesInsertMaxRows = multiValuesInsertMaxRows;
+    }
+
+    public int getMultiValuesInsertMaxParameters() {
+        return multiValuesInsertMaxParameters;
+    }
+
+    public void setMultiValuesInsertMaxParameters(int multiValuesInsertMaxParameters) {
+        this.multiValuesInsertMaxParameters = multiValuesInsertMaxParameters;
+    }
+
     public JdbcType getJdbcTypeForNull() {
         return jdbcTypeForNull;
     }
@@ -641,6 +893,32 @@ public class Configuration {
         return caches.get(id);
     }
 
+    /**
+     * 记录缓存的统计，可以注册为JMX MBean
+     */
+    public void addCacheMonitor(CacheMonitor cacheMonitor) {
+        cacheMonitors.put(cacheMonitor.getId(), cacheMonitor);
+    }
+
+    public CacheMonitor getCacheMonitor(String id) {
+        return cacheMonitors.get(id);
+    }
+
+    public Collection<CacheMonitor> getCacheMonitors() {
+        return cacheMonitors.values();
+    }
+
+    /**
+     * @return 每个二级缓存此刻的统计
+     */
+    public List<CacheStats> getCacheStats() {
+        List<CacheStats> stats = new ArrayList<CacheStats>();
+        for (CacheMonitor cacheMonitor : cacheMonitors.values()) {
+            stats.add(cacheMonitor.getStats());
+        }
+        return stats;
+    }
+
     public boolean hasCache(String id) {
         return caches.containsKey(id);
     }
@@ -689,6 +967,41 @@ public class Configuration {
 
     public void addMappedStatement(MappedStatement ms) {
         mappedStatements.put(ms.getId(), ms);
+        if (ms.getCache() != null && ms.getCacheTags() != null) {
+            // 在放入第一个条目之前开始建立标签索引
+            TaggedCache taggedCache = TaggedCache.unwrap(ms.getCache());
+            if (taggedCache != null) {
+                taggedCache.startIndexing();
+            }
+            for (String tag : ms.getCacheTags()) {
+                int colon = tag.indexOf(':');
+                addTaggedCache(colon < 0 ? tag : tag.substring(0, colon), ms.getCache());
+            }
+        }
+    }
+
+    private synchronized void addTaggedCache(String tagName, Cache cache) {
+        Set<Cache> tagged = cachesByTagName.get(tagName);
+        if (tagged == null) {
+            tagged = new CopyOnWriteArraySet<Cache>();
+            cachesByTagName.put(tagName, tagged);
+        }
+        tagged.add(cache);
+    }
+
+    /**
+     * @return 可能含有依赖这些标签的条目的缓存
+     */
+    public Set<Cache> getTaggedCaches(Collection<String> tags) {
+        Set<Cache> tagged = new LinkedHashSet<Cache>();
+        for (String tag : tags) {
+            int colon = tag.indexOf(':');
+            Set<Cache> caches = cachesByTagName.get(colon < 0 ? tag : tag.substring(0, colon));
+            if (caches != null) {
+                tagged.addAll(caches);
+            }
+        }
+        return tagged;
     }
 
     public Collection<String> getMappedStatementNames() {
@@ -747,9 +1060,26 @@ public class Configuration {
         if (validateIncompleteStatements) {
             buildAllStatements();
         }
+        if (isDerivedCountStatement(id)) {
+            return getCountStatement(id);
+        }
         return mappedStatements.get(id);
     }
 
+    private boolean isDerivedCountStatement(String id) {
+        return id.endsWith(BoundSqlPaginator.COUNT_STATEMENT_SUFFIX) && !mappedStatements.containsKey(id);
+    }
+
+    private MappedStatement getCountStatement(String id) {
+        MappedStatement countStatement = countStatements.get(id);
+        if (countStatement == null) {
+            String selectId = id.substring(0, id.length() - BoundSqlPaginator.COUNT_STATEMENT_SUFFIX.length());
+            countStatement = BoundSqlPaginator.createCountStatement(mappedStatements.get(selectId));
+            countStatements.put(id, countStatement);
+        }
+        return countStatement;
+    }
+
     public Map<String, XNode> getSqlFragments() {
         return sqlFragments;
     }
@@ -786,6 +1116,10 @@ public class Configuration {
         if (validateIncompleteStatements) {
             buildAllStatements();
         }
+        if (isDerivedCountStatement(statementName)) {
+            String selectId = statementName.substring(0, statementName.length() - BoundSqlPaginator.COUNT_STATEMENT_SUFFIX.length());
+            return mappedStatements.containsKey(selectId);
+        }
         return mappedStatements.containsKey(statementName);
     }
 
@@ -0,0 +1,113 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session;
+
+import java.util.Arrays;
+
+/**
+ * Row bounds of a keyset (seek) page: instead of skipping rows, the select is restricted to the rows
+ * sorting after the key of the last row of the previous page.
+ * <p>
+ * The predicate is added to the WHERE clause of the select and replaces its ORDER BY, so the key columns
+ * must be columns or expressions the WHERE clause accepts, and each sorts in its own direction. Selects with
+ * GROUP BY, HAVING, set operators or a row limiting clause are wrapped as a derived table instead, so their
+ * key columns must be labels of the select result. The key columns must be unique together for the pages
+ * to neither skip nor repeat rows.
+ */
+public class KeysetBounds extends RowBounds {
+
+    private final String[] columns;
+    private final boolean[] descending;
+    private final Object[] afterKey;
+
+    /**
+     * First page of a mapper method annotated with {@link org.apache.ibatis.annotations.Keyset}.
+     */
+    public KeysetBounds(int pageSize) {
+        this(null, (boolean[]) null, pageSize, null);
+    }
+
+    /**
+     * Page following the given key of a mapper method annotated with {@link org.apache.ibatis.annotations.Keyset}.
+     */
+    public KeysetBounds(int pageSize, Object[] afterKey) {
+        this(null, (boolean[]) null, pageSize, afterKey);
+    }
+
+    /**
+     * @param descending whether all the key columns sort in descending order
+     * @param afterKey the key values of the last row of the previous page, or null for the first page
+     */
+    public KeysetBounds(String[] columns, boolean descending, int pageSize, Object[] afterKey) {
+        this(columns, allColumns(columns, descending), pageSize, afterKey);
+    }
+
+    /**
+     * @param descending whether each key column sorts in descending order
+     * @param afterKey the key values of the last row of the previous page, or null for the first page
+     */
+    public KeysetBounds(String[] columns, boolean[] descending, int pageSize, Object[] afterKey) {
+        super(NO_ROW_OFFSET, pageSize);
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("The page size must be positive but was " + pageSize + ".");
+        }
+        if (columns != null && afterKey != null && columns.length != afterKey.length) {
+            throw new IllegalArgumentException("The key has " + afterKey.length + " values for " + columns.length + " columns.");
+        }
+        if (columns != null && (descending == null || columns.length != descending.length)) {
+            throw new IllegalArgumentException("The key columns require one direction each.");
+        }
+        this.columns = columns;
+        this.descending = descending;
+        this.afterKey = afterKey;
+    }
+
+    public int getPageSize() {
+        return getLimit();
+    }
+
+    /**
+     * @return the key columns, or null when they are declared by the mapper method
+     */
+    public String[] getColumns() {
+        return columns;
+    }
+
+    /**
+     * @param column the index of the key column
+     */
+    public boolean isDescending(int column) {
+        return descending[column];
+    }
+
+    public Object[] getAfterKey() {
+        return afterKey;
+    }
+
+    public boolean isFirstPage() {
+        return afterKey == null;
+    }
+
+    private static boolean[] allColumns(String[] columns, boolean descending) {
+        if (columns == null) {
+            return null;
+        }
+        final boolean[] directions = new boolean[columns.length];
+        Arrays.fill(directions, descending);
+        return directions;
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session;
+
+import java.util.List;
+
+/**
+ * A page of a keyset paginated select, with the continuation key of the next page.
+ */
+public class KeysetPage<T> {
+
+    private final List<T> items;
+    private final boolean hasNext;
+    private final Object[] nextKey;
+    private final int pageSize;
+
+    public KeysetPage(List<T> items, boolean hasNext, Object[] nextKey, int pageSize) {
+        this.items = items;
+        this.hasNext = hasNext;
+        this.nextKey = nextKey;
+        this.pageSize = pageSize;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    /**
+     * @return the key values of the last item, or null when the page is empty
+     */
+    public Object[] getNextKey() {
+        return nextKey;
+    }
+
+    /**
+     * @return the bounds selecting the page following this one
+     */
+    public KeysetBounds next() {
+        if (!hasNext) {
+            throw new IllegalStateException("There is no page after the last one.");
+        }
+        return new KeysetBounds(pageSize, nextKey);
+    }
+
+}
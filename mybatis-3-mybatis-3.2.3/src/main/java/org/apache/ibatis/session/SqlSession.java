@@ -5,6 +5,7 @@ import java.sql.Connection;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.BatchResult;
 
 /**
@@ -108,6 +109,37 @@ public interface SqlSession extends Closeable {
      */
     <K, V> Map<K, V> selectMap(String statement, Object parameter, String mapKey, RowBounds rowBounds);
 
+    /**
+     * A Cursor offers the same results as a List, except it fetches data lazily using an Iterator.
+     * The cursor must be consumed or closed before this session is closed.
+     *
+     * @param <T>       the returned cursor element type.
+     * @param statement Unique identifier matching the statement to use.
+     * @return Cursor of mapped objects
+     */
+    <T> Cursor<T> selectCursor(String statement);
+
+    /**
+     * A Cursor offers the same results as a List, except it fetches data lazily using an Iterator.
+     *
+     * @param <T>       the returned cursor element type.
+     * @param statement Unique identifier matching the statement to use.
+     * @param parameter A parameter object to pass to the statement.
+     * @return Cursor of mapped objects
+     */
+    <T> Cursor<T> selectCursor(String statement, Object parameter);
+
+    /**
+     * A Cursor offers the same results as a List, except it fetches data lazily using an Iterator.
+     *
+     * @param <T>       the returned cursor element type.
+     * @param statement Unique identifier matching the statement to use.
+     * @param parameter A parameter object to pass to the statement.
+     * @param rowBounds Bounds to limit object retrieval
+     * @return Cursor of mapped objects
+     */
+    <T> Cursor<T> selectCursor(String statement, Object parameter, RowBounds rowBounds);
+
     /**
      * Retrieve a single row mapped from the statement key and parameter
      * using a {@code ResultHandler}.
@@ -1,12 +1,16 @@
 package org.apache.ibatis.session.defaults;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.ibatis.binding.BindingException;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.cursor.defaults.DefaultCursor;
 import org.apache.ibatis.exceptions.ExceptionFactory;
 import org.apache.ibatis.exceptions.TooManyResultsException;
 import org.apache.ibatis.executor.BatchResult;
@@ -29,6 +33,8 @@ public class DefaultSqlSession implements SqlSession {
     private Executor executor;
 
     private boolean dirty;
+    // 会话关闭时需要一并关闭的游标
+    private List<Cursor<?>> cursorList;
 
     @Deprecated
     public DefaultSqlSession(Configuration configuration, Executor executor, boolean autoCommit) {
@@ -91,6 +97,30 @@ public class DefaultSqlSession implements SqlSession {
         return selectedMap;
     }
 
+    @Override
+    public <T> Cursor<T> selectCursor(String statement) {
+        return selectCursor(statement, null);
+    }
+
+    @Override
+    public <T> Cursor<T> selectCursor(String statement, Object parameter) {
+        return selectCursor(statement, parameter, RowBounds.DEFAULT);
+    }
+
+    @Override
+    public <T> Cursor<T> selectCursor(String statement, Object parameter, RowBounds rowBounds) {
+        try {
+            MappedStatement ms = configuration.getMappedStatement(statement);
+            Cursor<T> cursor = executor.queryCursor(ms, wrapCollection(parameter), rowBounds);
+            registerCursor(cursor);
+            return cursor;
+        } catch (Exception e) {
+            throw ExceptionFactory.wrapException("Error querying database.  Cause: " + e, e);
+        } finally {
+            ErrorContext.instance().reset();
+        }
+    }
+
     @Override
     public <E> List<E> selectList(String statement) {
         return this.selectList(statement, null);
@@ -222,6 +252,8 @@ public class DefaultSqlSession implements SqlSession {
     @Override
     public void close() {
         try {
+            // 游标持有的 Statement 要在连接关闭前关闭
+            closeCursors();
             executor.close(isCommitOrRollbackRequired(false));
             dirty = false;
         } finally {
@@ -229,6 +261,38 @@ public class DefaultSqlSession implements SqlSession {
         }
     }
 
+    private void closeCursors() {
+        if (cursorList != null && cursorList.size() != 0) {
+            // 关闭游标会将其从列表中移除，故遍历副本
+            for (Cursor<?> cursor : new ArrayList<Cursor<?>>(cursorList)) {
+                try {
+                    cursor.close();
+                } catch (IOException e) {
+                    throw ExceptionFactory.wrapException("Error closing cursor.  Cause: " + e, e);
+                }
+            }
+            cursorList.clear();
+        }
+    }
+
+    private <T> void registerCursor(final Cursor<T> cursor) {
+        if (cursor.isConsumed()) {
+            return;
+        }
+        if (cursorList == null) {
+            cursorList = new ArrayList<Cursor<?>>();
+        }
+        cursorList.add(cursor);
+        // 游标关闭或读完后即不再持有，长会话中打开多个游标时列表不会一直增长
+        if (cursor instanceof DefaultCursor) {
+            ((DefaultCursor<T>) cursor).setCloseListener(new Runnable() {
+                public void run() {
+                    cursorList.remove(cursor);
+                }
+            });
+        }
+    }
+
     @Override
     public Configuration getConfiguration() {
         return configuration;
@@ -0,0 +1,132 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.builder.xml.dynamic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.ibatis.builder.BuilderException;
+import org.apache.ibatis.scripting.xmltags.CompiledExpressionEngine;
+import org.apache.ibatis.scripting.xmltags.DynamicContext;
+import org.apache.ibatis.scripting.xmltags.OgnlExpressionEngine;
+import org.apache.ibatis.session.Configuration;
+import org.junit.Test;
+
+import domain.blog.Author;
+import domain.blog.ImmutableAuthor;
+import domain.blog.Section;
+
+public class CompiledExpressionEngineTest {
+
+  private final CompiledExpressionEngine compiled = new CompiledExpressionEngine();
+  private final OgnlExpressionEngine ognl = new OgnlExpressionEngine();
+
+  @Test
+  public void shouldEvaluateCompiledExpressionsLikeOgnl() {
+    Map<String, Object> bindings = bindings();
+    String[] expressions = {
+        "author", "author.username", "author.password", "author.id", "missing",
+        "author.username == 'cbegin'", "author.username != null", "author.password == null",
+        "author.id > 0", "author.id >= 1 and author.id lt 2", "author.id == 1.0", "author.id neq 2",
+        "name == \"x\"", "flag", "!flag", "not flag", "!flag == false",
+        "ids != null and ids.size() > 0", "ids.isEmpty()", "empty.isEmpty() or name", "name.isEmpty()",
+        "options.limit", "options.size()", "(author.id == 2 || name != null) && !empty.isEmpty()",
+        "author and name", "missing or author.id", "author.favouriteSection == null"
+    };
+    for (String expression : expressions) {
+      assertTrue(expression, compiled.isCompiled(expression));
+      assertEquals(expression, ognl.getValue(expression, bindings), compiled.getValue(expression, bindings));
+    }
+  }
+
+  @Test
+  public void shouldFallBackToOgnlForOtherExpressions() {
+    Map<String, Object> bindings = bindings();
+    String[] expressions = {
+        "author.username.substring(0, 1) == \"c\"", "author.id in {1, 2}", "ids[0] == 1", "010 == 8",
+        "author.id + 1 == 2", "@java.lang.Boolean@TRUE", "options.keys.size() == 1", "author.id == 1L"
+    };
+    for (String expression : expressions) {
+      assertFalse(expression, compiled.isCompiled(expression));
+      assertEquals(expression, ognl.getValue(expression, bindings), compiled.getValue(expression, bindings));
+    }
+  }
+
+  @Test
+  public void shouldReportErrorsLikeOgnl() {
+    Map<String, Object> bindings = bindings();
+    try {
+      compiled.getValue("missing.id == 1", bindings);
+      fail("Expected a BuilderException");
+    } catch (BuilderException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("missing.id == 1"));
+    }
+  }
+
+  @Test
+  public void shouldLookUpPropertiesOfTheParameterObject() {
+    Author author = new Author(1, "cbegin", null, "cbegin@apache.org", "N/A", Section.NEWS);
+    Map<String, Object> bindings = new DynamicContext(new Configuration(), author).getBindings();
+    assertEquals(Boolean.TRUE, compiled.getValue("username == 'cbegin' and password == null", bindings));
+    assertEquals("cbegin", compiled.getValue("_parameter.username", bindings));
+  }
+
+  @Test
+  public void shouldResolveTheGettersOfEachClassAPathMeets() {
+    Map<String, Object> parameter = new HashMap<String, Object>();
+    Map<String, Object> bindings = new DynamicContext(new Configuration(), parameter).getBindings();
+    parameter.put("author", new Author(1, "cbegin", null, "cbegin@apache.org", "N/A", Section.NEWS));
+    assertEquals("cbegin", compiled.getValue("author.username", bindings));
+    parameter.put("author", new ImmutableAuthor(2, "jim", null, "jim@apache.org", "N/A", Section.NEWS));
+    assertEquals("jim", compiled.getValue("author.username", bindings));
+    Map<String, Object> author = new HashMap<String, Object>();
+    author.put("username", "sally");
+    parameter.put("author", author);
+    assertEquals("sally", compiled.getValue("author.username", bindings));
+  }
+
+  @Test
+  public void shouldKeepABoundedNumberOfPlans() {
+    Map<String, Object> bindings = bindings();
+    for (int i = 0; i < CompiledExpressionEngine.MAX_PLANS + 10; i++) {
+      assertEquals(Boolean.FALSE, compiled.getValue("author.id == " + (i + 2), bindings));
+    }
+    assertEquals(CompiledExpressionEngine.MAX_PLANS, compiled.getPlanCount());
+    assertEquals(Boolean.TRUE, compiled.getValue("author.id == 1", bindings));
+    assertEquals(0, new CompiledExpressionEngine().getPlanCount());
+  }
+
+  private Map<String, Object> bindings() {
+    Map<String, Object> parameter = new HashMap<String, Object>();
+    parameter.put("author", new Author(1, "cbegin", null, "cbegin@apache.org", "N/A", Section.NEWS));
+    parameter.put("name", "x");
+    parameter.put("flag", Boolean.TRUE);
+    parameter.put("ids", Arrays.asList(1, 2, 3));
+    parameter.put("empty", new ArrayList<Object>());
+    Map<String, Object> options = new HashMap<String, Object>();
+    options.put("limit", 10);
+    parameter.put("options", options);
+    return new DynamicContext(new Configuration(), parameter).getBindings();
+  }
+
+}
@@ -21,6 +21,7 @@ import org.apache.ibatis.scripting.xmltags.IfSqlNode;
 import org.apache.ibatis.scripting.xmltags.MixedSqlNode;
 import org.apache.ibatis.scripting.xmltags.SetSqlNode;
 import org.apache.ibatis.scripting.xmltags.SqlNode;
+import org.apache.ibatis.scripting.xmltags.StaticTextSqlNode;
 import org.apache.ibatis.scripting.xmltags.TextSqlNode;
 import org.apache.ibatis.scripting.xmltags.WhereSqlNode;
 import org.apache.ibatis.session.Configuration;
@@ -324,6 +325,46 @@ public class DynamicSqlSourceTest extends BaseDataTest {
         assertEquals("__frch_u_0", boundSql.getParameterMappings().get(3).getProperty());
     }
 
+    @Test
+    public void shouldItemizePrecompiledForEachTokens() throws Exception {
+        final Configuration configuration = new Configuration();
+        final Map<String, Object> param = new HashMap<String, Object>();
+        param.put("ids", Arrays.asList(new Bean("a"), new Bean("b")));
+        DynamicSqlSource source = new DynamicSqlSource(configuration, mixedContents(
+                new StaticTextSqlNode(configuration, "SELECT * FROM BLOG WHERE ID in"),
+                new ForEachSqlNode(configuration, mixedContents(
+                        new StaticTextSqlNode(configuration, "#{item.id} + #{idx}")), "ids", "idx", "item", "(", ")", ",")));
+        BoundSql boundSql = source.getBoundSql(param);
+        assertEquals("SELECT * FROM BLOG WHERE ID in (  ? + ? , ? + ? )", boundSql.getSql());
+        assertEquals(4, boundSql.getParameterMappings().size());
+        assertEquals("__frch_item_0.id", boundSql.getParameterMappings().get(0).getProperty());
+        assertEquals("__frch_idx_0", boundSql.getParameterMappings().get(1).getProperty());
+        assertEquals("__frch_item_1.id", boundSql.getParameterMappings().get(2).getProperty());
+        assertEquals("__frch_idx_1", boundSql.getParameterMappings().get(3).getProperty());
+        assertEquals("b", boundSql.getAdditionalParameter("__frch_item_1.id"));
+    }
+
+    @Test
+    public void shouldReusePrecompiledParameterMappings() throws Exception {
+        final Configuration configuration = new Configuration();
+        DynamicSqlSource source = new DynamicSqlSource(configuration, mixedContents(
+                new StaticTextSqlNode(configuration, "SELECT * FROM BLOG"),
+                new WhereSqlNode(configuration, mixedContents(
+                        new StaticTextSqlNode(configuration, "AND ID = #{id}"),
+                        new TextSqlNode("AND NAME = '${id}'")))));
+        BoundSql first = source.getBoundSql(new Bean("x"));
+        BoundSql second = source.getBoundSql(new Bean("y"));
+        assertEquals("SELECT * FROM BLOG WHERE  ID = ?AND NAME = 'y'", second.getSql());
+        assertEquals(1, second.getParameterMappings().size());
+        Assert.assertSame(first.getParameterMappings().get(0), second.getParameterMappings().get(0));
+    }
+
+    @Test
+    public void shouldDetectDynamicText() {
+        Assert.assertTrue(new TextSqlNode("SELECT * FROM ${table}").isDynamic());
+        Assert.assertFalse(new TextSqlNode("SELECT * FROM BLOG WHERE ID = #{id}").isDynamic());
+    }
+
     private DynamicSqlSource createDynamicSqlSource(SqlNode... contents) throws IOException, SQLException {
         createBlogDataSource();
         final String resource = "org/apache/ibatis/builder/MapperConfig.xml";
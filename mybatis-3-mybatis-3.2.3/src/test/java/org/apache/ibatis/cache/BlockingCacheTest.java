@@ -0,0 +1,195 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.cache.decorators.BlockingCache;
+import org.apache.ibatis.cache.decorators.TaggedCache;
+import org.apache.ibatis.cache.decorators.TransactionalCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.Test;
+
+public class BlockingCacheTest {
+
+  @Test
+  public void shouldLoadAMissedKeyOnlyOnce() throws Exception {
+    final Cache cache = new BlockingCache(new PerpetualCache("default"));
+    final AtomicInteger loads = new AtomicInteger();
+    final CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      Future<?>[] futures = new Future<?>[8];
+      for (int i = 0; i < futures.length; i++) {
+        futures[i] = executor.submit(new Callable<Object>() {
+          public Object call() throws Exception {
+            start.await();
+            Object value = cache.getObject("key");
+            if (value == null) {
+              loads.incrementAndGet();
+              Thread.sleep(200);
+              value = "value";
+              cache.putObject("key", value);
+            }
+            return value;
+          }
+        });
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        assertEquals("value", future.get(10, TimeUnit.SECONDS));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void shouldFallBackToTheDatabaseAfterTheTimeout() throws Exception {
+    final BlockingCache cache = new BlockingCache(new PerpetualCache("default"));
+    cache.setTimeout(100);
+    assertNull(cache.getObject("key"));
+    Thread other = new Thread() {
+      public void run() {
+        assertNull(cache.getObject("key"));
+      }
+    };
+    long start = System.currentTimeMillis();
+    other.start();
+    other.join(5000);
+    assertFalse(other.isAlive());
+    assertTrue(System.currentTimeMillis() - start >= 100);
+  }
+
+  @Test
+  public void shouldNotBlockTheLoadingThread() {
+    Cache cache = new BlockingCache(new PerpetualCache("default"));
+    assertNull(cache.getObject("key"));
+    assertNull(cache.getObject("key"));
+    cache.putObject("key", "value");
+    assertEquals("value", cache.getObject("key"));
+  }
+
+  @Test
+  public void shouldReleaseWaitingThreadsWhenTheLoaderRollsBack() throws Exception {
+    final Cache cache = new CacheBuilder("default").blocking(true).build();
+    assertTrue(((TaggedCache) cache).getDelegate() instanceof BlockingCache);
+    TransactionalCache loader = new TransactionalCache(cache);
+    assertNull(loader.getObject("key"));
+    final Object[] result = new Object[] { "unset" };
+    Thread other = new Thread() {
+      public void run() {
+        result[0] = new TransactionalCache(cache).getObject("key");
+      }
+    };
+    other.start();
+    other.join(200);
+    assertTrue(other.isAlive());
+    loader.rollback();
+    other.join(5000);
+    assertFalse(other.isAlive());
+    assertNull(result[0]);
+  }
+
+  @Test
+  public void shouldShareTheValueCommittedByTheLoader() throws Exception {
+    final Cache cache = new CacheBuilder("default").blocking(true).build();
+    TransactionalCache loader = new TransactionalCache(cache);
+    assertNull(loader.getObject("key"));
+    final Object[] result = new Object[1];
+    Thread other = new Thread() {
+      public void run() {
+        result[0] = new TransactionalCache(cache).getObject("key");
+      }
+    };
+    other.start();
+    loader.putObject("key", "value");
+    loader.commit();
+    other.join(5000);
+    assertFalse(other.isAlive());
+    assertEquals("value", result[0]);
+  }
+
+  @Test
+  public void shouldShareTheLoadedValueBeforeTheLoaderCommits() throws Exception {
+    final Cache cache = new CacheBuilder("default").blocking(true).build();
+    TransactionalCache loader = new TransactionalCache(cache);
+    assertNull(loader.getObject("key"));
+    final Object[] result = new Object[1];
+    Thread other = new Thread() {
+      public void run() {
+        result[0] = new TransactionalCache(cache).getObject("key");
+      }
+    };
+    other.start();
+    other.join(200);
+    assertTrue(other.isAlive());
+    loader.putObject("key", "value");
+    other.join(5000);
+    assertFalse(other.isAlive());
+    assertEquals("value", result[0]);
+    loader.rollback();
+  }
+
+  @Test
+  public void shouldReleaseWaitingThreadsWhenTheLoaderFailsToLoad() throws Exception {
+    final Cache cache = new CacheBuilder("default").blocking(true).build();
+    TransactionalCache loader = new TransactionalCache(cache);
+    assertNull(loader.getObject("key"));
+    final Object[] result = new Object[] { "unset" };
+    Thread other = new Thread() {
+      public void run() {
+        result[0] = new TransactionalCache(cache).getObject("key");
+      }
+    };
+    other.start();
+    other.join(200);
+    assertTrue(other.isAlive());
+    loader.unlock("key");
+    other.join(5000);
+    assertFalse(other.isAlive());
+    assertNull(result[0]);
+  }
+
+  @Test
+  public void shouldReleaseWaitingThreadsWhenTheLoaderClearsTheCache() throws Exception {
+    final Cache cache = new CacheBuilder("default").blocking(true).build();
+    TransactionalCache loader = new TransactionalCache(cache);
+    assertNull(loader.getObject("key"));
+    Thread other = new Thread() {
+      public void run() {
+        new TransactionalCache(cache).getObject("key");
+      }
+    };
+    other.start();
+    other.join(200);
+    assertTrue(other.isAlive());
+    loader.clear();
+    other.join(5000);
+    assertFalse(other.isAlive());
+  }
+
+}
@@ -0,0 +1,239 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.ibatis.cache.decorators.BroadcastCache;
+import org.apache.ibatis.cache.decorators.TransactionalCache;
+import org.apache.ibatis.cache.impl.MulticastTransport;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class BroadcastCacheTest {
+
+  @Test
+  public void shouldClearTheCacheOfTheOtherNodes() throws Exception {
+    Network network = new Network();
+    BroadcastCache.Bus busA = new BroadcastCache.Bus(network.join());
+    BroadcastCache.Bus busB = new BroadcastCache.Bus(network.join());
+    Cache cacheA = newCache("blogs", busA);
+    Cache cacheB = newCache("blogs", busB);
+    cacheA.putObject("key", "value");
+    cacheB.putObject("key", "value");
+    TransactionalCache transaction = new TransactionalCache(cacheA);
+    transaction.clear();
+    transaction.commit();
+    assertNull(cacheA.getObject("key"));
+    assertEquals("value", cacheB.getObject("key"));
+    network.deliver();
+    assertNull(cacheB.getObject("key"));
+  }
+
+  @Test
+  public void shouldInvalidateTheTaggedEntriesOfTheOtherNodes() throws Exception {
+    Network network = new Network();
+    BroadcastCache.Bus busA = new BroadcastCache.Bus(network.join());
+    BroadcastCache.Bus busB = new BroadcastCache.Bus(network.join());
+    Cache cacheA = newCache("blogs", busA);
+    BroadcastCache cacheB = (BroadcastCache) newCache("blogs", busB);
+    Cache authorsB = newCache("authors", busB);
+    cacheB.putObject("blog1", "First", Arrays.asList("blog:1"));
+    cacheB.putObject("blog2", "Second", Arrays.asList("blog:2"));
+    cacheB.putObject("count", 2);
+    authorsB.putObject("jim", "Jim");
+    TransactionalCache transaction = new TransactionalCache(cacheA);
+    transaction.invalidate(Arrays.asList("blog:1"), true);
+    transaction.commit();
+    network.deliver();
+    assertNull(cacheB.getObject("blog1"));
+    assertEquals("Second", cacheB.getObject("blog2"));
+    assertNull(cacheB.getObject("count"));
+    assertEquals("Jim", authorsB.getObject("jim"));
+  }
+
+  @Test
+  public void shouldIgnoreItsOwnInvalidations() throws Exception {
+    Network network = new Network();
+    Cache cache = newCache("blogs", new BroadcastCache.Bus(network.join()));
+    cache.clear();
+    cache.putObject("key", "value");
+    network.deliver();
+    assertEquals("value", cache.getObject("key"));
+  }
+
+  @Test
+  public void shouldClearAllCachesWhenInvalidationsAreLost() throws Exception {
+    Network network = new Network();
+    BroadcastCache.Bus busA = new BroadcastCache.Bus(network.join());
+    BroadcastCache.Bus busB = new BroadcastCache.Bus(network.join());
+    Cache blogsA = newCache("blogs", busA);
+    Cache authorsB = newCache("authors", busB);
+    authorsB.putObject("jim", "Jim");
+    blogsA.clear();
+    network.deliver();
+    assertEquals("Jim", authorsB.getObject("jim"));
+    blogsA.clear();
+    network.lose();
+    blogsA.clear();
+    network.deliver();
+    assertNull(authorsB.getObject("jim"));
+  }
+
+  @Test
+  public void shouldClearAllCachesWhenTheLastInvalidationIsLost() throws Exception {
+    Network network = new Network();
+    BroadcastCache.Bus busA = new BroadcastCache.Bus(network.join(), 0, 60000);
+    BroadcastCache.Bus busB = new BroadcastCache.Bus(network.join(), 0, 60000);
+    Cache blogsA = newCache("blogs", busA);
+    Cache authorsB = newCache("authors", busB);
+    blogsA.clear();
+    network.deliver();
+    authorsB.putObject("jim", "Jim");
+    busA.heartbeat();
+    network.deliver();
+    assertEquals("Jim", authorsB.getObject("jim"));
+    blogsA.clear();
+    network.lose();
+    busA.heartbeat();
+    network.deliver();
+    assertNull(authorsB.getObject("jim"));
+  }
+
+  @Test
+  public void shouldClearAllCachesWhenANodeIsSilent() throws Exception {
+    Network network = new Network();
+    BroadcastCache.Bus busA = new BroadcastCache.Bus(network.join(), 0, 50);
+    BroadcastCache.Bus busB = new BroadcastCache.Bus(network.join(), 0, 50);
+    newCache("blogs", busA);
+    Cache authorsB = newCache("authors", busB);
+    busA.heartbeat();
+    network.deliver();
+    authorsB.putObject("jim", "Jim");
+    busB.heartbeat();
+    assertEquals("Jim", authorsB.getObject("jim"));
+    Thread.sleep(100);
+    busB.heartbeat();
+    assertNull(authorsB.getObject("jim"));
+    authorsB.putObject("jim", "Jim");
+    busB.heartbeat();
+    assertEquals("Jim", authorsB.getObject("jim"));
+  }
+
+  @Test
+  public void shouldNotSendAnythingOnceClosed() throws Exception {
+    Network network = new Network();
+    BroadcastCache.Bus busA = new BroadcastCache.Bus(network.join());
+    BroadcastCache.Bus busB = new BroadcastCache.Bus(network.join());
+    Cache cacheA = newCache("blogs", busA);
+    Cache cacheB = newCache("blogs", busB);
+    cacheB.putObject("key", "value");
+    busA.close();
+    cacheA.clear();
+    busA.heartbeat();
+    network.deliver();
+    assertEquals("value", cacheB.getObject("key"));
+    assertEquals(1, network.closed);
+  }
+
+  @Test
+  public void shouldSendInvalidationsToAMulticastGroup() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty("port", "45565");
+    BroadcastCache.Bus busA = new BroadcastCache.Bus(newMulticastTransport(properties));
+    BroadcastCache.Bus busB = new BroadcastCache.Bus(newMulticastTransport(properties));
+    try {
+      Cache cacheA;
+      Cache cacheB;
+      try {
+        cacheA = newCache("blogs", busA);
+        cacheB = newCache("blogs", busB);
+      } catch (CacheException e) {
+        Assume.assumeNoException(e);
+        return;
+      }
+      cacheB.putObject("key", "value");
+      cacheA.clear();
+      long deadline = System.currentTimeMillis() + 5000;
+      while (cacheB.getObject("key") != null && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertNull(cacheB.getObject("key"));
+    } finally {
+      busA.close();
+      busB.close();
+    }
+  }
+
+  private static Cache newCache(String id, BroadcastCache.Bus bus) {
+    return new CacheBuilder(id).invalidationBus(bus).build();
+  }
+
+  private static InvalidationTransport newMulticastTransport(Properties properties) {
+    InvalidationTransport transport = new MulticastTransport();
+    transport.setProperties(properties);
+    return transport;
+  }
+
+  /**
+   * Delivers the messages to all the nodes, the sender included, when asked to.
+   */
+  private static class Network {
+
+    private final List<InvalidationTransport.Receiver> receivers = new ArrayList<InvalidationTransport.Receiver>();
+    private final List<byte[]> messages = new ArrayList<byte[]>();
+    private int closed;
+
+    InvalidationTransport join() {
+      return new InvalidationTransport() {
+        public void setProperties(Properties properties) {
+        }
+
+        public void open(Receiver receiver) {
+          receivers.add(receiver);
+        }
+
+        public void send(byte[] message) {
+          messages.add(message);
+        }
+
+        public void close() {
+          closed++;
+        }
+      };
+    }
+
+    void deliver() {
+      for (byte[] message : messages) {
+        for (InvalidationTransport.Receiver receiver : receivers) {
+          receiver.receive(message);
+        }
+      }
+      messages.clear();
+    }
+
+    void lose() {
+      messages.clear();
+    }
+  }
+
+}
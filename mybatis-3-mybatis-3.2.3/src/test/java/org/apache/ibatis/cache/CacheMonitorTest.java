@@ -0,0 +1,154 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.impl.StripedCacheMetrics;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.Test;
+
+public class CacheMonitorTest {
+
+  @Test
+  public void shouldCountTheEventsOfACache() {
+    CacheMetrics metrics = new StripedCacheMetrics();
+    Cache cache = new CacheBuilder("default").implementation(PerpetualCache.class).addDecorator(LruCache.class)
+        .size(2).metrics(metrics).build();
+    CacheMonitor monitor = new CacheMonitor(cache, metrics);
+    cache.putObject("a", Arrays.asList("first"));
+    cache.putObject("b", Arrays.asList("second"));
+    cache.putObject("c", Arrays.asList("third"));
+    assertNull(cache.getObject("a"));
+    assertNotNull(cache.getObject("c"));
+    assertNotNull(cache.getObject("c"));
+
+    CacheStats stats = monitor.getStats();
+    assertEquals("default", stats.getId());
+    assertEquals(2, stats.getSize());
+    assertEquals(3, stats.getPuts());
+    assertEquals(1, stats.getEvictions());
+    assertEquals(2, stats.getHits());
+    assertEquals(1, stats.getMisses());
+    assertEquals(2.0 / 3, stats.getHitRatio(), 0.001);
+    assertTrue(stats.getEstimatedBytes() > 0);
+  }
+
+  @Test
+  public void shouldNotLoseCountsOfConcurrentThreads() throws Exception {
+    final CacheMetrics metrics = new StripedCacheMetrics();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      Future<?>[] futures = new Future<?>[8];
+      for (int i = 0; i < futures.length; i++) {
+        futures[i] = executor.submit(new Callable<Object>() {
+          public Object call() {
+            for (int j = 0; j < 10000; j++) {
+              metrics.recordHit();
+              metrics.recordPut(10);
+            }
+            return null;
+          }
+        });
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(80000, metrics.getHits());
+    assertEquals(80000, metrics.getPuts());
+    assertEquals(800000, metrics.getPutBytes());
+  }
+
+  @Test
+  public void shouldRecordTheLoadsOfTheMappedCaches() throws Exception {
+    SqlSessionFactory sqlSessionFactory = newSqlSessionFactory();
+    for (int i = 0; i < 3; i++) {
+      SqlSession sqlSession = sqlSessionFactory.openSession();
+      try {
+        sqlSession.selectOne("org.apache.ibatis.submitted.cache_tags.BlogMapper.selectBlog", 1);
+      } finally {
+        sqlSession.close();
+      }
+    }
+    CacheMonitor monitor = sqlSessionFactory.getConfiguration()
+        .getCacheMonitor("org.apache.ibatis.submitted.cache_tags.BlogMapper");
+    assertEquals(1, monitor.getLoads());
+    assertTrue(monitor.getAverageLoadMillis() > 0);
+    assertEquals(2, monitor.getHits());
+    assertEquals(1, monitor.getMisses());
+    assertEquals(1, monitor.getSize());
+    List<CacheStats> stats = sqlSessionFactory.getConfiguration().getCacheStats();
+    assertEquals(2, stats.size());
+
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("org.apache.ibatis:type=Cache,name=" + ObjectName.quote(monitor.getId()));
+    server.registerMBean(monitor, name);
+    try {
+      assertEquals(2L, server.getAttribute(name, "Hits"));
+      assertEquals(1, server.getAttribute(name, "Size"));
+    } finally {
+      server.unregisterMBean(name);
+    }
+  }
+
+  private static SqlSessionFactory newSqlSessionFactory() throws Exception {
+    Class.forName("org.hsqldb.jdbcDriver");
+    Connection conn = DriverManager.getConnection("jdbc:hsqldb:mem:cache_tags", "sa", "");
+    try {
+      Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/cache_tags/CreateDB.sql");
+      ScriptRunner runner = new ScriptRunner(conn);
+      runner.setLogWriter(null);
+      runner.setErrorLogWriter(new PrintWriter(System.err));
+      runner.runScript(reader);
+      conn.commit();
+      reader.close();
+    } finally {
+      conn.close();
+    }
+    Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/cache_tags/Config.xml");
+    try {
+      return new SqlSessionFactoryBuilder().build(reader);
+    } finally {
+      reader.close();
+    }
+  }
+
+}
@@ -0,0 +1,166 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import org.apache.ibatis.cache.decorators.CopyingCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.impl.SerializationCopyStrategy;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.Test;
+
+import domain.blog.Author;
+import domain.blog.Blog;
+import domain.blog.Post;
+import domain.blog.Section;
+
+public class CopyingCacheTest {
+
+  @Test
+  public void shouldReturnADeepCopyOfTheCachedBeans() {
+    Cache cache = new CopyingCache(new PerpetualCache("default"));
+    Author author = new Author(101, "jim", "********", "jim@ibatis.apache.org", "Something", Section.NEWS);
+    Blog blog = new Blog(1, "Jim Business", author, new ArrayList<Post>());
+    Post post = new Post();
+    post.setId(1);
+    post.setBlog(blog);
+    post.setAuthor(author);
+    post.setCreatedOn(new Date(1000));
+    post.setSubject("Corn nuts");
+    blog.getPosts().add(post);
+    List<Object> result = new ArrayList<Object>();
+    result.add(blog);
+    cache.putObject("key", result);
+    blog.setTitle("Changed after put");
+
+    List<?> cached = (List<?>) cache.getObject("key");
+    assertNotSame(result, cached);
+    Blog cachedBlog = (Blog) cached.get(0);
+    assertNotSame(blog, cachedBlog);
+    assertEquals("Jim Business", cachedBlog.getTitle());
+    assertEquals(author, cachedBlog.getAuthor());
+    assertNotSame(author, cachedBlog.getAuthor());
+    Post cachedPost = cachedBlog.getPosts().get(0);
+    assertSame(cachedBlog, cachedPost.getBlog());
+    assertSame(cachedBlog.getAuthor(), cachedPost.getAuthor());
+    assertEquals(new Date(1000), cachedPost.getCreatedOn());
+
+    cachedPost.getCreatedOn().setTime(2000);
+    cachedBlog.getPosts().clear();
+    Blog again = (Blog) ((List<?>) cache.getObject("key")).get(0);
+    assertEquals(1, again.getPosts().size());
+    assertEquals(new Date(1000), again.getPosts().get(0).getCreatedOn());
+  }
+
+  @Test
+  public void shouldCopyCollectionsMapsAndArrays() {
+    Cache cache = new CopyingCache(new PerpetualCache("default"));
+    TreeSet<String> sorted = new TreeSet<String>(Collections.reverseOrder());
+    sorted.add("a");
+    sorted.add("b");
+    Map<String, Object> row = new HashMap<String, Object>();
+    row.put("sorted", sorted);
+    row.put("numbers", new int[] { 1, 2, 3 });
+    row.put("names", new String[] { "jim", "sally" });
+    row.put("unmodifiable", Collections.unmodifiableList(new ArrayList<Object>(sorted)));
+    row.put("self", row);
+    cache.putObject("key", row);
+
+    @SuppressWarnings("unchecked")
+    Map<String, Object> cached = (Map<String, Object>) cache.getObject("key");
+    assertTrue(cached instanceof HashMap);
+    assertSame(cached, cached.get("self"));
+    TreeSet<?> cachedSorted = (TreeSet<?>) cached.get("sorted");
+    assertNotSame(sorted, cachedSorted);
+    assertEquals("b", cachedSorted.first());
+    int[] numbers = (int[]) cached.get("numbers");
+    assertArrayEquals(new int[] { 1, 2, 3 }, numbers);
+    numbers[0] = 9;
+    assertArrayEquals(new int[] { 1, 2, 3 }, (int[]) ((Map<?, ?>) cache.getObject("key")).get("numbers"));
+    assertArrayEquals(new String[] { "jim", "sally" }, (String[]) cached.get("names"));
+    assertEquals(sorted.size(), ((List<?>) cached.get("unmodifiable")).size());
+  }
+
+  @Test
+  public void shouldCopyObjectsWithoutADefaultConstructorWithSerialization() {
+    Cache cache = new CopyingCache(new PerpetualCache("default"));
+    SerializableValue value = new SerializableValue("value");
+    cache.putObject("key", value);
+    SerializableValue cached = (SerializableValue) cache.getObject("key");
+    assertNotSame(value, cached);
+    assertEquals("value", cached.value);
+  }
+
+  @Test(expected = CacheException.class)
+  public void shouldRefuseObjectsThatCannotBeCopied() {
+    Cache cache = new CopyingCache(new PerpetualCache("default"));
+    cache.putObject("key", new NotCopyable("value"));
+  }
+
+  @Test
+  public void shouldCopyBeansThatAreNotSerializable() {
+    Cache cache = new CacheBuilder("default").readWrite(true).build();
+    Object bean = new NotSerializable();
+    cache.putObject("key", bean);
+    assertTrue(cache.getObject("key") instanceof NotSerializable);
+    assertNotSame(bean, cache.getObject("key"));
+  }
+
+  @Test(expected = CacheException.class)
+  public void shouldUseTheConfiguredCopyStrategy() {
+    Properties properties = new Properties();
+    properties.setProperty("copyStrategy", SerializationCopyStrategy.class.getName());
+    Cache cache = new CacheBuilder("default").readWrite(true).properties(properties).build();
+    cache.putObject("key", Collections.singletonList("value"));
+    assertEquals(Collections.singletonList("value"), cache.getObject("key"));
+    cache.putObject("key", new NotSerializable());
+  }
+
+  public static class NotSerializable {
+  }
+
+  public static class SerializableValue implements java.io.Serializable {
+    private static final long serialVersionUID = 1L;
+    private final String value;
+
+    public SerializableValue(String value) {
+      this.value = value;
+    }
+  }
+
+  public static class NotCopyable {
+    private final String value;
+
+    public NotCopyable(String value) {
+      this.value = value;
+    }
+
+    public String getValue() {
+      return value;
+    }
+  }
+
+}
@@ -0,0 +1,122 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import org.apache.ibatis.cache.decorators.ExpiringCache;
+import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.Test;
+
+public class ExpiringCacheTest {
+
+  @Test
+  public void shouldExpireEachEntryAfterItWasPut() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.setExpireAfterWrite(100);
+    cache.setJitter(0);
+    cache.putObject("first", "value");
+    Thread.sleep(60);
+    cache.putObject("second", "value");
+    Thread.sleep(60);
+    assertNull(cache.getObject("first"));
+    assertEquals("value", cache.getObject("second"));
+    assertEquals(1, cache.getSize());
+  }
+
+  @Test
+  public void shouldExpireAnEntryThatIsNotRead() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.setExpireAfterAccess(150);
+    cache.setJitter(0);
+    cache.putObject("read", "value");
+    cache.putObject("unread", "value");
+    for (int i = 0; i < 4; i++) {
+      Thread.sleep(50);
+      assertEquals("value", cache.getObject("read"));
+    }
+    assertNull(cache.getObject("unread"));
+  }
+
+  @Test
+  public void shouldNotExpireEntriesPutTogetherAtTheSameTime() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.setExpireAfterWrite(300);
+    cache.setJitter(0.5);
+    for (int i = 0; i < 200; i++) {
+      cache.putObject(i, "value");
+    }
+    Thread.sleep(225);
+    int expired = 0;
+    for (int i = 0; i < 200; i++) {
+      if (cache.getObject(i) == null) {
+        expired++;
+      }
+    }
+    assertTrue(expired > 0);
+    assertTrue(expired < 200);
+  }
+
+  @Test
+  public void shouldLetOneCallerRefreshAnEntryAhead() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.setExpireAfterWrite(1000);
+    cache.setRefreshAhead(0.1);
+    cache.setJitter(0);
+    assertTrue(cache.isRefreshAhead());
+    cache.putObject("key", "value");
+    assertFalse(cache.claimRefresh("key"));
+    Thread.sleep(150);
+    assertTrue(cache.claimRefresh("key"));
+    assertFalse(cache.claimRefresh("key"));
+    assertTrue(cache.isRefreshing("key"));
+    cache.putObject("key", "refreshed");
+    assertFalse(cache.isRefreshing("key"));
+    assertFalse(cache.claimRefresh("missing"));
+  }
+
+  @Test
+  public void shouldForgetTheExpiryOfRemovedEntries() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.setExpireAfterWrite(1000);
+    cache.setRefreshAhead(0.01);
+    cache.putObject("removed", "value");
+    cache.putObject("cleared", "value");
+    Thread.sleep(20);
+    cache.removeObject("removed");
+    assertFalse(cache.claimRefresh("removed"));
+    cache.clear();
+    assertFalse(cache.claimRefresh("cleared"));
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  public void shouldOnlySweepExpiredEntries() {
+    LruCache lru = new LruCache(new PerpetualCache("default"));
+    lru.setSize(10);
+    ExpiringCache cache = new ExpiringCache(lru);
+    cache.setExpireAfterWrite(60000);
+    for (int i = 0; i < 5000; i++) {
+      cache.putObject(i, i);
+    }
+    assertEquals(10, cache.getSize());
+    for (int i = 4990; i < 5000; i++) {
+      assertEquals(i, cache.getObject(i));
+    }
+  }
+
+}
@@ -0,0 +1,163 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.cache.impl.OffHeapCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.Test;
+
+import domain.blog.Author;
+import domain.blog.Blog;
+import domain.blog.Post;
+import domain.blog.Section;
+
+public class OffHeapCacheTest {
+
+  @Test
+  public void shouldReturnACopyOfTheCachedBeans() {
+    Cache cache = new OffHeapCache("default");
+    Author author = new Author(101, "jim", "********", "jim@ibatis.apache.org", "Something", Section.NEWS);
+    Blog blog = new Blog(1, "Jim Business", author, new ArrayList<Post>());
+    Post post = new Post();
+    post.setId(1);
+    post.setBlog(blog);
+    post.setAuthor(author);
+    post.setCreatedOn(new Date(1000));
+    post.setSubject("Corn nuts");
+    blog.getPosts().add(post);
+    List<Object> result = new ArrayList<Object>();
+    result.add(blog);
+    cache.putObject("key", result);
+
+    List<?> cached = (List<?>) cache.getObject("key");
+    assertNotSame(result, cached);
+    Blog cachedBlog = (Blog) cached.get(0);
+    assertNotSame(blog, cachedBlog);
+    assertEquals("Jim Business", cachedBlog.getTitle());
+    assertEquals(author, cachedBlog.getAuthor());
+    Post cachedPost = cachedBlog.getPosts().get(0);
+    assertSame(cachedBlog, cachedPost.getBlog());
+    assertSame(cachedBlog.getAuthor(), cachedPost.getAuthor());
+    assertEquals(new Date(1000), cachedPost.getCreatedOn());
+  }
+
+  @Test
+  public void shouldEncodeSimpleValuesAndMaps() {
+    Cache cache = new OffHeapCache("default");
+    Map<String, Object> row = new HashMap<String, Object>();
+    row.put("decimal", new BigDecimal("12.3400"));
+    row.put("timestamp", new Timestamp(123456789L));
+    row.put("long", 5L);
+    row.put("section", Section.VIDEOS);
+    row.put("bytes", new byte[] { 1, 2, 3 });
+    row.put("text", "été");
+    row.put("null", null);
+    cache.putObject("key", row);
+    @SuppressWarnings("unchecked")
+    Map<String, Object> cached = (Map<String, Object>) cache.getObject("key");
+    assertEquals(new BigDecimal("12.3400"), cached.get("decimal"));
+    assertEquals(new Timestamp(123456789L), cached.get("timestamp"));
+    assertEquals(5L, cached.get("long"));
+    assertEquals(Section.VIDEOS, cached.get("section"));
+    assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) cached.get("bytes"));
+    assertEquals("été", cached.get("text"));
+    assertTrue(cached.containsKey("null"));
+  }
+
+  @Test
+  public void shouldFindKeysAfterRemovalsAndResizes() {
+    Cache cache = new OffHeapCache("default");
+    for (int i = 0; i < 1000; i++) {
+      cache.putObject(i, "value " + i);
+    }
+    for (int i = 0; i < 1000; i += 3) {
+      cache.removeObject(i);
+    }
+    assertEquals(666, cache.getSize());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(i % 3 == 0 ? null : "value " + i, cache.getObject(i));
+    }
+  }
+
+  @Test
+  public void shouldDropTheOldestRegionWhenFull() {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setCapacity(4096);
+    cache.setRegionSize(1024);
+    for (int i = 0; i < 500; i++) {
+      cache.putObject(i, "value " + i);
+    }
+    assertNull(cache.getObject(0));
+    assertEquals("value 499", cache.getObject(499));
+    assertTrue(cache.getSize() < 500);
+  }
+
+  @Test
+  public void shouldNotCacheValuesLargerThanARegion() {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setRegionSize(16);
+    cache.putObject("key", "a value longer than the region");
+    assertNull(cache.getObject("key"));
+  }
+
+  @Test
+  public void shouldStoreValuesInAMappedFile() throws Exception {
+    File file = File.createTempFile("offheap", ".cache");
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setFile(file.getAbsolutePath());
+    cache.setRegionSize(1024);
+    cache.setCapacity(2048);
+    cache.putObject("key", "value");
+    assertEquals("value", cache.getObject("key"));
+    assertTrue(file.length() >= 1024);
+  }
+
+  @Test
+  public void shouldCacheBeansThatAreNotSerializableInAReadWriteCache() {
+    Cache cache = new CacheBuilder("default").implementation(OffHeapCache.class).readWrite(true).build();
+    Object bean = new NotSerializable();
+    cache.putObject("key", bean);
+    assertTrue(cache.getObject("key") instanceof NotSerializable);
+    assertNotSame(bean, cache.getObject("key"));
+  }
+
+  @Test
+  public void shouldFlushAllItemsOnDemand() {
+    Cache cache = new OffHeapCache("default");
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, i);
+    }
+    assertEquals(0, cache.getObject(0));
+    cache.clear();
+    assertNull(cache.getObject(0));
+    assertEquals(0, cache.getSize());
+  }
+
+  public static class NotSerializable {
+  }
+
+}
@@ -0,0 +1,76 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.ibatis.cache.decorators.TaggedCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.Test;
+
+public class TaggedCacheTest {
+
+  @Test
+  public void shouldEvictTheEntriesDependingOnTheTags() {
+    TaggedCache cache = new TaggedCache(new PerpetualCache("default"));
+    cache.putObject("blog 1", "a", Arrays.asList("blog:1"));
+    cache.putObject("blog 2", "b", Arrays.asList("blog:2"));
+    cache.putObject("blogs", "c", Arrays.asList("blog"));
+    cache.putObject("authors", "d", Arrays.asList("author"));
+    cache.putObject("anything", "e", null);
+    cache.invalidate(Arrays.asList("blog:1"), false);
+    assertNull(cache.getObject("blog 1"));
+    assertEquals("b", cache.getObject("blog 2"));
+    assertNull(cache.getObject("blogs"));
+    assertEquals("d", cache.getObject("authors"));
+    assertEquals("e", cache.getObject("anything"));
+    cache.invalidate(Arrays.asList("author"), true);
+    assertNull(cache.getObject("authors"));
+    assertNull(cache.getObject("anything"));
+    assertEquals("b", cache.getObject("blog 2"));
+  }
+
+  @Test
+  public void shouldNotIndexACacheWithoutTags() {
+    TaggedCache cache = new TaggedCache(new PerpetualCache("default"));
+    cache.putObject("first", "a", Collections.<String>emptyList());
+    cache.putObject("second", "b");
+    cache.invalidate(Arrays.asList("blog"), false);
+    assertEquals("a", cache.getObject("first"));
+    cache.invalidate(Arrays.asList("blog"), true);
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  public void shouldEvictTheEntriesPutBeforeIndexingStarted() {
+    TaggedCache cache = new TaggedCache(new PerpetualCache("default"));
+    cache.putObject("anything", "a", null);
+    cache.putObject("blog 1", "b", Arrays.asList("blog:1"));
+    cache.invalidate(Arrays.asList("author"), false);
+    assertEquals("a", cache.getObject("anything"));
+    cache.invalidate(Arrays.asList("author"), true);
+    assertNull(cache.getObject("anything"));
+    cache.putObject("blog 2", "c", Arrays.asList("blog:2"));
+    cache.putObject("anything", "d", null);
+    cache.invalidate(Arrays.asList("blog:2"), false);
+    assertNull(cache.getObject("blog 2"));
+    assertEquals("d", cache.getObject("anything"));
+  }
+
+}
@@ -0,0 +1,179 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.cache.decorators.LoggingCache;
+import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.decorators.TaggedCache;
+import org.apache.ibatis.cache.decorators.TinyLfuCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.Test;
+
+public class TinyLfuCacheTest {
+
+  @Test
+  public void shouldNotGrowBeyondTheMaximumSize() {
+    TinyLfuCache cache = new TinyLfuCache(new PerpetualCache("default"));
+    cache.setSize(5);
+    for (int i = 0; i < 100; i++) {
+      cache.putObject(i, i);
+    }
+    assertEquals(5, cache.getSize());
+  }
+
+  @Test
+  public void shouldKeepFrequentlyUsedItems() {
+    TinyLfuCache cache = new TinyLfuCache(new PerpetualCache("default"));
+    cache.setSize(10);
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, i);
+      for (int j = 0; j < 10; j++) {
+        cache.getObject(i);
+      }
+    }
+    for (int i = 100; i < 200; i++) {
+      cache.putObject(i, i);
+    }
+    for (int i = 0; i < 5; i++) {
+      assertEquals(i, cache.getObject(i));
+    }
+  }
+
+  @Test
+  public void shouldRemoveItemOnDemand() {
+    Cache cache = new TinyLfuCache(new PerpetualCache("default"));
+    cache.putObject(0, 0);
+    assertNotNull(cache.getObject(0));
+    cache.removeObject(0);
+    assertNull(cache.getObject(0));
+  }
+
+  @Test
+  public void shouldFlushAllItemsOnDemand() {
+    Cache cache = new TinyLfuCache(new PerpetualCache("default"));
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, i);
+    }
+    assertNotNull(cache.getObject(0));
+    assertNotNull(cache.getObject(4));
+    cache.clear();
+    assertNull(cache.getObject(0));
+    assertNull(cache.getObject(4));
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  public void shouldHitAtLeastAsOftenAsLru() {
+    TinyLfuCache tinyLfu = new TinyLfuCache(new PerpetualCache("default"));
+    tinyLfu.setSize(100);
+    LruCache lru = new LruCache(new PerpetualCache("default"));
+    lru.setSize(100);
+    int tinyLfuHits = replay(tinyLfu, new Random(42));
+    int lruHits = replay(lru, new Random(42));
+    assertTrue("TinyLFU " + tinyLfuHits + " hits, LRU " + lruHits, tinyLfuHits >= lruHits);
+  }
+
+  @Test
+  public void shouldSupportConcurrentReadsAndWrites() throws Exception {
+    final TinyLfuCache cache = new TinyLfuCache(new PerpetualCache("default"));
+    cache.setSize(50);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      Future<?>[] futures = new Future<?>[8];
+      for (int i = 0; i < futures.length; i++) {
+        final int seed = i;
+        futures[i] = executor.submit(new Callable<Object>() {
+          public Object call() {
+            Random random = new Random(seed);
+            for (int j = 0; j < 20000; j++) {
+              Integer key = random.nextInt(200);
+              Object value = cache.getObject(key);
+              if (value == null) {
+                cache.putObject(key, key);
+              } else {
+                assertEquals(key, value);
+              }
+            }
+            return null;
+          }
+        });
+      }
+      for (Future<?> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertTrue(cache.getSize() <= 50);
+  }
+
+  @Test
+  public void shouldNotBeWrappedInASynchronizedCache() {
+    Cache cache = new CacheBuilder("default").addDecorator(TinyLfuCache.class).size(10).build();
+    assertTrue(((TaggedCache) cache).getDelegate() instanceof LoggingCache);
+  }
+
+  /**
+   * Skewed lookups interrupted by scans of keys that are never read again.
+   */
+  private int replay(Cache cache, Random random) {
+    int hits = 0;
+    int scanKey = 1000000;
+    for (int i = 0; i < 100000; i++) {
+      Integer key;
+      if (i % 1000 < 200) {
+        key = scanKey++;
+      } else {
+        key = (int) (Math.pow(random.nextDouble(), 4) * 1000);
+      }
+      if (cache.getObject(key) != null) {
+        hits++;
+      } else {
+        cache.putObject(key, key);
+      }
+    }
+    return hits;
+  }
+
+  @Test
+  public void shouldExcludeWritersButNotReaders() throws Exception {
+    final Cache cache = new CacheBuilder("default").addDecorator(TinyLfuCache.class).build();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    cache.getReadWriteLock().writeLock().lock();
+    try {
+      Future<Boolean[]> locked = executor.submit(new Callable<Boolean[]>() {
+        public Boolean[] call() {
+          return new Boolean[] { cache.getReadWriteLock().readLock().tryLock(), cache.getReadWriteLock().writeLock().tryLock() };
+        }
+      });
+      assertArrayEquals(new Boolean[] { true, false }, locked.get(5, TimeUnit.SECONDS));
+    } finally {
+      cache.getReadWriteLock().writeLock().unlock();
+      executor.shutdownNow();
+    }
+  }
+
+}
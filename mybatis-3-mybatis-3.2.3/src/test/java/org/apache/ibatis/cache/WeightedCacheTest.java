@@ -0,0 +1,148 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ibatis.cache.decorators.WeightedCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.Test;
+
+public class WeightedCacheTest {
+
+  @Test
+  public void shouldEvictLeastRecentlyUsedItemsBeyondTheMaximumWeight() {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("default"));
+    cache.setWeigher(ValueWeigher.class.getName());
+    cache.setMaxWeight(100);
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, 20L);
+    }
+    assertEquals(100, cache.getWeight());
+    assertEquals(20L, cache.getObject(0));
+    cache.putObject(5, 30L);
+    assertEquals(20L, cache.getObject(0));
+    assertNull(cache.getObject(1));
+    assertNull(cache.getObject(2));
+    assertEquals(90, cache.getWeight());
+    assertEquals(4, cache.getSize());
+  }
+
+  @Test
+  public void shouldNotCacheAnItemHeavierThanTheMaximumWeight() {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("default"));
+    cache.setWeigher(ValueWeigher.class.getName());
+    cache.setMaxWeight(100);
+    cache.putObject(0, 20L);
+    cache.putObject(1, 200L);
+    assertNull(cache.getObject(1));
+    assertEquals(20L, cache.getObject(0));
+    assertEquals(20, cache.getWeight());
+  }
+
+  @Test
+  public void shouldShareTheBudgetBetweenCaches() {
+    WeightedCache.Budget budget = new WeightedCache.Budget();
+    budget.setMaxWeight(100);
+    WeightedCache first = new WeightedCache(new PerpetualCache("first"));
+    WeightedCache second = new WeightedCache(new PerpetualCache("second"));
+    for (WeightedCache cache : new WeightedCache[] { first, second }) {
+      cache.setWeigher(ValueWeigher.class.getName());
+      cache.setBudget(budget);
+    }
+    first.putObject(0, 60L);
+    second.putObject(0, 30L);
+    second.putObject(1, 30L);
+    assertNull(first.getObject(0));
+    assertEquals(30L, second.getObject(0));
+    assertEquals(30L, second.getObject(1));
+    assertEquals(60, budget.getWeight());
+    first.putObject(1, 20L);
+    assertEquals(80, budget.getWeight());
+    first.clear();
+    assertEquals(60, budget.getWeight());
+    second.removeObject(1);
+    assertEquals(30, budget.getWeight());
+  }
+
+  @Test
+  public void shouldEvictTheLeastRecentlyUsedEntriesOfAllTheCaches() {
+    WeightedCache.Budget budget = new WeightedCache.Budget();
+    budget.setMaxWeight(100);
+    WeightedCache first = new WeightedCache(new PerpetualCache("first"));
+    WeightedCache second = new WeightedCache(new PerpetualCache("second"));
+    for (WeightedCache cache : new WeightedCache[] { first, second }) {
+      cache.setWeigher(ValueWeigher.class.getName());
+      cache.setBudget(budget);
+    }
+    for (int i = 0; i < 5; i++) {
+      first.putObject(i, 20L);
+    }
+    assertEquals(20L, first.getObject(0));
+    for (int i = 0; i < 3; i++) {
+      second.putObject(i, 20L);
+    }
+    assertEquals(100, budget.getWeight());
+    assertEquals(2, first.getSize());
+    assertEquals(20L, first.getObject(0));
+    assertNull(first.getObject(1));
+    assertNull(first.getObject(3));
+    assertEquals(20L, first.getObject(4));
+    assertEquals(3, second.getSize());
+    assertEquals(20L, second.getObject(0));
+    assertEquals(20L, second.getObject(2));
+  }
+
+  @Test
+  public void shouldWeighAListByItsRows() {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("default"));
+    cache.putObject("small", rows(1));
+    long small = cache.getWeight();
+    cache.putObject("large", rows(1000));
+    long large = cache.getWeight() - small;
+    assertTrue(large > 100 * small);
+  }
+
+  @Test
+  public void shouldFlushAllItemsOnDemand() {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("default"));
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, rows(i));
+    }
+    assertNotNull(cache.getObject(0));
+    cache.clear();
+    assertNull(cache.getObject(0));
+    assertEquals(0, cache.getWeight());
+  }
+
+  private List<Object> rows(int count) {
+    List<Object> rows = new ArrayList<Object>();
+    for (int i = 0; i < count; i++) {
+      rows.add("row " + i);
+    }
+    return rows;
+  }
+
+  public static class ValueWeigher implements Weigher {
+    public long weigh(Object key, Object value) {
+      return (Long) value;
+    }
+  }
+
+}
@@ -0,0 +1,62 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void shouldBeEmpty() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMean());
+    assertEquals(0, histogram.getPercentile(99));
+  }
+
+  @Test
+  public void shouldBucketByPowersOfTwo() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(0);
+    histogram.record(1);
+    histogram.record(3);
+    histogram.record(100);
+    long[] counts = histogram.getBucketCounts();
+    assertEquals(1, counts[0]);
+    assertEquals(1, counts[1]);
+    assertEquals(1, counts[2]);
+    assertEquals(1, counts[7]);
+    assertEquals(4, histogram.getCount());
+    assertEquals(26, histogram.getMean());
+    assertEquals(100, histogram.getMax());
+  }
+
+  @Test
+  public void shouldEstimatePercentilesFromTheBuckets() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 98; i++) {
+      histogram.record(2);
+    }
+    histogram.record(1000);
+    histogram.record(5000);
+    assertEquals(3, histogram.getPercentile(50));
+    assertEquals(1023, histogram.getPercentile(99));
+    assertEquals(5000, histogram.getPercentile(100));
+  }
+
+}
@@ -0,0 +1,118 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.pagination;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.ibatis.session.RowBounds;
+import org.junit.Test;
+
+public class PaginationDialectTest {
+
+  @Test
+  public void shouldAppendLimitAndOffset() {
+    List<Integer> parameters = new ArrayList<Integer>();
+    String sql = new LimitOffsetDialect().getPagedSql("select * from users", 20, 10, parameters);
+    assertEquals("select * from users LIMIT ? OFFSET ?", sql);
+    assertEquals(Arrays.asList(10, 20), parameters);
+  }
+
+  @Test
+  public void shouldAppendOnlyLimitWithoutOffset() {
+    List<Integer> parameters = new ArrayList<Integer>();
+    String sql = new LimitOffsetDialect().getPagedSql("select * from users", RowBounds.NO_ROW_OFFSET, 10, parameters);
+    assertEquals("select * from users LIMIT ?", sql);
+    assertEquals(Arrays.asList(10), parameters);
+  }
+
+  @Test
+  public void shouldAppendOffsetFetch() {
+    List<Integer> parameters = new ArrayList<Integer>();
+    String sql = new OffsetFetchDialect().getPagedSql("select * from users order by id", 20, 10, parameters);
+    assertEquals("select * from users order by id OFFSET ? ROWS FETCH NEXT ? ROWS ONLY", sql);
+    assertEquals(Arrays.asList(20, 10), parameters);
+  }
+
+  @Test
+  public void shouldOrderByNullForSqlServerWithoutOrderBy() {
+    List<Integer> parameters = new ArrayList<Integer>();
+    String sql = new SqlServerDialect().getPagedSql("select * from users where id in (select id from roles order by id)", 20, 10, parameters);
+    assertEquals("select * from users where id in (select id from roles order by id) ORDER BY (SELECT NULL) OFFSET ? ROWS FETCH NEXT ? ROWS ONLY", sql);
+    assertEquals(Arrays.asList(20, 10), parameters);
+  }
+
+  @Test
+  public void shouldKeepOrderByForSqlServer() {
+    List<Integer> parameters = new ArrayList<Integer>();
+    String sql = new SqlServerDialect().getPagedSql("select * from users ORDER BY name", 20, RowBounds.NO_ROW_LIMIT, parameters);
+    assertEquals("select * from users ORDER BY name OFFSET ? ROWS", sql);
+    assertEquals(Arrays.asList(20), parameters);
+  }
+
+  @Test
+  public void shouldWrapWithRowNum() {
+    List<Integer> parameters = new ArrayList<Integer>();
+    String sql = new RowNumDialect().getPagedSql("select * from users", 20, 10, parameters);
+    assertEquals("select * from ( select row_.*, rownum rownum_ from ( select * from users ) row_ where rownum <= ? ) where rownum_ > ?", sql);
+    assertEquals(Arrays.asList(30, 20), parameters);
+  }
+
+  @Test
+  public void shouldRemoveTrailingOrderByFromCount() {
+    PaginationDialect dialect = new LimitOffsetDialect();
+    assertEquals("select count(*) from (select * from users where name = ? ) count_",
+        dialect.getCountSql("select * from users where name = ? order by id"));
+    assertEquals("select count(*) from (select * from users where id in (select id from roles order by id)) count_",
+        dialect.getCountSql("select * from users where id in (select id from roles order by id)"));
+    assertEquals("select count(*) from (select * from users where name = 'order by' ) count_",
+        dialect.getCountSql("select * from users where name = 'order by' ORDER BY name"));
+  }
+
+  @Test
+  public void shouldKeepOrderByThatLimitsRows() {
+    assertEquals("select count(*) from (select * from users order by id limit 10) count_",
+        new LimitOffsetDialect().getCountSql("select * from users order by id limit 10"));
+  }
+
+  @Test
+  public void shouldResolveDialectByDatabaseId() {
+    PaginationDialectRegistry registry = new PaginationDialectRegistry();
+    assertTrue(registry.getDialect("HSQL Database Engine") instanceof LimitOffsetDialect);
+    assertTrue(registry.getDialect("MySQL") instanceof LimitOffsetDialect);
+    assertTrue(registry.getDialect("PostgreSQL") instanceof LimitOffsetDialect);
+    assertTrue(registry.getDialect("Apache Derby") instanceof OffsetFetchDialect);
+    assertTrue(registry.getDialect("Microsoft SQL Server") instanceof SqlServerDialect);
+    assertTrue(registry.getDialect("DB2/LINUXX8664") instanceof OffsetFetchDialect);
+    assertTrue(registry.getDialect("oracle") instanceof RowNumDialect);
+    assertNull(registry.getDialect("unknown"));
+    assertNull(registry.getDialect(null));
+  }
+
+  @Test
+  public void shouldPreferRegisteredDialect() {
+    PaginationDialectRegistry registry = new PaginationDialectRegistry();
+    PaginationDialect dialect = new OffsetFetchDialect();
+    registry.register("hsqldb", dialect);
+    assertTrue(registry.getDialect("HSQLDB") == dialect);
+  }
+
+}
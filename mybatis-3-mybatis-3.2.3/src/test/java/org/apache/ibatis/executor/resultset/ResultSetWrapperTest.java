@@ -0,0 +1,89 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Types;
+
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.type.IntegerTypeHandler;
+import org.apache.ibatis.type.StringTypeHandler;
+import org.apache.ibatis.type.TypeHandler;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ResultSetWrapperTest {
+
+  @Mock
+  private ResultSet rs;
+  @Mock
+  private ResultSetMetaData rsmd;
+
+  private ResultSetWrapper rsw;
+
+  @Before
+  public void setUp() throws Exception {
+    when(rs.getMetaData()).thenReturn(rsmd);
+    when(rsmd.getColumnCount()).thenReturn(3);
+    when(rsmd.getColumnLabel(1)).thenReturn("ID");
+    when(rsmd.getColumnLabel(2)).thenReturn("Name");
+    when(rsmd.getColumnLabel(3)).thenReturn("id");
+    when(rsmd.getColumnType(1)).thenReturn(Types.INTEGER);
+    when(rsmd.getColumnType(2)).thenReturn(Types.VARCHAR);
+    when(rsmd.getColumnType(3)).thenReturn(Types.INTEGER);
+    when(rsmd.getColumnClassName(1)).thenReturn(Integer.class.getName());
+    when(rsmd.getColumnClassName(2)).thenReturn(String.class.getName());
+    when(rsmd.getColumnClassName(3)).thenReturn(Integer.class.getName());
+    rsw = new ResultSetWrapper(rs, new Configuration());
+  }
+
+  @Test
+  public void shouldResolveColumnIndexIgnoringCase() {
+    assertEquals(2, rsw.getColumnIndex("name"));
+    assertEquals(2, rsw.getColumnIndex("NAME"));
+    assertEquals(2, rsw.getColumnIndex("Name"));
+  }
+
+  @Test
+  public void shouldResolveRepeatedLabelToFirstColumn() {
+    assertEquals(1, rsw.getColumnIndex("id"));
+  }
+
+  @Test
+  public void shouldReturnMinusOneForUnknownColumn() {
+    assertEquals(-1, rsw.getColumnIndex("missing"));
+  }
+
+  @Test
+  public void shouldResolveTypeHandlerFromColumnMetadataByIndex() {
+    TypeHandler<?> handler = rsw.getTypeHandler(Object.class, 1);
+    assertTrue(handler instanceof IntegerTypeHandler);
+    assertSame(handler, rsw.getTypeHandler(Object.class, 1));
+    assertSame(handler, rsw.getTypeHandler(Object.class, "id"));
+    assertTrue(rsw.getTypeHandler(Object.class, "name") instanceof StringTypeHandler);
+  }
+
+}
@@ -16,17 +16,27 @@
 package org.apache.ibatis.jdbc;
 
 import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.datasource.pooled.PoolState;
 import org.apache.ibatis.datasource.pooled.PooledDataSource;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import org.hsqldb.jdbc.JDBCConnection;
 import org.junit.Test;
 
+import java.lang.management.ManagementFactory;
 import java.sql.Connection;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 public class PooledDataSourceTest extends BaseDataTest {
 
@@ -71,6 +81,234 @@ public class PooledDataSourceTest extends BaseDataTest {
     }
   }
 
+  @Test
+  public void shouldHandConnectionsOverToWaitingThreads() throws Exception {
+    final PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolMaximumActiveConnections(2);
+      ds.setPoolMaximumIdleConnections(2);
+      ds.setPoolTimeToWait(10000);
+      final int threads = 8;
+      final int checkouts = 50;
+      final AtomicInteger failures = new AtomicInteger();
+      final CountDownLatch done = new CountDownLatch(threads);
+      for (int i = 0; i < threads; i++) {
+        new Thread() {
+          public void run() {
+            try {
+              for (int j = 0; j < checkouts; j++) {
+                Connection c = ds.getConnection();
+                try {
+                  assertTrue(ds.getPoolState().getActiveConnectionCount() <= 2);
+                  Thread.yield();
+                } finally {
+                  c.close();
+                }
+              }
+            } catch (Throwable t) {
+              failures.incrementAndGet();
+            } finally {
+              done.countDown();
+            }
+          }
+        }.start();
+      }
+      assertTrue(done.await(30, TimeUnit.SECONDS));
+      assertEquals(0, failures.get());
+      assertEquals(threads * checkouts, ds.getPoolState().getRequestCount());
+      assertEquals(0, ds.getPoolState().getActiveConnectionCount());
+      assertEquals(2, ds.getPoolState().getIdleConnectionCount());
+      assertEquals(0, ds.getPoolState().getClaimedOverdueConnectionCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldReuseTheConnectionLastReturnedByTheThread() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      Connection c1 = ds.getConnection();
+      Connection c2 = ds.getConnection();
+      Connection real2 = PooledDataSource.unwrapConnection(c2);
+      c1.close();
+      c2.close();
+      assertEquals(2, ds.getPoolState().getIdleConnectionCount());
+      assertSame(real2, PooledDataSource.unwrapConnection(ds.getConnection()));
+      assertEquals(1, ds.getPoolState().getIdleConnectionCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldOpenTheInitialConnections() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolMaximumIdleConnections(3);
+      ds.setPoolInitialSize(5);
+      ds.setPoolHousekeepingInterval(0);
+      ds.initialize();
+      assertEquals(3, ds.getPoolState().getIdleConnectionCount());
+      Connection c = ds.getConnection();
+      c.close();
+      assertEquals(1, ds.getPoolState().getRequestCount());
+      assertEquals(3, ds.getPoolState().getIdleConnectionCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldOpenTheInitialConnectionsInTheBackgroundOnTheFirstRequest() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolInitialSize(3);
+      ds.setPoolHousekeepingInterval(0);
+      Connection c = ds.getConnection();
+      assertEquals(1, ds.getPoolState().getActiveConnectionCount());
+      long deadline = System.currentTimeMillis() + 10000;
+      while (ds.getPoolState().getIdleConnectionCount() < 3 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(3, ds.getPoolState().getIdleConnectionCount());
+      c.close();
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldReplenishTheMinimumIdleConnectionsInTheBackground() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolMinimumIdle(2);
+      ds.setPoolHousekeepingInterval(10);
+      List<Connection> connections = new ArrayList<Connection>();
+      connections.add(ds.getConnection());
+      connections.add(ds.getConnection());
+      long deadline = System.currentTimeMillis() + 10000;
+      while (ds.getPoolState().getIdleConnectionCount() < 2 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(2, ds.getPoolState().getIdleConnectionCount());
+      assertEquals(2, ds.getPoolState().getActiveConnectionCount());
+      for (Connection c : connections) {
+        c.close();
+      }
+    } finally {
+      ds.setPoolHousekeepingInterval(0);
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldRetireConnectionsPastTheirLifetime() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolMaximumLifetime(50);
+      ds.setPoolHousekeepingInterval(0);
+      Connection c = ds.getConnection();
+      Thread.sleep(100);
+      c.close();
+      assertEquals(0, ds.getPoolState().getIdleConnectionCount());
+      assertEquals(0, ds.getPoolState().getBadConnectionCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldReportLeakedConnections() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolLeakDetectionThreshold(20);
+      ds.setPoolHousekeepingInterval(10);
+      Connection c = ds.getConnection();
+      long deadline = System.currentTimeMillis() + 10000;
+      while (ds.getPoolState().getLeakedConnectionCount() == 0 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      Thread.sleep(50);
+      assertEquals(1, ds.getPoolState().getLeakedConnectionCount());
+      c.close();
+    } finally {
+      ds.setPoolHousekeepingInterval(0);
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldReportLeakedConnectionsWithoutHousekeepingInterval() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolHousekeepingInterval(0);
+      ds.setPoolLeakDetectionThreshold(20);
+      assertEquals(10, ds.getPoolLeakStackSamplingRate());
+      Connection c = ds.getConnection();
+      long deadline = System.currentTimeMillis() + 10000;
+      while (ds.getPoolState().getLeakedConnectionCount() == 0 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(1, ds.getPoolState().getLeakedConnectionCount());
+      c.close();
+    } finally {
+      ds.setPoolLeakDetectionThreshold(0);
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldRecordLatencyHistograms() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolHousekeepingInterval(0);
+      for (int i = 0; i < 3; i++) {
+        Connection c = ds.getConnection();
+        Thread.sleep(5);
+        c.close();
+      }
+      PoolState state = ds.getPoolState();
+      assertEquals(3, state.getRequestTimeHistogram().getCount());
+      assertEquals(3, state.getHoldTimeHistogram().getCount());
+      assertEquals(0, state.getWaitTimeHistogram().getCount());
+      assertTrue(state.getMaxHoldTime() >= 5);
+      assertTrue(state.getHoldTime99thPercentile() >= 5);
+
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName("org.apache.ibatis:type=PoolState,name=shouldRecordLatencyHistograms");
+      server.registerMBean(state, name);
+      try {
+        assertEquals(3L, server.getAttribute(name, "RequestCount"));
+      } finally {
+        server.unregisterMBean(name);
+      }
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldOpenANewConnectionWhenAnOverdueOneCannotBeReset() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolMaximumActiveConnections(1);
+      ds.setPoolMaximumCheckoutTime(10);
+      Connection overdue = ds.getConnection();
+      Connection realConnection = PooledDataSource.unwrapConnection(overdue);
+      realConnection.close();
+      Thread.sleep(50);
+      Connection c = ds.getConnection();
+      assertTrue(PooledDataSource.unwrapConnection(c) != realConnection);
+      assertTrue(c.isValid(1));
+      assertEquals(1, ds.getPoolState().getClaimedOverdueConnectionCount());
+      assertEquals(1, ds.getPoolState().getActiveConnectionCount());
+      c.close();
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
   @Test
   public void shouldNotFailCallingToStringOverAnInvalidConnection() throws Exception {
     PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
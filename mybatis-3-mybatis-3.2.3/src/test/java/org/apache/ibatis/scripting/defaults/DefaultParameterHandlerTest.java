@@ -0,0 +1,153 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.scripting.defaults;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.sql.PreparedStatement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.Configuration;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import domain.blog.Author;
+import domain.blog.Blog;
+import domain.blog.Section;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DefaultParameterHandlerTest {
+
+  @Mock
+  private PreparedStatement ps;
+
+  private final Configuration configuration = new Configuration();
+
+  @Test
+  public void shouldBindBeanPropertiesWithACachedPlan() throws Exception {
+    MappedStatement ms = insert();
+    Author author = new Author(101, "jim", null, "jim@ibatis.apache.org", "", Section.NEWS);
+    Blog blog = new Blog(1, "title", author, null);
+
+    setParameters(ms, author, "id", "username", "password");
+    verify(ps).setInt(1, 101);
+    verify(ps).setString(2, "jim");
+    verify(ps).setNull(3, Types.OTHER);
+    ParameterBindingPlan plan = ms.getParameterBindingPlans().get(Author.class)[0];
+
+    setParameters(ms, new Author(102), "id", "username", "password");
+    verify(ps).setInt(1, 102);
+    assertSame(plan, ms.getParameterBindingPlans().get(Author.class)[0]);
+
+    setParameters(ms, blog, "author.id");
+    verify(ps, times(2)).setInt(1, 101);
+    assertEquals(2, ms.getParameterBindingPlans().size());
+  }
+
+  @Test
+  public void shouldPreferAdditionalParameters() throws Exception {
+    MappedStatement ms = insert();
+    Map<String, Object> parameter = new HashMap<String, Object>();
+    parameter.put("id", 1);
+    parameter.put("username", "map");
+    BoundSql boundSql = boundSql(ms, parameter, "id", "username");
+    boundSql.setAdditionalParameter("username", "additional");
+    new DefaultParameterHandler(ms, parameter, boundSql).setParameters(ps);
+    verify(ps).setInt(1, 1);
+    verify(ps).setString(2, "additional");
+  }
+
+  @Test
+  public void shouldAddAPlanWhenTheMappingsChange() throws Exception {
+    MappedStatement ms = insert();
+    setParameters(ms, new Author(1), "id");
+    ParameterBindingPlan plan = ms.getParameterBindingPlans().get(Author.class)[0];
+    setParameters(ms, new Author(2), "id", "username");
+    verify(ps).setInt(1, 2);
+    assertEquals(2, ms.getParameterBindingPlans().get(Author.class).length);
+    assertNotSame(plan, ms.getParameterBindingPlans().get(Author.class)[1]);
+  }
+
+  @Test
+  public void shouldReuseThePlansOfAlternatingMappings() throws Exception {
+    MappedStatement ms = insert();
+    setParameters(ms, new Author(1), "id");
+    setParameters(ms, new Author(2), "id", "username");
+    ParameterBindingPlan[] plans = ms.getParameterBindingPlans().get(Author.class);
+    for (int i = 0; i < 10; i++) {
+      setParameters(ms, new Author(i), "id");
+      setParameters(ms, new Author(i), "id", "username");
+    }
+    assertSame(plans, ms.getParameterBindingPlans().get(Author.class));
+    assertEquals(2, plans.length);
+  }
+
+  @Test
+  public void shouldKeepTheLatestPlansOfABoundedNumberOfMappings() throws Exception {
+    MappedStatement ms = insert();
+    String[] properties = new String[DefaultParameterHandler.MAX_PLANS_PER_TYPE + 1];
+    for (int i = 0; i < properties.length; i++) {
+      properties[i] = "id";
+      String[] shape = new String[i + 1];
+      System.arraycopy(properties, 0, shape, 0, shape.length);
+      setParameters(ms, new Author(1), shape);
+    }
+    ParameterBindingPlan[] plans = ms.getParameterBindingPlans().get(Author.class);
+    assertEquals(DefaultParameterHandler.MAX_PLANS_PER_TYPE, plans.length);
+    assertTrue(plans[plans.length - 1].matches(boundSql(ms, null, properties).getParameterMappings()));
+  }
+
+  @Test
+  public void shouldBindASimpleParameter() throws Exception {
+    MappedStatement ms = insert();
+    setParameters(ms, "value", "whatever");
+    verify(ps).setString(1, "value");
+  }
+
+  private void setParameters(MappedStatement ms, Object parameter, String... properties) throws Exception {
+    new DefaultParameterHandler(ms, parameter, boundSql(ms, parameter, properties)).setParameters(ps);
+  }
+
+  private BoundSql boundSql(MappedStatement ms, Object parameter, String... properties) {
+    List<ParameterMapping> mappings = new ArrayList<ParameterMapping>();
+    for (String property : properties) {
+      Class<?> javaType = "id".equals(property) || "author.id".equals(property) ? Integer.class : String.class;
+      mappings.add(new ParameterMapping.Builder(configuration, property, configuration.getTypeHandlerRegistry().getTypeHandler(javaType)).build());
+    }
+    return new BoundSql(configuration, "insert", mappings, parameter);
+  }
+
+  private MappedStatement insert() {
+    return new MappedStatement.Builder(configuration, "insert", new StaticSqlSource(configuration, "insert"), SqlCommandType.INSERT).build();
+  }
+
+}
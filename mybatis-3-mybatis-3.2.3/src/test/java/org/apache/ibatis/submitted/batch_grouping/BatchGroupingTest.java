@@ -0,0 +1,175 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.batch_grouping;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.List;
+
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.session.BatchOrdering;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchGroupingTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  @Before
+  public void setUp() throws Exception {
+    Connection conn = null;
+
+    try {
+      Class.forName("org.hsqldb.jdbcDriver");
+      conn = DriverManager.getConnection("jdbc:hsqldb:mem:batch_grouping", "sa", "");
+
+      Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/batch_grouping/CreateDB.sql");
+
+      ScriptRunner runner = new ScriptRunner(conn);
+      runner.setLogWriter(null);
+      runner.setErrorLogWriter(new PrintWriter(System.err));
+      runner.runScript(reader);
+      conn.commit();
+      reader.close();
+
+      reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/batch_grouping/Config.xml");
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+      reader.close();
+    } finally {
+      if (conn != null) {
+        conn.close();
+      }
+    }
+  }
+
+  @Test
+  public void shouldGroupInterleavedStatements() {
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      insertFamilies(mapper, 3);
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(2, results.size());
+      assertEquals("org.apache.ibatis.submitted.batch_grouping.Mapper.insertParent", results.get(0).getMappedStatement().getId());
+      assertEquals(3, results.get(0).getParameterObjects().size());
+      assertArrayEquals(new int[] { 1, 1, 1 }, results.get(1).getUpdateCounts());
+      assertEquals(3, mapper.countChildren());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldKeepTheExecutionOrderWhenStrict() {
+    sqlSessionFactory.getConfiguration().setBatchOrdering(BatchOrdering.STRICT);
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    try {
+      insertFamilies(sqlSession.getMapper(Mapper.class), 3);
+      assertEquals(6, sqlSession.flushStatements().size());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldNotGroupAcrossAChangeOfCommandType() {
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.insertParent(1, "p1");
+      mapper.deleteParent(1);
+      mapper.insertParent(1, "p1 again");
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(3, results.size());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldKeepTheOrderOfDifferentUpdates() {
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.insertParent(1, "p1");
+      mapper.insertParent(2, "p2");
+      mapper.updateName(1, "a");
+      mapper.rename("a", "b");
+      mapper.updateName(2, "a");
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(4, results.size());
+      assertEquals("b", mapper.selectName(1));
+      assertEquals("a", mapper.selectName(2));
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldGroupRepeatedUpdates() {
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.insertParent(1, "p1");
+      mapper.insertParent(2, "p2");
+      mapper.updateName(1, "a");
+      mapper.updateName(2, "b");
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(2, results.size());
+      assertEquals(2, results.get(1).getParameterObjects().size());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldFlushAtTheBatchFlushSize() {
+    sqlSessionFactory.getConfiguration().setBatchFlushSize(4);
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      insertFamilies(mapper, 3);
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(4, results.size());
+      assertEquals(2, results.get(0).getParameterObjects().size());
+      assertEquals(2, results.get(1).getParameterObjects().size());
+      assertEquals(1, results.get(2).getParameterObjects().size());
+      assertEquals(1, results.get(3).getParameterObjects().size());
+      assertEquals(3, mapper.countChildren());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  private void insertFamilies(Mapper mapper, int count) {
+    for (int i = 1; i <= count; i++) {
+      mapper.insertParent(i, "parent " + i);
+      mapper.insertChild(i, i, "child " + i);
+    }
+  }
+
+}
@@ -0,0 +1,145 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.cache_refresh;
+
+import static org.junit.Assert.*;
+
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CacheRefreshTest {
+
+  private static final String SELECT_TITLE = "org.apache.ibatis.submitted.cache_refresh.Mapper.selectTitle";
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  @Before
+  public void setUp() throws Exception {
+    Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/cache_refresh/CreateDB.sql");
+    execute(reader);
+    reader.close();
+
+    reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/cache_refresh/Config.xml");
+    sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    reader.close();
+  }
+
+  @Test
+  public void shouldRefreshAnEntryReadBeforeItExpires() throws Exception {
+    String cached = selectTitle();
+    assertEquals("First", cached);
+    assertSame(cached, selectTitle());
+    // not seen by the cache
+    execute(new StringReader("update blog set title = 'Updated' where id = 1;"));
+    Thread.sleep(300);
+    // found due for a refresh, the cached value is returned meanwhile
+    assertSame(cached, selectTitle());
+    long deadline = System.currentTimeMillis() + 3000;
+    String title = cached;
+    while ("First".equals(title) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+      title = selectTitle();
+    }
+    assertEquals("Updated", title);
+    assertSame(title, selectTitle());
+  }
+
+  @Test
+  public void shouldRefreshWithTheParameterOfTheRead() throws Exception {
+    Map<String, Object> parameter = new HashMap<String, Object>();
+    parameter.put("id", 1);
+    String cached = selectTitle(parameter);
+    assertEquals("First", cached);
+    execute(new StringReader("update blog set title = 'Updated' where id = 1;"));
+    Thread.sleep(300);
+    assertSame(cached, selectTitle(parameter));
+    // changed by the caller while the refresh runs
+    parameter.put("id", 2);
+    long deadline = System.currentTimeMillis() + 3000;
+    String title = cached;
+    while ("First".equals(title) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+      title = selectTitle();
+    }
+    assertEquals("Updated", title);
+  }
+
+  @Test
+  public void shouldRefreshThroughThePlugins() throws Exception {
+    sqlSessionFactory.getConfiguration().addInterceptor(new UpperCaseTitlePlugin());
+    String cached = selectTitle();
+    assertEquals("FIRST", cached);
+    execute(new StringReader("update blog set title = 'Updated' where id = 1;"));
+    Thread.sleep(300);
+    assertSame(cached, selectTitle());
+    long deadline = System.currentTimeMillis() + 3000;
+    String title = cached;
+    while ("FIRST".equals(title) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+      title = selectTitle();
+    }
+    assertEquals("UPDATED", title);
+  }
+
+  private String selectTitle(Map<String, Object> parameter) {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      return sqlSession.selectOne(SELECT_TITLE, parameter);
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  private String selectTitle() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      return sqlSession.selectOne(SELECT_TITLE, 1);
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  private void execute(Reader reader) throws Exception {
+    Connection conn = null;
+    try {
+      Class.forName("org.hsqldb.jdbcDriver");
+      conn = DriverManager.getConnection("jdbc:hsqldb:mem:cache_refresh", "sa", "");
+      ScriptRunner runner = new ScriptRunner(conn);
+      runner.setLogWriter(null);
+      runner.setErrorLogWriter(new PrintWriter(System.err));
+      runner.runScript(reader);
+      conn.commit();
+    } finally {
+      if (conn != null) {
+        conn.close();
+      }
+    }
+  }
+
+}
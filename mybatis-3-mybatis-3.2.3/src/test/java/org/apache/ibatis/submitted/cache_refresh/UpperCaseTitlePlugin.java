@@ -0,0 +1,56 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.cache_refresh;
+
+import java.util.Properties;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+
+/**
+ * Rewrites the SQL of the queries, as pagination plugins do, keeping the cache key of the original SQL.
+ */
+@Intercepts(@Signature(type = Executor.class, method = "query", args = { MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class }))
+public class UpperCaseTitlePlugin implements Interceptor {
+
+  public Object intercept(Invocation invocation) throws Throwable {
+    Executor executor = (Executor) invocation.getTarget();
+    Object[] args = invocation.getArgs();
+    MappedStatement ms = (MappedStatement) args[0];
+    RowBounds rowBounds = (RowBounds) args[2];
+    BoundSql boundSql = ms.getBoundSql(args[1]);
+    CacheKey key = executor.createCacheKey(ms, args[1], rowBounds, boundSql);
+    BoundSql upperCased = boundSql.copy(ms.getConfiguration(), "select upper(title) from (" + boundSql.getSql() + ") t", boundSql.getParameterMappings());
+    return executor.query(ms, args[1], rowBounds, (ResultHandler) args[3], key, upperCased);
+  }
+
+  public Object plugin(Object target) {
+    return Plugin.wrap(target, this);
+  }
+
+  public void setProperties(Properties properties) {
+  }
+
+}
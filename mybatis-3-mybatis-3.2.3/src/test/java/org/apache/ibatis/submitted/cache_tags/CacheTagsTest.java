@@ -0,0 +1,167 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.cache_tags;
+
+import static org.junit.Assert.*;
+
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CacheTagsTest {
+
+  private static final String BLOG = "org.apache.ibatis.submitted.cache_tags.BlogMapper.";
+  private static final String REPORT = "org.apache.ibatis.submitted.cache_tags.ReportMapper.";
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  @Before
+  public void setUp() throws Exception {
+    Connection conn = null;
+
+    try {
+      Class.forName("org.hsqldb.jdbcDriver");
+      conn = DriverManager.getConnection("jdbc:hsqldb:mem:cache_tags", "sa", "");
+
+      Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/cache_tags/CreateDB.sql");
+
+      ScriptRunner runner = new ScriptRunner(conn);
+      runner.setLogWriter(null);
+      runner.setErrorLogWriter(new PrintWriter(System.err));
+      runner.runScript(reader);
+      conn.commit();
+      reader.close();
+
+      reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/cache_tags/Config.xml");
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+      reader.close();
+    } finally {
+      if (conn != null) {
+        conn.close();
+      }
+    }
+  }
+
+  @Test
+  public void shouldEvictOnlyTheEntriesOfTheUpdatedRow() {
+    Map<String, Object> cached = readAll();
+    updateBlog(1, "Updated", true);
+    Map<String, Object> reread = readAll();
+    assertEquals("Updated", ((Blog) reread.get("blog1")).getTitle());
+    assertNotSame(cached.get("blog1"), reread.get("blog1"));
+    assertSame(cached.get("blog2"), reread.get("blog2"));
+    // depends on the whole table
+    assertNotSame(cached.get("blogs"), reread.get("blogs"));
+    // has no tags, so depends on anything in its namespace
+    assertNotSame(cached.get("authors"), reread.get("authors"));
+  }
+
+  @Test
+  public void shouldEvictTaggedEntriesOfOtherNamespaces() {
+    Map<String, Object> cached = readAll();
+    updateBlog(2, "Updated", true);
+    Map<String, Object> reread = readAll();
+    assertNotSame(cached.get("titles"), reread.get("titles"));
+    assertEquals("Updated", ((List<?>) reread.get("titles")).get(1));
+    assertSame(cached.get("authorNames"), reread.get("authorNames"));
+  }
+
+  @Test
+  public void shouldNotEvictAnythingWhenTheUpdateIsRolledBack() {
+    Map<String, Object> cached = readAll();
+    updateBlog(1, "Updated", false);
+    Map<String, Object> reread = readAll();
+    assertSame(cached.get("blog1"), reread.get("blog1"));
+    assertSame(cached.get("blogs"), reread.get("blogs"));
+  }
+
+  @Test
+  public void shouldNotReadInvalidatedEntriesInTheWritingSession() {
+    Map<String, Object> cached = readAll();
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      sqlSession.update(BLOG + "updateBlog", new Blog(1, "Updated"));
+      Blog blog = sqlSession.selectOne(BLOG + "selectBlog", 1);
+      assertEquals("Updated", blog.getTitle());
+      assertSame(cached.get("blog2"), sqlSession.selectOne(BLOG + "selectBlog", 2));
+      sqlSession.commit();
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldClearTheNamespaceOnAWriteWithoutTags() {
+    Map<String, Object> cached = readAll();
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Map<String, Object> author = new HashMap<String, Object>();
+      author.put("id", 2);
+      author.put("name", "John");
+      sqlSession.insert(BLOG + "insertAuthor", author);
+      sqlSession.commit();
+    } finally {
+      sqlSession.close();
+    }
+    Map<String, Object> reread = readAll();
+    assertNotSame(cached.get("blog2"), reread.get("blog2"));
+    assertEquals(2, ((List<?>) reread.get("authors")).size());
+    assertSame(cached.get("titles"), reread.get("titles"));
+  }
+
+  private Map<String, Object> readAll() {
+    Map<String, Object> results = new HashMap<String, Object>();
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      results.put("blog1", sqlSession.selectOne(BLOG + "selectBlog", 1));
+      results.put("blog2", sqlSession.selectOne(BLOG + "selectBlog", 2));
+      results.put("blogs", sqlSession.selectList(BLOG + "selectBlogs"));
+      results.put("authors", sqlSession.selectList(BLOG + "selectAuthors"));
+      results.put("titles", sqlSession.selectList(REPORT + "selectTitles"));
+      results.put("authorNames", sqlSession.selectList(REPORT + "selectAuthorNames"));
+    } finally {
+      sqlSession.close();
+    }
+    return results;
+  }
+
+  private void updateBlog(int id, String title, boolean commit) {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      sqlSession.update(BLOG + "updateBlog", new Blog(id, title));
+      if (commit) {
+        sqlSession.commit();
+      } else {
+        sqlSession.rollback();
+      }
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+}
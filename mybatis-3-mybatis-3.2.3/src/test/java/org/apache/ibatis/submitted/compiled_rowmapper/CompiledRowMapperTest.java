@@ -0,0 +1,114 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.compiled_rowmapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.util.List;
+
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CompiledRowMapperTest {
+
+  private static SqlSessionFactory sqlSessionFactory;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/compiled_rowmapper/mybatis-config.xml");
+    sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    reader.close();
+
+    SqlSession session = sqlSessionFactory.openSession();
+    Connection conn = session.getConnection();
+    reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/compiled_rowmapper/CreateDB.sql");
+    ScriptRunner runner = new ScriptRunner(conn);
+    runner.setLogWriter(null);
+    runner.runScript(reader);
+    reader.close();
+    session.close();
+  }
+
+  @Test
+  public void shouldAutoMapColumns() {
+    assertTrue(sqlSessionFactory.getConfiguration().isCompiledResultMappingEnabled());
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      List<User> users = mapper.getUsers();
+      assertEquals(3, users.size());
+      assertEquals(Integer.valueOf(1), users.get(0).getId());
+      assertEquals("User1", users.get(0).getUserName());
+      assertEquals(30, users.get(0).getAge());
+      assertEquals(Boolean.TRUE, users.get(0).getActive());
+      assertEquals(0, users.get(1).getAge());
+      assertEquals(Boolean.FALSE, users.get(1).getActive());
+      assertNull(users.get(2).getUserName());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldMapExplicitAndAutomaticMappings() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      List<User> users = mapper.getUsersWithResultMap();
+      assertEquals(3, users.size());
+      assertEquals("User2", users.get(1).getName());
+      assertNull(users.get(1).getUserName());
+      assertEquals(Boolean.FALSE, users.get(1).getActive());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldHonorRowBounds() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      List<User> users = mapper.getUsers(new RowBounds(1, 1));
+      assertEquals(1, users.size());
+      assertEquals(Integer.valueOf(2), users.get(0).getId());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldReturnNullWhenNoColumnHasAValue() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      assertNull(mapper.getEmptyRow());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+}
@@ -0,0 +1,42 @@
+--
+--    Copyright 2009-2013 the original author or authors.
+--
+--    Licensed under the Apache License, Version 2.0 (the "License");
+--    you may not use this file except in compliance with the License.
+--    You may obtain a copy of the License at
+--
+--       http://www.apache.org/licenses/LICENSE-2.0
+--
+--    Unless required by applicable law or agreed to in writing, software
+--    distributed under the License is distributed on an "AS IS" BASIS,
+--    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+--    See the License for the specific language governing permissions and
+--    limitations under the License.
+--
+
+drop table roles if exists;
+drop table users if exists;
+
+create table users (
+  id int,
+  name varchar(20)
+);
+
+create table roles (
+  id int,
+  user_id int,
+  role varchar(20)
+);
+
+insert into users (id, name) values(1, 'User1');
+insert into users (id, name) values(2, 'User2');
+insert into users (id, name) values(3, 'User3');
+insert into users (id, name) values(4, 'User4');
+insert into users (id, name) values(5, 'User5');
+
+insert into roles (id, user_id, role) values(1, 1, 'admin');
+insert into roles (id, user_id, role) values(2, 1, 'user');
+insert into roles (id, user_id, role) values(3, 3, 'user');
+insert into roles (id, user_id, role) values(4, 5, 'admin');
+insert into roles (id, user_id, role) values(5, 5, 'guest');
+insert into roles (id, user_id, role) values(6, 5, 'user');
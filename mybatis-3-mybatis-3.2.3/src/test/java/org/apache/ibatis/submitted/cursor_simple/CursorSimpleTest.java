@@ -0,0 +1,206 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.cursor_simple;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CursorSimpleTest {
+
+  private static SqlSessionFactory sqlSessionFactory;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/cursor_simple/mybatis-config.xml");
+    sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    reader.close();
+
+    SqlSession session = sqlSessionFactory.openSession();
+    Connection conn = session.getConnection();
+    reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/cursor_simple/CreateDB.sql");
+    ScriptRunner runner = new ScriptRunner(conn);
+    runner.setLogWriter(null);
+    runner.runScript(reader);
+    reader.close();
+    session.close();
+  }
+
+  @Test
+  public void shouldFetchAllRowsOneByOne() throws Exception {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      Cursor<User> users = mapper.getAllUsers();
+      assertFalse(users.isOpen());
+      assertEquals(-1, users.getCurrentIndex());
+
+      Iterator<User> iterator = users.iterator();
+      assertTrue(iterator.hasNext());
+      User user = iterator.next();
+      assertEquals("User1", user.getName());
+      assertEquals(0, users.getCurrentIndex());
+      assertTrue(users.isOpen());
+
+      int count = 1;
+      while (iterator.hasNext()) {
+        user = iterator.next();
+        count++;
+        assertEquals(count, user.getId().intValue());
+      }
+      assertEquals(5, count);
+      assertEquals(4, users.getCurrentIndex());
+      assertFalse(users.isOpen());
+      assertTrue(users.isConsumed());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldApplyRowBounds() throws Exception {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Cursor<User> users = sqlSession.getMapper(Mapper.class).getAllUsers(new RowBounds(1, 2));
+      Iterator<User> iterator = users.iterator();
+      assertEquals("User2", iterator.next().getName());
+      assertEquals(1, users.getCurrentIndex());
+      assertEquals("User3", iterator.next().getName());
+      assertEquals(2, users.getCurrentIndex());
+      assertFalse(iterator.hasNext());
+      assertTrue(users.isConsumed());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldGroupOrderedNestedResults() throws Exception {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Cursor<User> users = sqlSession.selectCursor("org.apache.ibatis.submitted.cursor_simple.Mapper.getUsersWithRoles");
+      Iterator<User> iterator = users.iterator();
+      User user = iterator.next();
+      assertEquals(Integer.valueOf(1), user.getId());
+      assertEquals(Arrays.asList("admin", "user"), user.getRoles());
+      user = iterator.next();
+      assertEquals(Integer.valueOf(2), user.getId());
+      assertEquals(Collections.emptyList(), user.getRoles());
+      user = iterator.next();
+      assertEquals(Arrays.asList("user"), user.getRoles());
+      user = iterator.next();
+      assertEquals(Integer.valueOf(4), user.getId());
+      user = iterator.next();
+      assertEquals(Integer.valueOf(5), user.getId());
+      assertEquals(Arrays.asList("admin", "guest", "user"), user.getRoles());
+      assertFalse(iterator.hasNext());
+      assertTrue(users.isConsumed());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldLoadNestedSelectsOfEachRow() throws Exception {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Cursor<User> users = sqlSession.selectCursor("org.apache.ibatis.submitted.cursor_simple.Mapper.getUsersWithSelectedRoles");
+      Iterator<User> iterator = users.iterator();
+      assertEquals(Arrays.asList("admin", "user"), iterator.next().getRoles());
+      assertEquals(Collections.emptyList(), iterator.next().getRoles());
+      assertEquals(Arrays.asList("user"), iterator.next().getRoles());
+      assertEquals(Collections.emptyList(), iterator.next().getRoles());
+      assertEquals(Arrays.asList("admin", "guest", "user"), iterator.next().getRoles());
+      assertFalse(iterator.hasNext());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldRejectUnorderedNestedResults() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      sqlSession.getMapper(Mapper.class).getUsersWithRolesUnordered();
+      fail("Expected a PersistenceException");
+    } catch (PersistenceException e) {
+      assertTrue(e.getMessage().contains("resultOrdered=true"));
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldStopFetchingWhenClosed() throws Exception {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Cursor<User> users = sqlSession.getMapper(Mapper.class).getAllUsers();
+      Iterator<User> iterator = users.iterator();
+      assertEquals("User1", iterator.next().getName());
+      users.close();
+      assertFalse(users.isOpen());
+      assertFalse(users.isConsumed());
+      assertFalse(iterator.hasNext());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldCloseCursorsWithTheSession() throws Exception {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    Cursor<User> users;
+    try {
+      users = sqlSession.getMapper(Mapper.class).getAllUsers();
+      users.iterator().next();
+      assertTrue(users.isOpen());
+    } finally {
+      sqlSession.close();
+    }
+    assertFalse(users.isOpen());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldOpenOnlyOneIterator() throws Exception {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Cursor<User> users = sqlSession.getMapper(Mapper.class).getAllUsers();
+      users.iterator();
+      users.iterator();
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+}
@@ -0,0 +1,120 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.database_pagination;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.executor.pagination.LimitOffsetDialect;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class DatabasePaginationTest {
+
+  private static SqlSessionFactory sqlSessionFactory;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/database_pagination/mybatis-config.xml");
+    sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    reader.close();
+
+    SqlSession session = sqlSessionFactory.openSession();
+    Connection conn = session.getConnection();
+    reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/database_pagination/CreateDB.sql");
+    ScriptRunner runner = new ScriptRunner(conn);
+    runner.setLogWriter(null);
+    runner.runScript(reader);
+    reader.close();
+    session.close();
+  }
+
+  @Test
+  public void shouldPickDialectByDatabaseId() {
+    assertEquals("hsqldb", sqlSessionFactory.getConfiguration().getDatabaseId());
+    assertTrue(sqlSessionFactory.getConfiguration().getPaginationDialect() instanceof LimitOffsetDialect);
+  }
+
+  @Test
+  public void shouldPageInTheDatabase() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      List<User> users = mapper.getUsers(new RowBounds(2, 2));
+      assertTrue(SqlRecorder.getLastSql().endsWith("LIMIT ? OFFSET ?"));
+      assertEquals(2, users.size());
+      assertEquals(Integer.valueOf(3), users.get(0).getId());
+      assertEquals(Integer.valueOf(4), users.get(1).getId());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldBindPageParametersAfterStatementParameters() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      List<User> users = mapper.getUsersAfter(1, new RowBounds(1, 10));
+      assertEquals(3, users.size());
+      assertEquals(Integer.valueOf(3), users.get(0).getId());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldNotRewriteWithoutRowBounds() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      List<User> users = sqlSession.getMapper(Mapper.class).getUsers();
+      assertFalse(SqlRecorder.getLastSql().contains("LIMIT"));
+      assertEquals(5, users.size());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldCountRowsOfSelect() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Long count = sqlSession.selectOne("org.apache.ibatis.submitted.database_pagination.Mapper.getUsers!count");
+      assertEquals(Long.valueOf(5), count);
+      Map<String, Object> parameter = new HashMap<String, Object>();
+      parameter.put("id", 3);
+      count = sqlSession.selectOne("getUsersAfter!count", parameter);
+      assertEquals(Long.valueOf(2), count);
+      assertFalse(SqlRecorder.getLastSql().toLowerCase().contains("order by"));
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+}
@@ -0,0 +1,29 @@
+--
+--    Copyright 2009-2013 the original author or authors.
+--
+--    Licensed under the Apache License, Version 2.0 (the "License");
+--    you may not use this file except in compliance with the License.
+--    You may obtain a copy of the License at
+--
+--       http://www.apache.org/licenses/LICENSE-2.0
+--
+--    Unless required by applicable law or agreed to in writing, software
+--    distributed under the License is distributed on an "AS IS" BASIS,
+--    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+--    See the License for the specific language governing permissions and
+--    limitations under the License.
+--
+
+drop table products if exists;
+
+create table products (
+  id int,
+  category varchar(20),
+  name varchar(20)
+);
+
+insert into products (id, category, name) values(1, 'book', 'Product1');
+insert into products (id, category, name) values(2, 'music', 'Product2');
+insert into products (id, category, name) values(3, 'book', 'Product3');
+insert into products (id, category, name) values(4, 'music', 'Product4');
+insert into products (id, category, name) values(5, 'book', 'Product5');
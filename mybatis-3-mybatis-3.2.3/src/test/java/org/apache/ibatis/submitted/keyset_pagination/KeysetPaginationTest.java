@@ -0,0 +1,245 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.keyset_pagination;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ibatis.binding.BindingException;
+import org.apache.ibatis.executor.pagination.LimitOffsetDialect;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.session.KeysetBounds;
+import org.apache.ibatis.session.KeysetPage;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class KeysetPaginationTest {
+
+  private static SqlSessionFactory sqlSessionFactory;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/keyset_pagination/mybatis-config.xml");
+    sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    reader.close();
+
+    SqlSession session = sqlSessionFactory.openSession();
+    Connection conn = session.getConnection();
+    reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/keyset_pagination/CreateDB.sql");
+    ScriptRunner runner = new ScriptRunner(conn);
+    runner.setLogWriter(null);
+    runner.runScript(reader);
+    reader.close();
+    session.close();
+  }
+
+  @Test
+  public void shouldSeekPagesByKey() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      KeysetPage<Product> page = mapper.getProducts(new KeysetBounds(2));
+      assertEquals(2, page.getItems().size());
+      assertEquals(Integer.valueOf(1), page.getItems().get(0).getId());
+      assertEquals(Integer.valueOf(2), page.getItems().get(1).getId());
+      assertTrue(page.hasNext());
+      assertArrayEquals(new Object[] { 2 }, page.getNextKey());
+
+      page = mapper.getProducts(page.next());
+      assertEquals(2, page.getItems().size());
+      assertEquals(Integer.valueOf(3), page.getItems().get(0).getId());
+      assertEquals(Integer.valueOf(4), page.getItems().get(1).getId());
+      assertTrue(page.hasNext());
+
+      page = mapper.getProducts(page.next());
+      assertEquals(1, page.getItems().size());
+      assertEquals(Integer.valueOf(5), page.getItems().get(0).getId());
+      assertFalse(page.hasNext());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldSeekDescendingByCompositeKey() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      List<Integer> ids = new ArrayList<Integer>();
+      KeysetBounds bounds = new KeysetBounds(2);
+      KeysetPage<Product> page;
+      do {
+        page = mapper.getProductsByCategory("Product%", bounds);
+        for (Product product : page.getItems()) {
+          ids.add(product.getId());
+        }
+        bounds = page.hasNext() ? page.next() : null;
+      } while (bounds != null);
+      assertEquals("[4, 2, 5, 3, 1]", ids.toString());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldSeekByKeyColumnsOfDifferentDirections() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      List<Integer> ids = new ArrayList<Integer>();
+      KeysetBounds bounds = new KeysetBounds(2);
+      KeysetPage<Product> page;
+      do {
+        page = mapper.getProductsByCategoryThenLatest(bounds);
+        for (Product product : page.getItems()) {
+          ids.add(product.getId());
+        }
+        bounds = page.hasNext() ? page.next() : null;
+      } while (bounds != null);
+      assertEquals("[5, 3, 1, 4, 2]", ids.toString());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldSeekGroupedRowsByLabel() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      KeysetPage<Product> page = mapper.getCategories(new KeysetBounds(1));
+      assertEquals("book", page.getItems().get(0).getCategory());
+      assertEquals(Integer.valueOf(3), page.getItems().get(0).getId());
+      page = mapper.getCategories(page.next());
+      assertEquals("music", page.getItems().get(0).getCategory());
+      assertEquals(Integer.valueOf(2), page.getItems().get(0).getId());
+      assertFalse(page.hasNext());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldSeekByAliasOrQualifiedColumnInTheWhereClause() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      List<Integer> byAlias = new ArrayList<Integer>();
+      List<Integer> byQualifiedColumn = new ArrayList<Integer>();
+      KeysetBounds aliasBounds = new KeysetBounds(2);
+      KeysetBounds qualifiedBounds = new KeysetBounds(2);
+      while (aliasBounds != null || qualifiedBounds != null) {
+        if (aliasBounds != null) {
+          KeysetPage<Product> page = mapper.getProductsByAlias("Product%", aliasBounds);
+          for (Product product : page.getItems()) {
+            byAlias.add(product.getId());
+          }
+          aliasBounds = page.hasNext() ? page.next() : null;
+        }
+        if (qualifiedBounds != null) {
+          KeysetPage<Product> page = mapper.getProductsByQualifiedColumn("Product%", qualifiedBounds);
+          for (Product product : page.getItems()) {
+            byQualifiedColumn.add(product.getId());
+          }
+          qualifiedBounds = page.hasNext() ? page.next() : null;
+        }
+      }
+      assertEquals("[1, 2, 3, 4, 5]", byAlias.toString());
+      assertEquals("[1, 2, 3, 4, 5]", byQualifiedColumn.toString());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldSeekByAliasOrQualifiedColumnOfAWrappedSelect() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      KeysetPage<Product> byAlias = mapper.getCategoriesByAlias(new KeysetBounds(1));
+      KeysetPage<Product> byQualifiedColumn = mapper.getCategoriesByQualifiedColumn(new KeysetBounds(1));
+      assertEquals("book", byAlias.getItems().get(0).getCategory());
+      assertEquals("book", byQualifiedColumn.getItems().get(0).getCategory());
+      byAlias = mapper.getCategoriesByAlias(byAlias.next());
+      byQualifiedColumn = mapper.getCategoriesByQualifiedColumn(byQualifiedColumn.next());
+      assertEquals("music", byAlias.getItems().get(0).getCategory());
+      assertEquals(Integer.valueOf(2), byAlias.getItems().get(0).getId());
+      assertEquals("music", byQualifiedColumn.getItems().get(0).getCategory());
+      assertEquals(Integer.valueOf(2), byQualifiedColumn.getItems().get(0).getId());
+      assertFalse(byAlias.hasNext());
+      assertFalse(byQualifiedColumn.hasNext());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldReturnAnEmptyPageAfterTheLastKey() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      KeysetPage<Product> page = mapper.getProducts(new KeysetBounds(2, new Object[] { 5 }));
+      assertTrue(page.getItems().isEmpty());
+      assertFalse(page.hasNext());
+      assertNull(page.getNextKey());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldPushTheLimitDownWhenDatabasePaginationIsEnabled() {
+    sqlSessionFactory.getConfiguration().setDatabasePaginationEnabled(true);
+    sqlSessionFactory.getConfiguration().setPaginationDialect(new LimitOffsetDialect());
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      KeysetPage<Product> page = mapper.getProducts(new KeysetBounds(3, new Object[] { 1 }));
+      assertEquals(3, page.getItems().size());
+      assertEquals(Integer.valueOf(2), page.getItems().get(0).getId());
+      assertTrue(page.hasNext());
+      assertArrayEquals(new Object[] { 4 }, page.getNextKey());
+    } finally {
+      sqlSession.close();
+      sqlSessionFactory.getConfiguration().setDatabasePaginationEnabled(false);
+      sqlSessionFactory.getConfiguration().setPaginationDialect(null);
+    }
+  }
+
+  @Test(expected = BindingException.class)
+  public void shouldRequireKeyColumns() {
+    sqlSessionFactory.getConfiguration().addMapper(InvalidMapper.class);
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      sqlSession.getMapper(InvalidMapper.class).getProducts(new KeysetBounds(2));
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+}
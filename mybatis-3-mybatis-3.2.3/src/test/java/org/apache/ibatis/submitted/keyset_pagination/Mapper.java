@@ -0,0 +1,63 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.keyset_pagination;
+
+import org.apache.ibatis.annotations.Keyset;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Result;
+import org.apache.ibatis.annotations.Results;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.session.KeysetBounds;
+import org.apache.ibatis.session.KeysetPage;
+
+public interface Mapper {
+
+  @Keyset(columns = "id")
+  @Select("select * from products order by name")
+  KeysetPage<Product> getProducts(KeysetBounds bounds);
+
+  @Keyset(columns = { "category", "id" }, descending = true)
+  @Results(@Result(column = "product_id", property = "id"))
+  @Select("select id as product_id, category, name from products where name like #{name} or name is null")
+  KeysetPage<Product> getProductsByCategory(@Param("name") String name, KeysetBounds bounds);
+
+  @Keyset(columns = { "category", "id" }, descending = { false, true })
+  @Select("select * from products")
+  KeysetPage<Product> getProductsByCategoryThenLatest(KeysetBounds bounds);
+
+  @Keyset(columns = "category")
+  @Select("select category, count(*) as id from products group by category")
+  KeysetPage<Product> getCategories(KeysetBounds bounds);
+
+  @Keyset(columns = "product_id", properties = "id")
+  @Results(@Result(column = "product_id", property = "id"))
+  @Select("select p.id as product_id, p.name from products p where p.name like #{name}")
+  KeysetPage<Product> getProductsByAlias(@Param("name") String name, KeysetBounds bounds);
+
+  @Keyset(columns = "p.id", properties = "id")
+  @Select("select p.id, p.name from products p where p.name like #{name}")
+  KeysetPage<Product> getProductsByQualifiedColumn(@Param("name") String name, KeysetBounds bounds);
+
+  @Keyset(columns = "label", properties = "category")
+  @Results(@Result(column = "label", property = "category"))
+  @Select("select p.category as label, count(*) as id from products p group by p.category")
+  KeysetPage<Product> getCategoriesByAlias(KeysetBounds bounds);
+
+  @Keyset(columns = "p.category", properties = "category")
+  @Select("select p.category, count(*) as id from products p group by p.category")
+  KeysetPage<Product> getCategoriesByQualifiedColumn(KeysetBounds bounds);
+
+}
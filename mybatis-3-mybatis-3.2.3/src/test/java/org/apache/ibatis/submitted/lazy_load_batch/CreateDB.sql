@@ -0,0 +1,42 @@
+--
+--    Copyright 2009-2013 the original author or authors.
+--
+--    Licensed under the Apache License, Version 2.0 (the "License");
+--    you may not use this file except in compliance with the License.
+--    You may obtain a copy of the License at
+--
+--       http://www.apache.org/licenses/LICENSE-2.0
+--
+--    Unless required by applicable law or agreed to in writing, software
+--    distributed under the License is distributed on an "AS IS" BASIS,
+--    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+--    See the License for the specific language governing permissions and
+--    limitations under the License.
+--
+
+drop table orders if exists;
+drop table customers if exists;
+
+create table customers (
+id int primary key,
+name varchar(16)
+);
+
+create table orders (
+id int primary key,
+customer_id int
+);
+
+insert into customers (id, name) values (1, 'c1'), (2, 'c2'), (3, 'c3'), (4, 'c4'), (5, 'c5');
+
+insert into orders (id, customer_id) values (1, 1), (2, 2), (3, 1), (4, 3), (5, 4), (6, 2), (7, null);
+
+drop table notes if exists;
+
+create table notes (
+id int primary key,
+customer_name char(4),
+text varchar(16)
+);
+
+insert into notes (id, customer_name, text) values (1, 'c1', 'first'), (2, 'c2', 'second'), (3, 'c1', 'third');
@@ -0,0 +1,152 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.lazy_load_batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.List;
+
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EagerLoadBatchTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  @Before
+  public void setUp() throws Exception {
+    Connection conn = null;
+
+    try {
+      Class.forName("org.hsqldb.jdbcDriver");
+      conn = DriverManager.getConnection("jdbc:hsqldb:mem:lazy_load_batch", "sa", "");
+
+      Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/lazy_load_batch/CreateDB.sql");
+
+      ScriptRunner runner = new ScriptRunner(conn);
+      runner.setLogWriter(null);
+      runner.setErrorLogWriter(new PrintWriter(System.err));
+      runner.runScript(reader);
+      conn.commit();
+      reader.close();
+
+      reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/lazy_load_batch/Config.xml");
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+      reader.close();
+      sqlSessionFactory.getConfiguration().setLazyLoadingEnabled(false);
+      sqlSessionFactory.getConfiguration().setEagerLoadBatchSize(3);
+    } finally {
+      if (conn != null) {
+        conn.close();
+      }
+    }
+    SqlRecorder.getSqls().clear();
+  }
+
+  @Test
+  public void shouldLoadAssociationsInBatches() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      List<Order> orders = sqlSession.getMapper(Mapper.class).getOrders();
+      // the customers 1, 2 and 3, then 4
+      assertEquals(3, SqlRecorder.getSqls().size());
+      assertEquals("c1", orders.get(0).getCustomer().getName());
+      assertEquals("c2", orders.get(1).getCustomer().getName());
+      assertSame(orders.get(0).getCustomer(), orders.get(2).getCustomer());
+      assertEquals("c3", orders.get(3).getCustomer().getName());
+      assertEquals("c4", orders.get(4).getCustomer().getName());
+      assertEquals("c2", orders.get(5).getCustomer().getName());
+      assertNull(orders.get(6).getCustomer());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldNotMapARowWhoseOnlyValueIsANestedSelectFindingNothing() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      List<Order> orders = sqlSession.getMapper(Mapper.class).getOrderCustomers();
+      assertEquals(7, orders.size());
+      assertEquals("c1", orders.get(0).getCustomer().getName());
+      assertEquals("c2", orders.get(5).getCustomer().getName());
+      // the customer 9 does not exist
+      assertNull(orders.get(6));
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldLoadCollectionsInBatches() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      List<Customer> customers = sqlSession.getMapper(Mapper.class).getCustomers();
+      assertEquals(3, SqlRecorder.getSqls().size());
+      assertEquals(2, customers.get(0).getOrders().size());
+      assertEquals(3, customers.get(0).getOrders().get(1).getId().intValue());
+      assertEquals(2, customers.get(1).getOrders().size());
+      assertEquals(1, customers.get(2).getOrders().size());
+      assertEquals(1, customers.get(3).getOrders().size());
+      assertEquals(0, customers.get(4).getOrders().size());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldLoadCyclicNestedSelects() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      List<Order> orders = sqlSession.getMapper(Mapper.class).getOrdersWithCustomerWithOrders();
+      assertEquals(7, orders.size());
+      Customer customer = orders.get(0).getCustomer();
+      assertEquals("c1", customer.getName());
+      assertEquals(2, customer.getOrders().size());
+      assertEquals("c1", customer.getOrders().get(1).getCustomer().getName());
+      assertEquals("c4", orders.get(4).getCustomer().getName());
+      assertEquals(1, orders.get(4).getCustomer().getOrders().size());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldLoadOneByOneWhenTheNestedSelectCannotBeBatched() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      List<Order> orders = sqlSession.getMapper(Mapper.class).getOrdersWithUnbatchableCustomer();
+      assertEquals("c1", orders.get(0).getCustomer().getName());
+      assertEquals("c2", orders.get(1).getCustomer().getName());
+      // one query per distinct customer, the others are found in the local cache
+      assertEquals(5, SqlRecorder.getSqls().size());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+}
@@ -0,0 +1,154 @@
+/*
+ *    Copyright 2009-2013 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.lazy_load_batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.List;
+
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LazyLoadBatchTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  @Before
+  public void setUp() throws Exception {
+    Connection conn = null;
+
+    try {
+      Class.forName("org.hsqldb.jdbcDriver");
+      conn = DriverManager.getConnection("jdbc:hsqldb:mem:lazy_load_batch", "sa", "");
+
+      Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/lazy_load_batch/CreateDB.sql");
+
+      ScriptRunner runner = new ScriptRunner(conn);
+      runner.setLogWriter(null);
+      runner.setErrorLogWriter(new PrintWriter(System.err));
+      runner.runScript(reader);
+      conn.commit();
+      reader.close();
+
+      reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/lazy_load_batch/Config.xml");
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+      reader.close();
+    } finally {
+      if (conn != null) {
+        conn.close();
+      }
+    }
+    SqlRecorder.getSqls().clear();
+  }
+
+  @Test
+  public void shouldLoadAssociationsInBatches() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      List<Order> orders = sqlSession.getMapper(Mapper.class).getOrders();
+      assertEquals(1, SqlRecorder.getSqls().size());
+      assertEquals("c1", orders.get(0).getCustomer().getName());
+      assertEquals(2, SqlRecorder.getSqls().size());
+      assertTrue(SqlRecorder.getSqls().get(1).contains("id IN (?, ?, ?)"));
+      // the customers 1, 2 and 3 are loaded
+      assertEquals("c2", orders.get(1).getCustomer().getName());
+      assertEquals("c1", orders.get(2).getCustomer().getName());
+      assertEquals("c3", orders.get(3).getCustomer().getName());
+      assertEquals("c2", orders.get(5).getCustomer().getName());
+      assertEquals(2, SqlRecorder.getSqls().size());
+      assertEquals("c4", orders.get(4).getCustomer().getName());
+      assertEquals(3, SqlRecorder.getSqls().size());
+      assertNull(orders.get(6).getCustomer());
+      assertEquals(3, SqlRecorder.getSqls().size());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldLoadCollectionsInBatches() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      List<Customer> customers = sqlSession.getMapper(Mapper.class).getCustomers();
+      assertEquals(2, customers.get(0).getOrders().size());
+      assertEquals(1, customers.get(0).getOrders().get(1).getCustomerId().intValue());
+      assertEquals(3, customers.get(0).getOrders().get(1).getId().intValue());
+      assertEquals(2, customers.get(1).getOrders().size());
+      assertEquals(1, customers.get(2).getOrders().size());
+      assertEquals(2, SqlRecorder.getSqls().size());
+      assertEquals(1, customers.get(3).getOrders().size());
+      assertEquals(0, customers.get(4).getOrders().size());
+      assertEquals(3, SqlRecorder.getSqls().size());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldLoadOnTheirOwnTheKeysThatJavaDoesNotFindEqual() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      List<Customer> customers = sqlSession.getMapper(Mapper.class).getCustomersWithNotes();
+      // the CHAR column returns 'c1  ', which the database finds equal to 'c1' but Java does not
+      assertEquals(2, customers.get(0).getNotes().size());
+      assertEquals("third", customers.get(0).getNotes().get(1).getText());
+      assertEquals(1, customers.get(1).getNotes().size());
+      assertEquals(0, customers.get(2).getNotes().size());
+      assertEquals(0, customers.get(3).getNotes().size());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldLoadOneByOneWhenTheNestedSelectCannotBeBatched() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      List<Order> orders = sqlSession.getMapper(Mapper.class).getOrdersWithUnbatchableCustomer();
+      assertEquals("c1", orders.get(0).getCustomer().getName());
+      assertEquals("c2", orders.get(1).getCustomer().getName());
+      assertEquals(3, SqlRecorder.getSqls().size());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldLoadInBatchesAfterTheSessionIsClosed() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    List<Order> orders;
+    try {
+      orders = sqlSession.getMapper(Mapper.class).getOrders();
+    } finally {
+      sqlSession.close();
+    }
+    assertEquals("c1", orders.get(0).getCustomer().getName());
+    assertEquals("c2", orders.get(1).getCustomer().getName());
+    assertEquals(2, SqlRecorder.getSqls().size());
+  }
+
+}
@@ -18,7 +18,9 @@ package org.apache.ibatis.submitted.selectkey;
 import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.InsertProvider;
 import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.SelectKey;
+import org.apache.ibatis.mapping.PrefetchMode;
 
 public interface AnnotatedMapper {
 
@@ -37,4 +39,22 @@ public interface AnnotatedMapper {
     @InsertProvider(type=SqlProvider.class,method="insertTable3_2")
     @SelectKey(statement="call next value for TestSequence", keyProperty="nameId", before=true, resultType=int.class)
     int insertTable3_2(Name name);
+
+    @Insert("insert into table3 (id, name) values(#{nameId}, #{name})")
+    @SelectKey(statement="select next value for TestSequence from key_block where n <= #{prefetch}", keyProperty="nameId", before=true, resultType=int.class, prefetch=3)
+    int insertTable3Prefetched(Name name);
+
+    @Insert("insert into table3 (id, name) values(#{nameId}, #{name})")
+    @SelectKey(statement="call next value for PooledSequence", keyProperty="nameId", before=true, resultType=int.class, prefetch=10, prefetchMode=PrefetchMode.HILO)
+    int insertTable3Pooled(Name name);
+
+    @Insert("insert into table3 (id, name) values(#{nameId}, #{name})")
+    @SelectKey(statement="call next value for TestSequence", keyProperty="nameId", before=true, resultType=int.class, prefetch=3)
+    int insertTable3PrefetchedFromASingleRow(Name name);
+
+    @Select("call next value for TestSequence")
+    int nextTestSequenceValue();
+
+    @Select("call next value for PooledSequence")
+    int nextPooledSequenceValue();
 }
@@ -16,8 +16,10 @@
 package org.apache.ibatis.submitted.selectkey;
 
 import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.executor.BatchResult;
 import org.apache.ibatis.io.Resources;
 import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.apache.ibatis.session.SqlSessionFactoryBuilder;
@@ -31,6 +33,7 @@ import java.io.Reader;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class SelectKeyTest {
@@ -200,4 +203,75 @@ public class SelectKeyTest {
         sqlSession.close();
       }
   }
+
+  @Test
+  public void testInsertTable3Prefetched() {
+      SqlSession sqlSession = sqlSessionFactory.openSession();
+
+      try {
+        for (int i = 0; i < 2; i++) {
+          Map<String, Object> parms = new HashMap<String, Object>();
+          parms.put("name", "Fred" + i);
+          int rows = sqlSession.insert("org.apache.ibatis.submitted.selectkey.Table2.insertTable3Prefetched", parms);
+          assertEquals(1, rows);
+          assertEquals(100 + i, parms.get("id"));
+        }
+      } finally {
+        sqlSession.close();
+      }
+  }
+
+  @Test
+  public void testAnnotatedInsertTable3Prefetched() {
+      SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+
+      try {
+        AnnotatedMapper mapper = sqlSession.getMapper(AnnotatedMapper.class);
+        for (int i = 0; i < 5; i++) {
+          Name name = new Name();
+          name.setName("barney" + i);
+          mapper.insertTable3Prefetched(name);
+          assertEquals(33 + i, name.getNameId());
+        }
+        List<BatchResult> results = sqlSession.flushStatements();
+        assertEquals(1, results.size());
+        assertEquals(5, results.get(0).getUpdateCounts().length);
+        // two blocks of 3 keys were fetched
+        assertEquals(39, mapper.nextTestSequenceValue());
+      } finally {
+        sqlSession.close();
+      }
+  }
+
+  @Test(expected=PersistenceException.class)
+  public void testAnnotatedInsertTable3PrefetchedFromASingleRow() {
+      SqlSession sqlSession = sqlSessionFactory.openSession();
+
+      try {
+        Name name = new Name();
+        name.setName("barney");
+        sqlSession.getMapper(AnnotatedMapper.class).insertTable3PrefetchedFromASingleRow(name);
+      } finally {
+        sqlSession.close();
+      }
+  }
+
+  @Test
+  public void testAnnotatedInsertTable3Pooled() {
+      SqlSession sqlSession = sqlSessionFactory.openSession();
+
+      try {
+        AnnotatedMapper mapper = sqlSession.getMapper(AnnotatedMapper.class);
+        for (int i = 0; i < 12; i++) {
+          Name name = new Name();
+          name.setName("barney" + i);
+          assertEquals(1, mapper.insertTable3Pooled(name));
+          assertEquals(100 + i, name.getNameId());
+        }
+        // the sequence was called once per 10 keys
+        assertEquals(120, mapper.nextPooledSequenceValue());
+      } finally {
+        sqlSession.close();
+      }
+  }
 }